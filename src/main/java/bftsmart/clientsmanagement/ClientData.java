@@ -16,12 +16,12 @@ limitations under the License.
 package bftsmart.clientsmanagement;
 
 import bftsmart.tom.core.messages.TOMMessage;
-import bftsmart.tom.util.TOMUtil;
+import bftsmart.tom.util.SignatureScheme;
+import bftsmart.tom.util.SignatureSchemes;
 import org.slf4j.LoggerFactory;
 
 import java.security.PublicKey;
-import java.security.Signature;
-import java.security.SignatureException;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -33,7 +33,7 @@ public class ClientData {
     ReentrantLock clientLock = new ReentrantLock();
 
     private int clientId;
-    //private PublicKey publicKey = null;
+    private PublicKey publicKey = null;
 
     private int session = -1;
 
@@ -43,25 +43,29 @@ public class ClientData {
     private int lastMessageExecuted = -1;
 
     private RequestList pendingRequests = new RequestList();
+    // pending requests which were not proposed yet, in the order they were received
+    private ArrayDeque<TOMMessage> proposableRequests = new ArrayDeque<TOMMessage>();
+    // is this client in the ring of clients with proposable requests? (guarded by clientLock)
+    boolean ready = false;
     //anb: new code to deal with client requests that arrive after their execution
     private RequestList orderedRequests = new RequestList(5);
 
-    private Signature signatureVerificator = null;
+    private SignatureScheme signatureScheme = null;
     
     /**
-     * Class constructor. Just store the clientId and creates a signature
-     * verificator for a given client public key.
+     * Class constructor. Just store the clientId and resolves the signature
+     * scheme of the given client public key.
      *
      * @param clientId client unique id
      * @param publicKey client public key
      */
     public ClientData(int clientId, PublicKey publicKey) {
         this.clientId = clientId;
+        this.publicKey = publicKey;
         if(publicKey != null) {
             try {
-                signatureVerificator = Signature.getInstance("SHA1withRSA");
-                signatureVerificator.initVerify(publicKey);
-                LOGGER.debug("Signature verifier initialized for client {}", clientId);
+                signatureScheme = SignatureSchemes.forKey(publicKey);
+                LOGGER.debug("Signature scheme {} resolved for client {}", signatureScheme, clientId);
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
@@ -72,6 +76,13 @@ public class ClientData {
         return clientId;
     }
 
+    /**
+     * @return the public key of this client, or null if signatures are not used
+     */
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
     public int getSession() {
         return session;
     }
@@ -113,18 +124,73 @@ public class ClientData {
     }
 
     public boolean verifySignature(byte[] message, byte[] signature) {
-        if(signatureVerificator != null) {
-            try {
-                return TOMUtil.verifySignature(signatureVerificator, message, signature);
-            } catch (SignatureException ex) {
-                System.err.println("Error in processing client "+clientId+" signature: "+ex.getMessage());
-            }
+        if(signatureScheme != null) {
+            return signatureScheme.verify(publicKey, message, signature);
         }
         return false;
     }
 
+    /**
+     * Adds a request to the pending requests of this client.
+     *
+     * @param request the request to be added
+     */
+    public void addPendingRequest(TOMMessage request) {
+        pendingRequests.add(request);
+        if (!request.alreadyProposed) {
+            proposableRequests.addLast(request);
+        }
+    }
+
+    /**
+     * Removes all the pending requests of this client.
+     */
+    public void clearPendingRequests() {
+        pendingRequests.clear();
+        proposableRequests.clear();
+    }
+
+    /**
+     * Retrieves and removes the oldest pending request that was not proposed yet.
+     *
+     * @return the request, or null if all the pending requests were proposed
+     */
+    public TOMMessage pollProposableRequest() {
+        TOMMessage request;
+        while ((request = proposableRequests.pollFirst()) != null) {
+            if (!request.alreadyProposed) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves, but does not remove, the oldest pending request that was not
+     * proposed yet.
+     *
+     * @return the request, or null if all the pending requests were proposed
+     */
+    public TOMMessage peekProposableRequest() {
+        TOMMessage request;
+        while ((request = proposableRequests.peekFirst()) != null) {
+            if (!request.alreadyProposed) {
+                return request;
+            }
+            proposableRequests.pollFirst();
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of pending requests that were not proposed yet
+     */
+    public int countProposableRequests() {
+        return proposableRequests.size();
+    }
+
     public boolean removeOrderedRequest(TOMMessage request) {
-        if(pendingRequests.remove(request)) {
+        if(removePending(request) != null) {
             //anb: new code to deal with client requests that arrive after their execution
             orderedRequests.addLast(request);
             return true;
@@ -133,15 +199,12 @@ public class ClientData {
     }
 
     public boolean removePendingRequest(TOMMessage request) {
-        if(pendingRequests.remove(request)) {
-            return true;
-        }
-        return false;
+        return removePending(request) != null;
     }
 
     public boolean removeRequest(TOMMessage request) {
 	lastMessageExecuted = request.getSequence();
-	boolean result = pendingRequests.remove(request);
+	boolean result = removePending(request) != null;
         //anb: new code to deal with client requests that arrive after their execution
         orderedRequests.addLast(request);
 
@@ -149,12 +212,51 @@ public class ClientData {
 		TOMMessage msg = it.next();
 		if(msg.getSequence()<request.getSequence()){
 			it.remove();
+			removeProposable(msg);
 		}
 	}
 
     	return result;
     }
 
+    /**
+     * Removes a request from the pending requests and from the requests not
+     * proposed yet.
+     *
+     * @param request the request, or an equal one decoded from a proposal
+     * @return the pending instance of the request, or null if it was not pending
+     */
+    private TOMMessage removePending(TOMMessage request) {
+        for (Iterator<TOMMessage> it = pendingRequests.iterator(); it.hasNext();) {
+            TOMMessage pending = it.next();
+            if (pending.equals(request)) {
+                it.remove();
+                removeProposable(pending);
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a pending request from the requests not proposed yet. A proposed
+     * request was already polled from them, or is skipped once it reaches the
+     * head; requests are proposed and ordered in the order they were received,
+     * so an unproposed one is usually the first.
+     *
+     * @param pending the pending instance of the request
+     */
+    private void removeProposable(TOMMessage pending) {
+        if (pending.alreadyProposed) {
+            return;
+        }
+        if (pending == proposableRequests.peekFirst()) {
+            proposableRequests.pollFirst();
+        } else {
+            proposableRequests.remove(pending);
+        }
+    }
+
     public TOMMessage getReply(int reqSequence) {
         TOMMessage request = orderedRequests.getBySequence(reqSequence);
         if(request != null) {
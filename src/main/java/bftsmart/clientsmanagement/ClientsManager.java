@@ -23,10 +23,12 @@ import bftsmart.tom.server.RequestVerifier;
 import org.slf4j.LoggerFactory;
 import utils.codec.Base58Utils;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -45,6 +47,14 @@ public class ClientsManager {
     private AtomicLong clientDatasTotal = new AtomicLong(0);
 
     private ReentrantLock clientsLock = new ReentrantLock();
+
+    // Ring of the clients that have requests not proposed yet, used to assemble
+    // batches in a round-robin way without scanning idle clients;
+    // lock order: clientsLock -> clientLock -> readyLock;
+    private ArrayDeque<ClientData> readyClients = new ArrayDeque<ClientData>();
+    private ReentrantLock readyLock = new ReentrantLock();
+    // clients with negative ids (Reconfig requests), guarded by clientsLock;
+    private List<ClientData> reconfigClients = new ArrayList<ClientData>();
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ClientsManager.class);
 
     public ClientsManager(ViewTopology controller, RequestsTimer timer, RequestVerifier verifier) {
@@ -91,6 +101,9 @@ public class ClientsManager {
                     : null);
             //******* EDUARDO END **************//
             clientsData.put(clientId, clientData);
+            if (clientId < 0) {
+                reconfigClients.add(clientData);
+            }
         }
 
         /******* END CLIENTS CRITICAL SECTION ******/
@@ -103,75 +116,93 @@ public class ClientsManager {
      * Get pending requests in a fair way (one request from each client
      * queue until the max number of requests is obtained).
      *
+     * Only the clients which have requests not proposed yet are visited, so
+     * the cost is proportional to the size of the batch.
+     *
      * @return the set of all pending requests of this system
      */
     public RequestList getPendingRequests() {
-        RequestList allReq = new RequestList();
-
-        clientsLock.lock();
-        try {
-            /******* BEGIN CLIENTS CRITICAL SECTION ******/
-
-            // id为负的消息(Reconfig 消息类型)单独打包
-            Set<Integer> ids = clientsData.keySet();
-            for(Integer id : ids) {
-                if (id < 0) {
-                    ClientData clientData = clientsData.get(id);
-                    RequestList clientPendingRequests = clientData.getPendingRequests();
-                    clientData.clientLock.lock();
-                    TOMMessage request = clientPendingRequests.size() > 0 ? clientPendingRequests.get(0) : null;
-                    clientData.clientLock.unlock();
-                    if (request != null) {
-                        if (!request.alreadyProposed) {
-                            //this client have pending message
-                            request.alreadyProposed = true;
-                            allReq.addLast(request);
-                            return allReq;
-                        }
-                    }
-                }
-            }
-
-            Set<Entry<Integer, ClientData>> clientsEntrySet = clientsData.entrySet();
+        return getPendingRequests(controller.getStaticConf().getMaxBatchSize());
+    }
 
-            for (int i = 0; true; i++) {
-                Iterator<Entry<Integer, ClientData>> it = clientsEntrySet.iterator();
-                int noMoreMessages = 0;
+    /**
+     * Get pending requests in a fair way, at most the given number of them.
+     *
+     * @param maxBatchSize the max number of requests to get
+     * @return the set of pending requests of this system
+     */
+    public RequestList getPendingRequests(int maxBatchSize) {
+        RequestList allReq = new RequestList();
 
-                while (it.hasNext()
-                        && allReq.size() < controller.getStaticConf().getMaxBatchSize()
-                        && noMoreMessages < clientsEntrySet.size()) {
+        // id为负的消息(Reconfig 消息类型)单独打包
+        TOMMessage reconfigRequest = pollReconfigRequest();
+        if (reconfigRequest != null) {
+            allReq.addLast(reconfigRequest);
+            return allReq;
+        }
 
-                    ClientData clientData = it.next().getValue();
-                    RequestList clientPendingRequests = clientData.getPendingRequests();
+        while (allReq.size() < maxBatchSize) {
+            ClientData clientData;
+            readyLock.lock();
+            clientData = readyClients.pollFirst();
+            readyLock.unlock();
 
-                    clientData.clientLock.lock();
-                    /******* BEGIN CLIENTDATA CRITICAL SECTION ******/
-                    TOMMessage request = (clientPendingRequests.size() > i) ? clientPendingRequests.get(i) : null;
+            if (clientData == null) {
+                // no more pending requests
+                break;
+            }
 
-                    /******* END CLIENTDATA CRITICAL SECTION ******/
-                    clientData.clientLock.unlock();
+            clientData.clientLock.lock();
+            /******* BEGIN CLIENTDATA CRITICAL SECTION ******/
+            try {
+                TOMMessage request = clientData.pollProposableRequest();
+                if (request != null) {
+                    //this client have pending message
+                    request.alreadyProposed = true;
+                    allReq.addLast(request);
+                }
 
-                    if (request != null) {
-                        if (!request.alreadyProposed) {
-                            //this client have pending message
-                            request.alreadyProposed = true;
-                            allReq.addLast(request);
-                        }
-                    } else {
-                        //this client don't have more pending requests
-                        noMoreMessages++;
-                    }
+                if (clientData.peekProposableRequest() != null) {
+                    // back to the end of the ring, waiting for the next round
+                    readyLock.lock();
+                    readyClients.addLast(clientData);
+                    readyLock.unlock();
+                } else {
+                    //this client don't have more pending requests
+                    clientData.ready = false;
                 }
+            } finally {
+                /******* END CLIENTDATA CRITICAL SECTION ******/
+                clientData.clientLock.unlock();
+            }
+        }
 
-                if (allReq.size() == controller.getStaticConf().getMaxBatchSize() ||
-                        noMoreMessages == clientsEntrySet.size()) {
+        return allReq;
+    }
 
-                    break;
+    /**
+     * Get the first pending Reconfig request if it was not proposed yet.
+     *
+     * @return the request, or null if there is none
+     */
+    private TOMMessage pollReconfigRequest() {
+        clientsLock.lock();
+        try {
+            /******* BEGIN CLIENTS CRITICAL SECTION ******/
+            for (ClientData clientData : reconfigClients) {
+                TOMMessage request = null;
+                clientData.clientLock.lock();
+                RequestList clientPendingRequests = clientData.getPendingRequests();
+                if (clientPendingRequests.size() > 0 && !clientPendingRequests.getFirst().alreadyProposed) {
+                    request = clientPendingRequests.getFirst();
+                    request.alreadyProposed = true;
+                }
+                clientData.clientLock.unlock();
+                if (request != null) {
+                    return request;
                 }
             }
-
-            return allReq;
+            return null;
         } finally {
             /******* END CLIENTS CRITICAL SECTION ******/
             clientsLock.unlock();
@@ -179,38 +210,53 @@ public class ClientsManager {
     }
 
     /**
-     * We've implemented some protection for individual client
-     * data, but the clients table can change during the operation.
+     * Puts the client in the ring of clients with requests to be proposed, if it
+     * is not there yet. The caller must hold the lock of the client.
+     *
+     * @param clientData
+     */
+    private void markReady(ClientData clientData) {
+        if (!clientData.ready && clientData.countProposableRequests() > 0) {
+            clientData.ready = true;
+            readyLock.lock();
+            readyClients.addLast(clientData);
+            readyLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there are requests to be proposed. Clients left in the ring
+     * without such requests (e.g. their requests were ordered by other leader)
+     * are taken out of it on the way.
      *
      * @return true if there are some pending requests and false otherwise
      */
     public boolean havePendingRequests() {
-        boolean havePending = false;
+        while (true) {
+            ClientData clientData;
+            readyLock.lock();
+            clientData = readyClients.peekFirst();
+            readyLock.unlock();
 
-        clientsLock.lock();
-        /******* BEGIN CLIENTS CRITICAL SECTION ******/        
-        
-        Iterator<Entry<Integer, ClientData>> it = clientsData.entrySet().iterator();
+            if (clientData == null) {
+                return false;
+            }
 
-        while (it.hasNext() && !havePending) {
-            ClientData clientData = it.next().getValue();
-            
             clientData.clientLock.lock();
-            RequestList reqs = clientData.getPendingRequests();
-            if (!reqs.isEmpty()) {
-                for(TOMMessage msg:reqs) {
-                    if(!msg.alreadyProposed) {
-                        havePending = true;
-                        break;
-                    }
+            try {
+                if (clientData.peekProposableRequest() != null) {
+                    return true;
+                }
+                readyLock.lock();
+                if (readyClients.peekFirst() == clientData) {
+                    readyClients.pollFirst();
+                    clientData.ready = false;
                 }
+                readyLock.unlock();
+            } finally {
+                clientData.clientLock.unlock();
             }
-            clientData.clientLock.unlock();
         }
-
-        /******* END CLIENTS CRITICAL SECTION ******/
-        clientsLock.unlock();
-        return havePending;
     }
 
     /**
@@ -280,6 +326,27 @@ public class ClientsManager {
         return pendingMessage;
     }
 
+    /**
+     * Get the pending request of some client with the given session and sequence.
+     *
+     * @param clientId the client of the request
+     * @param session the session of the request
+     * @param sequence the sequence of the request
+     * @return the pending request, or null
+     */
+    public TOMMessage getPending(int clientId, int session, int sequence) {
+        ClientData clientData = getClientData(clientId);
+
+        clientData.clientLock.lock();
+        /******* BEGIN CLIENTDATA CRITICAL SECTION ******/
+        TOMMessage pendingMessage = clientData.getPendingRequests().getBySequence(sequence);
+
+        /******* END CLIENTDATA CRITICAL SECTION ******/
+        clientData.clientLock.unlock();
+
+        return pendingMessage != null && pendingMessage.getSession() == session ? pendingMessage : null;
+    }
+
     public boolean requestReceived(TOMMessage request, boolean fromClient) {
         return requestReceived(request, fromClient, null);
     }
@@ -298,13 +365,31 @@ public class ClientsManager {
      * accounted
      */
     public boolean requestReceived(TOMMessage request, boolean fromClient, ServerCommunicationSystem cs) {
+        return requestReceived(request, fromClient, cs, false);
+    }
+
+    /**
+     * Notifies the ClientsManager that a new request from a client arrived.
+     *
+     * @param request the received request
+     * @param fromClient the message was received from client or not?
+     * @param cs server com. system to be able to send replies to already processed requests
+     * @param verified the content of the request was already checked by the
+     *                 {@link RequestVerifier} (e.g. by the proposal verification stage)
+     *
+     * @return true if the request is ok and is added to the pending messages
+     * for this client, false if there is some problem and the message was not
+     * accounted
+     */
+    public boolean requestReceived(TOMMessage request, boolean fromClient, ServerCommunicationSystem cs,
+            boolean verified) {
 
         if(LOGGER.isDebugEnabled()) {
             LOGGER.debug("requestReceived: msg type = {}, msg from client = {}, req id = {}", request.getReqType(), request.getSender(), request.getId());
         }
 
         // if the content of the request is invalid, ignore it
-        if (controller.getStaticConf().isBFT() && !verifier.isValidRequest(request.getContent())) return false;
+        if (!verified && controller.getStaticConf().isBFT() && !verifier.isValidRequest(request.getContentBuffer())) return false;
         
 //        request.receptionTime = System.nanoTime();
 
@@ -342,7 +427,7 @@ public class ClientsManager {
             clientData.setSession(request.getSession());
             clientData.setLastMessageReceived(-1);
             clientData.getOrderedRequests().clear();
-            clientData.getPendingRequests().clear();
+            clientData.clearPendingRequests();
         }
 
         if ((clientData.getLastMessageReceived() == -1) || //first message received or new session (see above)
@@ -351,14 +436,15 @@ public class ClientsManager {
 
             //it is a new message and I have to verify it's signature
             if (!request.signed
-                    || clientData.verifySignature(request.serializedMessage,
+                    || clientData.verifySignature(request.getSerializedMessage(),
                     request.serializedMessageSignature)) {
 
                 //I don't have the message but it is valid, I will
                 //insert it in the pending requests of this client
 
                 request.recvFromClient = fromClient;
-                clientData.getPendingRequests().add(request); 
+                clientData.addPendingRequest(request);
+                markReady(clientData);
                 clientData.setLastMessageReceived(request.getSequence());
                 clientData.setLastMessageReceivedTime(request.receptionTime);
                 clientDatasTotal.getAndIncrement();
@@ -380,7 +466,13 @@ public class ClientsManager {
                 
                 if (reply != null && cs != null) {
 
-                    if (reply.recvFromClient && fromClient) {
+                    if (reply.fullReply != null && request.getReplyServer() < 0 && fromClient) {
+                        // the client did not accept the digest replies and asks for the full reply
+                        LOGGER.info("[CACHE] re-send full reply [Sender: {}, sequence: {}, session: {}", reply.getSender(), reply.getSequence(), reply.getSession());
+                        cs.send(new int[]{request.getSender()}, reply.fullReply);
+                    }
+
+                    else if (reply.recvFromClient && fromClient) {
                         LOGGER.info("[CACHE] re-send reply [Sender: {}, sequence: {}, session: {}", reply.getSender(), reply.getSequence(), reply.getSession());
                         cs.send(new int[]{request.getSender()}, reply);
 
@@ -494,6 +586,10 @@ public class ClientsManager {
     public void clear() {
         clientsLock.lock();
         clientsData.clear();
+        reconfigClients.clear();
+        readyLock.lock();
+        readyClients.clear();
+        readyLock.unlock();
         clientsLock.unlock();
         LOGGER.info("ClientsManager cleared.");
 
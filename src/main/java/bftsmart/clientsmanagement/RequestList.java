@@ -51,7 +51,7 @@ public class RequestList extends LinkedList<TOMMessage> {
     public TOMMessage remove(byte[] serializedMessage) {
         for(ListIterator<TOMMessage> li = listIterator(); li.hasNext(); ) {
             TOMMessage msg = li.next();
-            if(Arrays.equals(serializedMessage,msg.serializedMessage)) {
+            if(Arrays.equals(serializedMessage,msg.getSerializedMessage())) {
                 li.remove();
                 return msg;
             }
@@ -83,7 +83,7 @@ public class RequestList extends LinkedList<TOMMessage> {
     public TOMMessage get(byte[] serializedMessage){
         for(ListIterator<TOMMessage> li = listIterator(); li.hasNext(); ) {
             TOMMessage msg = li.next();
-            if(Arrays.equals(serializedMessage,msg.serializedMessage)) {
+            if(Arrays.equals(serializedMessage,msg.getSerializedMessage())) {
                 return msg;
             }
         }
@@ -0,0 +1,58 @@
+package bftsmart.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+
+import utils.serialize.binary.BinarySerializeUtils;
+
+/**
+ * 读取 {@link BinaryMessageOutput} 输出的消息的 {@link ObjectInput}；非线程安全；
+ */
+final class BinaryMessageInput extends DataInputStream implements ObjectInput {
+
+	public BinaryMessageInput(byte[] bytes, int offset, int length) {
+		super(new ByteArrayInputStream(bytes, offset, length));
+	}
+
+	@Override
+	public Object readObject() throws ClassNotFoundException, IOException {
+		byte tag = readByte();
+		switch (tag) {
+		case BinaryMessageOutput.OBJECT_NULL:
+			return null;
+		case BinaryMessageOutput.OBJECT_BYTES:
+			byte[] bytes = new byte[readLength()];
+			readFully(bytes);
+			return bytes;
+		case BinaryMessageOutput.OBJECT_INTS:
+			int count = readInt();
+			if (count < 0 || count > available() / 4) {
+				throw new IOException("Illegal length[" + count + "] of encoded object!");
+			}
+			int[] ints = new int[count];
+			for (int i = 0; i < ints.length; i++) {
+				ints[i] = readInt();
+			}
+			return ints;
+		case BinaryMessageOutput.OBJECT_SERIALIZED:
+			byte[] serialized = new byte[readLength()];
+			readFully(serialized);
+			return BinarySerializeUtils.deserialize(serialized);
+		default:
+			throw new IOException("Unsupported object tag[" + tag + "]!");
+		}
+	}
+
+	private int readLength() throws IOException {
+		return checkLength(readInt());
+	}
+
+	private int checkLength(int length) throws IOException {
+		if (length < 0 || length > available()) {
+			throw new IOException("Illegal length[" + length + "] of encoded object!");
+		}
+		return length;
+	}
+}
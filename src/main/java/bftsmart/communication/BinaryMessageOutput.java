@@ -0,0 +1,119 @@
+package bftsmart.communication;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+
+import utils.io.BytesUtils;
+import utils.serialize.binary.BinarySerializeUtils;
+
+/**
+ * 以紧凑的二进制格式输出消息的 {@link ObjectOutput}；
+ * <p>
+ * 基本类型按 {@link DataOutputStream} 的格式输出，不含 Java 序列化的类描述与块数据头；<br>
+ * {@link #writeObject(Object)} 对 null、byte[]、int[] 采用长度前缀的格式输出，其它对象回退到 Java 序列化；
+ * <p>
+ * 内部缓冲区可通过 {@link #reset()} 重复使用；非线程安全；
+ */
+final class BinaryMessageOutput extends DataOutputStream implements ObjectOutput {
+
+	static final byte OBJECT_NULL = 0;
+
+	static final byte OBJECT_BYTES = 1;
+
+	static final byte OBJECT_INTS = 2;
+
+	static final byte OBJECT_SERIALIZED = 3;
+
+	public BinaryMessageOutput(int initialSize) {
+		super(new Buffer(initialSize));
+	}
+
+	@Override
+	public void writeObject(Object obj) throws IOException {
+		if (obj == null) {
+			writeByte(OBJECT_NULL);
+		} else if (obj instanceof byte[]) {
+			byte[] bytes = (byte[]) obj;
+			writeByte(OBJECT_BYTES);
+			writeInt(bytes.length);
+			write(bytes);
+		} else if (obj instanceof int[]) {
+			int[] ints = (int[]) obj;
+			writeByte(OBJECT_INTS);
+			writeInt(ints.length);
+			for (int i : ints) {
+				writeInt(i);
+			}
+		} else {
+			byte[] bytes = BinarySerializeUtils.serialize(obj);
+			writeByte(OBJECT_SERIALIZED);
+			writeInt(bytes.length);
+			write(bytes);
+		}
+	}
+
+	/**
+	 * 清空已输出的内容，以便重复使用；
+	 */
+	public void reset() {
+		buffer().reset();
+		written = 0;
+	}
+
+	/**
+	 * 内部缓冲区的容量；
+	 *
+	 * @return
+	 */
+	public int capacity() {
+		return buffer().capacity();
+	}
+
+	/**
+	 * 把已输出的内容复制到指定的数组；
+	 *
+	 * @param dest
+	 * @param offset
+	 */
+	public void copyTo(byte[] dest, int offset) {
+		buffer().copyTo(dest, offset);
+	}
+
+	/**
+	 * 以大端格式改写指定位置已输出的整数，用于回填长度头；
+	 *
+	 * @param position
+	 * @param value
+	 */
+	public void setInt(int position, int value) {
+		buffer().setInt(position, value);
+	}
+
+	private Buffer buffer() {
+		return (Buffer) out;
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+
+		public Buffer(int size) {
+			super(size);
+		}
+
+		public int capacity() {
+			return buf.length;
+		}
+
+		public void copyTo(byte[] dest, int offset) {
+			System.arraycopy(buf, 0, dest, offset, count);
+		}
+
+		public void setInt(int position, int value) {
+			if (position < 0 || position + 4 > count) {
+				throw new IndexOutOfBoundsException("Position[" + position + "] is out of range!");
+			}
+			BytesUtils.toBytes_BigEndian(value, buf, position);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package bftsmart.communication;
+
+/**
+ * 预先编码的系统消息；
+ * <p>
+ * 多播时消息内容只编码一次，编码结果由发往各个目标节点的连接共享，各连接只附加各自的长度头与 MAC；<br>
+ * 编码结果不可修改，所有连接发送完成后由垃圾回收释放；
+ */
+public final class EncodedMessage {
+
+	private final SystemMessage message;
+
+	private final byte[] body;
+
+	EncodedMessage(SystemMessage message, byte[] body) {
+		this.message = message;
+		this.body = body;
+	}
+
+	/**
+	 * 编码前的消息；
+	 *
+	 * @return
+	 */
+	public SystemMessage getMessage() {
+		return message;
+	}
+
+	/**
+	 * 消息内容：版本号 + 消息类型 + 消息字段；
+	 * <p>
+	 * 返回的数组由各连接共享，调用者不能修改；
+	 *
+	 * @return
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+}
@@ -21,6 +21,16 @@ public interface MacKey {
 	 */
 	byte[] generateMac(byte[] message);
 
+	/**
+	 * 生成消息认证码（MAC）；
+	 * 
+	 * @param message       消息数据；
+	 * @param messageOffset 消息内容的起始偏移量
+	 * @param messageSize   消息内容的长度；
+	 * @return
+	 */
+	byte[] generateMac(byte[] message, int messageOffset, int messageSize);
+
 	/**
 	 * 认证指定的消息与认证码是否一致；
 	 * 
@@ -5,8 +5,6 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
-import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 
 import javax.crypto.Mac;
@@ -16,6 +14,7 @@ import javax.crypto.spec.PBEKeySpec;
 
 import org.bouncycastle.util.Arrays;
 
+import bftsmart.tom.util.SignatureSchemes;
 import utils.io.BytesUtils;
 
 public class MacKeyGenerator {
@@ -135,29 +134,11 @@ public class MacKeyGenerator {
 	}
 
 	private static byte[] sign(PrivateKey key, byte[] bytes) {
-		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-			signatureEngine.initSign(key);
-
-			signatureEngine.update(bytes);
-
-			byte[] signature = signatureEngine.sign();
-			return signature;
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		return SignatureSchemes.forKey(key).sign(key, bytes);
 	}
 
 	public static boolean verify(PublicKey key, byte[] bytes, byte[] signature) {
-		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-			signatureEngine.initVerify(key);
-
-			signatureEngine.update(bytes);
-			return signatureEngine.verify(signature);
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		return SignatureSchemes.forKey(key).verify(key, bytes, signature);
 	}
 
 	private static class MacKeyEntry implements MacKey {
@@ -204,7 +185,15 @@ public class MacKeyGenerator {
 		}
 
 		@Override
-		public synchronized boolean authenticate(byte[] message, byte[] mac) {
+		public byte[] generateMac(byte[] message, int messageOffset, int messageSize) {
+			synchronized (mutxGen) {
+				macGen.update(message, messageOffset, messageSize);
+				return macGen.doFinal();
+			}
+		}
+
+		@Override
+		public boolean authenticate(byte[] message, byte[] mac) {
 			byte[] expectedMac;
 			synchronized (mutxAuth) {
 				expectedMac = macAuth.doFinal(message);
@@ -15,18 +15,18 @@
  */
 package bftsmart.communication;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.Arrays;
-import java.util.HashMap;
 
 import bftsmart.statemanagement.strategy.StandardTRMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MacVector;
 import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.consensus.messages.PayloadRequestMessage;
+import bftsmart.consensus.messages.PayloadResponseMessage;
+import bftsmart.consensus.messages.ProposalChunkMessage;
 import bftsmart.consensus.roles.Acceptor;
 import bftsmart.reconfiguration.views.View;
 import bftsmart.statemanagement.SMMessage;
@@ -34,6 +34,7 @@ import bftsmart.tom.core.TOMLayer;
 import bftsmart.tom.core.messages.ForwardedMessage;
 import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.ViewMessage;
+import bftsmart.tom.leaderchange.HeartBeatAckMessage;
 import bftsmart.tom.leaderchange.HeartBeatMessage;
 import bftsmart.tom.leaderchange.LCMessage;
 import bftsmart.tom.leaderchange.LeaderRequestMessage;
@@ -63,7 +64,6 @@ public class MessageHandler {
 		this.tomLayer = tomLayer;
 	}
 
-	@SuppressWarnings("unchecked")
 	public void processData(SystemMessage sm) {
 		if (sm instanceof ConsensusMessage) {
 
@@ -80,22 +80,10 @@ public class MessageHandler {
 			} else if (consMsg.getType() == MessageFactory.ACCEPT && consMsg.getProof() != null) {
 
 				// We are going to verify the MAC vector at the algorithm level
-				HashMap<Integer, byte[]> macVector = (HashMap<Integer, byte[]>) consMsg.getProof();
+				byte[] recvMAC = consMsg.getProof() instanceof MacVector ? ((MacVector) consMsg.getProof()).get(myId)
+						: null;
 
-				byte[] recvMAC = macVector.get(myId);
-
-				ConsensusMessage cm = new ConsensusMessage(MessageFactory.ACCEPT, consMsg.getNumber(),
-						consMsg.getEpoch(), consMsg.getSender(), consMsg.getValue());
-
-				ByteArrayOutputStream bOut = new ByteArrayOutputStream(248);
-				try {
-					new ObjectOutputStream(bOut).writeObject(cm);
-				} catch (IOException ex) {
-					throw new IllegalStateException("Error occurred while serializing ConsensusMessage[" + cm.toString()
-							+ "]! --" + ex.getMessage(), ex);
-				}
-
-				byte[] data = bOut.toByteArray();
+				byte[] data = consMsg.getCanonicalBytes();
 
 				// byte[] hash = tomLayer.computeHash(data);
 
@@ -118,6 +106,9 @@ public class MessageHandler {
 		} else if (sm instanceof HeartBeatMessage) {
 			// 心跳消息
 			tomLayer.heartBeatTimer.receiveHeartBeatMessage((HeartBeatMessage) sm);
+		} else if (sm instanceof HeartBeatAckMessage) {
+			// 心跳确认消息，用于续约领导者的读租约
+			tomLayer.heartBeatTimer.receiveHeartBeatAckMessage((HeartBeatAckMessage) sm);
 		} else if (sm instanceof ViewMessage) {
 			// 视图消息
 			// 通过该消息可更新本地视图
@@ -146,6 +137,12 @@ public class MessageHandler {
 					tomLayer.getSynchronizer().deliverTimeoutRequest(lcMsg);
 					/**************************************************************/
 
+				} else if (sm instanceof PayloadRequestMessage) {
+					acceptor.payloadRequested((PayloadRequestMessage) sm);
+				} else if (sm instanceof PayloadResponseMessage) {
+					acceptor.payloadReceived((PayloadResponseMessage) sm);
+				} else if (sm instanceof ProposalChunkMessage) {
+					acceptor.chunkReceived((ProposalChunkMessage) sm);
 				} else if (sm instanceof ForwardedMessage) {
 					TOMMessage request = ((ForwardedMessage) sm).getRequest();
 					tomLayer.requestReceived(request);
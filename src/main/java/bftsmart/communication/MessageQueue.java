@@ -1,12 +1,17 @@
 package bftsmart.communication;
 
 import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.PayloadRequestMessage;
+import bftsmart.consensus.messages.PayloadResponseMessage;
+import bftsmart.consensus.messages.ProposalChunkMessage;
+import bftsmart.tom.leaderchange.HeartBeatAckMessage;
 import bftsmart.tom.leaderchange.HeartBeatMessage;
 import bftsmart.tom.leaderchange.LeaderRequestMessage;
 import bftsmart.tom.leaderchange.LeaderResponseMessage;
 import bftsmart.tom.leaderchange.LeaderStatusRequestMessage;
 import bftsmart.tom.leaderchange.LeaderStatusResponseMessage;
 
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 
 public interface MessageQueue {
@@ -47,6 +52,28 @@ public interface MessageQueue {
 	 */
 	SystemMessage take(SystemMessageType type) throws InterruptedException;
 
+	/**
+	 * 不等待地取出指定类型的队列中已有的消息，最多取出 maxMessages 个；
+	 * 
+	 * @param type        消息类型
+	 * @param messages    接收取出的消息
+	 * @param maxMessages 最多取出的消息数
+	 * @return 取出的消息数
+	 */
+	default int drainTo(SystemMessageType type, Collection<? super SystemMessage> messages, int maxMessages) {
+		int count = 0;
+		try {
+			SystemMessage message;
+			while (count < maxMessages && (message = poll(type, 0, TimeUnit.NANOSECONDS)) != null) {
+				messages.add(message);
+				count++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return count;
+	}
+
 	public static enum QueueDirection {
 		/**
 		 * Socket消息接收队列
@@ -79,9 +106,12 @@ public interface MessageQueue {
 		 * @return 枚举类型
 		 */
 		public static MessageQueue.SystemMessageType typeOf(SystemMessage sm) {
-			if (sm instanceof ConsensusMessage) {
+			if (sm instanceof ConsensusMessage || sm instanceof PayloadRequestMessage
+					|| sm instanceof PayloadResponseMessage || sm instanceof ProposalChunkMessage) {
+				// 摘要提议的请求与纠删码提议的分片在共识线程上处理，还原的提议与其它共识消息按序处理
 				return MessageQueue.SystemMessageType.CONSENSUS;
-			} else if (sm instanceof HeartBeatMessage || sm instanceof LeaderRequestMessage
+			} else if (sm instanceof HeartBeatMessage || sm instanceof HeartBeatAckMessage
+					|| sm instanceof LeaderRequestMessage
 					|| sm instanceof LeaderResponseMessage || sm instanceof LeaderStatusRequestMessage
 					|| sm instanceof LeaderStatusResponseMessage) {
 				return MessageQueue.SystemMessageType.HEART;
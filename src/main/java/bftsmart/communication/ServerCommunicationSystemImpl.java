@@ -24,6 +24,7 @@ import bftsmart.reconfiguration.ServerViewController;
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.ViewMessage;
+import bftsmart.tom.leaderchange.HeartBeatAckMessage;
 import bftsmart.tom.leaderchange.HeartBeatMessage;
 import bftsmart.tom.leaderchange.LCMessage;
 import bftsmart.tom.leaderchange.LeaderRequestMessage;
@@ -135,7 +136,7 @@ public class ServerCommunicationSystemImpl implements ServerCommunicationSystem
 	public void send(int[] targets, SystemMessage sm) {
 		if (sm instanceof TOMMessage) {
 			clientCommunication.send(targets, (TOMMessage) sm, false);
-		} else if (sm instanceof HeartBeatMessage) {
+		} else if (sm instanceof HeartBeatMessage || sm instanceof HeartBeatAckMessage) {
 			// 心跳相关请求消息不做重发处理；
 			LOGGER.debug("--------sending heart beat message with no retrying----------> {}", sm);
 			serversCommunication.send(targets, sm, false);
@@ -1,15 +1,105 @@
 package bftsmart.communication;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.PayloadRequestMessage;
+import bftsmart.consensus.messages.PayloadResponseMessage;
+import bftsmart.consensus.messages.ProposalChunkMessage;
+import bftsmart.tom.core.messages.ForwardedMessage;
+import bftsmart.tom.core.messages.ViewMessage;
+import bftsmart.tom.leaderchange.HeartBeatAckMessage;
+import bftsmart.tom.leaderchange.HeartBeatMessage;
+import bftsmart.tom.leaderchange.LCMessage;
+import bftsmart.tom.leaderchange.LeaderRequestMessage;
+import bftsmart.tom.leaderchange.LeaderResponseMessage;
+import bftsmart.tom.leaderchange.LeaderStatusRequestMessage;
 import utils.io.BytesUtils;
 import utils.io.NumberMask;
 import utils.serialize.binary.BinarySerializeUtils;
 
+/**
+ * 系统消息编解码器；
+ * <p>
+ * 消息内容采用带版本号的二进制格式：版本号（1字节） + 消息类型（1字节） + 消息字段；<br>
+ * 已注册的消息类型由编解码器直接创建实例，并通过其 {@link java.io.Externalizable} 方法读写紧凑的二进制字段；<br>
+ * 未注册的消息类型（如状态传输消息）回退到 Java 序列化；
+ * <p>
+ * 编码时使用线程内复用的缓冲区；解码不持有锁，多个连接的接收线程可以并发解码；
+ */
 public class SystemMessageCodec implements MacMessageCodec<SystemMessage> {
 
 	private static final int MESSAGE_HEADER_SIZE = 4;
 
 	private static final int MAC_HEADER_SIZE = 1;
 
+	/**
+	 * 二进制格式的版本号；
+	 */
+	private static final byte FORMAT_VERSION = 1;
+
+	/**
+	 * Java 序列化输出的首字节（STREAM_MAGIC 的高字节），用于兼容旧格式的消息；
+	 */
+	private static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+
+	/**
+	 * 多消息帧的标识；单个消息以非负的长度头开始，帧以此负数开始；
+	 */
+	private static final int FRAME_MARK = 0x80000001;
+
+	/**
+	 * 回退到 Java 序列化的消息类型；
+	 */
+	private static final byte TYPE_SERIALIZED = 0;
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * 复用的编码缓冲区的最大容量；超过此容量的缓冲区在使用后不保留，避免大消息长期占用内存；
+	 */
+	private static final int MAX_REUSED_BUFFER_SIZE = 1024 * 1024;
+
+	private static final Map<Class<?>, Byte> MESSAGE_TYPES = new HashMap<>();
+
+	/**
+	 * 以类型编码为下标的消息工厂，未注册的类型为 null；
+	 */
+	private static final List<Supplier<SystemMessage>> MESSAGE_FACTORIES = new ArrayList<>(
+			Collections.nCopies(16, null));
+
+	private static final ThreadLocal<BinaryMessageOutput> BUFFERS = new ThreadLocal<>();
+
+	static {
+		register(1, ConsensusMessage.class, ConsensusMessage::new);
+		register(2, HeartBeatMessage.class, HeartBeatMessage::new);
+		register(3, LCMessage.class, LCMessage::new);
+		register(4, LeaderRequestMessage.class, LeaderRequestMessage::new);
+		register(5, LeaderResponseMessage.class, LeaderResponseMessage::new);
+		register(6, LeaderStatusRequestMessage.class, LeaderStatusRequestMessage::new);
+		register(7, ViewMessage.class, ViewMessage::new);
+		register(8, ForwardedMessage.class, ForwardedMessage::new);
+		register(9, HeartBeatAckMessage.class, HeartBeatAckMessage::new);
+		register(10, PayloadRequestMessage.class, PayloadRequestMessage::new);
+		register(11, PayloadResponseMessage.class, PayloadResponseMessage::new);
+		register(12, ProposalChunkMessage.class, ProposalChunkMessage::new);
+	}
+
+	/**
+	 * 注册消息类型；类型编码一经发布不可修改；
+	 */
+	private static void register(int type, Class<? extends SystemMessage> messageClass,
+			Supplier<SystemMessage> factory) {
+		MESSAGE_TYPES.put(messageClass, (byte) type);
+		MESSAGE_FACTORIES.set(type, factory);
+	}
+
 	private boolean useMac;
 	private volatile MacKey macKey;
 
@@ -47,41 +137,253 @@ public class SystemMessageCodec implements MacMessageCodec<SystemMessage> {
 	 * 
 	 * 输出的消息字节分为 4 个部分：<br>
 	 * 1. 消息长度头：4个字节；<br>
-	 * 2. 消息内容；<br>
+	 * 2. 消息内容：版本号 + 消息类型 + 消息字段；<br>
 	 * 3. MAC长度头：最多 2 个字节，采用 {@link NumberMask#SHORT} 格式输出；<br>
 	 * 4. MAC内容；<br>
 	 */
 	@Override
 	public byte[] encode(SystemMessage message) {
-		byte[] messageBytes = BinarySerializeUtils.serialize(message);
+		BinaryMessageOutput out = getBuffer();
+		try {
+			out.writeInt(0);
+			writeMessage(message, out);
+			out.flush();
+			out.setInt(0, out.size() - MESSAGE_HEADER_SIZE);
 
-		byte[] macBytes = BytesUtils.EMPTY_BYTES;
-		if (useMac) {
-			if (macKey == null) {
-				throw new IllegalStateException("Mac key is not ready!");
+			return seal(out, MESSAGE_HEADER_SIZE);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error occurred while encoding message! --" + e.getMessage(), e);
+		} finally {
+			releaseBuffer(out);
+		}
+	}
+
+	/**
+	 * 预先编码消息内容；
+	 * <p>
+	 * 编码结果与 MAC 密钥无关，可以由发往多个目标节点的连接共享，各连接通过 {@link #encode(EncodedMessage)} 或者
+	 * {@link #encodeMac(EncodedMessage)} 只附加各自的长度头与 MAC，而不必重复编码消息内容；
+	 * 
+	 * @param message
+	 * @return
+	 */
+	public static EncodedMessage encodeBody(SystemMessage message) {
+		BinaryMessageOutput out = getBuffer();
+		try {
+			writeMessage(message, out);
+			out.flush();
+
+			byte[] body = new byte[out.size()];
+			out.copyTo(body, 0);
+			return new EncodedMessage(message, body);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error occurred while encoding message! --" + e.getMessage(), e);
+		} finally {
+			releaseBuffer(out);
+		}
+	}
+
+	/**
+	 * 编码预先编码的消息，输出格式与 {@link #encode(SystemMessage)} 相同；
+	 * 
+	 * @param message
+	 * @return
+	 */
+	public byte[] encode(EncodedMessage message) {
+		byte[] body = message.getBody();
+		byte[] mac = generateMac(body, 0, body.length);
+		int macSize = mac == null ? 0 : mac.length;
+
+		byte[] outputBytes = new byte[MESSAGE_HEADER_SIZE + body.length + MAC_HEADER_SIZE + macSize];
+		BytesUtils.toBytes(body.length, outputBytes, 0);
+		System.arraycopy(body, 0, outputBytes, MESSAGE_HEADER_SIZE, body.length);
+		outputBytes[MESSAGE_HEADER_SIZE + body.length] = (byte) macSize;
+		if (macSize > 0) {
+			System.arraycopy(mac, 0, outputBytes, MESSAGE_HEADER_SIZE + body.length + MAC_HEADER_SIZE, macSize);
+		}
+		return outputBytes;
+	}
+
+	/**
+	 * 返回预先编码的消息的 MAC 部分：MAC长度头（1个字节） + MAC内容；
+	 * <p>
+	 * 依次输出消息长度头（4个字节，值为消息内容的长度）、共享的消息内容与此方法的结果，等同于
+	 * {@link #encode(EncodedMessage)} 的输出，调用者可以借此避免复制消息内容；
+	 * 
+	 * @param message
+	 * @return
+	 */
+	public byte[] encodeMac(EncodedMessage message) {
+		byte[] body = message.getBody();
+		byte[] mac = generateMac(body, 0, body.length);
+		if (mac == null) {
+			return new byte[MAC_HEADER_SIZE];
+		}
+		byte[] trailer = new byte[MAC_HEADER_SIZE + mac.length];
+		trailer[0] = (byte) mac.length;
+		System.arraycopy(mac, 0, trailer, MAC_HEADER_SIZE, mac.length);
+		return trailer;
+	}
+
+	/**
+	 * 把多个系统消息编码为一帧，整帧只计算一个 MAC；
+	 * <p>
+	 * 
+	 * 输出的帧字节分为 5 个部分：<br>
+	 * 1. 帧标识：4个字节，为负数，以区别于单个消息的长度头；<br>
+	 * 2. 消息数量：4个字节；<br>
+	 * 3. 依次输出每个消息：消息长度头（4个字节） + 消息内容；<br>
+	 * 4. MAC长度头：1 个字节；<br>
+	 * 5. MAC内容：对第 1 至 3 部分计算；<br>
+	 * 
+	 * @param messages
+	 * @return
+	 */
+	public byte[] encode(List<SystemMessage> messages) {
+		return encode(messages, null);
+	}
+
+	/**
+	 * 把多个系统消息编码为一帧，格式与 {@link #encode(List)} 相同；
+	 * <p>
+	 * 已经预先编码的消息直接输出其消息内容；
+	 * 
+	 * @param messages        要编码的消息；
+	 * @param encodedMessages 与 messages 一一对应的预先编码的消息，元素为 null 表示该消息未预先编码；为 null
+	 *                        表示全部消息都未预先编码；
+	 * @return
+	 */
+	public byte[] encode(List<SystemMessage> messages, List<EncodedMessage> encodedMessages) {
+		BinaryMessageOutput out = getBuffer();
+		try {
+			out.writeInt(FRAME_MARK);
+			out.writeInt(messages.size());
+			for (int i = 0; i < messages.size(); i++) {
+				EncodedMessage encoded = encodedMessages == null ? null : encodedMessages.get(i);
+				if (encoded != null) {
+					out.writeInt(encoded.getBody().length);
+					out.write(encoded.getBody());
+					continue;
+				}
+				int position = out.size();
+				out.writeInt(0);
+				writeMessage(messages.get(i), out);
+				out.flush();
+				out.setInt(position, out.size() - position - MESSAGE_HEADER_SIZE);
 			}
-			macBytes = macKey.generateMac(messageBytes);
+			out.flush();
+
+			return seal(out, 0);
+		} catch (IOException e) {
+			throw new IllegalStateException("Error occurred while encoding messages! --" + e.getMessage(), e);
+		} finally {
+			releaseBuffer(out);
 		}
-		int messageSize = messageBytes.length;
-		byte macSize = (byte) macBytes.length;
+	}
 
-		// do an extra copy of the data to be sent, but on a single out stream write
-		byte[] outputBytes = new byte[MESSAGE_HEADER_SIZE + messageSize + MAC_HEADER_SIZE + macSize];
+	/**
+	 * 复制缓冲区中已输出的内容，并在其后附加对 macOffset 之后的内容计算的 MAC；
+	 */
+	private byte[] seal(BinaryMessageOutput out, int macOffset) {
+		int size = out.size();
+		MacKey macKey = getSealingKey();
+		int macSize = macKey == null ? 0 : macKey.getMacLength();
 
-		// write message;
-		BytesUtils.toBytes_BigEndian(messageSize, outputBytes, 0);
-		System.arraycopy(messageBytes, 0, outputBytes, MESSAGE_HEADER_SIZE, messageSize);
+		// do an extra copy of the data to be sent, but on a single out stream write
+		byte[] outputBytes = new byte[size + MAC_HEADER_SIZE + macSize];
+		out.copyTo(outputBytes, 0);
 
 		// write mac;
-		outputBytes[MESSAGE_HEADER_SIZE + messageSize] = macSize;
-		if (macBytes.length > 0) {
-			System.arraycopy(macBytes, 0, outputBytes, MESSAGE_HEADER_SIZE + messageSize + MAC_HEADER_SIZE, macSize);
+		outputBytes[size] = (byte) macSize;
+		if (macSize > 0) {
+			byte[] macBytes = macKey.generateMac(outputBytes, macOffset, size - macOffset);
+			System.arraycopy(macBytes, 0, outputBytes, size + MAC_HEADER_SIZE, macSize);
 		}
 		return outputBytes;
 	}
 
+	/**
+	 * 返回用于生成 MAC 的密钥；不使用 MAC 时返回 null；
+	 */
+	private MacKey getSealingKey() {
+		if (!useMac) {
+			return null;
+		}
+		MacKey macKey = this.macKey;
+		if (macKey == null) {
+			throw new IllegalStateException("Mac key is not ready!");
+		}
+		return macKey;
+	}
+
+	/**
+	 * 对指定内容生成 MAC；不使用 MAC 时返回 null；
+	 */
+	private byte[] generateMac(byte[] bytes, int offset, int size) {
+		MacKey macKey = getSealingKey();
+		return macKey == null ? null : macKey.generateMac(bytes, offset, size);
+	}
+
+	private static BinaryMessageOutput getBuffer() {
+		BinaryMessageOutput out = BUFFERS.get();
+		if (out == null) {
+			out = new BinaryMessageOutput(INITIAL_BUFFER_SIZE);
+			BUFFERS.set(out);
+		}
+		out.reset();
+		return out;
+	}
+
+	private static void releaseBuffer(BinaryMessageOutput out) {
+		if (out.capacity() > MAX_REUSED_BUFFER_SIZE) {
+			BUFFERS.remove();
+		}
+	}
+
+	private static void writeMessage(SystemMessage message, BinaryMessageOutput out) throws IOException {
+		out.writeByte(FORMAT_VERSION);
+		Byte type = MESSAGE_TYPES.get(message.getClass());
+		if (type == null) {
+			out.writeByte(TYPE_SERIALIZED);
+			BinarySerializeUtils.serialize(message, out);
+			return;
+		}
+		out.writeByte(type);
+		message.writeExternal(out);
+	}
+
+	private static SystemMessage readMessage(byte[] bytes, int offset, int size)
+			throws IllegalMessageException {
+		if (size < 2) {
+			throw new IllegalMessageException("Too short length of encoded message bytes!");
+		}
+		if (bytes[offset] == JAVA_SERIALIZATION_MAGIC) {
+			// the message was encoded by a replica of earlier version;
+			return BinarySerializeUtils.deserialize(bytes, offset, size);
+		}
+		if (bytes[offset] != FORMAT_VERSION) {
+			throw new IllegalMessageException("Unsupported message format version[" + bytes[offset] + "]!");
+		}
+		int type = bytes[offset + 1];
+		if (type == TYPE_SERIALIZED) {
+			return BinarySerializeUtils.deserialize(bytes, offset + 2, size - 2);
+		}
+		Supplier<SystemMessage> factory = type < 0 || type >= MESSAGE_FACTORIES.size() ? null
+				: MESSAGE_FACTORIES.get(type);
+		if (factory == null) {
+			throw new IllegalMessageException("Unsupported message type[" + type + "]!");
+		}
+		SystemMessage message = factory.get();
+		try (BinaryMessageInput in = new BinaryMessageInput(bytes, offset + 2, size - 2)) {
+			message.readExternal(in);
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			throw new IllegalMessageException("Illegal encoded message bytes! --" + e.getMessage(), e);
+		}
+		return message;
+	}
+
 	@Override
-	public synchronized SystemMessage decode(byte[] encodedMessageBytes)
+	public SystemMessage decode(byte[] encodedMessageBytes)
 			throws MessageAuthenticationException, IllegalMessageException {
 		int messageSize = BytesUtils.toInt(encodedMessageBytes);
 		if (messageSize < 0) {
@@ -112,9 +414,82 @@ public class SystemMessageCodec implements MacMessageCodec<SystemMessage> {
 			}
 		}
 
-		SystemMessage sm = BinarySerializeUtils.deserialize(encodedMessageBytes, MESSAGE_HEADER_SIZE, messageSize);
+		SystemMessage sm = readMessage(encodedMessageBytes, MESSAGE_HEADER_SIZE, messageSize);
 		sm.authenticated = useMac;
 		return sm;
 	}
 
+	/**
+	 * 解码单个消息或者由 {@link #encode(List)} 编码的多消息帧；
+	 * <p>
+	 * 对于多消息帧，只对整帧验证一次 MAC；
+	 * 
+	 * @param encodedBytes
+	 * @return
+	 * @throws MessageAuthenticationException
+	 * @throws IllegalMessageException
+	 */
+	public List<SystemMessage> decodeAll(byte[] encodedBytes)
+			throws MessageAuthenticationException, IllegalMessageException {
+		if (encodedBytes.length < MESSAGE_HEADER_SIZE) {
+			throw new IllegalMessageException("Too short length of encoded message bytes!");
+		}
+		if (BytesUtils.toInt(encodedBytes) != FRAME_MARK) {
+			return Collections.singletonList(decode(encodedBytes));
+		}
+		if (encodedBytes.length < 2 * MESSAGE_HEADER_SIZE + MAC_HEADER_SIZE) {
+			throw new IllegalMessageException("Too short length of encoded frame bytes!");
+		}
+		int count = BytesUtils.toInt(encodedBytes, MESSAGE_HEADER_SIZE);
+		if (count < 0 || count > encodedBytes.length / MESSAGE_HEADER_SIZE) {
+			throw new IllegalMessageException("Illgal encoded frame bytes! Wrong message count!");
+		}
+
+		// index the messages of the frame;
+		int[] offsets = new int[count];
+		int[] sizes = new int[count];
+		int offset = 2 * MESSAGE_HEADER_SIZE;
+		for (int i = 0; i < count; i++) {
+			if (offset + MESSAGE_HEADER_SIZE > encodedBytes.length) {
+				throw new IllegalMessageException("Too short length of encoded frame bytes!");
+			}
+			int messageSize = BytesUtils.toInt(encodedBytes, offset);
+			offset += MESSAGE_HEADER_SIZE;
+			if (messageSize < 0 || offset + messageSize > encodedBytes.length) {
+				throw new IllegalMessageException("Illgal encoded frame bytes! Wrong message header!");
+			}
+			offsets[i] = offset;
+			sizes[i] = messageSize;
+			offset += messageSize;
+		}
+		if (offset + MAC_HEADER_SIZE > encodedBytes.length) {
+			throw new IllegalMessageException("Too short length of encoded frame bytes!");
+		}
+		int macSize = 0xFF & encodedBytes[offset];
+
+		// read mac;
+		if (useMac) {
+			if (macSize == 0) {
+				throw new MessageAuthenticationException("The MAC is missing in the received frame!");
+			}
+			if (encodedBytes.length < offset + MAC_HEADER_SIZE + macSize) {
+				throw new IllegalMessageException("Too short length of encoded frame bytes!");
+			}
+			// 本地生成 MAC，验证整帧；
+			boolean macMatch = macKey.authenticate(encodedBytes, 0, offset, encodedBytes,
+					offset + MAC_HEADER_SIZE);
+			if (!macMatch) {
+				throw new MessageAuthenticationException("Frame authentication failed!");
+			}
+		}
+
+		List<SystemMessage> messages = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			SystemMessage sm = readMessage(encodedBytes, offsets[i], sizes[i]);
+			sm.authenticated = useMac;
+			messages.add(sm);
+		}
+		return messages;
+	}
+
 }
@@ -0,0 +1,124 @@
+package bftsmart.communication.client.netty;
+
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+
+/**
+ * 客户端会话的密钥服务；
+ * <p>
+ * 节点收到客户端在一个连接上的第一个消息时需要派生与该客户端共享的 MAC 密钥并创建会话；密钥派生开销较大，
+ * 故障切换后大量客户端同时重连时会阻塞 Netty 的 IO 线程，因此密钥派生与 {@link Mac} 的创建在独立的线程上执行；
+ * <p>
+ * 与客户端共享的密钥只取决于客户端与节点的 id，派生结果按客户端 id 缓存，客户端重连时不必重新派生；
+ */
+public class ClientSessionKeyService {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClientSessionKeyService.class);
+
+	/**
+	 * 派生客户端与节点共享密钥的算法，与客户端一致；
+	 */
+	private static final String SECRET_KEY_ALGORITHM = "PBEWithMD5AndDES";
+
+	private final int processId;
+
+	private final String hmacAlgorithm;
+
+	private final ExecutorService executor;
+
+	private final Map<Integer, CompletableFuture<SecretKey>> keys = new ConcurrentHashMap<>();
+
+	/**
+	 * @param processId     当前节点的 id；
+	 * @param hmacAlgorithm MAC 算法；
+	 * @param threads       派生密钥的线程数；
+	 */
+	public ClientSessionKeyService(int processId, String hmacAlgorithm, int threads) {
+		this.processId = processId;
+		this.hmacAlgorithm = hmacAlgorithm;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new KeyThreadFactory());
+	}
+
+	/**
+	 * 与指定客户端共享的密钥；首次调用时在密钥线程上派生；
+	 *
+	 * @param clientId
+	 * @return
+	 */
+	public CompletableFuture<SecretKey> getKey(int clientId) {
+		CompletableFuture<SecretKey> key = keys.computeIfAbsent(clientId,
+				id -> CompletableFuture.supplyAsync(() -> deriveKey(id), executor));
+		if (key.isCompletedExceptionally()) {
+			// 派生失败的结果不缓存，下次重新派生；
+			keys.remove(clientId, key);
+		}
+		return key;
+	}
+
+	/**
+	 * 在密钥线程上创建指定客户端在指定连接上的会话；
+	 *
+	 * @param channel  客户端连接；
+	 * @param clientId 客户端 id；
+	 * @return
+	 */
+	public CompletableFuture<NettyClientServerSession> createSession(Channel channel, int clientId) {
+		return getKey(clientId).thenApplyAsync(key -> {
+			try {
+				Mac macSend = Mac.getInstance(hmacAlgorithm);
+				macSend.init(key);
+				Mac macReceive = Mac.getInstance(hmacAlgorithm);
+				macReceive.init(key);
+				return new NettyClientServerSession(channel, macSend, macReceive, clientId);
+			} catch (GeneralSecurityException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	private SecretKey deriveKey(int clientId) {
+		try {
+			SecretKeyFactory fac = SecretKeyFactory.getInstance(SECRET_KEY_ALGORITHM);
+			String str = clientId + ":" + processId;
+			PBEKeySpec spec = new PBEKeySpec(str.toCharArray());
+			return fac.generateSecret(spec);
+		} catch (GeneralSecurityException e) {
+			LOGGER.error("Error occurred while deriving the session key of client[" + clientId + "]! --"
+					+ e.getMessage(), e);
+			throw new CompletionException(e);
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static class KeyThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thrd = new Thread(r, "Client-Session-Key-" + index.incrementAndGet());
+			thrd.setDaemon(true);
+			return thrd;
+		}
+	}
+}
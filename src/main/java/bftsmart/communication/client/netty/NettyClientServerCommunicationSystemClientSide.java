@@ -45,7 +45,6 @@ import java.nio.channels.ClosedChannelException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
-import java.security.Signature;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -79,7 +78,6 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
     private Map<Integer,NettyClientServerSession> sessionTable = new ConcurrentHashMap<>();
     private ReentrantReadWriteLock rl;
     //the signature engine used in the system
-    private Signature signatureEngine;
     private int signatureLength;
     private volatile boolean closed = false;
 
@@ -425,14 +423,7 @@ public class NettyClientServerCommunicationSystemClientSide extends SimpleChanne
     public byte[] signMessage(PrivateKey key, byte[] message) {
         //long startTime = System.nanoTime();
         try {
-            if (signatureEngine == null) {
-                    signatureEngine = Signature.getInstance("SHA1withRSA");
-            }
-            byte[] result = null;
-
-            signatureEngine.initSign(key);
-            signatureEngine.update(message);
-            result = signatureEngine.sign();
+            byte[] result = TOMUtil.signMessage(key, message);
 
             //st.store(System.nanoTime() - startTime);
             return result;
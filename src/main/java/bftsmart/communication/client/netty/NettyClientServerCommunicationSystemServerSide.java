@@ -61,6 +61,7 @@ public class NettyClientServerCommunicationSystemServerSide extends SimpleChanne
 	private RequestReceiver requestReceiver;
 	private Map<Integer, NettyClientServerSession> sessionTable;
 	private ReentrantReadWriteLock rl;
+	private ClientSessionKeyService keyService;
 	private ViewTopology controller;
 	private boolean closed = false;
 	private Channel mainChannel;
@@ -87,8 +88,11 @@ public class NettyClientServerCommunicationSystemServerSide extends SimpleChanne
 			// Configure the server.
 			Mac macDummy = Mac.getInstance(staticConf.getHmacAlgorithm());
 
+			// derives the session keys of the clients off the netty event loops
+			keyService = new ClientSessionKeyService(processId, staticConf.getHmacAlgorithm(),
+					Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
 			serverPipelineFactory = new NettyServerPipelineFactory(this, sessionTable, macDummy.getMacLength(),
-					controller, rl, TOMUtil.getSignatureSize(controller));
+					controller, rl, TOMUtil.getSignatureSize(controller), keyService);
 
 			EventLoopGroup bossGroup = new NioEventLoopGroup();
 
@@ -176,6 +180,7 @@ public class NettyClientServerCommunicationSystemServerSide extends SimpleChanne
 		this.closed = true;
 
 		closeChannelAndEventLoop(mainChannel);
+		keyService.shutdown();
 
 		rl.readLock().lock();
 		ArrayList<NettyClientServerSession> sessions = new ArrayList<>(sessionTable.values());
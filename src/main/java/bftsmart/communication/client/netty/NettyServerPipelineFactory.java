@@ -32,18 +32,20 @@ public class NettyServerPipelineFactory{
     int signatureLength;
     ViewTopology controller;
     ReentrantReadWriteLock rl;
+    ClientSessionKeyService keyService;
 
-    public NettyServerPipelineFactory(NettyClientServerCommunicationSystemServerSide ncs, Map<Integer, NettyClientServerSession> sessionTable, int macLength, ViewTopology controller, ReentrantReadWriteLock rl, int signatureLength) {
+    public NettyServerPipelineFactory(NettyClientServerCommunicationSystemServerSide ncs, Map<Integer, NettyClientServerSession> sessionTable, int macLength, ViewTopology controller, ReentrantReadWriteLock rl, int signatureLength, ClientSessionKeyService keyService) {
         this.ncs = ncs;
         this.sessionTable = sessionTable;
         this.macLength = macLength;
         this.signatureLength = signatureLength;
         this.controller = controller;
         this.rl = rl;
+        this.keyService = keyService;
     }
 
     public ByteToMessageDecoder getDecoder(){
-    	return new NettyTOMMessageDecoder(false, sessionTable,macLength,controller,rl,signatureLength,controller.getStaticConf().isUseMACs());
+    	return new NettyTOMMessageDecoder(false, sessionTable,macLength,controller,rl,signatureLength,controller.getStaticConf().isUseMACs(),keyService);
     }
     
     public MessageToByteEncoder getEncoder(){
@@ -23,60 +23,62 @@ import io.netty.handler.codec.ByteToMessageDecoder;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * 解码客户端与节点之间的消息帧：[长度][是否签名][消息][MAC][签名]；
+ * <p>
+ * 消息头直接从 {@link ByteBuf} 读取，MAC 也直接在 {@link ByteBuf} 上验证，验证通过后消息只复制一次，
+ * 请求内容是该副本的视图，不再复制；
+ * <p>
+ * 节点收到客户端在一个连接上的第一个消息时，由 {@link ClientSessionKeyService} 在 IO 线程之外派生密钥并创建会话；
+ * 会话创建完成之前该连接上的消息按到达顺序暂存，创建完成后在 IO 线程上依次验证并传递给下一个处理器；
  *
  * @author Paulo Sousa
  */
 public class NettyTOMMessageDecoder extends ByteToMessageDecoder {
 
-    /**
-     * number of measures used to calculate statistics
-     */
-    //private final int BENCHMARK_PERIOD = 10000;
     private boolean isClient;
     private Map<Integer, NettyClientServerSession> sessionTable;
-    //private Storage st;
     private int macSize;
     private int signatureSize;
     private ViewTopology controller;
-    private boolean firstTime;
     private ReentrantReadWriteLock rl;
-    //******* EDUARDO BEGIN: commented out some unused variables **************//
-    //private long numReceivedMsgs = 0;
-    //private long lastMeasurementStart = 0;
-    //private long max=0;
-    //private Storage st;
-    //private int count = 0;
-   
-    //private Signature signatureEngine;
-    
-    
-     //******* EDUARDO END **************//
+    private ClientSessionKeyService keyService;
     
     private boolean useMAC;
 
+    /**
+     * 等待会话创建的消息；只在 IO 线程上访问；
+     */
+    private final ArrayDeque<TOMMessage> pendingMessages = new ArrayDeque<>();
+
+    private boolean sessionPending = false;
+
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(NettyTOMMessageDecoder.class);
 
     
     public NettyTOMMessageDecoder(boolean isClient, Map<Integer, NettyClientServerSession> sessionTable, int macLength, ViewTopology controller, ReentrantReadWriteLock rl, int signatureLength, boolean useMAC) {
+        this(isClient, sessionTable, macLength, controller, rl, signatureLength, useMAC, null);
+    }
+
+    /**
+     * @param keyService 创建客户端会话的密钥服务；客户端的会话在连接时创建，可以为 null；
+     */
+    public NettyTOMMessageDecoder(boolean isClient, Map<Integer, NettyClientServerSession> sessionTable, int macLength, ViewTopology controller, ReentrantReadWriteLock rl, int signatureLength, boolean useMAC, ClientSessionKeyService keyService) {
         this.isClient = isClient;
         this.sessionTable = sessionTable;
         this.macSize = macLength;
         this.controller = controller;
-        this.firstTime = true;
         this.rl = rl;
         this.signatureSize = signatureLength;
         this.useMAC = useMAC;
+        this.keyService = keyService;
         LOGGER.debug("new NettyTOMMessageDecoder!!, isClient {} ", isClient);
     }
 
@@ -90,129 +92,153 @@ public class NettyTOMMessageDecoder extends ByteToMessageDecoder {
 
         int dataLength = buffer.getInt(buffer.readerIndex());
 
-        //Logger.println("Receiving message with "+dataLength+" bytes.");
-
         // Wait until the whole data is available.
         if (buffer.readableBytes() < dataLength + 4) {
             return;
         }
 
-        // Skip the length field because we know it already.
-        buffer.skipBytes(4);
-
-        int totalLength = dataLength - 1;
+        int frameStart = buffer.readerIndex() + 4;
+        // Skip the whole frame; its fields are read at their absolute offsets.
+        buffer.skipBytes(dataLength + 4);
 
         //read control byte indicating if message is signed
-        byte signed = buffer.readByte();
+        boolean signed = buffer.getByte(frameStart) == 1;
 
         int authLength = 0;
-
-        if (signed == 1) {
+        if (signed) {
             authLength += signatureSize;
         }
         if (useMAC) {
             authLength += macSize;
         }
 
-        byte[] data = new byte[totalLength - authLength];
-        buffer.readBytes(data);
-
-        byte[] digest = null;
-        if (useMAC) {
-            digest = new byte[macSize];
-            buffer.readBytes(digest);
+        int messageStart = frameStart + 1;
+        int messageLength = dataLength - 1 - authLength;
+        if (messageLength < 4) {
+            LOGGER.error("Illegal message length [{}]: message discarded", messageLength);
+            return;
         }
+        int sender = buffer.getInt(messageStart);
 
-        byte[] signature = null;
-        if (signed == 1) {
-            signature = new byte[signatureSize];
-            buffer.readBytes(signature);
-        }
+        try {
+            NettyClientServerSession session = getSession(sender);
+            if (session == null && isClient) {
+                LOGGER.error("No session with replica {}: message discarded", sender);
+                return;
+            }
 
-        DataInputStream dis = null;
-        TOMMessage sm = null;
+            byte[] digest = null;
+            if (useMAC) {
+                digest = new byte[macSize];
+                buffer.getBytes(messageStart + messageLength, digest);
+                // verifies the MAC before copying the message, unless the session is being created
+                if (session != null && !sessionPending && !verifyMAC(session, buffer.nioBuffer(messageStart, messageLength), digest)) {
+                    LOGGER.error("MAC error: message discarded");
+                    return;
+                }
+            }
 
-        try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            dis = new DataInputStream(bais);
-            sm = new TOMMessage();
-            sm.rExternal(dis);
+            byte[] data = new byte[messageLength];
+            buffer.getBytes(messageStart, data);
+            TOMMessage sm = TOMMessage.wrap(ByteBuffer.wrap(data));
             sm.serializedMessage = data;
+            sm.serializedMessageMAC = digest;
 
-            if (signed == 1) {
+            if (signed) {
+                byte[] signature = new byte[signatureSize];
+                buffer.getBytes(messageStart + messageLength + (useMAC ? macSize : 0), signature);
                 sm.serializedMessageSignature = signature;
                 sm.signed = true;
             }
-            if (useMAC) {
-                sm.serializedMessageMAC = digest;
-            }
 
-            if (isClient) {
-                //verify MAC
-                if (useMAC) {
-                    if (!verifyMAC(sm.getSender(), data, digest)) {
-                        LOGGER.error("MAC error: message discarded");
-                        return;
-                    }
-                }
-            } else { /* it's a server */
-                //verifies MAC if it's not the first message received from the client
-                rl.readLock().lock();
-                if (sessionTable.containsKey(sm.getSender())) {
-                    rl.readLock().unlock();
-                    if (useMAC) {
-                        if (!verifyMAC(sm.getSender(), data, digest)) {
-                            LOGGER.error("MAC error: message discarded");
-                            return;
-                        }
-                    }
-                } else {
-                    //creates MAC/publick key stuff if it's the first message received from the client
-                    LOGGER.debug("Creating MAC/public key stuff, first message from client {}", sm.getSender());
-                    LOGGER.debug("sessionTable size {}", sessionTable.size());
-
-                    rl.readLock().unlock();
-                    
-                    SecretKeyFactory fac = SecretKeyFactory.getInstance("PBEWithMD5AndDES");
-                    String str = sm.getSender() + ":" + this.controller.getStaticConf().getProcessId();                                        
-                    PBEKeySpec spec = new PBEKeySpec(str.toCharArray());
-                    SecretKey authKey = fac.generateSecret(spec);
-            
-                    Mac macSend = Mac.getInstance(controller.getStaticConf().getHmacAlgorithm());
-                    macSend.init(authKey);
-                    Mac macReceive = Mac.getInstance(controller.getStaticConf().getHmacAlgorithm());
-                    macReceive.init(authKey);
-                    NettyClientServerSession cs = new NettyClientServerSession(context.channel(), macSend, macReceive, sm.getSender());
-                                       
-                    rl.writeLock().lock();
-//                    LOGGER.debug("PUT INTO SESSIONTABLE - [client id]:"+sm.getSender()+" [channel]: "+cs.getChannel());
-                    sessionTable.put(sm.getSender(), cs);
-                    LOGGER.debug("#active clients {}", sessionTable.size());
-                    rl.writeLock().unlock();
-                    if (useMAC && !verifyMAC(sm.getSender(), data, digest)) {
-                        LOGGER.error("MAC error: message discarded");
-                        return;
-                    }
+            if (session == null || sessionPending) {
+                //creates MAC/public key stuff if it's the first message received from the client
+                pendingMessages.add(sm);
+                if (!sessionPending) {
+                    createSession(context, sender);
                 }
+                return;
             }
+
             LOGGER.debug("Decoded reply from {} with sequence number {}", sm.getSender(), sm.getSequence());
             list.add(sm);
         } catch (Exception ex) {
             LOGGER.error("Impossible to decode message: {} ", ex.getMessage());
             ex.printStackTrace();
         }
-        return;
     }
 
-    boolean verifyMAC(int id, byte[] data, byte[] digest) {
-        //long startInstant = System.nanoTime();
+    private NettyClientServerSession getSession(int id) {
         rl.readLock().lock();
-        Mac macReceive = ((NettyClientServerSession) sessionTable.get(id)).getMacReceive();
-        rl.readLock().unlock();
-        boolean result = Arrays.equals(macReceive.doFinal(data), digest);
-        //long duration = System.nanoTime() - startInstant;
-        //st.store(duration);
-        return result;
+        try {
+            return sessionTable.get(id);
+        } finally {
+            rl.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在密钥线程上创建会话，完成后回到 IO 线程处理暂存的消息；
+     */
+    private void createSession(ChannelHandlerContext context, int sender) {
+        LOGGER.debug("Creating MAC/public key stuff, first message from client {}", sender);
+        if (keyService == null) {
+            LOGGER.error("No session key service to create the session of client {}: message discarded", sender);
+            pendingMessages.clear();
+            return;
+        }
+        sessionPending = true;
+        keyService.createSession(context.channel(), sender).whenComplete((session, error) ->
+                context.executor().execute(() -> onSessionCreated(context, sender, session, error)));
+    }
+
+    private void onSessionCreated(ChannelHandlerContext context, int sender, NettyClientServerSession session, Throwable error) {
+        sessionPending = false;
+        if (error != null) {
+            LOGGER.error("Failed to create the session of client " + sender + ": " + pendingMessages.size()
+                    + " messages discarded! --" + error.getMessage(), error);
+            pendingMessages.clear();
+            return;
+        }
+        if (!context.channel().isActive()) {
+            pendingMessages.clear();
+            return;
+        }
+
+        rl.writeLock().lock();
+        try {
+            sessionTable.put(sender, session);
+            LOGGER.debug("#active clients {}", sessionTable.size());
+        } finally {
+            rl.writeLock().unlock();
+        }
+
+        boolean read = false;
+        TOMMessage sm;
+        while (!sessionPending && (sm = pendingMessages.poll()) != null) {
+            NettyClientServerSession current = getSession(sm.getSender());
+            if (current == null) {
+                // the channel carries messages of another client
+                pendingMessages.addFirst(sm);
+                createSession(context, sm.getSender());
+                break;
+            }
+            if (useMAC && !verifyMAC(current, sm.getSerializedBuffer(), sm.serializedMessageMAC)) {
+                LOGGER.error("MAC error: message discarded");
+                continue;
+            }
+            context.fireChannelRead(sm);
+            read = true;
+        }
+        if (read) {
+            context.fireChannelReadComplete();
+        }
+    }
+
+    private boolean verifyMAC(NettyClientServerSession session, ByteBuffer data, byte[] digest) {
+        Mac macReceive = session.getMacReceive();
+        macReceive.update(data);
+        return MessageDigest.isEqual(macReceive.doFinal(), digest);
     }
 
 }
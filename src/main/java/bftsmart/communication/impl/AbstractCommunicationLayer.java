@@ -1,6 +1,8 @@
 package bftsmart.communication.impl;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -10,11 +12,15 @@ import org.slf4j.LoggerFactory;
 
 import bftsmart.communication.CommunicationException;
 import bftsmart.communication.CommunicationLayer;
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.MacMessageCodec;
 import bftsmart.communication.MessageQueue;
 import bftsmart.communication.SystemMessage;
+import bftsmart.communication.SystemMessageCodec;
 import bftsmart.communication.MessageQueue.SystemMessageType;
+import bftsmart.reconfiguration.ReplicaTopology;
 import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.util.Tracer;
 
 /**
  * 通讯层的基础实现；
@@ -43,6 +49,11 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 
 	private int messageTimeout = 2000;
 
+	/**
+	 * 消息处理线程一次从接收队列取出的最大消息数；
+	 */
+	private static final int MAX_DRAIN_SIZE = 64;
+
 	private final Map<SystemMessageType, AggregatedListeners> listeners = new ConcurrentHashMap<MessageQueue.SystemMessageType, AbstractCommunicationLayer.AggregatedListeners>();
 
 	protected volatile boolean doWork = false;
@@ -50,13 +61,21 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 	public AbstractCommunicationLayer(String realmName, ViewTopology topology) {
 		this.topology = topology;
 		this.messageInQueue = MessageQueueFactory.newMessageQueue(MessageQueue.QueueDirection.IN,
-				topology.getStaticConf().getInQueueSize());
+				topology.getStaticConf(), tracerOf(topology));
 		this.me = topology.getCurrentProcessId();
 		this.realmName = realmName;
 
 //		selfPwd = initSelfKey();
 	}
 
+	/**
+	 * 接收队列使用节点共享的跟踪器；
+	 */
+	private static Tracer tracerOf(ViewTopology topology) {
+		Tracer tracer = topology instanceof ReplicaTopology ? ((ReplicaTopology) topology).getTracer() : null;
+		return tracer == null ? Tracer.DISABLED : tracer;
+	}
+
 //	private SecretKey initSelfKey() {
 //		try {
 //			SecretKeyFactory fac = SecretKeyFactory.getInstance("PBEWithMD5AndDES");
@@ -204,13 +223,23 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 			throw new CommunicationException("ServerCommunicationLayer has stopped!");
 		}
 
+		// 发往多个远端节点时，消息内容只编码一次，由各连接共享，各连接只附加自己的长度头与 MAC；
+		EncodedMessage encoded = null;
+		if (countRemotes(targets) > 1) {
+			try {
+				encoded = SystemMessageCodec.encodeBody(sm);
+			} catch (RuntimeException ex) {
+				// 由各连接各自编码并报告错误；
+				LOGGER.warn("Failed to pre-encode message[" + sm.getClass().getName() + "]! --" + ex.getMessage(), ex);
+			}
+		}
+
 		@SuppressWarnings("unchecked")
 		AsyncFuture<SystemMessage, Void>[] futures = new AsyncFuture[targets.length];
 		int i = 0;
 		for (int pid : targets) {
 			try {
-				// 对包括对当前节点的连接都统一抽象为 MessageConnection;
-				futures[i] = ensureConnection(pid).send(sm, retrySending, new CompletedCallback<SystemMessage, Void>() {
+				CompletedCallback<SystemMessage, Void> callback = new CompletedCallback<SystemMessage, Void>() {
 					@Override
 					public void onCompleted(SystemMessage source, Void result, Throwable error) {
 						if (error != null) {
@@ -218,7 +247,14 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 									+ pid + "]!");
 						}
 					}
-				});
+				};
+				// 对包括对当前节点的连接都统一抽象为 MessageConnection;
+				MessageConnection connection = ensureConnection(pid);
+				if (encoded == null || pid == me) {
+					futures[i] = connection.send(sm, retrySending, callback);
+				} else {
+					futures[i] = connection.send(encoded, retrySending, callback);
+				}
 			} catch (Exception ex) {
 				LOGGER.error("Failed to send messagea to target[" + pid + "]! --" + ex.getMessage(), ex);
 			}
@@ -227,6 +263,16 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 		}
 	}
 
+	private int countRemotes(int[] targets) {
+		int count = 0;
+		for (int pid : targets) {
+			if (pid != me) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	@Override
 	public void addMessageListener(SystemMessageType type, MessageListener listener) {
 		AggregatedListeners aggListeners = getListeners(type);
@@ -265,6 +311,7 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 	}
 
 	private void consume(SystemMessageType messageType, MessageListener listener) {
+		List<SystemMessage> batch = new ArrayList<SystemMessage>(MAX_DRAIN_SIZE);
 		while (doWork) {
 			SystemMessage message = null;
 			try {
@@ -278,6 +325,14 @@ public abstract class AbstractCommunicationLayer implements CommunicationLayer {
 //			}
 
 			listener.onReceived(message);
+
+			// 一次取出队列中已有的其它消息，避免逐个等待；
+			if (message != null && messageInQueue.drainTo(messageType, batch, MAX_DRAIN_SIZE) > 0) {
+				for (SystemMessage msg : batch) {
+					listener.onReceived(msg);
+				}
+				batch.clear();
+			}
 		}
 
 	}
@@ -3,6 +3,7 @@ package bftsmart.communication.impl;
 import bftsmart.communication.MessageQueue;
 import bftsmart.communication.SystemMessage;
 
+import java.util.Collection;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -66,4 +67,16 @@ public class LinkedBlockingMessageQueue implements MessageQueue {
     	}
     	return null;
     }
+
+    @Override
+    public int drainTo(SystemMessageType type, Collection<? super SystemMessage> messages, int maxMessages) {
+        if (type == SystemMessageType.CONSENSUS) {
+            return consMsgQueue.drainTo(messages, maxMessages);
+        } else if (type == SystemMessageType.HEART) {
+            return heartMsgQueue.drainTo(messages, maxMessages);
+        } else if (type == SystemMessageType.LC) {
+            return lcMsgQueue.drainTo(messages, maxMessages);
+        }
+        return 0;
+    }
 }
@@ -2,6 +2,7 @@ package bftsmart.communication.impl;
 
 import java.io.Closeable;
 
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.MacMessageCodec;
 import bftsmart.communication.SystemMessage;
 
@@ -45,7 +46,23 @@ public interface MessageConnection extends Closeable {
 	 */
 	AsyncFuture<SystemMessage, Void> send(SystemMessage message, boolean retrySending,
 			CompletedCallback<SystemMessage, Void> callback);
-	
+
+	/**
+	 * 发送预先编码的消息；
+	 * <p>
+	 * 多播时同一个预先编码的消息被发送到多个连接，连接只需附加自己的长度头与 MAC；<br>
+	 * 默认实现忽略预先编码的内容，发送原始消息；
+	 * 
+	 * @param message      预先编码的消息；
+	 * @param retrySending 当发送失败时，是否要重试；
+	 * @param callback     发送完成回调；
+	 * @return
+	 */
+	default AsyncFuture<SystemMessage, Void> send(EncodedMessage message, boolean retrySending,
+			CompletedCallback<SystemMessage, Void> callback) {
+		return send(message.getMessage(), retrySending, callback);
+	}
+
 
 	/**
 	 * 开始连接的数据处理；
@@ -1,9 +1,21 @@
 package bftsmart.communication.impl;
 
 import bftsmart.communication.MessageQueue;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.util.Tracer;
 
 public class MessageQueueFactory {
 
+    /**
+     * 基于 {@link java.util.concurrent.LinkedBlockingQueue} 的消息队列类型；
+     */
+    public static final String QUEUE_TYPE_LINKED = "linked";
+
+    /**
+     * 基于预先分配的环形缓冲区的消息队列类型，参考 {@link RingBufferMessageQueue}；
+     */
+    public static final String QUEUE_TYPE_RING = "ring";
+
     /**
      * 创建新的消息队列
      *
@@ -26,14 +38,57 @@ public class MessageQueueFactory {
      * @return
      */
     public static MessageQueue newMessageQueue(MessageQueue.QueueDirection type, int capacity) {
+        return newMessageQueue(type, capacity, QUEUE_TYPE_LINKED, null, Tracer.DISABLED);
+    }
+
+    /**
+     * 按节点配置创建新的消息队列
+     *
+     * @param type
+     *         队列类型
+     * @param conf
+     *         节点配置，决定队列的容量、实现与等待策略
+     * @param tracer
+     *         节点共享的跟踪器
+     * @return
+     */
+    public static MessageQueue newMessageQueue(MessageQueue.QueueDirection type, ReplicaConfiguration conf,
+            Tracer tracer) {
+        return newMessageQueue(type, conf.getInQueueSize(), conf.getInQueueType(), conf.getInQueueWaitStrategy(),
+                tracer);
+    }
+
+    /**
+     * 新的消息队列
+     *
+     * @param type
+     *         队列类型
+     * @param capacity
+     *         队列容量
+     * @param queueType
+     *         队列的实现：{@link #QUEUE_TYPE_LINKED} 或 {@link #QUEUE_TYPE_RING}；为 null 时使用 {@link #QUEUE_TYPE_LINKED}
+     * @param waitStrategy
+     *         环形缓冲区队列的消费者等待策略，参考 {@link RingBufferMessageQueue.WaitStrategy}
+     * @param tracer
+     *         环形缓冲区队列记录消息停留时间的跟踪器
+     * @return
+     */
+    public static MessageQueue newMessageQueue(MessageQueue.QueueDirection type, int capacity, String queueType,
+            String waitStrategy, Tracer tracer) {
         /**
          * 暂时只支持接收Socket消息队列
          */
-        if (type == MessageQueue.QueueDirection.IN) {
-            return new LinkedBlockingMessageQueue(capacity);
-        } else {
+        if (type != MessageQueue.QueueDirection.IN) {
             throw new IllegalArgumentException("Factory can create in queue only !!!");
         }
+        if (queueType == null || QUEUE_TYPE_LINKED.equalsIgnoreCase(queueType)) {
+            return new LinkedBlockingMessageQueue(capacity);
+        }
+        if (QUEUE_TYPE_RING.equalsIgnoreCase(queueType)) {
+            return new RingBufferMessageQueue(capacity, RingBufferMessageQueue.WaitStrategy.parse(waitStrategy),
+                    tracer);
+        }
+        throw new IllegalArgumentException("Unsupported message queue type[" + queueType + "]!");
     }
-    
+
 }
@@ -1,14 +1,27 @@
 package bftsmart.communication.impl;
 
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.SystemMessage;
 
 public class MessageSendingTask  extends AsyncFutureTask<SystemMessage, Void> {
 
     public final boolean RETRY;
 
+    /**
+     * 预先编码的消息；为 null 表示消息未预先编码，由连接自行编码；
+     */
+    public final EncodedMessage ENCODED;
+
     public MessageSendingTask(SystemMessage message, boolean retry) {
         super(message);
         this.RETRY = retry;
+        this.ENCODED = null;
+    }
+
+    public MessageSendingTask(EncodedMessage message, boolean retry) {
+        super(message.getMessage());
+        this.RETRY = retry;
+        this.ENCODED = message;
     }
 
 }
\ No newline at end of file
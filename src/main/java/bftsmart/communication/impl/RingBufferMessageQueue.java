@@ -0,0 +1,393 @@
+package bftsmart.communication.impl;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import bftsmart.communication.MessageQueue;
+import bftsmart.communication.SystemMessage;
+import bftsmart.tom.util.Tracer;
+
+/**
+ * 基于环形缓冲区的消息队列；
+ * <p>
+ * 每种消息类型对应一个预先分配的有界环形缓冲区，支持多个生产者（各连接的接收线程）与单个消费者（该类型的消息处理线程）；<br>
+ * 只有共识消息的队列按配置的容量分配，心跳与领导者改变消息的数量与负载无关，其队列最多分配 {@link #CONTROL_CAPACITY} 个槽位；<br>
+ * 生产者通过 CAS 领取槽位，入队与出队都不加锁，也不为每个消息分配节点；
+ * <p>
+ * 队列为空时消费者按 {@link WaitStrategy} 等待；队列已满时 {@link #offer(SystemMessageType, SystemMessage)} 返回
+ * false，{@link #put(SystemMessageType, SystemMessage)} 按等待策略重试直到有空位；
+ * <p>
+ * 注意：同一消息类型只能有一个线程调用 {@link #poll(SystemMessageType, long, TimeUnit)}、
+ * {@link #take(SystemMessageType)} 与 {@link #drainTo(SystemMessageType, Collection, int)}；
+ */
+public class RingBufferMessageQueue implements MessageQueue {
+
+	/**
+	 * 队列已满时生产者重试的间隔；
+	 */
+	private static final long PRODUCER_PARK_NANOS = 10_000;
+
+	/**
+	 * 心跳与领导者改变消息的队列的最大容量；
+	 */
+	public static final int CONTROL_CAPACITY = 1024;
+
+	/**
+	 * 消费者等待的策略；
+	 */
+	public static enum WaitStrategy {
+
+		/**
+		 * 忙等；延迟最低，但消费者线程持续占用一个处理器；
+		 */
+		SPIN,
+
+		/**
+		 * 忙等并让出处理器；
+		 */
+		YIELD,
+
+		/**
+		 * 挂起线程，由生产者唤醒；不占用处理器，但唤醒有额外的延迟；
+		 */
+		PARK;
+
+		/**
+		 * 解析等待策略，忽略大小写；为 null 或无法识别时返回 {@link #PARK}；
+		 *
+		 * @param name
+		 * @return
+		 */
+		public static WaitStrategy parse(String name) {
+			if (name != null) {
+				for (WaitStrategy strategy : values()) {
+					if (strategy.name().equalsIgnoreCase(name.trim())) {
+						return strategy;
+					}
+				}
+			}
+			return PARK;
+		}
+	}
+
+	private final WaitStrategy waitStrategy;
+
+	private final Tracer tracer;
+
+	private final Ring[] rings;
+
+	/**
+	 * @param capacity     共识消息的队列容量，向上取整为 2 的幂；其它类型的队列容量不超过 {@link #CONTROL_CAPACITY}；
+	 * @param waitStrategy 消费者等待的策略；
+	 */
+	public RingBufferMessageQueue(int capacity, WaitStrategy waitStrategy) {
+		this(capacity, waitStrategy, Tracer.DISABLED);
+	}
+
+	/**
+	 * @param capacity     共识消息的队列容量，向上取整为 2 的幂；其它类型的队列容量不超过 {@link #CONTROL_CAPACITY}；
+	 * @param waitStrategy 消费者等待的策略；
+	 * @param tracer       记录抽样消息在队列中停留的时间；
+	 */
+	public RingBufferMessageQueue(int capacity, WaitStrategy waitStrategy, Tracer tracer) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Illegal capacity of ring buffer message queue! --" + capacity);
+		}
+		this.waitStrategy = waitStrategy;
+		this.tracer = tracer;
+		SystemMessageType[] types = SystemMessageType.values();
+		this.rings = new Ring[types.length];
+		for (SystemMessageType type : types) {
+			int size = type == SystemMessageType.CONSENSUS ? capacity : Math.min(capacity, CONTROL_CAPACITY);
+			rings[type.ordinal()] = new Ring(type, size, tracer);
+		}
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * 指定类型的队列的容量；
+	 *
+	 * @param type
+	 * @return
+	 */
+	public int getCapacity(SystemMessageType type) {
+		return rings[type.ordinal()].buffer.length();
+	}
+
+	/**
+	 * 指定类型的队列中当前的消息数；
+	 *
+	 * @param type
+	 * @return
+	 */
+	public int size(SystemMessageType type) {
+		return rings[type.ordinal()].size();
+	}
+
+	/**
+	 * 指定类型的队列曾达到的最大消息数；
+	 *
+	 * @param type
+	 * @return
+	 */
+	public int getMaxOccupancy(SystemMessageType type) {
+		return (int) rings[type.ordinal()].maxOccupancy.get();
+	}
+
+	/**
+	 * 指定类型的队列因已满而拒绝的消息数；
+	 *
+	 * @param type
+	 * @return
+	 */
+	public long getRejectedCount(SystemMessageType type) {
+		return rings[type.ordinal()].rejected.sum();
+	}
+
+	/**
+	 * 指定类型的队列累计出队的消息数；
+	 *
+	 * @param type
+	 * @return
+	 */
+	public long getConsumedCount(SystemMessageType type) {
+		return rings[type.ordinal()].head.get();
+	}
+
+	@Override
+	public boolean offer(SystemMessageType type, SystemMessage sm) {
+		return rings[type.ordinal()].offer(sm);
+	}
+
+	@Override
+	public void put(SystemMessageType type, SystemMessage sm) throws InterruptedException {
+		Ring ring = rings[type.ordinal()];
+		while (!ring.offer(sm)) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			idleProducer();
+		}
+	}
+
+	@Override
+	public SystemMessage poll(SystemMessageType type, long timeout, TimeUnit unit) throws InterruptedException {
+		Ring ring = rings[type.ordinal()];
+		SystemMessage message = ring.poll();
+		if (message != null) {
+			return message;
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (true) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return ring.poll();
+			}
+			idleConsumer(ring, remaining);
+			message = ring.poll();
+			if (message != null) {
+				return message;
+			}
+		}
+	}
+
+	@Override
+	public SystemMessage take(SystemMessageType type) throws InterruptedException {
+		Ring ring = rings[type.ordinal()];
+		SystemMessage message;
+		while ((message = ring.poll()) == null) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			idleConsumer(ring, Long.MAX_VALUE);
+		}
+		return message;
+	}
+
+	@Override
+	public int drainTo(SystemMessageType type, Collection<? super SystemMessage> messages, int maxMessages) {
+		Ring ring = rings[type.ordinal()];
+		int count = 0;
+		SystemMessage message;
+		while (count < maxMessages && (message = ring.poll()) != null) {
+			messages.add(message);
+			count++;
+		}
+		return count;
+	}
+
+	private void idleConsumer(Ring ring, long maxNanos) {
+		switch (waitStrategy) {
+		case SPIN:
+			break;
+		case YIELD:
+			Thread.yield();
+			break;
+		default:
+			ring.park(maxNanos);
+		}
+	}
+
+	/**
+	 * 队列已满时生产者的等待；忙等策略下生产者也让出处理器，以免与消费者争用处理器；
+	 */
+	private void idleProducer() {
+		if (waitStrategy == WaitStrategy.PARK) {
+			LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+		} else {
+			Thread.yield();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("RingBufferMessageQueue[waitStrategy=").append(waitStrategy);
+		for (Ring ring : rings) {
+			str.append(", ").append(ring);
+		}
+		return str.append(']').toString();
+	}
+
+	/**
+	 * 单个消息类型的环形缓冲区；
+	 * <p>
+	 * tail 是生产者领取的下一个序号，head 是消费者读取的下一个序号，槽位为序号对容量取模；<br>
+	 * 生产者领取序号后才写入槽位，因此消费者看到 head &lt; tail 而槽位为空时，等待生产者完成写入；
+	 */
+	private static final class Ring {
+
+		private final SystemMessageType type;
+
+		private final int mask;
+
+		private final AtomicReferenceArray<SystemMessage> buffer;
+
+		/**
+		 * 抽样消息的入队时间；未开启跟踪时为 null；
+		 */
+		private final long[] enqueueTimes;
+
+		private final AtomicLong tail = new AtomicLong();
+
+		private final AtomicLong head = new AtomicLong();
+
+		/**
+		 * 挂起等待的消费者线程；
+		 */
+		private volatile Thread waiter;
+
+		private final LongAdder rejected = new LongAdder();
+
+		private final LongAccumulator maxOccupancy = new LongAccumulator(Math::max, 0);
+
+		private final Tracer tracer;
+
+		private final Tracer.Histogram latency;
+
+		Ring(SystemMessageType type, int capacity, Tracer tracer) {
+			int size = Integer.highestOneBit(capacity);
+			if (size < capacity) {
+				size <<= 1;
+			}
+			this.type = type;
+			this.mask = size - 1;
+			this.buffer = new AtomicReferenceArray<>(size);
+			this.tracer = tracer;
+			this.enqueueTimes = tracer.isSampling() ? new long[size] : null;
+			this.latency = tracer.histogram("queue." + type.name().toLowerCase() + ".latency");
+		}
+
+		int size() {
+			long size = tail.get() - head.get();
+			return (int) Math.max(0, Math.min(size, buffer.length()));
+		}
+
+		boolean offer(SystemMessage message) {
+			long seq;
+			do {
+				seq = tail.get();
+				if (seq - head.get() >= buffer.length()) {
+					rejected.increment();
+					return false;
+				}
+			} while (!tail.compareAndSet(seq, seq + 1));
+
+			int index = (int) seq & mask;
+			if (enqueueTimes != null) {
+				enqueueTimes[index] = tracer.sample() ? System.nanoTime() : 0;
+			}
+			// 写入消息时发布入队时间；
+			buffer.lazySet(index, message);
+			maxOccupancy.accumulate(seq + 1 - head.get());
+
+			Thread consumer = waiter;
+			if (consumer != null) {
+				LockSupport.unpark(consumer);
+			}
+			return true;
+		}
+
+		/**
+		 * 取出下一个消息；队列为空时返回 null；只能由消费者线程调用；
+		 */
+		SystemMessage poll() {
+			long seq = head.get();
+			if (seq >= tail.get()) {
+				return null;
+			}
+			int index = (int) seq & mask;
+			SystemMessage message;
+			while ((message = buffer.get(index)) == null) {
+				// 生产者已领取序号，但尚未写入消息；
+				Thread.yield();
+			}
+			if (enqueueTimes != null && enqueueTimes[index] != 0) {
+				latency.recordSince(enqueueTimes[index]);
+			}
+			buffer.lazySet(index, null);
+			head.lazySet(seq + 1);
+			return message;
+		}
+
+		/**
+		 * 挂起消费者线程，直到有新消息入队或者超时；
+		 */
+		void park(long maxNanos) {
+			waiter = Thread.currentThread();
+			try {
+				// 登记之后再次检查，避免错过登记之前入队的消息的唤醒；
+				if (head.get() < tail.get()) {
+					return;
+				}
+				if (maxNanos == Long.MAX_VALUE) {
+					LockSupport.park(this);
+				} else {
+					LockSupport.parkNanos(this, maxNanos);
+				}
+			} finally {
+				waiter = null;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return type + "[size=" + size() + ", capacity=" + buffer.length() + ", maxOccupancy="
+					+ maxOccupancy.get() + ", rejected=" + rejected.sum() + ", consumed=" + head.get() + "]";
+		}
+	}
+}
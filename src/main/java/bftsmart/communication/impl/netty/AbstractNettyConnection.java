@@ -1,5 +1,6 @@
 package bftsmart.communication.impl.netty;
 
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.MacKey;
 import bftsmart.communication.MacMessageCodec;
 import bftsmart.communication.MessageQueue;
@@ -10,7 +11,9 @@ import bftsmart.communication.impl.CompletedCallback;
 import bftsmart.communication.impl.MessageConnection;
 import bftsmart.communication.impl.MessageSendingTask;
 import bftsmart.reconfiguration.ViewTopology;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import utils.io.BytesUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -75,7 +78,17 @@ public abstract class AbstractNettyConnection implements MessageConnection {
     @Override
     public AsyncFuture<SystemMessage, Void> send(SystemMessage message, boolean retrySending,
                                                  CompletedCallback<SystemMessage, Void> callback) {
-        MessageSendingTask task = new MessageSendingTask(message, retrySending);
+        return send(new MessageSendingTask(message, retrySending), callback);
+    }
+
+    @Override
+    public AsyncFuture<SystemMessage, Void> send(EncodedMessage message, boolean retrySending,
+                                                 CompletedCallback<SystemMessage, Void> callback) {
+        return send(new MessageSendingTask(message, retrySending), callback);
+    }
+
+    private AsyncFuture<SystemMessage, Void> send(MessageSendingTask task,
+                                                  CompletedCallback<SystemMessage, Void> callback) {
         task.setCallback(callback);
 
         if (!outQueue.offer(task)) {
@@ -181,7 +194,15 @@ public abstract class AbstractNettyConnection implements MessageConnection {
             Exception error = null;
             try {
                 // 将编码消息写入输出流；
-                context.writeAndFlush(messageCodec.encode(messageTask.getSource()));
+                // 预先编码的消息内容由多个连接共享，以组合缓冲区包装而不复制，只生成当前连接的长度头与 MAC；
+                EncodedMessage encoded = messageTask.ENCODED;
+                if (encoded == null) {
+                    context.writeAndFlush(messageCodec.encode(messageTask.getSource()));
+                } else {
+                    byte[] body = encoded.getBody();
+                    context.writeAndFlush(Unpooled.wrappedBuffer(BytesUtils.toBytes(body.length), body,
+                            messageCodec.encodeMac(encoded)));
+                }
 
                 // 发送任务成功；
                 messageTask.complete(null);
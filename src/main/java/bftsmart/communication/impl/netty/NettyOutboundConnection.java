@@ -12,9 +12,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.logging.LogLevel;
@@ -44,11 +42,13 @@ public class NettyOutboundConnection extends AbstractNettyConnection {
     private MacKeyGenerator macKeyGen;
     private SSLSecurity sslSecurity;
 
-    public NettyOutboundConnection(String realmName, ViewTopology viewTopology, int remoteId, MessageQueue messageInQueue, SSLSecurity sslSecurity) {
+    public NettyOutboundConnection(String realmName, ViewTopology viewTopology, int remoteId, MessageQueue messageInQueue,
+                                   SSLSecurity sslSecurity, NettyTransport transport) {
         super(realmName, viewTopology, remoteId, messageInQueue);
         this.sslSecurity = sslSecurity;
         this.communicationClient = new NettyClient(viewTopology.getStaticConf().getHost(REMOTE_ID),
-                viewTopology.getStaticConf().getServerToServerPort(REMOTE_ID), viewTopology.getStaticConf().isSecure(REMOTE_ID));
+                viewTopology.getStaticConf().getServerToServerPort(REMOTE_ID), viewTopology.getStaticConf().isSecure(REMOTE_ID),
+                transport);
         this.macKeyGen = new MacKeyGenerator(viewTopology.getStaticConf().getRSAPublicKey(),
                 viewTopology.getStaticConf().getRSAPrivateKey(), viewTopology.getStaticConf().getDHG(),
                 viewTopology.getStaticConf().getDHP());
@@ -75,21 +75,18 @@ public class NettyOutboundConnection extends AbstractNettyConnection {
         private int port;
         private boolean secure;
         private Bootstrap bootstrap;
-        private NioEventLoopGroup workerGroup;
         private ChannelFuture future;
         private volatile boolean authorized = false;
+        private volatile boolean closed = false;
 
-        public NettyClient(String host, int port, boolean secure) {
+        public NettyClient(String host, int port, boolean secure, NettyTransport transport) {
             this.host = host;
             this.port = port;
             this.secure = secure;
 
-            workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2);
-
+            // the event loops are shared with the other connections of this replica and released by the communication layer
             InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
-            workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors());
-            bootstrap = new Bootstrap().group(workerGroup)
-                    .channel(NioSocketChannel.class)
+            bootstrap = transport.bootstrap()
                     .handler(new LoggingHandler(LogLevel.INFO))
                     .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     .option(ChannelOption.SO_KEEPALIVE, true)
@@ -101,12 +98,15 @@ public class NettyOutboundConnection extends AbstractNettyConnection {
          * 启动/重新连接
          */
         protected void start() {
+            if (closed) {
+                return;
+            }
             // 掉线重试时先关闭原来通道
             if (null != future) {
                 future.channel().closeFuture();
             }
             future = connect().addListener((ChannelFutureListener) future -> {
-                if (!future.isSuccess()) {
+                if (!future.isSuccess() && !closed) {
                     // 连接不成功，重试连接
                     future.channel().eventLoop().schedule(this::start, RECONNECT_TRYING_INTERVAL, TimeUnit.SECONDS);
                 }
@@ -120,16 +120,11 @@ public class NettyOutboundConnection extends AbstractNettyConnection {
 
         @Override
         public void close() {
-            try {
-                if (future != null) {
-                    future.channel().close().syncUninterruptibly();
-                    future = null;
-                }
-            } finally {
-                if (workerGroup != null) {
-                    workerGroup.shutdownGracefully().syncUninterruptibly();
-                    workerGroup = null;
-                }
+            closed = true;
+            ChannelFuture f = future;
+            future = null;
+            if (f != null) {
+                f.channel().close().syncUninterruptibly();
             }
         }
 
@@ -12,9 +12,7 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.logging.LogLevel;
@@ -48,6 +46,8 @@ public class NettyServerCommunicationLayer extends AbstractCommunicationLayer {
     private Map<Integer, NettyInboundConnection> inboundConnections = new HashMap<>();
     private MacKeyGenerator macKeyGen;
     private SSLSecurity sslSecurity;
+    // event loops shared by the server and all the connections of this replica, created on demand
+    private NettyTransport transport;
 
     public NettyServerCommunicationLayer(String realmName, ViewTopology topology) {
         this(realmName, topology, new SSLSecurity());
@@ -64,7 +64,32 @@ public class NettyServerCommunicationLayer extends AbstractCommunicationLayer {
     @Override
     protected void startCommunicationServer() {
         int port = topology.getStaticConf().getServerToServerPort(me);
-        communicationServer = new NettyServer(port);
+        communicationServer = new NettyServer(port, getTransport());
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            // the event loops are released after the server and all the connections are closed;
+            NettyTransport t;
+            synchronized (this) {
+                t = transport;
+                transport = null;
+            }
+            if (t != null) {
+                t.close();
+            }
+        }
+    }
+
+    private synchronized NettyTransport getTransport() {
+        if (transport == null) {
+            transport = new NettyTransport("bftsmart-netty-" + me, topology.getStaticConf().getNettyIoThreads(),
+                    topology.getStaticConf().isNettyEpoll());
+        }
+        return transport;
     }
 
     @Override
@@ -81,7 +106,7 @@ public class NettyServerCommunicationLayer extends AbstractCommunicationLayer {
 
     @Override
     protected MessageConnection connectOutbound(int remoteId) {
-        return new NettyOutboundConnection(realmName, topology, remoteId, messageInQueue, sslSecurity);
+        return new NettyOutboundConnection(realmName, topology, remoteId, messageInQueue, sslSecurity, getTransport());
     }
 
     @Override
@@ -101,18 +126,12 @@ public class NettyServerCommunicationLayer extends AbstractCommunicationLayer {
      */
     public class NettyServer implements NettyChannelHandler, Closeable {
 
-        private NioEventLoopGroup bossGroup, workerGroup;
         private ChannelFuture future;
 
-        public NettyServer(int port) {
-            bossGroup = new NioEventLoopGroup();
-            workerGroup = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2);
-
-            ServerBootstrap bootstrap = new ServerBootstrap();
+        public NettyServer(int port, NettyTransport transport) {
             InternalLoggerFactory.setDefaultFactory(Log4J2LoggerFactory.INSTANCE);
-            bootstrap.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .handler(new LoggingHandler(LogLevel.INFO))
+            ServerBootstrap bootstrap = transport.serverBootstrap();
+            bootstrap.handler(new LoggingHandler(LogLevel.INFO))
                     .childHandler(new NettyInitializerHandler(this))
                     .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
@@ -127,19 +146,10 @@ public class NettyServerCommunicationLayer extends AbstractCommunicationLayer {
 
         @Override
         public void close() throws IOException {
-            try {
-                if (future != null) {
-                    future.channel().close().syncUninterruptibly();
-                }
-                future = null;
-            } finally {
-                if (workerGroup != null) {
-                    workerGroup.shutdownGracefully().syncUninterruptibly();
-                }
-                if (bossGroup != null) {
-                    bossGroup.shutdownGracefully().syncUninterruptibly();
-                }
+            if (future != null) {
+                future.channel().close().syncUninterruptibly();
             }
+            future = null;
 
             LOGGER.info("Netty server closed");
         }
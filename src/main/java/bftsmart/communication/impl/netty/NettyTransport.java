@@ -0,0 +1,102 @@
+package bftsmart.communication.impl.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+
+/**
+ * 节点间 Netty 连接共享的传输资源；
+ * <p>
+ * 每个节点的通讯层持有一个实例：boss 线程组接受入站连接，worker 线程组由该节点全部的入站与出站连接共享，
+ * 而不是每个连接各自创建线程组；
+ * <p>
+ * 配置开启 epoll 且当前平台支持时使用 Linux 原生的 epoll 传输，否则使用 NIO 传输；
+ */
+public final class NettyTransport implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NettyTransport.class);
+
+	private final EventLoopGroup bossGroup;
+
+	private final EventLoopGroup workerGroup;
+
+	private final Class<? extends ServerChannel> serverChannelClass;
+
+	private final Class<? extends Channel> channelClass;
+
+	private final boolean epoll;
+
+	/**
+	 * @param name      线程名称的前缀；
+	 * @param ioThreads worker 线程数；小于等于 0 时使用可用的处理器数；
+	 * @param useEpoll  是否使用 epoll 传输；当前平台不支持时使用 NIO 传输；
+	 */
+	public NettyTransport(String name, int ioThreads, boolean useEpoll) {
+		int workers = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+		DefaultThreadFactory bossFactory = new DefaultThreadFactory(name + "-boss", true);
+		DefaultThreadFactory workerFactory = new DefaultThreadFactory(name + "-worker", true);
+
+		if (useEpoll && !Epoll.isAvailable()) {
+			LOGGER.warn("Epoll transport is unavailable, use NIO transport instead! --{}",
+					Epoll.unavailabilityCause().getMessage());
+		}
+		this.epoll = useEpoll && Epoll.isAvailable();
+		if (epoll) {
+			this.bossGroup = new EpollEventLoopGroup(1, bossFactory);
+			this.workerGroup = new EpollEventLoopGroup(workers, workerFactory);
+			this.serverChannelClass = EpollServerSocketChannel.class;
+			this.channelClass = EpollSocketChannel.class;
+		} else {
+			this.bossGroup = new NioEventLoopGroup(1, bossFactory);
+			this.workerGroup = new NioEventLoopGroup(workers, workerFactory);
+			this.serverChannelClass = NioServerSocketChannel.class;
+			this.channelClass = NioSocketChannel.class;
+		}
+		LOGGER.info("Netty transport [{}] started with {} io threads, epoll = {}", name, workers, epoll);
+	}
+
+	public boolean isEpoll() {
+		return epoll;
+	}
+
+	/**
+	 * 创建使用共享线程组的服务端启动器；
+	 *
+	 * @return
+	 */
+	public ServerBootstrap serverBootstrap() {
+		return new ServerBootstrap().group(bossGroup, workerGroup).channel(serverChannelClass);
+	}
+
+	/**
+	 * 创建使用共享 worker 线程组的客户端启动器；
+	 *
+	 * @return
+	 */
+	public Bootstrap bootstrap() {
+		return new Bootstrap().group(workerGroup).channel(channelClass);
+	}
+
+	@Override
+	public void close() {
+		try {
+			workerGroup.shutdownGracefully().syncUninterruptibly();
+		} finally {
+			bossGroup.shutdownGracefully().syncUninterruptibly();
+		}
+	}
+}
@@ -3,6 +3,10 @@ package bftsmart.communication.impl.socket;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import bftsmart.communication.impl.AsyncFuture;
@@ -15,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import bftsmart.communication.IllegalMessageException;
 import bftsmart.communication.MacAuthenticationException;
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.MacKey;
 import bftsmart.communication.MacKeyGenerator;
 import bftsmart.communication.MacMessageCodec;
@@ -48,6 +53,9 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 
 	private final int MAX_RETRY_COUNT;
 
+	// 一帧中最多发送的消息数；
+	private final int FRAME_SIZE;
+
 	protected final String REALM_NAME;
 	protected final int ME;
 	protected final int REMOTE_ID;
@@ -94,6 +102,8 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 			throw new IllegalArgumentException("Illegal SEND_RETRY_COUNT[" + MAX_RETRY_COUNT + "]!");
 		}
 
+		this.FRAME_SIZE = Math.max(1, viewTopology.getStaticConf().getSendFrameSize());
+
 		LOGGER.debug("Create stream connection from {} to {}!", ME, REMOTE_ID);
 	}
 
@@ -198,7 +208,17 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 	@Override
 	public AsyncFuture<SystemMessage, Void> send(SystemMessage message, boolean retrySending,
 												 CompletedCallback<SystemMessage, Void> callback) {
-		MessageSendingTask task = new MessageSendingTask(message, retrySending);
+		return send(new MessageSendingTask(message, retrySending), callback);
+	}
+
+	@Override
+	public AsyncFuture<SystemMessage, Void> send(EncodedMessage message, boolean retrySending,
+												 CompletedCallback<SystemMessage, Void> callback) {
+		return send(new MessageSendingTask(message, retrySending), callback);
+	}
+
+	private AsyncFuture<SystemMessage, Void> send(MessageSendingTask task,
+												  CompletedCallback<SystemMessage, Void> callback) {
 		task.setCallback(callback);
 
 		if (!outQueue.offer(task)) {
@@ -213,21 +233,26 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 
 	/**
 	 * 驻留后台线程，执行消息发送；
+	 * <p>
+	 * 当允许多消息帧时，一次取出发送队列中已有的多个消息，作为一帧发送；
 	 */
 	private final void scheduleSending() {
-		MessageSendingTask task;
+		List<MessageSendingTask> tasks = new ArrayList<MessageSendingTask>(FRAME_SIZE);
 		while (doWork) {
 			try {
 				// 检查发送队列；
-				task = null;
+				tasks.clear();
 				try {
-					task = outQueue.take();
+					tasks.add(outQueue.take());
 				} catch (InterruptedException ex) {
 				}
 
-				if (task != null) {
+				if (!tasks.isEmpty()) {
+					if (FRAME_SIZE > 1) {
+						outQueue.drainTo(tasks, FRAME_SIZE - 1);
+					}
 					// 处理发送任务；
-					processSendingTask(task);
+					processSendingTasks(tasks);
 				}
 			} catch (Exception e) {
 				LOGGER.error("Error occurred while sending message to remote[" + REMOTE_ID + "]! --" + e.getMessage(),
@@ -239,10 +264,12 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 	}
 
 	/**
-	 * try to send a message through the socket if some problem is detected, a
+	 * try to send the messages through the socket if some problem is detected, a
 	 * reconnection is done
+	 * <p>
+	 * 多个消息作为一帧发送，整帧只计算一个 MAC；
 	 */
-	private final void processSendingTask(MessageSendingTask messageTask) {
+	private final void processSendingTasks(List<MessageSendingTask> messageTasks) {
 		// 生成消息的输出编码；
 		byte[] outputBytes = null;
 
@@ -265,18 +292,19 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 			// 对于无需重试发送的消息，则直接丢弃；
 			// 对于需要重试发送的消息，则一直等待直到连接重新建立为止；
 			if (out == null) {
-				if (!messageTask.RETRY) {
-					// 抛弃连接；
-					messageTask.error(new IllegalStateException("Connection has not been established!"));
+				if (discardNoRetryTasks(messageTasks,
+						new IllegalStateException("Connection has not been established!"))) {
 					LOGGER.warn(
 							"Discard the message because connection has not been established and the task has no retry indication! --[Me={}][Remote={}]",
 							ME, REMOTE_ID);
+				}
+				if (messageTasks.isEmpty()) {
 					return;
 				}
 				
 				if (retryCount >= MAX_RETRY_COUNT) {
 					// 抛弃连接；
-					messageTask.error(
+					errorTasks(messageTasks,
 							new IllegalStateException("Connection has not been established after retrying!"));
 					LOGGER.warn(
 							"Discard the message because connection has not been established after retrying! --[Me={}][Remote={}]",
@@ -292,7 +320,7 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 			try {
 				// 连接已准备就绪，并通过了 MAC 认证；
 				// 基于连接认证生成的 MAC 共享密钥对消息进行编码输出；
-				outputBytes = messageCodec.encode(messageTask.getSource());
+				outputBytes = encode(messageTasks);
 				
 				// 将编码消息写入输出流；
 				BytesUtils.writeInt(outputBytes.length, out);
@@ -300,7 +328,9 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 				out.flush();
 				
 				// 发送任务成功；
-				messageTask.complete(null);
+				for (MessageSendingTask messageTask : messageTasks) {
+					messageTask.complete(null);
+				}
 				return;
 			} catch (Exception ex) {
 				try {
@@ -313,11 +343,12 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 			
 			// 写数据时发生网络IO错误；
 			// 如果不重试发送失败的消息，则立即报告错误；
-			if (!messageTask.RETRY) {
-				messageTask.error(error);
+			if (discardNoRetryTasks(messageTasks, error)) {
 				LOGGER.error(
 						"Discard the message due to the io error and no retry indication! --" + error.getMessage(),
 						error);
+			}
+			if (messageTasks.isEmpty()) {
 				return;
 			}
 			
@@ -327,12 +358,58 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 			if (retryCount >= MAX_RETRY_COUNT) {
 				LOGGER.error("Discard the message due to the io error after retrying! --[Me=" + ME + "][Remote="
 						+ REMOTE_ID + "]" + error.getMessage(), error);
-				messageTask.error(error);
+				errorTasks(messageTasks, error);
 				return;
 			}
 		} while (doWork);
 
-		messageTask.error(new IllegalStateException("Message has not sent because connection is shutdown!"));
+		errorTasks(messageTasks, new IllegalStateException("Message has not sent because connection is shutdown!"));
+	}
+
+	private byte[] encode(List<MessageSendingTask> messageTasks) {
+		if (messageTasks.size() == 1) {
+			MessageSendingTask messageTask = messageTasks.get(0);
+			return messageTask.ENCODED == null ? messageCodec.encode(messageTask.getSource())
+					: messageCodec.encode(messageTask.ENCODED);
+		}
+		List<SystemMessage> messages = new ArrayList<SystemMessage>(messageTasks.size());
+		List<EncodedMessage> encodedMessages = null;
+		for (int i = 0; i < messageTasks.size(); i++) {
+			MessageSendingTask messageTask = messageTasks.get(i);
+			messages.add(messageTask.getSource());
+			if (messageTask.ENCODED != null) {
+				if (encodedMessages == null) {
+					encodedMessages = new ArrayList<EncodedMessage>(Collections.nCopies(messageTasks.size(), null));
+				}
+				encodedMessages.set(i, messageTask.ENCODED);
+			}
+		}
+		return messageCodec.encode(messages, encodedMessages);
+	}
+
+	/**
+	 * 报告无需重试的发送任务失败，并从列表中移除；
+	 * 
+	 * @return 是否有任务被移除；
+	 */
+	private static boolean discardNoRetryTasks(List<MessageSendingTask> messageTasks, Exception error) {
+		boolean discarded = false;
+		for (Iterator<MessageSendingTask> it = messageTasks.iterator(); it.hasNext();) {
+			MessageSendingTask messageTask = it.next();
+			if (!messageTask.RETRY) {
+				it.remove();
+				messageTask.error(error);
+				discarded = true;
+			}
+		}
+		return discarded;
+	}
+
+	private static void errorTasks(List<MessageSendingTask> messageTasks, Exception error) {
+		for (MessageSendingTask messageTask : messageTasks) {
+			messageTask.error(error);
+		}
+		messageTasks.clear();
 	}
 
 	/**
@@ -359,9 +436,9 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 
 			try {
 				// read message;
-				SystemMessage sm = null;
+				List<SystemMessage> messages = null;
 				try {
-					sm = readMessage(in);
+					messages = readMessages(in);
 				} catch (Exception e) {
 					// 接收消息时发生网络错误；需要重新建立连接；
 					LOGGER.error("Error occurred while reading the input message! --[Me=" + ME + "][Remote=" + REMOTE_ID
@@ -374,19 +451,21 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 					continue;
 				}
 
-				if (sm == null) {
+				if (messages == null) {
 					continue;
 				}
-				if (sm.getSender() == REMOTE_ID) {
-					MessageQueue.SystemMessageType msgType = MessageQueue.SystemMessageType.typeOf(sm);
-					if (!messageInQueue.offer(msgType, sm)) {
-						LOGGER.error("Discard message because the input queue is full! [Me={}][Remote={}]", ME,
-								REMOTE_ID);
+				for (SystemMessage sm : messages) {
+					if (sm.getSender() == REMOTE_ID) {
+						MessageQueue.SystemMessageType msgType = MessageQueue.SystemMessageType.typeOf(sm);
+						if (!messageInQueue.offer(msgType, sm)) {
+							LOGGER.error("Discard message because the input queue is full! [Me={}][Remote={}]", ME,
+									REMOTE_ID);
+						}
+					} else {
+						LOGGER.error(
+								"Discard the received message from wrong sender!  --[Sender={}][ExpectedSender={}][Me={}]",
+								sm.getSender(), REMOTE_ID, ME);
 					}
-				} else {
-					LOGGER.error(
-							"Discard the received message from wrong sender!  --[Sender={}][ExpectedSender={}][Me={}]",
-							sm.getSender(), REMOTE_ID, ME);
 				}
 			} catch (Exception e) {
 				LOGGER.error("Unknown error occurred! --[Me=" + ME + "][Remote=" + REMOTE_ID + "] " + e.getMessage(),
@@ -396,7 +475,7 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 	}// End of : private void scheduleReceivingTask()
 
 	/**
-	 * 从输入流读消息；
+	 * 从输入流读一个消息或者一帧消息；整帧只验证一次 MAC；
 	 * <p>
 	 * 
 	 * 如果输入流发生错误，则抛出 {@link IOException}；
@@ -405,7 +484,7 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 	 * @return
 	 * @throws IOException
 	 */
-	private SystemMessage readMessage(InputStream in) throws IOException {
+	private List<SystemMessage> readMessages(InputStream in) throws IOException {
 		// 读消息字节；
 //		int length = in.readInt();
 		int length = BytesUtils.readInt(in);
@@ -420,7 +499,7 @@ public abstract class AbstractStreamConnection implements MessageConnection {
 		} while (read < length);
 
 		try {
-			return messageCodec.decode(encodedMessageBytes);
+			return messageCodec.decodeAll(encodedMessageBytes);
 		} catch (MessageAuthenticationException | IllegalMessageException e) {
 			String errMsg = String.format("The MAC Validation of the received message fail! --[Me=%s][Remote=%s] %s",
 					ME, REMOTE_ID, e.getMessage());
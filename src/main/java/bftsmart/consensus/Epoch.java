@@ -58,6 +58,13 @@ public class Epoch implements Serializable {
 
     public byte preComputeRes; // pre compute result ,fail or succ
 
+    public volatile boolean preComputing = false; // the pre compute of this epoch is running asynchronously
+
+    private int preComputeSeq = 0; // the sequence of the last asynchronous pre compute, guarded by the consensus lock
+
+    public transient boolean traced; // the latencies of this epoch are sampled by the tracer
+    public transient long traceStartTime; // System.nanoTime() when the propose of a traced epoch was received
+
     public byte[] commonHash;  // when an exception occurs in consensus phrase, with common hash
 
     public HashSet<ConsensusMessage> proof; // proof from other processes
@@ -387,6 +394,44 @@ public class Epoch implements Serializable {
         return 0;
     }
 
+    /**
+     * Marks the start of an asynchronous pre compute of this epoch. The caller
+     * must hold the lock of the consensus.
+     *
+     * @return the sequence of this pre compute, passed to {@link #finishPreCompute(int)}
+     */
+    public int startPreCompute() {
+        preComputing = true;
+        return ++preComputeSeq;
+    }
+
+    /**
+     * Marks the end of an asynchronous pre compute of this epoch. The caller
+     * must hold the lock of the consensus.
+     *
+     * @param seq the sequence returned by {@link #startPreCompute()}
+     * @return false if the pre compute was cancelled or superseded, so its result must be rolled back
+     */
+    public boolean finishPreCompute(int seq) {
+        if (seq != preComputeSeq) {
+            return false;
+        }
+        preComputing = false;
+        return true;
+    }
+
+    /**
+     * Cancels the asynchronous pre compute running for this epoch, its result is
+     * rolled back when it completes. The caller must hold the lock of the
+     * consensus.
+     */
+    public void cancelPreCompute() {
+        if (preComputing) {
+            preComputing = false;
+            preComputeSeq++;
+        }
+    }
+
     public long getProposeTimestamp() {
         return proposeTimestamp;
     }
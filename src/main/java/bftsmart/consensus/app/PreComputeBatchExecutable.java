@@ -5,6 +5,8 @@ import bftsmart.tom.ReplyContextMessage;
 import bftsmart.tom.server.Executable;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -19,6 +21,12 @@ public interface PreComputeBatchExecutable extends Executable {
     // begin batch, process order, complete batch
     public BatchAppResultImpl preComputeHash(int cid, byte[][] command, long timestamp);
 
+    // begin batch asynchronously on the specified executor, the batches must be pre computed in the order submitted
+    default CompletableFuture<BatchAppResultImpl> preComputeHashAsync(int cid, byte[][] command, long timestamp,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> preComputeHash(cid, command, timestamp), executor);
+    }
+
     public List<byte[]> updateResponses(List<byte[]> asyncResponseLinkedList, byte[] commonHash, boolean isConsistent);
 
     // batch commit
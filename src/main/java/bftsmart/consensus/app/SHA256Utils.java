@@ -1,19 +1,131 @@
 package bftsmart.consensus.app;
 
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 import org.bouncycastle.crypto.digests.SHA256Digest;
 
+/**
+ * SHA256 哈希工具；
+ * <p>
+ * 线程安全：每个线程复用自己的摘要实例，多个共识线程与验证线程可以并发计算哈希而不必互相等待；
+ * <p>
+ * 对于较大的数据，可通过 {@link #newHasher()} 分段写入计算哈希，而不必先拼接成一个完整的数组；
+ */
 public class SHA256Utils {
 
     // The length of SHA256 output is 32 bytes
     private static final int SHA256DIGEST_LENGTH = 256 / 8;
 
+    // the buffer used to feed the digest with the content of direct buffers
+    private static final int CHUNK_SIZE = 4096;
+
+    private static final ThreadLocal<SHA256Digest> DIGESTS = new ThreadLocal<SHA256Digest>() {
+        @Override
+        protected SHA256Digest initialValue() {
+            return new SHA256Digest();
+        }
+    };
+
     public byte[] hash(byte[] data){
+        return hash(data, 0, data.length);
+    }
+
+    public byte[] hash(byte[] data, int offset, int length){
 
         byte[] result = new byte[SHA256DIGEST_LENGTH];
-        SHA256Digest sha256Digest = new SHA256Digest();
+        SHA256Digest sha256Digest = DIGESTS.get();
 
-        sha256Digest.update(data,0,data.length);
-        sha256Digest.doFinal(result,0);
+        // doFinal resets the digest, so it can be reused by the next call;
+        sha256Digest.update(data, offset, length);
+        sha256Digest.doFinal(result, 0);
         return result;
     }
+
+    /**
+     * 计算缓冲区中剩余数据的哈希；不改变缓冲区的位置；
+     *
+     * @param data
+     * @return
+     */
+    public byte[] hash(ByteBuffer data){
+        return newHasher().update(data).digest();
+    }
+
+    /**
+     * 创建一个分段计算哈希的对象；
+     * <p>
+     * 返回的对象不是线程安全的，不能在多个线程间共享；
+     *
+     * @return
+     */
+    public static Hasher newHasher() {
+        return new Hasher();
+    }
+
+    /**
+     * 分段计算 SHA256 哈希；也可作为 {@link OutputStream} 直接接收序列化输出；
+     */
+    public static final class Hasher extends OutputStream {
+
+        private final SHA256Digest digest = new SHA256Digest();
+
+        private byte[] chunk;
+
+        private Hasher() {
+        }
+
+        public Hasher update(byte[] data, int offset, int length) {
+            digest.update(data, offset, length);
+            return this;
+        }
+
+        public Hasher update(byte[] data) {
+            return update(data, 0, data.length);
+        }
+
+        /**
+         * 写入缓冲区中剩余的数据；不改变缓冲区的位置；
+         *
+         * @param data
+         * @return
+         */
+        public Hasher update(ByteBuffer data) {
+            if (data.hasArray()) {
+                digest.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                return this;
+            }
+            if (chunk == null) {
+                chunk = new byte[CHUNK_SIZE];
+            }
+            ByteBuffer view = data.duplicate();
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                digest.update(chunk, 0, length);
+            }
+            return this;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+
+        /**
+         * 返回已写入数据的哈希，并重置状态以便计算下一个哈希；
+         *
+         * @return
+         */
+        public byte[] digest() {
+            byte[] result = new byte[SHA256DIGEST_LENGTH];
+            digest.doFinal(result, 0);
+            return result;
+        }
+    }
 }
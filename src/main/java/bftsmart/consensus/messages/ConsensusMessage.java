@@ -20,6 +20,7 @@ import bftsmart.communication.SystemMessage;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -27,6 +28,12 @@ import java.io.ObjectOutput;
  */
 public class ConsensusMessage extends SystemMessage {
 
+    // Kinds of the proof in the serialized form
+    private static final byte PROOF_NONE = 0;
+    private static final byte PROOF_SIGNATURE = 1;
+    private static final byte PROOF_MAC_VECTOR = 2;
+    private static final byte PROOF_OBJECT = 3;
+
     private int number; //consensus ID for this message
     private int epoch; // Epoch to which this message belongs to
     private int paxosType; // Message type
@@ -34,6 +41,7 @@ public class ConsensusMessage extends SystemMessage {
     private byte[] origPropValue = null; // Origin propose value hash
     private Object proof; // Proof used when message type is COLLECT
                               // Can be either a MAC vector or a RSA signature
+    private transient byte[] canonicalBytes = null; // cached canonical encoding of the fields covered by the proof
 
     /**
      * Creates a consensus message. Not used. TODO: How about making it private?
@@ -109,15 +117,19 @@ public class ConsensusMessage extends SystemMessage {
 
         }
 
-        if(this.proof != null) {
-
-            out.writeBoolean(true);
+        if (proof == null) {
+            out.writeByte(PROOF_NONE);
+        } else if (proof instanceof byte[]) {
+            byte[] signature = (byte[]) proof;
+            out.writeByte(PROOF_SIGNATURE);
+            out.writeInt(signature.length);
+            out.write(signature);
+        } else if (proof instanceof MacVector) {
+            out.writeByte(PROOF_MAC_VECTOR);
+            ((MacVector) proof).writeTo(out);
+        } else {
+            out.writeByte(PROOF_OBJECT);
             out.writeObject(proof);
-
-        }
-        
-        else {
-            out.writeBoolean(false);
         }
 
     }
@@ -160,12 +172,23 @@ public class ConsensusMessage extends SystemMessage {
 
         }
 
-        boolean asProof = in.readBoolean();
-        if (asProof) {
-            
+        byte proofKind = in.readByte();
+        if (proofKind == PROOF_SIGNATURE) {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Illegal length[" + length + "] of signature!");
+            }
+            byte[] signature = new byte[length];
+            in.readFully(signature);
+            proof = signature;
+        } else if (proofKind == PROOF_MAC_VECTOR) {
+            proof = MacVector.readFrom(in);
+        } else if (proofKind == PROOF_OBJECT) {
             proof = in.readObject();
+        } else if (proofKind != PROOF_NONE) {
+            throw new IOException("Unknown kind[" + proofKind + "] of proof!");
         }
-        
+
     }
 
     /**
@@ -201,6 +224,40 @@ public class ConsensusMessage extends SystemMessage {
     public void setOrigPropValue(byte[] origPropValue)
     {
         this.origPropValue = origPropValue;
+        this.canonicalBytes = null;
+    }
+
+    /**
+     * Returns the canonical encoding of the fields covered by the proof of this
+     * message, which is the data the MAC vector or the signature is computed on.
+     * The layout is fixed and big-endian: type, consensus ID, epoch and sender as
+     * 4-byte integers, then the value and the origin propose value hash, each
+     * prefixed by its length (-1 if absent). The encoding is computed once and
+     * cached.
+     *
+     * @return The canonical encoding of this message
+     */
+    public byte[] getCanonicalBytes() {
+        byte[] bytes = canonicalBytes;
+        if (bytes == null) {
+            int size = 24 + (value == null ? 0 : value.length) + (origPropValue == null ? 0 : origPropValue.length);
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(paxosType).putInt(number).putInt(epoch).putInt(sender);
+            putBytes(buffer, value);
+            putBytes(buffer, origPropValue);
+            bytes = buffer.array();
+            canonicalBytes = bytes;
+        }
+        return bytes;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
     }
 
     public void setProof(Object proof) {
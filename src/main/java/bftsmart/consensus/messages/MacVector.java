@@ -0,0 +1,93 @@
+package bftsmart.consensus.messages;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * ACCEPT 消息的 MAC 向量证明；
+ * <p>
+ * 以两个等长的数组保存接收方的节点 id 与对应的 MAC，按下标访问；序列化为长度前缀的紧凑格式，不使用 Java 序列化；
+ * <p>
+ * 实例不可变；
+ */
+public final class MacVector {
+
+	private final int[] ids;
+
+	private final byte[][] macs;
+
+	/**
+	 * @param ids  接收方的节点 id；
+	 * @param macs 与 ids 一一对应的 MAC；
+	 */
+	public MacVector(int[] ids, byte[][] macs) {
+		if (ids.length != macs.length) {
+			throw new IllegalArgumentException(
+					"The number of ids[" + ids.length + "] and macs[" + macs.length + "] don't match!");
+		}
+		this.ids = ids;
+		this.macs = macs;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	public int getId(int index) {
+		return ids[index];
+	}
+
+	public byte[] getMac(int index) {
+		return macs[index];
+	}
+
+	/**
+	 * 返回指定节点的 MAC；
+	 *
+	 * @param id
+	 * @return 没有该节点的 MAC 时返回 null；
+	 */
+	public byte[] get(int id) {
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] == id) {
+				return macs[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 输出格式：数量，之后每项为节点 id、MAC 的长度与内容；
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			out.writeInt(ids[i]);
+			out.writeInt(macs[i].length);
+			out.write(macs[i]);
+		}
+	}
+
+	public static MacVector readFrom(DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > 1024) {
+			throw new IOException("Illegal size[" + size + "] of mac vector!");
+		}
+		int[] ids = new int[size];
+		byte[][] macs = new byte[size][];
+		for (int i = 0; i < size; i++) {
+			ids[i] = in.readInt();
+			int length = in.readInt();
+			if (length < 0 || length > 1024) {
+				throw new IOException("Illegal length[" + length + "] of mac!");
+			}
+			macs[i] = new byte[length];
+			in.readFully(macs[i]);
+		}
+		return new MacVector(ids, macs);
+	}
+}
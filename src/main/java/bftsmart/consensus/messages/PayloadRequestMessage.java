@@ -0,0 +1,92 @@
+package bftsmart.consensus.messages;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import bftsmart.communication.SystemMessage;
+
+/**
+ * 获取摘要提议中缺少的请求的消息；
+ * <p>
+ * 跟随者收到只包含请求摘要的提议后，向领导者或者其它节点获取本地没有的请求；
+ */
+public class PayloadRequestMessage extends SystemMessage {
+
+    // 提议所属的共识
+    private int cid;
+
+    // 缺少的请求在批次中的位置
+    private int[] indexes;
+
+    // 缺少的请求的客户端
+    private int[] senders;
+
+    // 缺少的请求的会话
+    private int[] sessions;
+
+    // 缺少的请求的序号
+    private int[] sequences;
+
+    public PayloadRequestMessage() {
+    }
+
+    public PayloadRequestMessage(int sender, int cid, int[] indexes, int[] senders, int[] sessions, int[] sequences) {
+        super(sender);
+        this.cid = cid;
+        this.indexes = indexes;
+        this.senders = senders;
+        this.sessions = sessions;
+        this.sequences = sequences;
+    }
+
+    public int getCid() {
+        return cid;
+    }
+
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public int[] getSenders() {
+        return senders;
+    }
+
+    public int[] getSessions() {
+        return sessions;
+    }
+
+    public int[] getSequences() {
+        return sequences;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(cid);
+        out.writeInt(indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            out.writeInt(indexes[i]);
+            out.writeInt(senders[i]);
+            out.writeInt(sessions[i]);
+            out.writeInt(sequences[i]);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        cid = in.readInt();
+        int size = in.readInt();
+        indexes = new int[size];
+        senders = new int[size];
+        sessions = new int[size];
+        sequences = new int[size];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = in.readInt();
+            senders[i] = in.readInt();
+            sessions[i] = in.readInt();
+            sequences[i] = in.readInt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bftsmart.consensus.messages;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import bftsmart.communication.SystemMessage;
+
+/**
+ * 应答 {@link PayloadRequestMessage} 的消息，包含应答节点持有的请求的序列化字节与签名；
+ * <p>
+ * 接收方以提议中的摘要校验每个请求，应答节点不需要被信任；
+ */
+public class PayloadResponseMessage extends SystemMessage {
+
+    // 提议所属的共识
+    private int cid;
+
+    // 请求在批次中的位置
+    private int[] indexes;
+
+    // 请求的序列化字节
+    private byte[][] messages;
+
+    // 请求的签名，没有签名的请求为 null
+    private byte[][] signatures;
+
+    public PayloadResponseMessage() {
+    }
+
+    public PayloadResponseMessage(int sender, int cid, int[] indexes, byte[][] messages, byte[][] signatures) {
+        super(sender);
+        this.cid = cid;
+        this.indexes = indexes;
+        this.messages = messages;
+        this.signatures = signatures;
+    }
+
+    public int getCid() {
+        return cid;
+    }
+
+    public int[] getIndexes() {
+        return indexes;
+    }
+
+    public byte[][] getMessages() {
+        return messages;
+    }
+
+    public byte[][] getSignatures() {
+        return signatures;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(cid);
+        out.writeInt(indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            out.writeInt(indexes[i]);
+            writeBytes(out, messages[i]);
+            writeBytes(out, signatures[i]);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        cid = in.readInt();
+        int size = in.readInt();
+        indexes = new int[size];
+        messages = new byte[size][];
+        signatures = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            indexes[i] = in.readInt();
+            messages[i] = readBytes(in);
+            signatures[i] = readBytes(in);
+        }
+    }
+
+    private static void writeBytes(ObjectOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(ObjectInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
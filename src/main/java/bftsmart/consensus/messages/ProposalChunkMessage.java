@@ -0,0 +1,165 @@
+package bftsmart.consensus.messages;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import bftsmart.communication.SystemMessage;
+
+/**
+ * 以纠删码分发的提议的一个分片；
+ * <p>
+ * 领导者发给每个跟随者一个分片，附带提议的哈希与所有分片的哈希；跟随者把自己的分片转发给其它跟随者，转发的分片不附带哈希，
+ * 接收方以领导者发来的分片哈希校验转发的分片；
+ */
+public class ProposalChunkMessage extends SystemMessage {
+
+    // 提议所属的共识
+    private int cid;
+
+    // 提议所属的时间戳
+    private int epoch;
+
+    // 提议的领导者
+    private int proposer;
+
+    // 分片的序号
+    private int index;
+
+    // 数据分片数，任意这么多个分片即可还原提议
+    private int dataShards;
+
+    // 提议的字节数
+    private int length;
+
+    // 分片的内容
+    private byte[] chunk;
+
+    // 提议的哈希，只有领导者发出的分片附带
+    private byte[] valueHash;
+
+    // 所有分片的哈希，只有领导者发出的分片附带
+    private byte[][] chunkHashes;
+
+    public ProposalChunkMessage() {
+    }
+
+    public ProposalChunkMessage(int sender, int cid, int epoch, int proposer, int index, int dataShards, int length,
+            byte[] chunk, byte[] valueHash, byte[][] chunkHashes) {
+        super(sender);
+        this.cid = cid;
+        this.epoch = epoch;
+        this.proposer = proposer;
+        this.index = index;
+        this.dataShards = dataShards;
+        this.length = length;
+        this.chunk = chunk;
+        this.valueHash = valueHash;
+        this.chunkHashes = chunkHashes;
+    }
+
+    public int getCid() {
+        return cid;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int getProposer() {
+        return proposer;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public byte[] getChunk() {
+        return chunk;
+    }
+
+    public byte[] getValueHash() {
+        return valueHash;
+    }
+
+    public byte[][] getChunkHashes() {
+        return chunkHashes;
+    }
+
+    /**
+     * 是否领导者直接发出的分片；
+     *
+     * @return
+     */
+    public boolean isFromProposer() {
+        return chunkHashes != null;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(cid);
+        out.writeInt(epoch);
+        out.writeInt(proposer);
+        out.writeInt(index);
+        out.writeInt(dataShards);
+        out.writeInt(length);
+        writeBytes(out, chunk);
+        writeBytes(out, valueHash);
+        if (chunkHashes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(chunkHashes.length);
+            for (byte[] hash : chunkHashes) {
+                writeBytes(out, hash);
+            }
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        cid = in.readInt();
+        epoch = in.readInt();
+        proposer = in.readInt();
+        index = in.readInt();
+        dataShards = in.readInt();
+        length = in.readInt();
+        chunk = readBytes(in);
+        valueHash = readBytes(in);
+        int size = in.readInt();
+        if (size >= 0) {
+            chunkHashes = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                chunkHashes[i] = readBytes(in);
+            }
+        }
+    }
+
+    private static void writeBytes(ObjectOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(ObjectInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
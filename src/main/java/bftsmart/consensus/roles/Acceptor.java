@@ -22,7 +22,11 @@ import bftsmart.consensus.Epoch;
 import bftsmart.consensus.app.BatchAppResult;
 import bftsmart.consensus.app.ComputeCode;
 import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MacVector;
 import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.consensus.messages.PayloadRequestMessage;
+import bftsmart.consensus.messages.PayloadResponseMessage;
+import bftsmart.consensus.messages.ProposalChunkMessage;
 import bftsmart.reconfiguration.ReconfigureRequest;
 import bftsmart.reconfiguration.ReplicaTopology;
 import bftsmart.reconfiguration.ServerViewController;
@@ -35,18 +39,18 @@ import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.core.messages.TOMMessageType;
 import bftsmart.tom.server.Replier;
 import bftsmart.tom.server.defaultservices.DefaultRecoverable;
+import bftsmart.tom.util.HashedBatch;
 import bftsmart.tom.util.TOMUtil;
+import bftsmart.tom.util.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.security.PrivateKey;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -73,6 +77,25 @@ public final class Acceptor {
 
 //	private LinkedBlockingQueue<ConsensusMessage> consensusMessageQueue = new LinkedBlockingQueue<>();
 	private volatile boolean doWork = false;
+
+	// executes the pre compute of batches asynchronously, null if the pre compute runs on the consensus thread
+	private final ExecutorService preComputeExecutor;
+	private final AsyncPreComputer asyncPreComputer;
+
+	// resolves the proposes carrying only the digests of the requests, null until the TOM layer is set
+	private ProposalResolver proposalResolver;
+
+	// rebuilds the proposes disseminated as erasure coded chunks, null until the TOM layer is set
+	private ProposalAssembler proposalAssembler;
+
+	// tracing of the consensus path, disabled until the TOM layer is set
+	private Tracer tracer;
+	private Tracer.Counter proposeCounter;
+	private Tracer.Counter decideCounter;
+	private Tracer.Counter rollbackCounter;
+	private Tracer.Histogram writeLatency;
+	private Tracer.Histogram acceptLatency;
+	private Tracer.Histogram decideLatency;
 //	private volatile Thread thrdWork;
 
 	/**
@@ -87,6 +110,18 @@ public final class Acceptor {
 		this.me = topology.getStaticConf().getProcessId();
 		this.factory = factory;
 		this.topology = topology;
+		if (topology.getStaticConf().isAsyncPreCompute()) {
+			this.preComputeExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thrd = new Thread(r, "Pre-Compute-Thread-" + me);
+				thrd.setDaemon(true);
+				return thrd;
+			});
+			this.asyncPreComputer = new AsyncPreComputer(preComputeExecutor);
+		} else {
+			this.preComputeExecutor = null;
+			this.asyncPreComputer = null;
+		}
+		initTracing(Tracer.DISABLED);
 //		try {
 //			// this.cipher = Cipher.getInstance("DES/ECB/PKCS5Padding");
 //			// this.cipher = Cipher.getInstance(ServerConnection.MAC_ALGORITHM);
@@ -120,6 +155,20 @@ public final class Acceptor {
 	 */
 	public void setTOMLayer(TOMLayer tom) {
 		this.tomLayer = tom;
+		this.proposalResolver = new ProposalResolver(communication, topology, tom, this::deliver);
+		this.proposalAssembler = new ProposalAssembler(communication, topology, tom, this::deliver);
+		initTracing(tom.getTracer());
+	}
+
+	private void initTracing(Tracer tracer) {
+		this.tracer = tracer;
+		this.proposeCounter = tracer.counter("consensus.proposes");
+		this.decideCounter = tracer.counter("consensus.decided");
+		this.rollbackCounter = tracer.counter("consensus.rollbacks");
+		// latencies in nanoseconds from receiving the propose of a sampled epoch
+		this.writeLatency = tracer.histogram("consensus.propose_to_write_quorum");
+		this.acceptLatency = tracer.histogram("consensus.propose_to_accept");
+		this.decideLatency = tracer.histogram("consensus.propose_to_decide");
 	}
 
 	/**
@@ -130,9 +179,31 @@ public final class Acceptor {
 	 * @param msg Paxos messages delivered by the communication layer
 	 */
 	public final void deliver(ConsensusMessage msg) {
+		if (msg.getType() == MessageFactory.PROPOSE && proposalResolver != null) {
+			if (HashedBatch.isHashed(msg.getValue())) {
+				// the requests are resolved before the propose is processed, the resolved propose is delivered again
+				if (msg.getSender() == executionManager.getCurrentLeader()) {
+					proposalResolver.resolve(msg);
+				} else {
+					LOGGER.warn("I am proc {}, discard the hashed propose[{}] from non leader {}", me, msg.getNumber(),
+							msg.getSender());
+				}
+				return;
+			}
+			if (topology.getStaticConf().isHashProposals()) {
+				proposalResolver.record(msg.getNumber(), msg.getValue());
+			}
+		}
 		if (executionManager.checkLimits(msg)) {
 			LOGGER.debug("processing paxos msg with id {}", msg.getNumber());
 			processMessage(msg);
+
+			// the leader may have already proposed the next consensus instances, so
+			// do not wait for another message to process them once this one is decided
+			if (tomLayer.isPipelined() && msg.getNumber() <= tomLayer.getLastExec()) {
+				tomLayer.processOutOfContext();
+				tomLayer.processOutOfContextWriteAndAccept();
+			}
 		} else {
 			LOGGER.debug("out of context msg with id {}", msg.getNumber());
 
@@ -285,12 +356,19 @@ public final class Acceptor {
 
 		try {
 			int cid = epoch.getConsensus().getId();
-			LOGGER.info("(Acceptor.executePropose) I am proc {}, executing propose for cid : {}, epoch timestamp: {}",
-					topology.getStaticConf().getProcessId(), cid, epoch.getTimestamp());
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("(Acceptor.executePropose) I am proc {}, executing propose for cid : {}, epoch timestamp: {}",
+						me, cid, epoch.getTimestamp());
+			}
 
 //			long consensusStartTime = System.nanoTime();
 
 			if (epoch.propValue == null) { // only accept one propose per epoch
+				proposeCounter.increment();
+				if (tracer.sample()) {
+					epoch.traceStartTime = System.nanoTime();
+					epoch.traced = true;
+				}
 				epoch.propValue = value;
 				epoch.propValueHash = tomLayer.computeHash(value);
 
@@ -404,10 +482,15 @@ public final class Acceptor {
 			int writeAccepted = epoch.countWrite(value);
 
 			if (writeAccepted > topology.getQuorum()) {
-				LOGGER.info("(Acceptor.computeWrite) I am proc {}, I have {} WRITEs for cid {}, epoch timestamp {}",
-						this.topology.getStaticConf().getProcessId(), writeAccepted, cid, epoch.getTimestamp());
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("(Acceptor.computeWrite) I am proc {}, I have {} WRITEs for cid {}, epoch timestamp {}",
+							me, writeAccepted, cid, epoch.getTimestamp());
+				}
 
-				if (!epoch.isAcceptSetted(me) && Arrays.equals(value, epoch.propValueHash)) {
+				if (!epoch.isAcceptSetted(me) && !epoch.preComputing && Arrays.equals(value, epoch.propValueHash)) {
+					if (epoch.traced) {
+						writeLatency.recordSince(epoch.traceStartTime);
+					}
 
 					LOGGER.debug("(Acceptor.computeWrite) I am proc {} sending WRITE for {}",
 							this.topology.getStaticConf().getProcessId(), cid);
@@ -425,98 +508,111 @@ public final class Acceptor {
 //					}
 
 					// add to implement application consistency
-//					if (topology.getStaticConf().isBFT()) {
-
-						DefaultRecoverable defaultExecutor = getDefaultExecutor();
-                        byte[][] commands = new byte[epoch.deserializedPropValue.length][];
-//						List<byte[]> commands = new ArrayList<byte[]>();
-
-						for (int i = 0; i < epoch.deserializedPropValue.length; i++) {
-							// 对于视图ID落后于当前节点视图ID的请求或者Reconfig请求不进行预计算处理
-//							if (ViewIdBackWard(epoch.deserializedPropValue[i])
-//									|| isReconfig(epoch.deserializedPropValue[i])) {
-//								continue;
-//							}
-
-							TOMMessage message = epoch.deserializedPropValue[i];
-							if (isReconfig(message)) {
-								ReconfigureRequest request = (ReconfigureRequest) TOMUtil.getObject(message.getContent());
-								commands[i] = request.getExtendInfo();
-							} else {
-								commands[i] = message.getContent();
-							}
-
-//							epoch.deserializedPrecomputeValue.add(msg);
-
+					DefaultRecoverable defaultExecutor = getDefaultExecutor();
+					byte[][] commands = new byte[epoch.deserializedPropValue.length][];
+
+					for (int i = 0; i < epoch.deserializedPropValue.length; i++) {
+						// 对于视图ID落后于当前节点视图ID的请求或者Reconfig请求不进行预计算处理
+//						if (ViewIdBackWard(epoch.deserializedPropValue[i])
+//								|| isReconfig(epoch.deserializedPropValue[i])) {
+//							continue;
+//						}
+
+						TOMMessage message = epoch.deserializedPropValue[i];
+						if (isReconfig(message)) {
+							ReconfigureRequest request = (ReconfigureRequest) TOMUtil.getObject(message.getContent());
+							commands[i] = request.getExtendInfo();
+						} else {
+							commands[i] = message.getContent();
 						}
+					}
 
-						LOGGER.info("I am proc {}, start pre compute , cid = {}, epoch = {}", this.topology.getStaticConf().getProcessId(), cid, epoch.getTimestamp());
+					if (LOGGER.isDebugEnabled()) {
+						LOGGER.debug("I am proc {}, start pre compute , cid = {}, epoch = {}", me, cid, epoch.getTimestamp());
+					}
+					if (asyncPreComputer != null) {
+						preComputeAsync(cid, epoch, defaultExecutor, commands);
+					} else {
 						BatchAppResult appHashResult = defaultExecutor.preComputeHash(cid, commands, epoch.getProposeTimestamp());
+						preComputed(cid, epoch, appHashResult);
+					}
+				}
+			}
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+	}
 
-//						byte[] result = MergeByte(epoch.propValue, appHashResult.getAppHashBytes());
+	/**
+	 * 在预计算线程上异步执行批次的预计算，完成后再发送 ACCEPT 消息；调用者须持有共识的锁；
+	 * <p>
+	 * 预计算期间当前线程可继续处理其它共识消息；期间收到的 ACCEPT 消息在预计算完成后再统一计算；
+	 * <p>
+	 * 如果预计算完成时本轮共识已经决议、已进入新的时间戳或者预计算已被回滚（{@link ExecutionManager#preComputeRollback(Consensus)}），
+	 * 则回滚预计算的结果；
+	 */
+	private void preComputeAsync(int cid, Epoch epoch, DefaultRecoverable defaultExecutor, byte[][] commands) {
+		asyncPreComputer.submit(epoch, defaultExecutor, cid, commands, new AsyncPreComputer.Callback() {
+
+			@Override
+			public void preComputed(BatchAppResult result) {
+				if (!doWork) {
+					rollback(result);
+					return;
+				}
+				Acceptor.this.preComputed(cid, epoch, result);
+			}
 
-						byte[] result = appHashResult.getAppHashBytes();
+			@Override
+			public void rollback(BatchAppResult result) {
+				LOGGER.warn("I am proc {}, rollback the pre compute of cid {}!", me, cid);
+				defaultExecutor.preComputeRollback(cid, result.getBatchId());
+			}
+		});
+	}
 
-						epoch.propAndAppValue = result;
+	/**
+	 * 预计算完成，发送 ACCEPT 消息；调用者须持有共识的锁；
+	 */
+	private void preComputed(int cid, Epoch epoch, BatchAppResult appHashResult) {
+//		byte[] result = MergeByte(epoch.propValue, appHashResult.getAppHashBytes());
 
-						epoch.propAndAppValueHash = tomLayer.computeHash(result);
+		byte[] result = appHashResult.getAppHashBytes();
 
-						epoch.preComputeRes = appHashResult.getComputeCode();
+		epoch.propAndAppValue = result;
 
-						epoch.commonHash = appHashResult.getGenisHashBytes();
+		epoch.propAndAppValueHash = tomLayer.computeHash(result);
 
-						tomLayer.getExecManager().getConsensus(cid).setPrecomputed(true);
+		epoch.preComputeRes = appHashResult.getComputeCode();
 
-						epoch.setAsyncResponseLinkedList(appHashResult.getAsyncResponses());
+		epoch.commonHash = appHashResult.getGenisHashBytes();
 
-						epoch.batchId = appHashResult.getBatchId();
+		tomLayer.getExecManager().getConsensus(cid).setPrecomputed(true);
 
-						epoch.setAccept(me, epoch.propAndAppValueHash);
+		epoch.setAsyncResponseLinkedList(appHashResult.getAsyncResponses());
 
-						ConsensusMessage cm = factory.createAccept(cid, epoch.getTimestamp(),
-								epoch.propAndAppValueHash);
+		epoch.batchId = appHashResult.getBatchId();
 
-						// add origin propose hash for accept type consensus msg
-						cm.setOrigPropValue(epoch.propValueHash);
+		epoch.setAccept(me, epoch.propAndAppValueHash);
 
-						// Create a cryptographic proof for this ACCEPT message
-						LOGGER.debug(
-								"(Acceptor.computeWrite) Creating cryptographic proof for my ACCEPT message from consensus {}",
-								cid);
-						insertProof(cm, epoch);
+		ConsensusMessage cm = factory.createAccept(cid, epoch.getTimestamp(), epoch.propAndAppValueHash);
 
-						int[] targets = this.topology.getCurrentViewOtherAcceptors();
-						communication.send(targets, cm);
-//                    communication.getServersConn().send(targets, cm, true);
+		// add origin propose hash for accept type consensus msg
+		cm.setOrigPropValue(epoch.propValueHash);
 
-						epoch.addToProof(cm);
-						computeAccept(cid, epoch, epoch.propAndAppValueHash);
-//					}
-//					else {
-//						epoch.setAccept(me, value);
-//
-//						ConsensusMessage cm = factory.createAccept(cid, epoch.getTimestamp(), value);
-//
-//						// Create a cryptographic proof for this ACCEPT message
-//						LOGGER.debug(
-//								"(Acceptor.computeWrite) Creating cryptographic proof for my ACCEPT message from consensus {}",
-//								cid);
-//						insertProof(cm, epoch);
-//
-//						int[] targets = this.topology.getCurrentViewOtherAcceptors();
-//						communication.getServersCommunication().send(targets, cm, true);
-//
-//						// communication.send(this.reconfManager.getCurrentViewOtherAcceptors(),
-//						// factory.createStrong(cid, epoch.getNumber(), value));
-//						epoch.addToProof(cm);
-//						computeAccept(cid, epoch, value);
-//
-//					}
-				}
-			}
-		} catch (Throwable e) {
-			e.printStackTrace();
+		// Create a cryptographic proof for this ACCEPT message
+		LOGGER.debug("(Acceptor.computeWrite) Creating cryptographic proof for my ACCEPT message from consensus {}",
+				cid);
+		insertProof(cm, epoch);
+
+		int[] targets = this.topology.getCurrentViewOtherAcceptors();
+		communication.send(targets, cm);
+
+		epoch.addToProof(cm);
+		if (epoch.traced) {
+			acceptLatency.recordSince(epoch.traceStartTime);
 		}
+		computeAccept(cid, epoch, epoch.propAndAppValueHash);
 	}
 
 	/**
@@ -529,14 +625,7 @@ public final class Acceptor {
 	 * @param epoch The epoch during in which the consensus message was created
 	 */
 	private void insertProof(ConsensusMessage cm, Epoch epoch) {
-		ByteArrayOutputStream bOut = new ByteArrayOutputStream(248);
-		try {
-			new ObjectOutputStream(bOut).writeObject(cm);
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		}
-
-		byte[] data = bOut.toByteArray();
+		byte[] data = cm.getCanonicalBytes();
 
 		// check if consensus contains reconfiguration request
 		TOMMessage[] msgs = epoch.deserializedPropValue;
@@ -563,7 +652,9 @@ public final class Acceptor {
 		} else { // ... if not, we can use MAC vectores
 			int[] processes = this.topology.getCurrentViewProcesses();
 
-			HashMap<Integer, byte[]> macVector = new HashMap<>();
+			int[] ids = new int[processes.length];
+			byte[][] macs = new byte[processes.length][];
+			int size = 0;
 
 			for (int id : processes) {
 				if (id == me) {
@@ -589,8 +680,9 @@ public final class Acceptor {
 					}
 					if (macKey != null) {
 //						this.mac.init(key);
-						byte[] macBytes = macKey.generateMac(data);
-						macVector.put(id, macBytes);
+						ids[size] = id;
+						macs[size] = macKey.generateMac(data);
+						size++;
 					}
 //
 //                    do {
@@ -612,7 +704,7 @@ public final class Acceptor {
 				}
 			}
 
-			cm.setProof(macVector);
+			cm.setProof(new MacVector(Arrays.copyOf(ids, size), Arrays.copyOf(macs, size)));
 		}
 
 	}
@@ -681,19 +773,29 @@ public final class Acceptor {
 	 * @param value Value sent in the message
 	 */
 	private void computeAccept(int cid, Epoch epoch, byte[] value) {
+		if (epoch.preComputing) {
+			// the ACCEPTs are computed again when the pre compute of this epoch completes
+			return;
+		}
 		try {
 			List<byte[]> updatedResp;
 
 			if (epoch.countAccept(value) > topology.getQuorum() && !epoch.getConsensus().isDecided()) {
-				LOGGER.info("(Acceptor.computeAccept) I am proc {}, I have {} ACCEPTs for cid {} and timestamp {}",
-						topology.getStaticConf().getProcessId(), epoch.countAccept(value), cid, epoch.getTimestamp());
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("(Acceptor.computeAccept) I am proc {}, I have {} ACCEPTs for cid {} and timestamp {}",
+							me, epoch.countAccept(value), cid, epoch.getTimestamp());
+				}
+				decideCounter.increment();
+				if (epoch.traced) {
+					decideLatency.recordSince(epoch.traceStartTime);
+				}
 				if (Arrays.equals(value, epoch.propAndAppValueHash)
 						&& (ComputeCode.valueOf(epoch.getPreComputeRes()) == ComputeCode.SUCCESS)) {
 					LOGGER.debug("(Acceptor.computeAccept) I am proc {}. Deciding {} ",
 							topology.getStaticConf().getProcessId(), cid);
 					try {
-						LOGGER.info("(Acceptor.computeAccept) I am proc {}, I will write cid {} 's propse to ledger",
-								topology.getStaticConf().getProcessId(), cid);
+						LOGGER.debug("(Acceptor.computeAccept) I am proc {}, I will write cid {} 's propse to ledger",
+								me, cid);
 						getDefaultExecutor().preComputeCommit(cid, epoch.getBatchId());
 						tomLayer.getExecManager().getConsensus(cid).setPrecomputeCommited(true);
 						decide(epoch);
@@ -707,6 +809,7 @@ public final class Acceptor {
 								epoch.commonHash, true);
 						epoch.setAsyncResponseLinkedList(updatedResp);
 						epoch.setRollback(true);
+						rollbackCounter.increment();
 						decide(epoch);
 					}
 				} else if (Arrays.equals(value, epoch.propAndAppValueHash)
@@ -716,6 +819,7 @@ public final class Acceptor {
 					getDefaultExecutor().preComputeRollback(cid, epoch.getBatchId());
 //					updateConsensusSetting(epoch);
 					epoch.setRollback(true);
+					rollbackCounter.increment();
 					decide(epoch);
 				} else if (!Arrays.equals(value, epoch.propAndAppValueHash)) {
 					// Leader does evil to me only, need to roll back
@@ -734,6 +838,7 @@ public final class Acceptor {
 
 //					updateConsensusSetting(epoch);
 					epoch.setRollback(true);
+					rollbackCounter.increment();
 					decide(epoch);
 
 					// Pause processing of new messages, Waiting for trigger state transfer
@@ -762,6 +867,7 @@ public final class Acceptor {
 						false);
 				epoch.setAsyncResponseLinkedList(updatedResp);
 				epoch.setRollback(true);
+				rollbackCounter.increment();
 				decide(epoch);
 			}
 		} catch (Throwable e) {
@@ -787,8 +893,50 @@ public final class Acceptor {
 		epoch.getConsensus().decided(epoch, true);
 	}
 
+	/**
+	 * Called by the communication layer when another replica asks for the requests
+	 * of a hashed propose
+	 *
+	 * @param msg The request for the payloads
+	 */
+	public void payloadRequested(PayloadRequestMessage msg) {
+		if (proposalResolver != null) {
+			proposalResolver.payloadRequested(msg);
+		}
+	}
+
+	/**
+	 * Called by the communication layer when another replica answers the requests
+	 * of a hashed propose
+	 *
+	 * @param msg The payloads
+	 */
+	public void payloadReceived(PayloadResponseMessage msg) {
+		if (proposalResolver != null) {
+			proposalResolver.payloadReceived(msg);
+		}
+	}
+
+	/**
+	 * Called by the communication layer when a chunk of an erasure coded propose
+	 * is received from the leader or relayed by another follower
+	 *
+	 * @param msg The chunk
+	 */
+	public void chunkReceived(ProposalChunkMessage msg) {
+		if (proposalAssembler != null) {
+			proposalAssembler.chunkReceived(msg);
+		}
+	}
+
 	public synchronized void shutdown() {
 		doWork = false;
+		if (preComputeExecutor != null) {
+			preComputeExecutor.shutdownNow();
+		}
+		if (proposalResolver != null) {
+			proposalResolver.shutdown();
+		}
 
 //		if (!doWork) {
 //			return;
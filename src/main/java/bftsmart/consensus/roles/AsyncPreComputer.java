@@ -0,0 +1,115 @@
+package bftsmart.consensus.roles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.consensus.Consensus;
+import bftsmart.consensus.Epoch;
+import bftsmart.consensus.app.BatchAppResult;
+import bftsmart.consensus.app.PreComputeBatchExecutable;
+
+/**
+ * 在预计算线程上异步执行批次的预计算；
+ * <p>
+ * 预计算期间时间戳处于 {@link Epoch#preComputing} 状态，不再发起该时间戳的预计算，期间收到的 ACCEPT 消息在预计算完成后再统一计算；
+ * <p>
+ * 预计算完成的回调与 {@link #cancel(Consensus)} 都在共识的锁内执行：完成时预计算已被取消、本轮共识已经决议或者已进入新的时间戳，
+ * 则回滚预计算的结果，否则以结果继续共识；
+ */
+public final class AsyncPreComputer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPreComputer.class);
+
+	private final Executor executor;
+
+	/**
+	 * @param executor 执行预计算的执行器，须按提交的顺序执行；
+	 */
+	public AsyncPreComputer(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * 提交时间戳的预计算；调用者须持有共识的锁；
+	 *
+	 * @param epoch      时间戳；
+	 * @param executable 应用；
+	 * @param cid        共识 id；
+	 * @param commands   批次中的请求；
+	 * @param callback   预计算完成的回调；
+	 * @return 执行器拒绝时返回 false，时间戳不处于预计算状态；
+	 */
+	public boolean submit(Epoch epoch, PreComputeBatchExecutable executable, int cid, byte[][] commands,
+			Callback callback) {
+		int seq = epoch.startPreCompute();
+		CompletableFuture<? extends BatchAppResult> future;
+		try {
+			future = executable.preComputeHashAsync(cid, commands, epoch.getProposeTimestamp(), executor);
+		} catch (RejectedExecutionException e) {
+			epoch.finishPreCompute(seq);
+			LOGGER.warn("The pre compute of cid {} is rejected! --{}", cid, e.getMessage());
+			return false;
+		}
+		future.whenComplete((result, error) -> complete(epoch, seq, cid, result, error, callback));
+		return true;
+	}
+
+	private void complete(Epoch epoch, int seq, int cid, BatchAppResult result, Throwable error, Callback callback) {
+		Consensus consensus = epoch.getConsensus();
+		consensus.lock.lock();
+		try {
+			boolean current = epoch.finishPreCompute(seq);
+			if (error != null) {
+				LOGGER.error("Pre compute fail, cid = " + cid + "! --" + error.getMessage(), error);
+				return;
+			}
+			if (!current || consensus.isDecided() || consensus.getLastEpoch() != epoch) {
+				LOGGER.warn("Cid {} has gone on while pre computing, will rollback!", cid);
+				callback.rollback(result);
+				return;
+			}
+			callback.preComputed(result);
+		} catch (Throwable e) {
+			LOGGER.error("Error occurred while completing pre compute! --" + e.getMessage(), e);
+		} finally {
+			consensus.lock.unlock();
+		}
+	}
+
+	/**
+	 * 取消共识各个时间戳进行中的预计算，其结果在完成时回滚；调用者须持有共识的锁；
+	 *
+	 * @param consensus
+	 */
+	public static void cancel(Consensus consensus) {
+		for (Epoch epoch : consensus.getEpochs().values()) {
+			if (epoch != null) {
+				epoch.cancelPreCompute();
+			}
+		}
+	}
+
+	/**
+	 * 预计算完成的回调，在共识的锁内执行；
+	 */
+	public interface Callback {
+
+		/**
+		 * 预计算完成且仍然有效；
+		 *
+		 * @param result
+		 */
+		void preComputed(BatchAppResult result);
+
+		/**
+		 * 预计算已失效，回滚其结果；
+		 *
+		 * @param result
+		 */
+		void rollback(BatchAppResult result);
+	}
+}
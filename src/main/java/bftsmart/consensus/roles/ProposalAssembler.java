@@ -0,0 +1,268 @@
+package bftsmart.consensus.roles;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.consensus.app.SHA256Utils;
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.consensus.messages.ProposalChunkMessage;
+import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.tom.core.TOMLayer;
+import bftsmart.tom.util.ReedSolomon;
+
+/**
+ * 以纠删码分片还原领导者的提议；
+ * <p>
+ * 跟随者收到领导者发来的分片后，以其中的分片哈希校验并转发给其它跟随者；校验通过的分片达到 n-2f 个时还原提议，
+ * 还原的提议的哈希与领导者声明的哈希一致时，以原提议的形式交给 {@link Acceptor}，之后的处理与完整的提议相同；
+ * <p>
+ * 只有当前领导者的分片能发起一个提议的还原，且共识须在执行窗口（paxosHighMark）之内；在收到领导者的分片之前收到的转发分片
+ * 无法校验，按转发者分别暂存最近的少量分片，收到领导者的分片后再校验；
+ */
+public class ProposalAssembler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProposalAssembler.class);
+
+	/**
+	 * 同时还原的提议的最大数量；
+	 */
+	private static final int MAX_ASSEMBLIES = 64;
+
+	/**
+	 * 每个转发者暂存的转发分片的最大数量；
+	 */
+	private static final int MAX_RELAYS_PER_SENDER = 8;
+
+	private static final SHA256Utils HASHER = new SHA256Utils();
+
+	private final int me;
+
+	private final ServerCommunicationSystem communication;
+
+	private final ReplicaTopology topology;
+
+	private final TOMLayer tomLayer;
+
+	private final Consumer<ConsensusMessage> deliverer;
+
+	private final Map<Integer, Assembly> assemblies = new HashMap<>();
+
+	/**
+	 * 收到领导者的分片之前暂存的转发分片：转发者 -> 共识 id -> 分片；
+	 */
+	private final Map<Integer, Map<Integer, ProposalChunkMessage>> relays = new HashMap<>();
+
+	/**
+	 * @param communication 节点间的通讯；
+	 * @param topology      视图；
+	 * @param tomLayer      用于获取最后执行的共识与当前的领导者；
+	 * @param deliverer     接收还原的完整提议；
+	 */
+	public ProposalAssembler(ServerCommunicationSystem communication, ReplicaTopology topology, TOMLayer tomLayer,
+			Consumer<ConsensusMessage> deliverer) {
+		this.me = topology.getStaticConf().getProcessId();
+		this.communication = communication;
+		this.topology = topology;
+		this.tomLayer = tomLayer;
+		this.deliverer = deliverer;
+	}
+
+	/**
+	 * 收到提议的分片；
+	 *
+	 * @param msg
+	 */
+	public void chunkReceived(ProposalChunkMessage msg) {
+		ProposalChunkMessage relay = null;
+		ConsensusMessage propose = null;
+		synchronized (this) {
+			int cid = msg.getCid();
+			int lastExec = tomLayer.getLastExec();
+			if (cid <= lastExec || cid >= lastExec + topology.getStaticConf().getPaxosHighMark()) {
+				LOGGER.debug("I am proc {}, discard the propose chunk[{}] from {} out of the consensus window", me, cid,
+						msg.getSender());
+				return;
+			}
+			Assembly assembly = assemblies.get(cid);
+
+			if (msg.isFromProposer()) {
+				if (msg.getSender() != msg.getProposer()
+						|| msg.getSender() != tomLayer.execManager.getCurrentLeader()) {
+					LOGGER.warn("I am proc {}, discard the propose chunk[{}] from non leader {}", me, cid,
+							msg.getSender());
+					return;
+				}
+				if (assembly == null) {
+					removeObsoleteAssemblies(lastExec);
+					if (assemblies.size() >= MAX_ASSEMBLIES) {
+						LOGGER.warn("I am proc {}, too many proposes being assembled, discard the chunk[{}] from {}", me,
+								cid, msg.getSender());
+						return;
+					}
+					assembly = new Assembly();
+				} else if (assembly.header != null) {
+					// 领导者对同一个共识只发出一个分片，重复的分片不予处理；
+					return;
+				}
+				if (!assembly.init(msg)) {
+					LOGGER.warn("I am proc {}, discard the illegal propose chunk[{}] from {}", me, cid,
+							msg.getSender());
+					return;
+				}
+				assemblies.put(cid, assembly);
+				if (assembly.add(msg)) {
+					relay = new ProposalChunkMessage(me, cid, msg.getEpoch(), msg.getProposer(), msg.getIndex(),
+							msg.getDataShards(), msg.getLength(), msg.getChunk(), null, null);
+				}
+				for (Map<Integer, ProposalChunkMessage> senderRelays : relays.values()) {
+					ProposalChunkMessage pending = senderRelays.remove(cid);
+					if (pending != null) {
+						assembly.add(pending);
+					}
+				}
+			} else if (msg.getSender() != msg.getProposer()) {
+				if (assembly == null) {
+					relays.computeIfAbsent(msg.getSender(), sender -> new RelayBuffer()).put(cid, msg);
+					return;
+				}
+				if (assembly.value != null) {
+					return;
+				}
+				assembly.add(msg);
+			} else {
+				return;
+			}
+
+			propose = assembly.tryDecode(cid);
+		}
+
+		if (relay != null) {
+			communication.send(relayTargets(msg.getProposer()), relay);
+		}
+		if (propose != null) {
+			deliverer.accept(propose);
+		}
+	}
+
+	private int[] relayTargets(int proposer) {
+		return Arrays.stream(topology.getCurrentViewOtherAcceptors()).filter(id -> id != proposer)
+				.toArray();
+	}
+
+	/**
+	 * 移除已执行的共识与原领导者的提议的还原状态，以及已执行的共识的转发分片；
+	 */
+	private void removeObsoleteAssemblies(int lastExec) {
+		int leader = tomLayer.execManager.getCurrentLeader();
+		for (Iterator<Map.Entry<Integer, Assembly>> it = assemblies.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, Assembly> entry = it.next();
+			if (entry.getKey() <= lastExec || entry.getValue().header.getProposer() != leader) {
+				it.remove();
+			}
+		}
+		for (Iterator<Map<Integer, ProposalChunkMessage>> it = relays.values().iterator(); it.hasNext();) {
+			Map<Integer, ProposalChunkMessage> senderRelays = it.next();
+			senderRelays.keySet().removeIf(cid -> cid <= lastExec);
+			if (senderRelays.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * 一个转发者暂存的转发分片，超出数量时丢弃最早暂存的分片；
+	 */
+	private static class RelayBuffer extends LinkedHashMap<Integer, ProposalChunkMessage> {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, ProposalChunkMessage> eldest) {
+			return size() > MAX_RELAYS_PER_SENDER;
+		}
+	}
+
+	/**
+	 * 一个提议的还原状态；
+	 */
+	private class Assembly {
+
+		/**
+		 * 领导者发来的分片，提供分片的哈希与提议的哈希；
+		 */
+		private ProposalChunkMessage header;
+
+		private ReedSolomon codec;
+
+		private byte[][] chunks;
+
+		private int verified;
+
+		private boolean failed;
+
+		private byte[] value;
+
+		private boolean init(ProposalChunkMessage msg) {
+			byte[][] hashes = msg.getChunkHashes();
+			if (msg.getValueHash() == null || msg.getDataShards() < 1 || msg.getDataShards() > hashes.length
+					|| hashes.length > 256 || msg.getLength() < 0) {
+				return false;
+			}
+			this.header = msg;
+			this.codec = new ReedSolomon(msg.getDataShards(), hashes.length);
+			this.chunks = new byte[hashes.length][];
+			return true;
+		}
+
+		/**
+		 * 校验并加入分片；
+		 *
+		 * @return 分片是否有效；
+		 */
+		private boolean add(ProposalChunkMessage msg) {
+			int index = msg.getIndex();
+			if (index < 0 || index >= chunks.length || chunks[index] != null || msg.getChunk() == null
+					|| msg.getDataShards() != header.getDataShards() || msg.getLength() != header.getLength()
+					|| msg.getChunk().length != codec.getShardSize(header.getLength())) {
+				return false;
+			}
+			byte[] hash = HASHER.hash(msg.getChunk());
+			if (!MessageDigest.isEqual(hash, header.getChunkHashes()[index])) {
+				LOGGER.warn("I am proc {}, the propose chunk[{}][{}] from {} does not match its hash", me,
+						msg.getCid(), index, msg.getSender());
+				return false;
+			}
+			chunks[index] = msg.getChunk();
+			verified++;
+			return true;
+		}
+
+		private ConsensusMessage tryDecode(int cid) {
+			if (header == null || failed || verified < codec.getDataShards()) {
+				return null;
+			}
+			byte[] decoded = codec.decode(chunks, header.getLength());
+			if (!MessageDigest.isEqual(HASHER.hash(decoded), header.getValueHash())) {
+				// 分片都与领导者给出的哈希一致，还原的提议却不一致，说明领导者的编码有误；
+				LOGGER.warn("I am proc {}, the propose[{}] rebuilt from the chunks of {} does not match its hash", me,
+						cid, header.getProposer());
+				failed = true;
+				return null;
+			}
+			value = decoded;
+			chunks = null;
+			return new ConsensusMessage(MessageFactory.PROPOSE, cid, header.getEpoch(), header.getProposer(),
+					decoded);
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package bftsmart.consensus.roles;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.consensus.messages.PayloadRequestMessage;
+import bftsmart.consensus.messages.PayloadResponseMessage;
+import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.tom.core.TOMLayer;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.util.BatchReader;
+import bftsmart.tom.util.HashedBatch;
+
+/**
+ * 还原只包含请求摘要的提议；
+ * <p>
+ * 客户端把请求发送给所有节点，因此跟随者通常在收到提议时已经持有其中的请求；跟随者以本地的待处理请求还原完整的批次，
+ * 只向领导者获取缺少的请求，领导者未及时应答时依次向其它节点获取；还原的批次以原提议的形式交给 {@link Acceptor}，
+ * 之后的处理与完整的提议相同；
+ * <p>
+ * 节点保留最近的完整提议，用于应答其它节点获取请求的消息；
+ */
+public class ProposalResolver {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProposalResolver.class);
+
+	/**
+	 * 获取请求的应答超时的毫秒数；超时后向下一个节点获取；
+	 */
+	private static final long FETCH_TIMEOUT = 200;
+
+	/**
+	 * 保留的最近的完整提议数；
+	 */
+	private static final int MAX_PROPOSALS = 32;
+
+	private final int me;
+
+	private final ServerCommunicationSystem communication;
+
+	private final ReplicaTopology topology;
+
+	private final TOMLayer tomLayer;
+
+	private final Consumer<ConsensusMessage> deliverer;
+
+	private final ScheduledExecutorService fetchTimer;
+
+	private final Map<Integer, byte[]> proposals = new LinkedHashMap<Integer, byte[]>() {
+
+		private static final long serialVersionUID = 2936270413937423734L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+			return size() > MAX_PROPOSALS;
+		}
+	};
+
+	private final Map<Integer, Resolution> resolutions = new HashMap<>();
+
+	/**
+	 * @param communication 节点间的通讯；
+	 * @param topology      视图；
+	 * @param tomLayer      用于查找待处理的请求；
+	 * @param deliverer     接收还原的完整提议；
+	 */
+	public ProposalResolver(ServerCommunicationSystem communication, ReplicaTopology topology, TOMLayer tomLayer,
+			Consumer<ConsensusMessage> deliverer) {
+		this.me = topology.getStaticConf().getProcessId();
+		this.communication = communication;
+		this.topology = topology;
+		this.tomLayer = tomLayer;
+		this.deliverer = deliverer;
+		this.fetchTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thrd = new Thread(r, "Proposal-Fetch-Timer-" + me);
+			thrd.setDaemon(true);
+			return thrd;
+		});
+	}
+
+	/**
+	 * 保留完整的提议，用于应答其它节点获取请求的消息；
+	 *
+	 * @param cid
+	 * @param value
+	 */
+	public synchronized void record(int cid, byte[] value) {
+		if (value != null && !HashedBatch.isHashed(value)) {
+			proposals.put(cid, value);
+		}
+	}
+
+	/**
+	 * 还原只包含请求摘要的提议；本地持有全部请求时立即交付还原的提议，否则在取得缺少的请求后交付；
+	 *
+	 * @param propose
+	 */
+	public void resolve(ConsensusMessage propose) {
+		HashedBatch batch;
+		try {
+			batch = HashedBatch.read(propose.getValue());
+		} catch (RuntimeException e) {
+			LOGGER.warn("I am proc {}, discard the illegal hashed propose[{}] from {}! --{}", me,
+					propose.getNumber(), propose.getSender(), e.getMessage());
+			return;
+		}
+
+		Resolution resolution = new Resolution(propose, batch);
+		for (int i = 0; i < batch.size(); i++) {
+			TOMMessage request = findPending(batch.getSender(i), batch.getSession(i), batch.getSequence(i));
+			if (request != null) {
+				resolution.fill(i, request.getSerializedBuffer(), request.serializedMessageSignature);
+			}
+		}
+
+		if (resolution.isComplete()) {
+			complete(resolution);
+			return;
+		}
+
+		synchronized (this) {
+			removeObsoleteResolutions();
+			resolutions.put(propose.getNumber(), resolution);
+		}
+		LOGGER.debug("I am proc {}, fetch {} of {} requests of the hashed propose[{}]", me, resolution.missing,
+				batch.size(), propose.getNumber());
+		fetch(resolution);
+	}
+
+	/**
+	 * 应答其它节点获取请求的消息；应答本节点持有的请求，没有的请求由请求方向其它节点获取；
+	 *
+	 * @param msg
+	 */
+	public void payloadRequested(PayloadRequestMessage msg) {
+		int[] indexes = msg.getIndexes();
+		TOMMessage[] proposed = null;
+		byte[] value;
+		synchronized (this) {
+			value = proposals.get(msg.getCid());
+		}
+		if (value != null) {
+			try {
+				proposed = new BatchReader(value, topology.getStaticConf().isUseSignatures())
+						.deserialiseRequests(topology);
+			} catch (RuntimeException e) {
+				LOGGER.warn("I am proc {}, error occurred while reading the propose[{}]! --{}", me, msg.getCid(),
+						e.getMessage());
+			}
+		}
+
+		List<Integer> found = new ArrayList<>();
+		List<TOMMessage> requests = new ArrayList<>();
+		for (int i = 0; i < indexes.length; i++) {
+			TOMMessage request = null;
+			if (proposed != null && indexes[i] >= 0 && indexes[i] < proposed.length) {
+				request = proposed[indexes[i]];
+				if (request == null || request.getSender() != msg.getSenders()[i]
+						|| request.getSession() != msg.getSessions()[i]
+						|| request.getSequence() != msg.getSequences()[i]) {
+					request = null;
+				}
+			}
+			if (request == null) {
+				request = findPending(msg.getSenders()[i], msg.getSessions()[i], msg.getSequences()[i]);
+			}
+			if (request != null) {
+				found.add(indexes[i]);
+				requests.add(request);
+			}
+		}
+		if (found.isEmpty()) {
+			return;
+		}
+
+		int[] foundIndexes = new int[found.size()];
+		byte[][] messages = new byte[found.size()][];
+		byte[][] signatures = new byte[found.size()][];
+		for (int i = 0; i < foundIndexes.length; i++) {
+			foundIndexes[i] = found.get(i);
+			messages[i] = requests.get(i).getSerializedMessage();
+			signatures[i] = requests.get(i).serializedMessageSignature;
+		}
+		communication.send(new int[] { msg.getSender() },
+				new PayloadResponseMessage(me, msg.getCid(), foundIndexes, messages, signatures));
+	}
+
+	/**
+	 * 收到其它节点应答的请求；以提议中的摘要校验每个请求，取得全部请求后交付还原的提议；
+	 *
+	 * @param msg
+	 */
+	public void payloadReceived(PayloadResponseMessage msg) {
+		Resolution resolution;
+		synchronized (this) {
+			resolution = resolutions.get(msg.getCid());
+			if (resolution == null) {
+				return;
+			}
+			int[] indexes = msg.getIndexes();
+			for (int i = 0; i < indexes.length; i++) {
+				if (indexes[i] >= 0 && indexes[i] < resolution.batch.size() && msg.getMessages()[i] != null) {
+					resolution.fill(indexes[i], ByteBuffer.wrap(msg.getMessages()[i]), msg.getSignatures()[i]);
+				}
+			}
+			if (!resolution.isComplete()) {
+				return;
+			}
+			resolutions.remove(msg.getCid());
+		}
+		complete(resolution);
+	}
+
+	public void shutdown() {
+		fetchTimer.shutdownNow();
+	}
+
+	private void complete(Resolution resolution) {
+		ConsensusMessage propose = resolution.propose;
+		byte[] value = resolution.batch.rebuild(resolution.messages, resolution.signatures);
+		ConsensusMessage resolved = new ConsensusMessage(MessageFactory.PROPOSE, propose.getNumber(),
+				propose.getEpoch(), propose.getSender(), value);
+		resolved.authenticated = propose.authenticated;
+		deliverer.accept(resolved);
+	}
+
+	private void fetch(Resolution resolution) {
+		int target;
+		PayloadRequestMessage request;
+		synchronized (this) {
+			if (resolutions.get(resolution.propose.getNumber()) != resolution) {
+				return;
+			}
+			if (resolution.propose.getNumber() <= tomLayer.getLastExec()
+					|| resolution.attempts >= resolution.targets.length * 2) {
+				LOGGER.warn("I am proc {}, give up resolving the hashed propose[{}] from {}!", me,
+						resolution.propose.getNumber(), resolution.propose.getSender());
+				resolutions.remove(resolution.propose.getNumber());
+				return;
+			}
+			target = resolution.targets[resolution.attempts % resolution.targets.length];
+			resolution.attempts++;
+
+			HashedBatch batch = resolution.batch;
+			int[] indexes = new int[resolution.missing];
+			int[] senders = new int[indexes.length];
+			int[] sessions = new int[indexes.length];
+			int[] sequences = new int[indexes.length];
+			for (int i = 0, j = 0; i < batch.size(); i++) {
+				if (resolution.messages[i] == null) {
+					indexes[j] = i;
+					senders[j] = batch.getSender(i);
+					sessions[j] = batch.getSession(i);
+					sequences[j] = batch.getSequence(i);
+					j++;
+				}
+			}
+			request = new PayloadRequestMessage(me, resolution.propose.getNumber(), indexes, senders, sessions,
+					sequences);
+		}
+		communication.send(new int[] { target }, request);
+		fetchTimer.schedule(() -> fetch(resolution), FETCH_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	private void removeObsoleteResolutions() {
+		int lastExec = tomLayer.getLastExec();
+		for (Iterator<Integer> it = resolutions.keySet().iterator(); it.hasNext();) {
+			if (it.next() <= lastExec) {
+				it.remove();
+			}
+		}
+	}
+
+	private TOMMessage findPending(int sender, int session, int sequence) {
+		return tomLayer.clientsManager.getPending(sender, session, sequence);
+	}
+
+	/**
+	 * 一个只包含请求摘要的提议的还原状态；
+	 */
+	private class Resolution {
+
+		private final ConsensusMessage propose;
+
+		private final HashedBatch batch;
+
+		private final ByteBuffer[] messages;
+
+		private final byte[][] signatures;
+
+		/**
+		 * 依次获取请求的节点，领导者在前；
+		 */
+		private final int[] targets;
+
+		private int missing;
+
+		private int attempts;
+
+		private Resolution(ConsensusMessage propose, HashedBatch batch) {
+			this.propose = propose;
+			this.batch = batch;
+			this.messages = new ByteBuffer[batch.size()];
+			this.signatures = new byte[batch.size()][];
+			this.missing = batch.size();
+
+			int[] others = topology.getCurrentViewOtherAcceptors();
+			List<Integer> order = new ArrayList<>();
+			order.add(propose.getSender());
+			for (int other : others) {
+				if (other != propose.getSender() && other != me) {
+					order.add(other);
+				}
+			}
+			this.targets = order.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		private void fill(int index, ByteBuffer message, byte[] signature) {
+			// 不使用签名时批次中没有请求的签名；
+			if (!topology.getStaticConf().isUseSignatures()) {
+				signature = null;
+			}
+			if (messages[index] != null || !batch.matches(index, message, signature)) {
+				return;
+			}
+			messages[index] = message;
+			signatures[index] = signature;
+			missing--;
+		}
+
+		private boolean isComplete() {
+			return missing == 0;
+		}
+	}
+}
@@ -16,14 +16,21 @@ limitations under the License.
 package bftsmart.consensus.roles;
 
 import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.consensus.app.SHA256Utils;
 import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.consensus.messages.ProposalChunkMessage;
 import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.tom.util.HashedBatch;
+import bftsmart.tom.util.ReedSolomon;
+import bftsmart.tom.util.TOMUtil;
 
 /**
  * This class represents the proposer role in the consensus protocol.
  **/
 public class Proposer {
 
+    private static final SHA256Utils HASHER = new SHA256Utils();
+
     private MessageFactory factory; // Factory for PaW messages
     private ServerCommunicationSystem communication; // Replicas comunication system
     private ReplicaTopology topology;
@@ -51,9 +58,50 @@ public class Proposer {
      * @param value Value to be proposed
      */
     public void startConsensus(int cid, byte[] value) {
+        if (topology.getStaticConf().isHashProposals() || topology.getStaticConf().getErasureCodingThreshold() > 0) {
+            // only the leader gets the whole batch, the followers resolve or rebuild it before they accept it
+            int[] others = topology.getCurrentViewOtherAcceptors();
+            if (others.length > 0) {
+                disseminate(cid, value, others);
+            }
+            communication.send(new int[] { topology.getStaticConf().getProcessId() },
+                    factory.createPropose(cid, 0, value));
+            return;
+        }
         //******* EDUARDO BEGIN **************//
         communication.send(this.topology.getCurrentViewProcesses(),
                 factory.createPropose(cid, 0, value));
         //******* EDUARDO END **************//
     }
+
+    private void disseminate(int cid, byte[] value, int[] followers) {
+        byte[] proposed = value;
+        if (topology.getStaticConf().isHashProposals()) {
+            int signatureSize = topology.getStaticConf().isUseSignatures() ? TOMUtil.getSignatureSize(topology) : 0;
+            proposed = HashedBatch.compact(value, signatureSize);
+        }
+
+        // any n-2f chunks rebuild the value, so the f faulty followers can not prevent the others from rebuilding it
+        int f = topology.getCurrentViewF();
+        int dataShards = topology.getCurrentViewN() - 2 * f;
+        int threshold = topology.getStaticConf().getErasureCodingThreshold();
+        if (threshold <= 0 || proposed.length < threshold || f <= 0 || dataShards < 1
+                || dataShards > followers.length - f) {
+            communication.send(followers, factory.createPropose(cid, 0, proposed));
+            return;
+        }
+
+        ReedSolomon codec = new ReedSolomon(dataShards, followers.length);
+        byte[][] chunks = codec.encode(proposed);
+        byte[][] chunkHashes = new byte[chunks.length][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunkHashes[i] = HASHER.hash(chunks[i]);
+        }
+        byte[] valueHash = HASHER.hash(proposed);
+        int me = topology.getStaticConf().getProcessId();
+        for (int i = 0; i < followers.length; i++) {
+            communication.send(new int[] { followers[i] }, new ProposalChunkMessage(me, cid, 0, me, i, dataShards,
+                    proposed.length, chunks[i], valueHash, chunkHashes));
+        }
+    }
 }
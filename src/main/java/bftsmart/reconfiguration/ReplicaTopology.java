@@ -1,6 +1,7 @@
 package bftsmart.reconfiguration;
 
 import bftsmart.reconfiguration.views.View;
+import bftsmart.tom.util.Tracer;
 
 public interface ReplicaTopology extends ViewTopology{
 
@@ -10,6 +11,13 @@ public interface ReplicaTopology extends ViewTopology{
 
 	int getQuorum();
 
+	/**
+	 * 节点的跟踪器；节点的各个组件（包括通讯层的接收队列）共享同一个跟踪器，以便统一导出指标；
+	 * 
+	 * @return
+	 */
+	Tracer getTracer();
+
 	
 	@Deprecated
 	void addHostInfo(int procId, String host, int consensusPort, int monitorPort, boolean secure, boolean monitorSecure);
@@ -33,6 +33,7 @@ import bftsmart.tom.core.TOMLayer;
 import bftsmart.tom.core.messages.TOMMessage;
 import bftsmart.tom.util.BytesUtils;
 import bftsmart.tom.util.TOMUtil;
+import bftsmart.tom.util.Tracer;
 
 /**
  *
@@ -52,10 +53,18 @@ public class ServerViewController extends ViewController implements ReplicaTopol
 	private int[] lastJoinStet;
 	private List<TOMMessage> updates = new LinkedList<TOMMessage>();
 	private TOMLayer tomLayer;
+	private final Tracer tracer;
 	// protected View initialView;
 
 	public ServerViewController(TOMConfiguration config, ViewStorage viewSotrage) {
 		super(config, viewSotrage);
+		// 自适应批处理的决策总是作为指标导出，与抽样率无关；
+		this.tracer = Tracer.create(config.getTraceSampleRate(), config.isAdaptiveBatching());
+	}
+
+	@Override
+	public Tracer getTracer() {
+		return tracer;
 	}
 
 	public void setTomLayer(TOMLayer tomLayer) {
@@ -0,0 +1,58 @@
+package bftsmart.reconfiguration.util;
+
+import java.io.Serializable;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import org.apache.commons.codec.binary.Base64;
+
+import bftsmart.tom.util.SignatureScheme;
+import bftsmart.tom.util.SignatureSchemes;
+
+/**
+ * 非 RSA 签名算法的默认密钥；与 {@link DefaultRSAKeyLoader} 一样，所有进程使用同一对密钥；
+ * <p>
+ * 支持 {@link SignatureSchemes#ED25519} 与 {@link SignatureSchemes#ECDSA}；
+ */
+public class DefaultSignatureKeyLoader implements RsaKeyLoader, Serializable {
+
+	private static final long serialVersionUID = 3894627717301554213L;
+
+	private static final String ED25519_UKEY = "MCowBQYDK2VwAyEAHamoGjzZNy2Gr0I1lX8LwK/x6wwAKQJJOBP+SYs7UcM=";
+
+	private static final String ED25519_PKEY = "MFECAQEwBQYDK2VwBCIEINQGWy8WULGrmEIeaxjFS52+KR8C0uTUSHe2JbGHgrqOgSEAHamoGjzZNy2Gr0I1lX8LwK/x6wwAKQJJOBP+SYs7UcM=";
+
+	private static final String ECDSA_UKEY = "MFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEUXxI60O66VQF1a6J4xWemUzk/qgJk2L2iEBmaiujpMaAPoh6ZUdWUrENITCgoMIYhP6tq0SnJY9KuXUTPzQggg==";
+
+	private static final String ECDSA_PKEY = "MIGTAgEAMBMGByqGSM49AgEGCCqGSM49AwEHBHkwdwIBAQQgha94fNLMP7BzZISD8xGfzdklzZyfEL8TMfHjpC4rxd2gCgYIKoZIzj0DAQehRANCAARRfEjrQ7rpVAXVronjFZ6ZTOT+qAmTYvaIQGZqK6OkxoA+iHplR1ZSsQ0hMKCgwhiE/q2rRKclj0q5dRM/NCCC";
+
+	private PublicKey pubKey;
+	private PrivateKey priKey;
+
+	public DefaultSignatureKeyLoader(SignatureScheme scheme) {
+		String ukey;
+		String pkey;
+		if (scheme == SignatureSchemes.ED25519) {
+			ukey = ED25519_UKEY;
+			pkey = ED25519_PKEY;
+		} else if (scheme == SignatureSchemes.ECDSA) {
+			ukey = ECDSA_UKEY;
+			pkey = ECDSA_PKEY;
+		} else {
+			throw new IllegalArgumentException("No default keys of signature scheme! --" + scheme.getName());
+		}
+		this.pubKey = scheme.decodePublicKey(Base64.decodeBase64(ukey));
+		this.priKey = scheme.decodePrivateKey(Base64.decodeBase64(pkey));
+	}
+
+	@Override
+	public PublicKey loadPublicKey(int id) throws Exception {
+		return pubKey;
+	}
+
+	@Override
+	public PrivateKey loadPrivateKey(int id) throws Exception {
+		return priKey;
+	}
+
+}
@@ -27,6 +27,8 @@ import java.util.StringTokenizer;
 import bftsmart.reconfiguration.views.NodeNetwork;
 import bftsmart.reconfiguration.views.NullNodeNetwork;
 import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.util.SignatureScheme;
+import bftsmart.tom.util.SignatureSchemes;
 import bftsmart.util.ConsensusUtils;
 
 public class TOMConfiguration implements Serializable, ReplicaConfiguration {
@@ -64,16 +66,30 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	private long timeTolerance;
 	private int numberOfNonces;
 	private int inQueueSize;
+	// max number of outstanding requests of a pipelined client proxy, default value: 128
+	private int clientInvokeWindow;
+	// implementation of the receive queue: linked or ring, default value: linked
+	private String inQueueType;
+	// how the consumers of the ring receive queue wait for messages: park, yield or spin, default value: park
+	private String inQueueWaitStrategy;
 	private int outQueueSize;
 	private boolean shutdownHookEnabled;
 //	private boolean useSenderThread;
 	private long sendRetryInterval;
 	private int sendRetryCount;
+	// max number of queued messages sent in one frame authenticated by a single MAC, default value: 1
+	private int sendFrameSize;
+	// number of io threads shared by the netty connections between replicas, 0 means the number of processors
+	private int nettyIoThreads;
+	// use the linux epoll transport for the netty connections between replicas if available, default value: false
+	private boolean nettyEpoll;
 	private RsaKeyLoader rsaLoader;
 	private int debug;
 	private int numNIOThreads;
 	private int useMACs;
 	private int useSignatures;
+	// signature scheme of the keys of clients and replicas: rsa, ed25519 or ecdsa, default value: rsa
+	private String signatureScheme;
 	private boolean stateTransferEnabled;
 	private int checkpointPeriod;
 	private int globalCheckpointPeriod;
@@ -92,6 +108,28 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	private HostsConfig outerHostConfig;
 	// epoch delay in millisecond, default value: 50
 	private int epochDelay;
+	// max number of consensus instances the leader may have in flight, default value: 1
+	private int pipelineDepth;
+	// number of threads verifying the requests of a proposal, 0 means verifying on the consensus thread
+	private int verifyThreads;
+	// run the pre compute of a batch on a dedicated thread and send ACCEPT when it completes, default value: false
+	private boolean asyncPreCompute;
+	// max milliseconds an appended log record may wait for the group commit of the log, default value: 10
+	private int syncLogMaxLatency;
+	// trace 1 in N events of the delivery and consensus paths, 0 means tracing is disabled
+	private int traceSampleRate;
+	// milliseconds of the read lease of the leader renewed by the heartbeats, 0 means leases are disabled
+	private long readLeaseDuration;
+	// propose request digests instead of payloads, resolved by the followers against their pending requests, default value: false
+	private boolean hashProposals;
+	// min bytes of a proposal disseminated as erasure coded chunks relayed by the followers, 0 means disabled
+	private int erasureCodingThreshold;
+	// tune the batch size and the batching delay of the leader by the observed load, default value: false
+	private boolean adaptiveBatching;
+	// max milliseconds the adaptive batching may wait for a batch to fill, default value: 5
+	private int batchMaxDelay;
+	// target milliseconds of the batching delay plus the consensus latency, 0 means maximizing the throughput
+	private int latencySlo;
 
 	public TOMConfiguration(int processId, Properties systemConfigs, HostsConfig hostsConfig) {
 		this.processId = processId;
@@ -100,7 +138,7 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		initSystemConfig(hostsConfig, systemConfigs);
 		initTomConfig(hostsConfig, systemConfigs);
 
-		this.rsaLoader = new DefaultRSAKeyLoader();
+		this.rsaLoader = defaultKeyLoader(signatureScheme);
 	}
 
 	/** Creates a new instance of TOMConfiguration */
@@ -108,7 +146,17 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 			HostsConfig outerHostConfig) {
 		this(processId, systemConfigs, hostConfig);
 		this.outerHostConfig = outerHostConfig;
-		this.rsaLoader = new DefaultRSAKeyLoader();
+	}
+
+	/**
+	 * 签名算法对应的默认密钥；
+	 */
+	private static RsaKeyLoader defaultKeyLoader(String signatureScheme) {
+		SignatureScheme scheme = SignatureSchemes.get(signatureScheme);
+		if (scheme == SignatureSchemes.RSA) {
+			return new DefaultRSAKeyLoader();
+		}
+		return new DefaultSignatureKeyLoader(scheme);
 	}
 
 	private void initSystemConfig(HostsConfig hosts, Properties configs) {
@@ -345,6 +393,33 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 				sendRetryCount = Integer.parseInt(s);
 			}
 
+			s = (String) configs.remove("system.communication.send.frameSize");
+			if (s == null) {
+				sendFrameSize = 1;
+			} else {
+				sendFrameSize = Integer.parseInt(s);
+				if (sendFrameSize < 1) {
+					sendFrameSize = 1;
+				}
+			}
+
+			s = (String) configs.remove("system.communication.netty.ioThreads");
+			if (s == null) {
+				nettyIoThreads = 0;
+			} else {
+				nettyIoThreads = Integer.parseInt(s);
+				if (nettyIoThreads < 0) {
+					nettyIoThreads = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.communication.netty.epoll");
+			if (s == null) {
+				nettyEpoll = false;
+			} else {
+				nettyEpoll = Boolean.parseBoolean(s);
+			}
+
 			s = (String) configs.remove("system.communication.numNIOThreads");
 			if (s == null) {
 				numNIOThreads = 2;
@@ -366,6 +441,10 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 				useSignatures = Integer.parseInt(s);
 			}
 
+			s = (String) configs.remove("system.communication.signatureScheme");
+			// 校验算法已注册；
+			signatureScheme = SignatureSchemes.get(s).getName();
+
 			s = (String) configs.remove("system.totalordermulticast.state_transfer");
 			if (s == null) {
 				stateTransferEnabled = false;
@@ -406,6 +485,30 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 
 			}
 
+			s = (String) configs.remove("system.client.invoke.window");
+			if (s == null) {
+				clientInvokeWindow = 128;
+			} else {
+				clientInvokeWindow = Integer.parseInt(s);
+				if (clientInvokeWindow < 1) {
+					clientInvokeWindow = 1;
+				}
+			}
+
+			s = (String) configs.remove("system.communication.inQueueType");
+			if (s == null || s.trim().isEmpty()) {
+				inQueueType = "linked";
+			} else {
+				inQueueType = s.trim().toLowerCase();
+			}
+
+			s = (String) configs.remove("system.communication.inQueueWaitStrategy");
+			if (s == null || s.trim().isEmpty()) {
+				inQueueWaitStrategy = "park";
+			} else {
+				inQueueWaitStrategy = s.trim().toLowerCase();
+			}
+
 			s = (String) configs.remove("system.communication.outQueueSize");
 			if (s == null) {
 				outQueueSize = 1000;
@@ -491,6 +594,108 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 					epochDelay = 0;
 				}
 			}
+
+			s = (String) configs.remove("system.totalordermulticast.pipeline_depth");
+			if (s == null) {
+				pipelineDepth = 1;
+			} else {
+				pipelineDepth = Integer.parseInt(s);
+				if (pipelineDepth < 1) {
+					pipelineDepth = 1;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.verify_threads");
+			if (s == null) {
+				verifyThreads = 0;
+			} else {
+				verifyThreads = Integer.parseInt(s);
+				if (verifyThreads < 0) {
+					verifyThreads = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.async_precompute");
+			if (s == null) {
+				asyncPreCompute = false;
+			} else {
+				asyncPreCompute = Boolean.parseBoolean(s);
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.sync_log_max_latency");
+			if (s == null) {
+				syncLogMaxLatency = 10;
+			} else {
+				syncLogMaxLatency = Integer.parseInt(s);
+				if (syncLogMaxLatency < 0) {
+					syncLogMaxLatency = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.trace_sample_rate");
+			if (s == null) {
+				traceSampleRate = 0;
+			} else {
+				traceSampleRate = Integer.parseInt(s);
+				if (traceSampleRate < 0) {
+					traceSampleRate = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.read_lease");
+			if (s == null) {
+				readLeaseDuration = 0;
+			} else {
+				readLeaseDuration = Long.parseLong(s);
+				if (readLeaseDuration < 0 || isBFT) {
+					// 拜占庭容错模式下不能只采信领导者一个节点的应答；
+					readLeaseDuration = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.hash_proposals");
+			if (s == null) {
+				hashProposals = false;
+			} else {
+				hashProposals = Boolean.parseBoolean(s);
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.erasure_coding_threshold");
+			if (s == null) {
+				erasureCodingThreshold = 0;
+			} else {
+				erasureCodingThreshold = Integer.parseInt(s);
+				if (erasureCodingThreshold < 0) {
+					erasureCodingThreshold = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.adaptive_batching");
+			if (s == null) {
+				adaptiveBatching = false;
+			} else {
+				adaptiveBatching = Boolean.parseBoolean(s);
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.batch_max_delay");
+			if (s == null) {
+				batchMaxDelay = 5;
+			} else {
+				batchMaxDelay = Integer.parseInt(s);
+				if (batchMaxDelay < 0) {
+					batchMaxDelay = 0;
+				}
+			}
+
+			s = (String) configs.remove("system.totalordermulticast.latency_slo");
+			if (s == null) {
+				latencySlo = 0;
+			} else {
+				latencySlo = Integer.parseInt(s);
+				if (latencySlo < 0) {
+					latencySlo = 0;
+				}
+			}
 		} catch (Exception e) {
 			e.printStackTrace(System.err);
 		}
@@ -722,6 +927,16 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		return inQueueSize;
 	}
 
+	@Override
+	public String getInQueueType() {
+		return inQueueType;
+	}
+
+	@Override
+	public String getInQueueWaitStrategy() {
+		return inQueueWaitStrategy;
+	}
+
 	@Override
 	public int getOutQueueSize() {
 		return outQueueSize;
@@ -751,6 +966,21 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 		return sendRetryCount;
 	}
 
+	@Override
+	public int getSendFrameSize() {
+		return sendFrameSize;
+	}
+
+	@Override
+	public int getNettyIoThreads() {
+		return nettyIoThreads;
+	}
+
+	@Override
+	public boolean isNettyEpoll() {
+		return nettyEpoll;
+	}
+
 	/**
 	 * *
 	 */
@@ -930,4 +1160,69 @@ public class TOMConfiguration implements Serializable, ReplicaConfiguration {
 	public int getEpochDelay() {
 		return epochDelay;
 	}
+
+	@Override
+	public int getPipelineDepth() {
+		return pipelineDepth;
+	}
+
+	@Override
+	public int getVerifyThreads() {
+		return verifyThreads;
+	}
+
+	@Override
+	public boolean isAsyncPreCompute() {
+		return asyncPreCompute;
+	}
+
+	@Override
+	public int getSyncLogMaxLatency() {
+		return syncLogMaxLatency;
+	}
+
+	@Override
+	public int getTraceSampleRate() {
+		return traceSampleRate;
+	}
+
+	@Override
+	public int getClientInvokeWindow() {
+		return clientInvokeWindow;
+	}
+
+	@Override
+	public String getSignatureScheme() {
+		return signatureScheme;
+	}
+
+	@Override
+	public long getReadLeaseDuration() {
+		return readLeaseDuration;
+	}
+
+	@Override
+	public boolean isHashProposals() {
+		return hashProposals;
+	}
+
+	@Override
+	public int getErasureCodingThreshold() {
+		return erasureCodingThreshold;
+	}
+
+	@Override
+	public boolean isAdaptiveBatching() {
+		return adaptiveBatching;
+	}
+
+	@Override
+	public int getBatchMaxDelay() {
+		return batchMaxDelay;
+	}
+
+	@Override
+	public int getLatencySlo() {
+		return latencySlo;
+	}
 }
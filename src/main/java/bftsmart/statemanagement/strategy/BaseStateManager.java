@@ -411,7 +411,7 @@ public abstract class BaseStateManager implements StateManager {
                     byte[][] commands = ((DefaultTransactionReplayState) replayState).getMessageBatches()[i].commands;
                     MessageContext[] messageContexts =  ((DefaultTransactionReplayState) replayState).getMessageBatches()[i].msgCtx;
                     LOGGER.info("I am proc {}, I will execute transactions replay!,replay cid = {}", tomLayer.getCurrentProcessId(), cid );
-                    ((DefaultRecoverable) tomLayer.getDeliveryThread().getRecoverer()).appExecuteBatch(commands, messageContexts, false);
+                    ((DefaultRecoverable) tomLayer.getDeliveryThread().getRecoverer()).replayBatch(commands, messageContexts);
                 }
                 this.tomLayer.getStateManager().setLastCID(replayState.getEndCid());
                 this.tomLayer.setLastExec(replayState.getEndCid());
@@ -0,0 +1,235 @@
+package bftsmart.tom;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.tom.util.RequestFraming;
+
+/**
+ * 合并请求的客户端代理；
+ * <p>
+ * 在短时间内提交的多个应用操作按 {@link RequestFraming} 打包为一个有序请求发送，节点以同样的帧格式返回各个操作的结果，
+ * 代理拆分应答后分别完成每个操作的 Future；由此多个小操作共享一个请求的消息头、签名或 MAC，以及节点的客户端请求处理开销；
+ * <p>
+ * 一批操作达到最大操作数或者最大字节数时立即发送，否则在第一个操作提交后等待最大延迟再发送；
+ * <p>
+ * 节点需要以同样的帧格式拆分请求并打包结果，参考
+ * {@link bftsmart.tom.server.defaultservices.DefaultRecoverable#DefaultRecoverable(RequestFraming)}；
+ */
+public class CoalescingServiceProxy implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingServiceProxy.class);
+
+	private final Function<byte[], CompletableFuture<byte[]>> invoker;
+
+	private final RequestFraming framing;
+
+	private final int maxOperations;
+
+	private final int maxBytes;
+
+	private final long maxDelayMicros;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * 正在收集操作的批次；
+	 */
+	private Batch current;
+
+	private boolean closed = false;
+
+	/**
+	 * 基于流水线代理合并请求；关闭此代理不会关闭流水线代理；
+	 *
+	 * @param proxy          发送合并请求的流水线代理；
+	 * @param framing        帧格式；
+	 * @param maxOperations  一个请求中最多合并的操作数；
+	 * @param maxBytes       一个请求中合并的操作的最大总字节数；
+	 * @param maxDelayMicros 第一个操作提交后最多等待的微秒数；小于等于 0 表示只合并同时提交的操作；
+	 */
+	public CoalescingServiceProxy(PipelinedServiceProxy proxy, RequestFraming framing, int maxOperations,
+			int maxBytes, long maxDelayMicros) {
+		this(proxy::invokeOrdered, framing, maxOperations, maxBytes, maxDelayMicros);
+	}
+
+	/**
+	 * @param invoker        发送合并请求并返回应答的 Future 的函数；
+	 * @param framing        帧格式；
+	 * @param maxOperations  一个请求中最多合并的操作数；
+	 * @param maxBytes       一个请求中合并的操作的最大总字节数；
+	 * @param maxDelayMicros 第一个操作提交后最多等待的微秒数；小于等于 0 表示只合并同时提交的操作；
+	 */
+	public CoalescingServiceProxy(Function<byte[], CompletableFuture<byte[]>> invoker, RequestFraming framing,
+			int maxOperations, int maxBytes, long maxDelayMicros) {
+		if (maxOperations < 1 || maxBytes < 1) {
+			throw new IllegalArgumentException("The max operations and max bytes of a request must be positive!");
+		}
+		this.invoker = invoker;
+		this.framing = framing;
+		this.maxOperations = maxOperations;
+		this.maxBytes = maxBytes;
+		this.maxDelayMicros = maxDelayMicros;
+
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "Coalescing-Proxy-Timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		this.timer = timer;
+	}
+
+	/**
+	 * 提交一个有序执行的操作，返回该操作结果的 Future；
+	 * <p>
+	 * 发送请求时如果流水线代理的窗口已满，提交操作的线程（或者发送延迟到期的批次的定时线程）阻塞等待；
+	 *
+	 * @param operation 操作；可以为 null，节点执行时同样得到 null；
+	 * @return
+	 */
+	public CompletableFuture<byte[]> invokeOrdered(byte[] operation) {
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		Batch full = null;
+		lock.lock();
+		try {
+			if (closed) {
+				future.completeExceptionally(new IllegalStateException("Proxy has been closed!"));
+				return future;
+			}
+			if (current == null) {
+				current = new Batch();
+				if (maxDelayMicros > 0) {
+					Batch batch = current;
+					batch.flushTask = timer.schedule(() -> flush(batch), maxDelayMicros, TimeUnit.MICROSECONDS);
+				}
+			}
+			current.add(operation, future);
+			if (maxDelayMicros <= 0 || current.operations.size() >= maxOperations || current.bytes >= maxBytes) {
+				full = current;
+				current = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (full != null) {
+			send(full);
+		}
+		return future;
+	}
+
+	/**
+	 * 发送延迟到期的批次；
+	 */
+	private void flush(Batch batch) {
+		lock.lock();
+		try {
+			if (current != batch) {
+				// 已经因为达到上限而发送；
+				return;
+			}
+			current = null;
+		} finally {
+			lock.unlock();
+		}
+		send(batch);
+	}
+
+	private void send(Batch batch) {
+		if (batch.flushTask != null) {
+			batch.flushTask.cancel(false);
+		}
+		CompletableFuture<byte[]> reply;
+		try {
+			reply = invoker.apply(framing.pack(batch.operations));
+		} catch (RuntimeException e) {
+			batch.fail(e);
+			return;
+		}
+		reply.whenComplete((replyBytes, error) -> {
+			if (error != null) {
+				batch.fail(error);
+				return;
+			}
+			List<byte[]> results;
+			try {
+				results = framing.unpack(replyBytes);
+			} catch (RuntimeException e) {
+				LOGGER.error("Illegal reply of the coalesced request! --" + e.getMessage(), e);
+				batch.fail(e);
+				return;
+			}
+			if (results.size() != batch.futures.size()) {
+				batch.fail(new IllegalStateException("The reply contains " + results.size() + " results for "
+						+ batch.futures.size() + " coalesced operations!"));
+				return;
+			}
+			for (int i = 0; i < results.size(); i++) {
+				batch.futures.get(i).complete(results.get(i));
+			}
+		});
+	}
+
+	/**
+	 * 关闭代理；已提交的操作立即发送；
+	 */
+	@Override
+	public void close() {
+		Batch batch;
+		lock.lock();
+		try {
+			closed = true;
+			batch = current;
+			current = null;
+		} finally {
+			lock.unlock();
+		}
+		if (batch != null) {
+			send(batch);
+		}
+		timer.shutdown();
+	}
+
+	/**
+	 * 合并为一个请求的一批操作；
+	 */
+	private static final class Batch {
+
+		private final List<byte[]> operations = new ArrayList<>();
+
+		private final List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+
+		private int bytes;
+
+		private ScheduledFuture<?> flushTask;
+
+		void add(byte[] operation, CompletableFuture<byte[]> future) {
+			operations.add(operation);
+			futures.add(future);
+			// 帧格式支持 null 操作；
+			if (operation != null) {
+				bytes += operation.length;
+			}
+		}
+
+		void fail(Throwable error) {
+			for (CompletableFuture<byte[]> future : futures) {
+				future.completeExceptionally(error);
+			}
+		}
+	}
+}
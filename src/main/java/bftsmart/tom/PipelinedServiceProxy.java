@@ -0,0 +1,394 @@
+package bftsmart.tom;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.communication.client.CommunicationSystemClientSideFactory;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.reconfiguration.views.ViewStorage;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.util.Extractor;
+import bftsmart.tom.util.TOMUtil;
+import utils.net.SSLSecurity;
+
+/**
+ * 允许同一会话中有多个未完成请求的客户端代理；
+ * <p>
+ * 与 {@link ServiceProxy} 在整个请求往返期间持有发送锁不同，此代理只在分配序号与发送请求时持有发送锁，以保证有序请求按序号的顺序到达节点；
+ * 之后立即返回 {@link CompletableFuture}，调用者无需为了并发而创建多个代理实例；
+ * <p>
+ * 未完成的请求按请求类型与序号登记在并发映射表中；每个请求的应答按节点在视图中的位置记录在原子数组中，
+ * 收到的应答达到应答法定数量时完成对应的 Future，整个匹配过程不加锁；
+ * <p>
+ * 未完成的请求数受窗口限制，窗口已满时调用者阻塞，直到有请求完成；窗口大小由 system.client.invoke.window 配置；
+ * <p>
+ * 只支持 {@link TOMMessageType#ORDERED_REQUEST} 与 {@link TOMMessageType#UNORDERED_REQUEST}；
+ */
+public class PipelinedServiceProxy extends TOMSender {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PipelinedServiceProxy.class);
+
+	private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+	/**
+	 * 分配序号与发送请求的锁；保证有序请求的序号与到达节点的顺序一致；
+	 */
+	private final ReentrantLock sendLock = new ReentrantLock();
+
+	private final Semaphore window;
+
+	private final int windowSize;
+
+	private final ScheduledExecutorService timer;
+
+	private final Comparator<byte[]> comparator;
+
+	private final Extractor extractor;
+
+	private volatile int invokeTimeout = 150;
+
+	private volatile boolean closed = false;
+
+	public PipelinedServiceProxy(TOMConfiguration config, ViewStorage viewStorage) {
+		this(config, viewStorage, null, null, new SSLSecurity());
+	}
+
+	public PipelinedServiceProxy(TOMConfiguration config, ViewStorage viewStorage, Comparator<byte[]> replyComparator,
+			Extractor replyExtractor, SSLSecurity sslSecurity) {
+		this(new ClientViewController(config, viewStorage), sslSecurity, replyComparator, replyExtractor);
+	}
+
+	private PipelinedServiceProxy(ClientViewController viewController, SSLSecurity sslSecurity,
+			Comparator<byte[]> replyComparator, Extractor replyExtractor) {
+		this(viewController,
+				CommunicationSystemClientSideFactory.getCommunicationSystemClientSide(
+						viewController.getStaticConf().getProcessId(), viewController, sslSecurity),
+				viewController.getStaticConf().getClientInvokeWindow(), replyComparator, replyExtractor);
+	}
+
+	/**
+	 * 以指定的视图控制器与客户端通讯层创建代理；
+	 *
+	 * @param viewController
+	 * @param cs
+	 * @param windowSize      最多允许的未完成请求数；
+	 * @param replyComparator
+	 * @param replyExtractor
+	 */
+	public PipelinedServiceProxy(ClientViewController viewController, CommunicationSystemClientSide cs, int windowSize,
+			Comparator<byte[]> replyComparator, Extractor replyExtractor) {
+		init(viewController, cs);
+
+		this.windowSize = windowSize;
+		this.window = new Semaphore(windowSize);
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "Pipelined-Proxy-Timer-" + getProcessId());
+			thread.setDaemon(true);
+			return thread;
+		});
+		// 绝大多数请求在超时之前完成，取消的超时任务立即从队列中移除；
+		timer.setRemoveOnCancelPolicy(true);
+		this.timer = timer;
+
+		this.comparator = (replyComparator != null) ? replyComparator : (o1, o2) -> Arrays.equals(o1, o2) ? 0 : -1;
+		this.extractor = (replyExtractor != null) ? replyExtractor
+				: (replies, sameContent, lastReceived) -> replies[lastReceived];
+	}
+
+	/**
+	 * 等待应答的超时时长（秒）；超时的请求以 {@link TimeoutException} 完成；
+	 *
+	 * @return
+	 */
+	public int getInvokeTimeout() {
+		return invokeTimeout;
+	}
+
+	public void setInvokeTimeout(int invokeTimeout) {
+		this.invokeTimeout = invokeTimeout;
+	}
+
+	/**
+	 * 最多允许的未完成请求数；
+	 *
+	 * @return
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * 当前未完成的请求数；
+	 *
+	 * @return
+	 */
+	public int getPendingCount() {
+		return windowSize - window.availablePermits();
+	}
+
+	public CompletableFuture<byte[]> invokeOrdered(byte[] request) {
+		return invoke(request, TOMMessageType.ORDERED_REQUEST);
+	}
+
+	public CompletableFuture<byte[]> invokeUnordered(byte[] request) {
+		return invoke(request, TOMMessageType.UNORDERED_REQUEST);
+	}
+
+	/**
+	 * 发送请求，返回请求应答的 Future；
+	 * <p>
+	 * 窗口已满时阻塞，直到有未完成的请求完成；
+	 *
+	 * @param request 请求内容；
+	 * @param reqType 请求类型；
+	 * @return
+	 */
+	public CompletableFuture<byte[]> invoke(byte[] request, TOMMessageType reqType) {
+		if (reqType != TOMMessageType.ORDERED_REQUEST && reqType != TOMMessageType.UNORDERED_REQUEST) {
+			throw new IllegalArgumentException("Unsupported request type[" + reqType + "]!");
+		}
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		try {
+			window.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+			return future;
+		}
+		if (closed) {
+			window.release();
+			future.completeExceptionally(new IllegalStateException("Proxy has been closed!"));
+			return future;
+		}
+
+		send(request, reqType, future);
+		return future;
+	}
+
+	private void send(byte[] request, TOMMessageType reqType, CompletableFuture<byte[]> future) {
+		sendLock.lock();
+		try {
+			int reqId = generateRequestId(reqType);
+			PendingRequest pending = new PendingRequest(reqId, reqType, request, future,
+					getViewManager().getCurrentViewN(), getReplyQuorum());
+			pending.timeout = timer.schedule(() -> timeout(pending), invokeTimeout, TimeUnit.SECONDS);
+			pendingRequests.put(pending.key, pending);
+			try {
+				TOMulticast(request, reqId, generateOperationId(), reqType);
+			} catch (RuntimeException e) {
+				if (complete(pending)) {
+					future.completeExceptionally(e);
+				}
+			}
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	private void timeout(PendingRequest pending) {
+		if (complete(pending)) {
+			LOGGER.warn("Reply timeout! --[clientId={}][reqId={}][type={}][received={}][quorum={}]", getProcessId(),
+					pending.reqId, pending.reqType, pending.received.get(), pending.quorum);
+			pending.future.completeExceptionally(new TimeoutException(
+					"Reply timeout for request[" + pending.reqId + "] after " + invokeTimeout + " seconds!"));
+		}
+	}
+
+	/**
+	 * 结束未完成的请求：注销请求并释放窗口；只有第一次调用返回 true；
+	 */
+	private boolean complete(PendingRequest pending) {
+		if (!unregister(pending)) {
+			return false;
+		}
+		window.release();
+		return true;
+	}
+
+	/**
+	 * 注销未完成的请求，不释放窗口；只有第一次调用返回 true；
+	 */
+	private boolean unregister(PendingRequest pending) {
+		if (!pendingRequests.remove(pending.key, pending)) {
+			return false;
+		}
+		pending.timeout.cancel(false);
+		return true;
+	}
+
+	@Override
+	public void replyReceived(TOMMessage reply) {
+		PendingRequest pending = pendingRequests.get(key(reply.getReqType(), reply.getSequence()));
+		if (pending == null) {
+			LOGGER.debug("Ignore the reply of the completed request! --[sender={}][reqId={}]", reply.getSender(),
+					reply.getSequence());
+			return;
+		}
+		int pos = getViewManager().getCurrentViewPos(reply.getSender());
+		if (pos < 0 || pos >= pending.replies.length()) {
+			LOGGER.debug("Ignore the reply from a process out of the current view! --[sender={}]", reply.getSender());
+			return;
+		}
+		// 每个节点只记录第一个应答；
+		if (!pending.replies.compareAndSet(pos, null, reply)) {
+			return;
+		}
+		int received = pending.received.incrementAndGet();
+
+		// 记录应答之后再比较，最后记录应答的线程一定能看到全部已记录的应答；
+		int sameContent = 0;
+		for (int i = 0; i < pending.replies.length(); i++) {
+			TOMMessage other = pending.replies.get(i);
+			if (other != null && comparator.compare(other.getContent(), reply.getContent()) == 0) {
+				sameContent++;
+			}
+		}
+		if (sameContent >= pending.quorum) {
+			TOMMessage[] replies = new TOMMessage[pending.replies.length()];
+			for (int i = 0; i < replies.length; i++) {
+				replies[i] = pending.replies.get(i);
+			}
+			TOMMessage response = extractor.extractResponse(replies, sameContent, pos);
+			if (unregister(pending)) {
+				deliver(pending, response);
+			}
+		} else if (received == pending.replies.length() && complete(pending)) {
+			// the response can be null if n replies are received but there isn't a replyQuorum of matching replies;
+			pending.future.completeExceptionally(
+					new IllegalStateException("Received all the replies without " + pending.quorum + " of them matching!"));
+		}
+	}
+
+	/**
+	 * 以应答完成已注销的请求并释放请求占用的窗口；节点因视图过时没有执行请求时，更新视图后沿用同一窗口重新发送；
+	 */
+	private void deliver(PendingRequest pending, TOMMessage response) {
+		try {
+			if (pending.reqType == TOMMessageType.ORDERED_REQUEST) {
+				if (response.getViewID() != getViewManager().getCurrentViewId() && response.getViewContent() != null) {
+					LOGGER.warn("Service proxy view id is different from the service replica, will update local view!");
+					reconfigureTo((View) TOMUtil.getObject(response.getViewContent()));
+				}
+			} else if (response.getViewID() > getViewManager().getCurrentViewId()) {
+				Object r = TOMUtil.getObject(response.getContent());
+				if (r instanceof View) {
+					// 节点没有执行使用过时视图的请求，更新视图后重新发送；
+					// 重新发送沿用此请求占用的窗口，不等待窗口，因此可以直接在接收应答的线程中执行；
+					reconfigureTo((View) r);
+					if (closed) {
+						throw new IllegalStateException("Proxy has been closed!");
+					}
+					send(pending.request, pending.reqType, pending.future);
+					return;
+				}
+			}
+			window.release();
+			pending.future.complete(response.getContent());
+		} catch (RuntimeException e) {
+			window.release();
+			pending.future.completeExceptionally(e);
+		}
+	}
+
+	private void reconfigureTo(View v) {
+		sendLock.lock();
+		try {
+			if (v.getId() <= getViewManager().getCurrentViewId()) {
+				return;
+			}
+			LOGGER.debug("Installing a most up-to-date view with id {}", v.getId());
+			getViewManager().reconfigureTo(v);
+			getViewManager().getViewStore().storeView(v);
+			getCommunicationSystem().updateConnections();
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	private int getReplyQuorum() {
+		if (getViewManager().getStaticConf().isBFT()) {
+			return getViewManager().getCurrentViewF() + 1;
+		} else {
+			return (int) Math.ceil((getViewManager().getCurrentViewN()) / 2) + 1;
+		}
+	}
+
+	/**
+	 * 关闭代理；未完成的请求以异常完成；
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (PendingRequest pending : pendingRequests.values()) {
+			if (complete(pending)) {
+				pending.future.completeExceptionally(new IllegalStateException("Proxy has been closed!"));
+			}
+		}
+		timer.shutdownNow();
+		super.close();
+	}
+
+	/**
+	 * 有序请求与无序请求的序号各自独立分配，因此以请求类型与序号共同标识请求；
+	 */
+	private static long key(TOMMessageType reqType, int reqId) {
+		return ((long) reqType.ordinal() << 32) | (reqId & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * 未完成的请求；
+	 */
+	private static final class PendingRequest {
+
+		private final long key;
+
+		private final int reqId;
+
+		private final TOMMessageType reqType;
+
+		private final byte[] request;
+
+		private final CompletableFuture<byte[]> future;
+
+		private final int quorum;
+
+		/**
+		 * 按节点在视图中的位置记录的应答；
+		 */
+		private final AtomicReferenceArray<TOMMessage> replies;
+
+		private final AtomicInteger received = new AtomicInteger();
+
+		private ScheduledFuture<?> timeout;
+
+		PendingRequest(int reqId, TOMMessageType reqType, byte[] request, CompletableFuture<byte[]> future, int n,
+				int quorum) {
+			this.key = key(reqType, reqId);
+			this.reqId = reqId;
+			this.reqType = reqType;
+			this.request = request;
+			this.future = future;
+			this.quorum = quorum;
+			this.replies = new AtomicReferenceArray<>(n);
+		}
+	}
+}
@@ -86,6 +86,20 @@ public interface ReplicaConfiguration {
 
 	int getInQueueSize();
 
+	/**
+	 * 接收队列的实现：linked 为基于链表的阻塞队列；ring 为预先分配的环形缓冲区；
+	 * 
+	 * @return
+	 */
+	String getInQueueType();
+
+	/**
+	 * 环形缓冲区接收队列的消费者等待消息的策略：park、yield 或 spin；
+	 * 
+	 * @return
+	 */
+	String getInQueueWaitStrategy();
+
 	int getOutQueueSize();
 
 	/**
@@ -102,6 +116,27 @@ public interface ReplicaConfiguration {
 	 */
 	int getSendRetryCount();
 
+	/**
+	 * 一次发送的帧中最多包含的消息数；同一帧中的消息只计算一个 MAC；为 1 时每个消息单独发送；
+	 * 
+	 * @return
+	 */
+	int getSendFrameSize();
+
+	/**
+	 * 节点间的 Netty 连接共享的 IO 线程数；为 0 时使用可用的处理器数；
+	 * 
+	 * @return
+	 */
+	int getNettyIoThreads();
+
+	/**
+	 * 节点间的 Netty 连接是否使用 Linux 的 epoll 传输；当前平台不支持时使用 NIO 传输；
+	 * 
+	 * @return
+	 */
+	boolean isNettyEpoll();
+
 	/**
 	 * *
 	 */
@@ -122,6 +157,15 @@ public interface ReplicaConfiguration {
 	 */
 	boolean isUseSignatures();
 
+	/**
+	 * 客户端与节点密钥的签名算法名称：rsa、ed25519 或 ecdsa；参考 {@link bftsmart.tom.util.SignatureSchemes}；
+	 * <p>
+	 * 返回 null 时使用 rsa；
+	 * 
+	 * @return
+	 */
+	String getSignatureScheme();
+
 	/**
 	 * Indicates if MACs should be used (1) or not (0) to authenticate client-server
 	 * and server-server messages
@@ -188,4 +232,101 @@ public interface ReplicaConfiguration {
 	void addHostInfo(int id, String host, int port, int monitorPort, boolean secure, boolean monitorSecure);
 
 	int getEpochDelay();
-}
\ No newline at end of file
+
+	/**
+	 * 领导者可同时发起的最大共识实例数（流水线深度）；为 1 时等同于逐个共识执行；
+	 * 
+	 * @return
+	 */
+	int getPipelineDepth();
+
+	/**
+	 * 并行验证提议中的请求（客户端签名及请求有效性）的线程数；为 0 时在共识线程上依次验证；
+	 * 
+	 * @return
+	 */
+	int getVerifyThreads();
+
+	/**
+	 * 是否在独立的线程上异步执行批次的预计算；预计算完成后再发送 ACCEPT 消息，期间可继续处理其它共识消息；
+	 * 
+	 * @return
+	 */
+	boolean isAsyncPreCompute();
+
+	/**
+	 * 同步写日志时，追加的日志记录等待刷盘的最大毫秒数；
+	 * <p>
+	 * 仅在有其它线程正在并发追加记录时等待，这些记录合并为一次刷盘；没有并发追加时立即刷盘；0 表示有待刷盘的记录时立即刷盘；
+	 * 
+	 * @return
+	 */
+	int getSyncLogMaxLatency();
+
+	/**
+	 * 交付与共识路径的跟踪抽样率；每 N 个事件抽样 1 个记录耗时，0 表示关闭跟踪；<br>
+	 * 启用自适应批处理时，即使关闭抽样也记录计数器与直方图；
+	 * 
+	 * @return
+	 */
+	int getTraceSampleRate();
+
+	/**
+	 * 流水线客户端代理最多允许的未完成请求数；
+	 * 
+	 * @return
+	 */
+	int getClientInvokeWindow();
+
+	/**
+	 * 领导者读租约的毫秒数，0 表示不启用租约；
+	 * <p>
+	 * 租约由心跳及其确认续约，租约有效期间领导者不经共识在本地应答租约读请求；应大于心跳周期并小于心跳超时时长；
+	 * <p>
+	 * 拜占庭容错模式下不启用租约；
+	 * 
+	 * @return
+	 */
+	long getReadLeaseDuration();
+
+	/**
+	 * 领导者是否只提议请求的摘要；
+	 * <p>
+	 * 跟随者以本地的待处理请求还原提议的完整批次，只从领导者或者其它节点获取缺少的请求；
+	 * 
+	 * @return
+	 */
+	boolean isHashProposals();
+
+	/**
+	 * 以纠删码分发提议的最小字节数，0 表示不启用；
+	 * <p>
+	 * 领导者把达到此大小的提议编码为分片，每个跟随者收到一个分片并转发给其它跟随者，任意 n-2f 个分片即可还原提议；
+	 * 
+	 * @return
+	 */
+	int getErasureCodingThreshold();
+
+	/**
+	 * 领导者是否根据观测到的负载调整批次大小与等待批次的时长；
+	 * <p>
+	 * 启用时批次决策总是记录在跟踪器的 batching.* 指标中，与跟踪抽样率无关；
+	 * 
+	 * @return
+	 */
+	boolean isAdaptiveBatching();
+
+	/**
+	 * 自适应批处理等待批次填满的最大毫秒数；
+	 * 
+	 * @return
+	 */
+	int getBatchMaxDelay();
+
+	/**
+	 * 自适应批处理的延迟目标（毫秒），即等待批次的时长与共识耗时之和；0 表示以吞吐量优先；
+	 * 
+	 * @return
+	 */
+	int getLatencySlo();
+}
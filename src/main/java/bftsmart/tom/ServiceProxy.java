@@ -15,6 +15,8 @@ limitations under the License.
  */
 package bftsmart.tom;
 
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.reconfiguration.ClientViewController;
 import bftsmart.reconfiguration.ReconfigureReply;
 import bftsmart.reconfiguration.util.TOMConfiguration;
 import bftsmart.reconfiguration.views.View;
@@ -54,6 +56,7 @@ public class ServiceProxy extends TOMSender {
 	private TOMMessage replies[] = null; // Replies from replicas are stored here
 	private int receivedReplies = 0; // Number of received replies
 	private TOMMessage response = null; // Reply delivered to the application
+	private int responseWatermark = -1; // watermark vouched for by the replies of the response
 	private int invokeTimeout = 150;
 	private Comparator<byte[]> comparator;
 	private Extractor extractor;
@@ -62,11 +65,33 @@ public class ServiceProxy extends TOMSender {
 	private HashResponseController hashResponseController;
 	private int invokeUnorderedHashedTimeout = 10;
 	private boolean viewObsolete = false;
+	// 只采信一个节点的应答：租约读与水位读；
+	private boolean singleReply = false;
+	// 已观察到的最大的共识 id，随只读请求发送，节点执行到该共识之后才应答；
+	private volatile int watermark = -1;
+	// 租约读已知的领导者，租约读请求只发送给它；-1 表示未知，请求发送给全部节点；
+	private volatile int leaseLeader = -1;
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ServiceProxy.class);
 
 	public ServiceProxy(TOMConfiguration config, ViewStorage viewStorage, Comparator<byte[]> replyComparator, Extractor replyExtractor, SSLSecurity sslSecurity) {
 		init(config, viewStorage, sslSecurity);
+		initReplyHandling(replyComparator, replyExtractor);
+	}
 
+	/**
+	 * 以指定的视图控制器与客户端通讯层创建代理；
+	 *
+	 * @param viewController
+	 * @param cs
+	 * @param replyComparator
+	 * @param replyExtractor
+	 */
+	public ServiceProxy(ClientViewController viewController, CommunicationSystemClientSide cs, Comparator<byte[]> replyComparator, Extractor replyExtractor) {
+		init(viewController, cs);
+		initReplyHandling(replyComparator, replyExtractor);
+	}
+
+	private void initReplyHandling(Comparator<byte[]> replyComparator, Extractor replyExtractor) {
 		replies = new TOMMessage[getViewManager().getCurrentViewN()];
 
 		comparator = (replyComparator != null) ? replyComparator : new Comparator<byte[]>() {
@@ -126,6 +151,28 @@ public class ServiceProxy extends TOMSender {
 		}
 	}
 
+	/**
+	 * 以摘要应答的方式执行有序请求；
+	 * <p>
+	 * 随机选择一个节点返回完整的应答，其它节点只返回应答的摘要，减少大应答占用的带宽；<br>
+	 * 完整应答的摘要与足够多的摘要应答一致时返回完整应答；否则（应答节点故障或者应答不一致）以不指定应答节点的方式重发同一请求，
+	 * 各节点从缓存中返回完整的应答，请求不会被再次执行；
+	 *
+	 * @param request
+	 * @return
+	 */
+	public byte[] invokeOrderedHashed(byte[] request) {
+		try {
+			return invoke(request, TOMMessageType.ORDERED_REQUEST, true);
+		} catch (ViewObsoleteException voe) {
+		    close();
+			throw voe;
+		} catch (Exception e) {
+			LOGGER.error("[ServiceProxy] invokeOrderedHashed exception!, error = {}", e.getMessage());
+			throw e;
+		}
+	}
+
 	public byte[] invokeUnordered(byte[] request) {
 		return invoke(request, TOMMessageType.UNORDERED_REQUEST);
 	}
@@ -134,6 +181,52 @@ public class ServiceProxy extends TOMSender {
 		return invoke(request, TOMMessageType.UNORDERED_HASHED_REQUEST);
 	}
 
+	/**
+	 * 以水位读的方式执行只读请求；
+	 * <p>
+	 * 请求（非拜占庭容错模式下）只发送到随机选择的一个节点，带有客户端已观察到的最大的共识 id（水位，见 {@link #getWatermark()}）；
+	 * 节点执行到该共识之后不经共识在本地执行并应答，保证客户端读到自己的写入，且读到的状态不会回退；
+	 * 读负载分散到所有节点上；
+	 * <p>
+	 * 在 {@link #getInvokeUnorderedHashedTimeout()} 秒内没有得到应答时，改为以有序请求执行；
+	 * <p>
+	 * 水位读只采信一个节点的应答，适用于信任所选节点的场景；拜占庭容错模式下单个节点的应答不可信，请求发送到全部节点，
+	 * 需要 f+1 个一致的应答，得不到一致的应答时改为以有序请求执行；
+	 *
+	 * @param request
+	 * @return
+	 */
+	public byte[] invokeWatermarkRead(byte[] request) {
+		return invoke(request, TOMMessageType.UNORDERED_REQUEST, false, true);
+	}
+
+	/**
+	 * 客户端已观察到的最大的共识 id，由节点在应答中返回；-1 表示尚未观察到；
+	 *
+	 * @return
+	 */
+	public int getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * 以租约读的方式执行只读请求；
+	 * <p>
+	 * 持有有效读租约的领导者不经共识在本地执行请求并应答，结果是线性一致的；领导者没有有效的租约，
+	 * 或者在 {@link #getInvokeUnorderedHashedTimeout()} 秒内没有得到应答时，改为以有序请求执行；
+	 * <p>
+	 * 租约读只采信领导者一个节点的应答，适用于信任领导者的场景；拜占庭容错模式下单个节点的应答不可信，改为以有序请求执行；
+	 *
+	 * @param request
+	 * @return
+	 */
+	public byte[] invokeLeaseRead(byte[] request) {
+		if (getViewManager().getStaticConf().isBFT()) {
+			return invoke(request, TOMMessageType.ORDERED_REQUEST);
+		}
+		return invoke(request, TOMMessageType.LEASE_READ_REQUEST);
+	}
+
 	/**
 	 * This method sends a request to the replicas, and returns the related reply.
 	 * If the servers take more than invokeTimeout seconds the method returns null.
@@ -147,6 +240,23 @@ public class ServiceProxy extends TOMSender {
 	 * @return The reply from the replicas related to request
 	 */
 	public byte[] invoke(byte[] request, TOMMessageType reqType) {
+		return invoke(request, reqType, false);
+	}
+
+	/**
+	 * @param hashedReplies 有序请求是否以摘要应答的方式执行；
+	 */
+	private byte[] invoke(byte[] request, TOMMessageType reqType, boolean hashedReplies) {
+		return invoke(request, reqType, hashedReplies, false);
+	}
+
+	/**
+	 * @param hashedReplies 有序请求是否以摘要应答的方式执行；
+	 * @param watermarkRead 只读请求是否以水位读的方式执行；
+	 */
+	private byte[] invoke(byte[] request, TOMMessageType reqType, boolean hashedReplies, boolean watermarkRead) {
+		// 只读请求是否只发送到一个节点并采信其应答；
+		boolean singleReplica = watermarkRead && !getViewManager().getStaticConf().isBFT();
 		canSendLock.lock();
 
 		try {
@@ -154,19 +264,23 @@ public class ServiceProxy extends TOMSender {
 			Arrays.fill(replies, null);
 			receivedReplies = 0;
 			response = null;
+			responseWatermark = -1;
 			replyQuorum = getReplyQuorum();
 
 			// Send the request to the replicas, and get its ID
 			reqId = generateRequestId(reqType);
+			int requestId = reqId;
 			operationId = generateOperationId();
 			requestType = reqType;
 
 			replyServer = -1;
 			hashResponseController = null;
+			singleReply = singleReplica || reqType == TOMMessageType.LEASE_READ_REQUEST;
 
 			LOGGER.info("Before Sending request {} with reqId {}, operationId {}, clientId={}", reqType, reqId, operationId, getProcessId());
 
-			if (requestType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
+			if (requestType == TOMMessageType.UNORDERED_HASHED_REQUEST
+					|| (hashedReplies && requestType == TOMMessageType.ORDERED_REQUEST)) {
 
 				replyServer = getRandomlyServerId();
 				LOGGER.debug("[{}] replyServerId {} pos at {}", this.getClass().getName(), replyServer, getViewManager().getCurrentViewPos(replyServer));
@@ -177,8 +291,30 @@ public class ServiceProxy extends TOMSender {
 				TOMMessage sm = new TOMMessage(getProcessId(), getSession(), reqId, operationId, request, null,
 						getViewManager().getCurrentViewId(), requestType);
 				sm.setReplyServer(replyServer);
+				sm.setWatermark(watermark);
 
 				TOMulticast(sm);
+			} else if (requestType == TOMMessageType.UNORDERED_REQUEST) {
+				TOMMessage sm = new TOMMessage(getProcessId(), getSession(), reqId, operationId, request, null,
+						getViewManager().getCurrentViewId(), requestType);
+				sm.setWatermark(watermark);
+
+				if (singleReplica) {
+					replyServer = getRandomlyServerId();
+					sendMessageToTargets(sm, new int[] { replyServer });
+				} else {
+					TOMulticast(sm);
+				}
+			} else if (requestType == TOMMessageType.LEASE_READ_REQUEST) {
+				TOMMessage sm = new TOMMessage(getProcessId(), getSession(), reqId, operationId, request, null,
+						getViewManager().getCurrentViewId(), requestType);
+				int leader = leaseLeader;
+				if (leader >= 0 && getViewManager().getCurrentViewPos(leader) >= 0) {
+					replyServer = leader;
+					sendMessageToTargets(sm, new int[] { replyServer });
+				} else {
+					TOMulticast(sm);
+				}
 			} else {
 				TOMulticast(request, reqId, operationId, reqType);
 			}
@@ -191,13 +327,16 @@ public class ServiceProxy extends TOMSender {
 			// The thread will be unblocked when the method replyReceived is invoked
 			// by the client side communication system
 			try {
-				if (reqType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
+				if (reqType == TOMMessageType.UNORDERED_HASHED_REQUEST || watermarkRead
+						|| reqType == TOMMessageType.LEASE_READ_REQUEST) {
 					if (!this.sm.tryAcquire(invokeUnorderedHashedTimeout, TimeUnit.SECONDS)) {
-						LOGGER.debug("######## UNORDERED HASHED REQUEST TIMOUT ########");
+						LOGGER.debug("######## {} TIMOUT ########", reqType);
 						return invoke(request, TOMMessageType.ORDERED_REQUEST);
 					}
 				} else {
-					if (!this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS)) {
+					boolean replied = hashResponseController != null ? awaitDigestReplies(request, requestId)
+							: this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS);
+					if (!replied) {
 						LOGGER.error("###################TIMEOUT#######################");
 						LOGGER.error("Reply timeout for reqId is {}", reqId);
 						LOGGER.error("Process id {} // req id {} // TIMEOUT // ", getProcessId(), reqId);
@@ -222,6 +361,11 @@ public class ServiceProxy extends TOMSender {
 				// a replyQuorum of matching replies
 				LOGGER.error("Received n-f replies and no response could be extracted. request.length = {}, type = {} !", request.length, reqType);
 
+				if (watermarkRead) {
+					// 各节点执行读请求时所处的共识可能不同，得不到 f+1 个一致的应答时改为以有序请求执行；
+					return invoke(request, TOMMessageType.ORDERED_REQUEST);
+				}
+
 //				if (reqType == TOMMessageType.UNORDERED_REQUEST || reqType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
 //					// invoke the operation again, whitout the read-only flag
 //					LOGGER.debug("###################RETRY#######################");
@@ -233,6 +377,7 @@ public class ServiceProxy extends TOMSender {
 				throw new RuntimeException("Received n-f replies without f+1 of them matching.");
 
 			} else {
+				observeWatermark(responseWatermark);
 				// normal operation
 				// ******* EDUARDO BEGIN **************//
 				if (reqType == TOMMessageType.ORDERED_REQUEST) {
@@ -251,8 +396,13 @@ public class ServiceProxy extends TOMSender {
 //						return invoke(request, reqType);
 
 					}
+				} else if (reqType == TOMMessageType.LEASE_READ_REQUEST && response.getContent() == null) {
+					// 领导者没有有效的读租约，改为以有序请求执行；
+					LOGGER.debug("Lease read is rejected by {}, invoke it as an ordered request.", response.getSender());
+					return invoke(request, TOMMessageType.ORDERED_REQUEST);
 				} else if (reqType == TOMMessageType.UNORDERED_REQUEST
-						|| reqType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
+						|| reqType == TOMMessageType.UNORDERED_HASHED_REQUEST
+						|| reqType == TOMMessageType.LEASE_READ_REQUEST) {
 					ret = response.getContent(); // return the response
 					if (response.getViewID() > getViewManager().getCurrentViewId()) {
 						Object r = TOMUtil.getObject(response.getContent());
@@ -290,6 +440,46 @@ public class ServiceProxy extends TOMSender {
 		}
 	}
 
+	/**
+	 * 等待有序请求的摘要应答；
+	 * <p>
+	 * 应答节点的完整应答与摘要应答不一致，或者在 {@link #getInvokeUnorderedHashedTimeout()} 秒内没有得到一致的应答时，
+	 * 以不指定应答节点的方式重发同一请求（相同的序号），已执行该请求的节点从缓存中返回完整的应答，之后按完整应答比对；<br>
+	 * 尚未执行该请求的节点执行后仍返回摘要应答（{@link TOMMessage#isDigestReply()}），只比对完整应答，摘要应答被丢弃；
+	 *
+	 * @param request 请求内容；
+	 * @param id      请求的序号；
+	 * @return 在超时之前得到应答时返回 true；
+	 * @throws InterruptedException
+	 */
+	private boolean awaitDigestReplies(byte[] request, int id) throws InterruptedException {
+		boolean replied = this.sm.tryAcquire(invokeUnorderedHashedTimeout, TimeUnit.SECONDS);
+		canReceiveLock.lock();
+		try {
+			if (!replied) {
+				// the replies may have completed after the timeout
+				replied = this.sm.tryAcquire();
+			}
+			if (replied && response != null) {
+				return true;
+			}
+			LOGGER.warn("No matching digest replies of ordered request {} from reply server {}, fall back to full replies!",
+					id, replyServer);
+			Arrays.fill(replies, null);
+			receivedReplies = 0;
+			response = null;
+			responseWatermark = -1;
+			hashResponseController = null;
+			replyServer = -1;
+			reqId = id;
+		} finally {
+			canReceiveLock.unlock();
+		}
+
+		TOMulticast(request, id, operationId, TOMMessageType.ORDERED_REQUEST);
+		return this.sm.tryAcquire(invokeTimeout, TimeUnit.SECONDS);
+	}
+
 	private void checkReplyNum(TOMMessageType reqType, int receivedReplies, int replyQuorum) {
 //		if (reqType == TOMMessageType.ORDERED_REQUEST) {
 			LOGGER.info("checkReplyNum, receivedReplies = {}, replyQuorum = {}, viewObsolete = {}", receivedReplies, replyQuorum, viewObsolete);
@@ -346,15 +536,33 @@ public class ServiceProxy extends TOMSender {
 
 				LOGGER.info("I am proc {}, Receiving reply from {} with reqId {}. Putting on pos {}", this.getProcessId(), reply.getSender(), reply.getSequence(), pos);
 
-				if (requestType == TOMMessageType.UNORDERED_HASHED_REQUEST) {
+				if (singleReply) {
+					// 只采信一个节点的应答：租约读只采信领导者的应答，水位读只发送到一个节点；
+					if (requestType == TOMMessageType.LEASE_READ_REQUEST ? !acceptLeaseReadReply(reply)
+							: reply.getSender() != replyServer) {
+						LOGGER.info("Ignoring single reply from {} with reqId {}", reply.getSender(), reply.getSequence());
+						return;
+					}
+					response = reply;
+					responseWatermark = reply.getWatermark();
+					reqId = -1;
+					this.sm.release(); // resumes the thread that is executing the "invoke" method
+					return;
+				} else if (hashResponseController != null) {
 					response = hashResponseController.getResponse(pos, reply);
 					if (response != null) {
+						responseWatermark = hashResponseController.getWatermark();
 						reqId = -1;
 						this.sm.release(); // resumes the thread that is executing the "invoke" method
 						return;
 					}
 
 				} else {
+					if (reply.isDigestReply()) {
+						// 改为比对完整应答之后，迟到的摘要应答不参与比对；
+						LOGGER.info("Ignoring digest reply from {} with reqId {}", reply.getSender(), reply.getSequence());
+						return;
+					}
 					if (this.getViewManager().getCurrentView().getId() < reply.getViewID()) {
 						viewObsolete = true;
 					}
@@ -376,6 +584,7 @@ public class ServiceProxy extends TOMSender {
 							if (sameContent >= replyQuorum) {
 
 								response = extractor.extractResponse(replies, sameContent, pos);
+								responseWatermark = vouchedWatermark(pos);
 								reqId = -1;
 								viewObsolete = false;
 								this.sm.release(); // resumes the thread that is executing the "invoke" method
@@ -386,14 +595,14 @@ public class ServiceProxy extends TOMSender {
 				}
 
 				if (response == null) {
-					if (requestType.equals(TOMMessageType.ORDERED_REQUEST)) {
-						if (receivedReplies == getViewManager().getCurrentViewN()) {
+					if (hashResponseController != null) {
+						if (hashResponseController.getNumberReplies() == getViewManager().getCurrentViewN()) {
 							reqId = -1;
 							viewObsolete = false;
 							this.sm.release(); // resumes the thread that is executing the "invoke" method
 						}
-					} else if (requestType.equals(TOMMessageType.UNORDERED_HASHED_REQUEST)) {
-						if (hashResponseController.getNumberReplies() == getViewManager().getCurrentViewN()) {
+					} else if (requestType.equals(TOMMessageType.ORDERED_REQUEST)) {
+						if (receivedReplies == getViewManager().getCurrentViewN()) {
 							reqId = -1;
 							viewObsolete = false;
 							this.sm.release(); // resumes the thread that is executing the "invoke" method
@@ -429,6 +638,62 @@ public class ServiceProxy extends TOMSender {
 		}
 	}
 
+	/**
+	 * 租约读只采信领导者的应答；
+	 * <p>
+	 * 应答的 replyServer 为发送节点所认定的领导者，据此更新已知的领导者；请求只发送给了已知的领导者时，只采信该节点的应答，
+	 * 它已不是领导者时返回不带内容的应答，改为以有序请求执行；请求发送给了全部节点时，只采信自身为领导者的节点的应答；
+	 *
+	 * @param reply
+	 * @return
+	 */
+	private boolean acceptLeaseReadReply(TOMMessage reply) {
+		int leader = reply.getReplyServer();
+		if (leader >= 0 && getViewManager().getCurrentViewPos(leader) >= 0) {
+			leaseLeader = leader;
+		}
+		if (replyServer >= 0) {
+			return reply.getSender() == replyServer;
+		}
+		return reply.getSender() == leader;
+	}
+
+	/**
+	 * 与指定位置的应答内容一致的应答所担保的水位；
+	 * <p>
+	 * 水位不参与应答内容的比对，拜占庭容错模式下单个节点可以抬高其应答的水位，使之后的水位读都超出节点的范围而被拒绝；
+	 * 因此只采信至少 f+1 个一致的应答都不低于的水位，即其中第 f+1 高的水位，其中至少有一个正确节点的应答；
+	 *
+	 * @param pos
+	 * @return
+	 */
+	private int vouchedWatermark(int pos) {
+		int[] watermarks = new int[replies.length];
+		int count = 0;
+		for (int i = 0; i < replies.length; i++) {
+			if (replies[i] != null && (i == pos || comparator.compare(replies[i].getContent(), replies[pos].getContent()) == 0)) {
+				watermarks[count++] = replies[i].getWatermark();
+			}
+		}
+		return vouchedWatermark(watermarks, count);
+	}
+
+	private int vouchedWatermark(int[] watermarks, int count) {
+		int f = getViewManager().getStaticConf().isBFT() ? getViewManager().getCurrentViewF() : 0;
+		if (count <= f) {
+			return -1;
+		}
+		Arrays.sort(watermarks, 0, count);
+		return watermarks[count - 1 - f];
+	}
+
+	private void observeWatermark(int cid) {
+		// 只在发送请求的线程上更新；
+		if (cid > watermark) {
+			watermark = cid;
+		}
+	}
+
 	protected int getReplyQuorum() {
 		if (getViewManager().getStaticConf().isBFT()) {
 //			return (int) Math.ceil((getViewManager().getCurrentViewN() + getViewManager().getCurrentViewF()) / 2) + 1;
@@ -448,12 +713,15 @@ public class ServiceProxy extends TOMSender {
 	private class HashResponseController {
 		private TOMMessage reply;
 		private byte[][] hashReplies;
+		private int[] watermarks;
+		private int watermark = -1;
 		private int replyServerPos;
 		private int countHashReplies;
 
 		public HashResponseController(int replyServerPos, int length) {
 			this.replyServerPos = replyServerPos;
 			this.hashReplies = new byte[length][];
+			this.watermarks = new int[length];
 			this.reply = null;
 			this.countHashReplies = 0;
 		}
@@ -474,6 +742,7 @@ public class ServiceProxy extends TOMSender {
 			} else {
 				hashReplies[pos] = tomMessage.getContent();
 			}
+			watermarks[pos] = tomMessage.getWatermark();
 			LOGGER.debug("[{}] hashReplies[{}] = {}", this.getClass().getName(), pos, Arrays.toString(hashReplies[pos]));
 
 			if (hashReplies[replyServerPos] != null) {
@@ -483,6 +752,7 @@ public class ServiceProxy extends TOMSender {
 							&& (Arrays.equals(hashReplies[i], hashReplies[replyServerPos]))) {
 						sameContent++;
 						if (sameContent >= replyQuorum) {
+							watermark = matchingWatermark();
 							return reply;
 						}
 					}
@@ -494,5 +764,23 @@ public class ServiceProxy extends TOMSender {
 		public int getNumberReplies() {
 			return countHashReplies;
 		}
+
+		/**
+		 * @return 与应答节点的应答一致的摘要应答所担保的水位；
+		 */
+		public int getWatermark() {
+			return watermark;
+		}
+
+		private int matchingWatermark() {
+			int[] matching = new int[hashReplies.length];
+			int count = 0;
+			for (int i = 0; i < hashReplies.length; i++) {
+				if (hashReplies[i] != null && Arrays.equals(hashReplies[i], hashReplies[replyServerPos])) {
+					matching[count++] = watermarks[i];
+				}
+			}
+			return vouchedWatermark(matching, count);
+		}
 	}
 }
@@ -49,6 +49,7 @@ import bftsmart.tom.server.SingleExecutable;
 import bftsmart.tom.server.defaultservices.DefaultReplier;
 import bftsmart.tom.util.ShutdownHookThread;
 import bftsmart.tom.util.TOMUtil;
+import bftsmart.tom.util.Tracer;
 import utils.net.SSLSecurity;
 import org.slf4j.LoggerFactory;
 import utils.codec.Base58Utils;
@@ -105,6 +106,12 @@ public class ServiceReplica {
 	private MessageHandler messageHandler;
 	private SSLSecurity sslSecurity;
 
+	// tracing of the delivery path
+	private Tracer.Counter deliveredConsensus;
+	private Tracer.Counter deliveredRequests;
+	private Tracer.Histogram executeBatchLatency;
+	private Tracer tracer = initTracing(Tracer.DISABLED);
+
 //	private Acceptor acceptor;
 
 //	private HeartBeatTimer heartBeatTimer = null;
@@ -249,10 +256,20 @@ public class ServiceReplica {
 		
 		ReplicaContext context = initTOMLayer(id, realmName, this, cs, recoverer, serverViewController, verifier,
 				messageHandler, clientCommunication); // initiaze the TOM layer
+		initTracing(context.getTOMLayer().getTracer());
 		return context;
 		
 	}
 
+	private Tracer initTracing(Tracer tracer) {
+		this.tracer = tracer;
+		this.deliveredConsensus = tracer.counter("delivery.consensus");
+		this.deliveredRequests = tracer.counter("delivery.requests");
+		// nanoseconds taken by the application to execute a sampled batch
+		this.executeBatchLatency = tracer.histogram("delivery.execute_batch");
+		return tracer;
+	}
+
 //	public void joinMsgReceived(VMMessage msg) {
 //		ReconfigureReply r = msg.getReply();
 //
@@ -341,6 +358,12 @@ public class ServiceReplica {
 		// Generate the messages to send back to the clients
 		message.reply = new TOMMessage(id, message.getSession(), message.getSequence(), message.getOperationId(),
 				response, null, serverViewController.getCurrentViewId(), message.getReqType());
+		// 读取的状态不早于执行之前最后交付的共识；
+		message.reply.setWatermark(msgCtx.getConsensusId());
+		if (message.getReqType() == TOMMessageType.LEASE_READ_REQUEST) {
+			// 租约读只由领导者执行，标明应答来自领导者；
+			message.reply.setReplyServer(id);
+		}
 
 		if (serverViewController.getStaticConf().getNumRepliers() > 0) {
 			repMan.send(message);
@@ -349,6 +372,42 @@ public class ServiceReplica {
 		}
 	}
 
+	/**
+	 * 生成有序请求的应答；
+	 * <p>
+	 * 客户端为有序请求指定了应答节点（{@link TOMMessage#getReplyServer()}）时，只有应答节点返回完整的应答，
+	 * 其它节点只返回应答的摘要，由客户端比对应答节点的应答的摘要；<br>
+	 * 摘要应答保留完整的应答，客户端在摘要不一致时以不指定应答节点的方式重发请求，节点从缓存中返回完整的应答；
+	 *
+	 * @param request     请求；
+	 * @param response    执行结果；
+	 * @param viewContent 客户端视图过期时附带的当前视图；
+	 * @param cid         执行请求的共识，作为应答的水位返回给客户端；
+	 * @return
+	 */
+	private TOMMessage createReply(TOMMessage request, byte[] response, byte[] viewContent, int cid) {
+		TOMMessage reply = new TOMMessage(id, request.getSession(), request.getSequence(), request.getOperationId(),
+				response, viewContent, serverViewController.getCurrentViewId(), request.getReqType());
+		reply.setWatermark(cid);
+		if (request.getReqType() != TOMMessageType.ORDERED_REQUEST || request.getReplyServer() < 0
+				|| request.getReplyServer() == id || response == null) {
+			return reply;
+		}
+		try {
+			TOMMessage digestReply = new TOMMessage(id, request.getSession(), request.getSequence(),
+					request.getOperationId(), TOMUtil.computeHash(response), viewContent,
+					serverViewController.getCurrentViewId(), request.getReqType());
+			digestReply.setWatermark(cid);
+			// 标记为摘要应答，客户端改为比对完整应答之后丢弃迟到的摘要应答；
+			digestReply.setReplyServer(request.getReplyServer());
+			digestReply.fullReply = reply;
+			return digestReply;
+		} catch (NoSuchAlgorithmException e) {
+			LOGGER.error("Error occurred while computing the digest of reply! --" + e.getMessage(), e);
+			return reply;
+		}
+	}
+
 	public void kill() {
 
 		Thread t = new Thread() {
@@ -400,8 +459,14 @@ public class ServiceReplica {
                                 TOMMessage[][] requests, List<byte[]> asyncResponseLinkedList, boolean isRollback) {
 		int numRequests = 0;
 		int consensusCount = 0;
-		List<TOMMessage> toBatch = new ArrayList<>();
-		List<MessageContext> msgCtxts = new ArrayList<>();
+		int maxRequests = 0;
+		for (TOMMessage[] requestsFromConsensus : requests) {
+			maxRequests += requestsFromConsensus.length;
+		}
+		boolean batching = executor instanceof PreComputeBatchExecutable;
+		TOMMessage[] toBatch = batching ? new TOMMessage[maxRequests] : null;
+		MessageContext[] msgContexts = batching ? new MessageContext[maxRequests] : null;
+		long deliveryTime = System.nanoTime();
 		boolean noop = true;
 
 		for (TOMMessage[] requestsFromConsensus : requests) {
@@ -411,17 +476,13 @@ public class ServiceReplica {
 			noop = true;
 			for (TOMMessage request : requestsFromConsensus) {
 
-				LOGGER.info(
-						"(ServiceReplica.receiveMessages) request view id = {}, curr view id = {}, request type = {}",
-						request.getViewID(), serverViewController.getCurrentViewId(), request.getReqType());
-
 				// 暂时没有节点间的视图ID同步过程，在处理RECONFIG这类更新视图的操作时先不考虑视图ID落后的情况
 				if (request.getViewID() <= serverViewController.getCurrentViewId()) {
 //						|| request.getReqType() == TOMMessageType.RECONFIG) {
 
 					if (request.getReqType() == TOMMessageType.ORDERED_REQUEST || request.getReqType() == TOMMessageType.RECONFIG) {
 						noop = false;
-						numRequests++;
+						int index = numRequests++;
 						MessageContext msgCtx = new MessageContext(request.getSender(), request.getViewID(),
 								request.getReqType(), request.getSession(), request.getSequence(),
 								request.getOperationId(), request.getReplyServer(), request.serializedMessageSignature,
@@ -433,11 +494,8 @@ public class ServiceReplica {
 
 							msgCtx.setLastInBatch();
 						}
-						request.deliveryTime = System.nanoTime();
-						if (executor instanceof PreComputeBatchExecutable) {
-
-							LOGGER.debug("(ServiceReplica.receiveMessages) Batching request from {}",
-									request.getSender());
+						request.deliveryTime = deliveryTime;
+						if (batching) {
 
 							// This is used to deliver the content decided by a consensus instance directly
 							// to
@@ -449,8 +507,8 @@ public class ServiceReplica {
 //								this.recoverer.Op(msgCtx.getConsensusId(), request.getContent(), msgCtx);
 
 							// deliver requests and contexts to the executor later
-							msgCtxts.add(msgCtx);
-							toBatch.add(request);
+							msgContexts[index] = msgCtx;
+							toBatch[index] = request;
 							if (request.getReqType() == TOMMessageType.RECONFIG) {
 								serverViewController.enqueueUpdate(request);
 							}
@@ -477,9 +535,7 @@ public class ServiceReplica {
 									msgCtx, request.getSender(), request.getOperationId());
 
 							// Generate the messages to send back to the clients
-							request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-									request.getOperationId(), response, null, serverViewController.getCurrentViewId(),
-									request.getReqType());
+							request.reply = createReply(request, response, null, msgCtx.getConsensusId());
 							LOGGER.debug("(ServiceReplica.receiveMessages) sending reply to {}", request.getSender());
 							replier.manageReply(request, msgCtx);
 						} else if (executor instanceof SingleExecutable) {
@@ -505,9 +561,7 @@ public class ServiceReplica {
 									msgCtx);
 
 							// Generate the messages to send back to the clients
-							request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-									request.getOperationId(), response, null, serverViewController.getCurrentViewId(),
-									request.getReqType());
+							request.reply = createReply(request, response, null, msgCtx.getConsensusId());
 							LOGGER.debug("(ServiceReplica.receiveMessages) sending reply to {}", request.getSender());
 							replier.manageReply(request, msgCtx);
 						} else {
@@ -573,30 +627,32 @@ public class ServiceReplica {
 			// hence the invocation of "noop"
 			if (noop && this.recoverer != null) {
 
-				LOGGER.debug(
-						"(ServiceReplica.receiveMessages) I am proc {}, host = {}, port = {}. Delivering a no-op to the recoverer",
-						this.serverViewController.getStaticConf().getProcessId(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
-								.getConsensusPort());
-
-				LOGGER.debug(
-						"I am proc {} , host = {}, port = {}.--- A consensus instance finished, but there were no commands to deliver to the application.",
-						this.serverViewController.getStaticConf().getProcessId(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
-								.getConsensusPort());
-				LOGGER.debug("I am proc {} , host = {}, port = {}.--- Notifying recoverable about a blank consensus.",
-						this.serverViewController.getStaticConf().getProcessId(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
-						this.serverViewController.getStaticConf()
-								.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
-								.getConsensusPort());
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug(
+							"(ServiceReplica.receiveMessages) I am proc {}, host = {}, port = {}. Delivering a no-op to the recoverer",
+							this.serverViewController.getStaticConf().getProcessId(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
+									.getConsensusPort());
+
+					LOGGER.debug(
+							"I am proc {} , host = {}, port = {}.--- A consensus instance finished, but there were no commands to deliver to the application.",
+							this.serverViewController.getStaticConf().getProcessId(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
+									.getConsensusPort());
+					LOGGER.debug("I am proc {} , host = {}, port = {}.--- Notifying recoverable about a blank consensus.",
+							this.serverViewController.getStaticConf().getProcessId(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId()).getHost(),
+							this.serverViewController.getStaticConf()
+									.getRemoteAddress(this.serverViewController.getStaticConf().getProcessId())
+									.getConsensusPort());
+				}
 
 				byte[][] batch = null;
 				MessageContext[] msgCtx = null;
@@ -639,7 +695,14 @@ public class ServiceReplica {
 			consensusCount++;
 		} // End of: for (TOMMessage[] requestsFromConsensus : requests)
 
-		if (executor instanceof PreComputeBatchExecutable && numRequests > 0) {
+		deliveredConsensus.add(requests.length);
+		deliveredRequests.add(numRequests);
+
+		if (batching && numRequests > 0) {
+			if (numRequests < maxRequests) {
+				toBatch = Arrays.copyOf(toBatch, numRequests);
+				msgContexts = Arrays.copyOf(msgContexts, numRequests);
+			}
 			// Make new batch to deliver
 			byte[][] batch = new byte[numRequests][];
 
@@ -664,21 +727,23 @@ public class ServiceReplica {
 				line++;
 			}
 
-			MessageContext[] msgContexts = new MessageContext[msgCtxts.size()];
-			msgContexts = msgCtxts.toArray(msgContexts);
-
 			// Deliver the batch and wait for replies
 			if (isRollback == false) {
+				boolean sampled = tracer.sample();
+				long executeStartTime = sampled ? System.nanoTime() : 0;
 				byte[][] replies = ((PreComputeBatchExecutable) executor).executeBatch(batch, msgContexts);
+				if (sampled) {
+					executeBatchLatency.recordSince(executeStartTime);
+				}
 			}
 
-			if (toBatch.size() != asyncResponseLinkedList.size()) {
+			if (toBatch.length != asyncResponseLinkedList.size()) {
 				LOGGER.debug("(ServiceReplica.receiveMessages) toBatch.size() != asyncResponseLinkedList.size()");
 				return;
 			}
 			// Send the replies back to the client
-			for (int index = 0; index < toBatch.size(); index++) {
-				TOMMessage request = toBatch.get(index);
+			for (int index = 0; index < toBatch.length; index++) {
+				TOMMessage request = toBatch[index];
 				if (request.getReqType() == TOMMessageType.RECONFIG) {
 					continue;
 				}
@@ -715,14 +780,12 @@ public class ServiceReplica {
 					LOGGER.info("I am proc {}, view = {}, reply View = {}",
 							this.serverViewController.getStaticConf().getProcessId(), view, replyView);
 
-					request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-							request.getOperationId(), asyncResponseLinkedList.get(index), TOMUtil.getBytes(replyView),
-							serverViewController.getCurrentViewId(), request.getReqType());
+					request.reply = createReply(request, asyncResponseLinkedList.get(index),
+							TOMUtil.getBytes(replyView), msgContexts[index].getConsensusId());
 
 				} else {
-					request.reply = new TOMMessage(id, request.getSession(), request.getSequence(),
-							request.getOperationId(), asyncResponseLinkedList.get(index), null,
-							serverViewController.getCurrentViewId(), request.getReqType());
+					request.reply = createReply(request, asyncResponseLinkedList.get(index), null,
+							msgContexts[index].getConsensusId());
 				}
 
 				if (serverViewController.getStaticConf().getNumRepliers() > 0) {
@@ -741,7 +804,7 @@ public class ServiceReplica {
 
 			// DEBUG
 			LOGGER.debug("BATCHEXECUTOR END");
-		} // End of: if (executor instanceof PreComputeBatchExecutable && numRequests > 0)
+		} // End of: if (batching && numRequests > 0)
 	}
 
 	/**
@@ -75,8 +75,23 @@ public abstract class TOMSender implements ReplyReceiver, Closeable, AutoCloseab
 		startsCS(viewController.getStaticConf().getProcessId(), sslSecurity);
 	}
 
+	/**
+	 * 以指定的视图控制器与客户端通讯层初始化；
+	 *
+	 * @param viewController
+	 * @param cs
+	 */
+	protected void init(ClientViewController viewController, CommunicationSystemClientSide cs) {
+		this.viewController = viewController;
+		startsCS(cs);
+	}
+
 	private void startsCS(int clientId, SSLSecurity sslSecurity) {
-		this.cs = CommunicationSystemClientSideFactory.getCommunicationSystemClientSide(clientId, this.viewController, sslSecurity);
+		startsCS(CommunicationSystemClientSideFactory.getCommunicationSystemClientSide(clientId, this.viewController, sslSecurity));
+	}
+
+	private void startsCS(CommunicationSystemClientSide cs) {
+		this.cs = cs;
 		this.cs.setReplyReceiver(this); // This object itself shall be a reply receiver
 		this.me = this.viewController.getStaticConf().getProcessId();
 		this.useSignatures = this.viewController.getStaticConf().isUseSignatures();
@@ -110,6 +125,10 @@ public abstract class TOMSender implements ReplyReceiver, Closeable, AutoCloseab
 	}
 
 
+	public void sendMessageToTargets(TOMMessage sm, int[] targets) {
+		cs.send(useSignatures, targets, sm);
+	}
+
 	public void TOMulticast(byte[] m, int reqId, int operationId, TOMMessageType reqType) {
 		cs.send(useSignatures, viewController.getCurrentViewProcesses(),
 				new TOMMessage(me, session, reqId, operationId, m, null, viewController.getCurrentViewId(),
@@ -0,0 +1,336 @@
+package bftsmart.tom.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.util.Tracer;
+
+/**
+ * 领导者的自适应批处理；
+ * <p>
+ * 根据观测到的请求到达速率、共识耗时与批次字节数调整两个参数：
+ * <ul>
+ * <li>目标批次大小：一次共识期间到达的请求数，即到达速率乘以共识耗时；待提议的请求达到目标大小时立即提议；</li>
+ * <li>等待时长：待提议的请求不足目标大小时，领导者最多等待的时长，不超过配置的最大等待时长；</li>
+ * </ul>
+ * 轻负载时目标批次大小为 1，领导者收到请求即提议，不增加延迟；重负载时以少量的等待换取更大的批次；
+ * <p>
+ * 配置了延迟目标时，以指数加权的线性回归估计共识耗时与批次字节数的关系（耗时 = a + b * 字节数），把批次限制在预计满足延迟目标的大小，
+ * 并只在剩余的延迟预算内等待；
+ * <p>
+ * 每次提议的决策记录在 {@link Tracer} 的直方图与计数器中；启用时副本的跟踪器总是记录这些指标，与抽样率无关；
+ */
+public class BatchingController {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchingController.class);
+
+	/**
+	 * 指数加权平均的权重；
+	 */
+	private static final double ALPHA = 0.2;
+
+	/**
+	 * 计算到达速率的最小间隔；
+	 */
+	private static final long RATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * 记录提议时刻的槽数，不小于流水线中同时进行的共识数；
+	 */
+	private static final int SLOTS = 64;
+
+	private final boolean enabled;
+
+	private final int maxBatchSize;
+
+	private final long maxDelayNanos;
+
+	private final long sloNanos;
+
+	private final LongAdder arrivals = new LongAdder();
+
+	private final int[] proposedCids = new int[SLOTS];
+
+	private final long[] proposedTimes = new long[SLOTS];
+
+	private final int[] proposedBytes = new int[SLOTS];
+
+	// 每纳秒到达的请求数
+	private double arrivalRate;
+
+	private long rateTime = -1;
+
+	private long rateArrivals;
+
+	private double latency;
+
+	// 批次字节数与共识耗时的指数加权矩，用于回归
+	private double meanBytes;
+
+	private double meanLatency;
+
+	private double meanBytesSquare;
+
+	private double meanBytesLatency;
+
+	private double bytesPerRequest;
+
+	private boolean sampled;
+
+	private long arrivalsAtPropose;
+
+	private volatile boolean backlogged;
+
+	private volatile int targetSize = 1;
+
+	private volatile int batchLimit;
+
+	private volatile long waitNanos;
+
+	private final Tracer.Counter proposeCounter;
+
+	private final Tracer.Counter fullBatchCounter;
+
+	private final Tracer.Histogram batchSizes;
+
+	private final Tracer.Histogram batchBytes;
+
+	private final Tracer.Histogram targetSizes;
+
+	private final Tracer.Histogram waitBudgets;
+
+	private final Tracer.Histogram consensusLatencies;
+
+	public BatchingController(ReplicaConfiguration conf, Tracer tracer) {
+		this(conf.isAdaptiveBatching(), conf.getMaxBatchSize(), conf.getBatchMaxDelay(), conf.getLatencySlo(),
+				tracer);
+	}
+
+	/**
+	 * @param enabled          是否启用自适应批处理；不启用时批次大小为 maxBatchSize，不等待；
+	 * @param maxBatchSize     批次的最大请求数；
+	 * @param maxDelayMillis   等待批次填满的最大毫秒数；
+	 * @param sloMillis        延迟目标的毫秒数，0 表示吞吐量优先；
+	 * @param tracer           记录决策的跟踪器；
+	 */
+	public BatchingController(boolean enabled, int maxBatchSize, int maxDelayMillis, int sloMillis, Tracer tracer) {
+		this.enabled = enabled;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+		this.sloNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, sloMillis));
+		this.batchLimit = this.maxBatchSize;
+		for (int i = 0; i < SLOTS; i++) {
+			proposedCids[i] = -1;
+		}
+		this.proposeCounter = tracer.counter("batching.proposes");
+		this.fullBatchCounter = tracer.counter("batching.full_batches");
+		this.batchSizes = tracer.histogram("batching.batch_size");
+		this.batchBytes = tracer.histogram("batching.batch_bytes");
+		this.targetSizes = tracer.histogram("batching.target_size");
+		// nanoseconds the leader may wait for a batch to fill
+		this.waitBudgets = tracer.histogram("batching.wait_budget");
+		this.consensusLatencies = tracer.histogram("batching.consensus_latency");
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * 收到一个待排序的请求；
+	 */
+	public void requestArrived() {
+		if (enabled) {
+			arrivals.increment();
+		}
+	}
+
+	/**
+	 * 下一个批次最多包含的请求数；
+	 *
+	 * @return
+	 */
+	public int getBatchLimit() {
+		return enabled ? batchLimit : maxBatchSize;
+	}
+
+	/**
+	 * 待提议的请求不足目标批次大小时最多等待的纳秒数；
+	 *
+	 * @return
+	 */
+	public long getWaitNanos() {
+		return enabled && !backlogged ? waitNanos : 0;
+	}
+
+	public int getTargetSize() {
+		return targetSize;
+	}
+
+	/**
+	 * 每秒到达的请求数；
+	 *
+	 * @return
+	 */
+	public synchronized double getArrivalRate() {
+		return arrivalRate * TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * 共识耗时的指数加权平均的纳秒数；
+	 *
+	 * @return
+	 */
+	public synchronized long getLatencyNanos() {
+		return (long) latency;
+	}
+
+	/**
+	 * 上次提议之后到达的请求是否已达到目标批次大小；上次提议的批次已满时，请求有积压，总是返回 true；
+	 *
+	 * @return
+	 */
+	public boolean isBatchReady() {
+		return !enabled || backlogged || arrivals.sum() - arrivalsAtPropose >= targetSize;
+	}
+
+	/**
+	 * 领导者提议了一个批次；
+	 *
+	 * @param cid   共识 id；
+	 * @param size  批次的请求数；
+	 * @param bytes 批次的字节数；
+	 * @param now   提议的时刻，{@link System#nanoTime()}；
+	 */
+	public synchronized void proposed(int cid, int size, int bytes, long now) {
+		if (!enabled) {
+			return;
+		}
+		int slot = Math.floorMod(cid, SLOTS);
+		proposedCids[slot] = cid;
+		proposedTimes[slot] = now;
+		proposedBytes[slot] = bytes;
+
+		arrivalsAtPropose = arrivals.sum();
+		backlogged = size >= getBatchLimit();
+		if (size > 0) {
+			bytesPerRequest = bytesPerRequest == 0 ? (double) bytes / size
+					: ewma(bytesPerRequest, (double) bytes / size);
+		}
+
+		proposeCounter.increment();
+		if (backlogged) {
+			fullBatchCounter.increment();
+		}
+		batchSizes.record(size);
+		batchBytes.record(bytes);
+		targetSizes.record(targetSize);
+		waitBudgets.record(getWaitNanos());
+	}
+
+	/**
+	 * 共识已执行；只有本节点提议的共识计入共识耗时；
+	 *
+	 * @param cid 共识 id；
+	 * @param now 执行的时刻，{@link System#nanoTime()}；
+	 */
+	public synchronized void decided(int cid, long now) {
+		if (!enabled) {
+			return;
+		}
+		updateArrivalRate(now);
+
+		int slot = Math.floorMod(cid, SLOTS);
+		if (proposedCids[slot] != cid) {
+			return;
+		}
+		proposedCids[slot] = -1;
+		double elapsed = now - proposedTimes[slot];
+		double bytes = proposedBytes[slot];
+		consensusLatencies.record((long) elapsed);
+
+		if (!sampled) {
+			sampled = true;
+			latency = elapsed;
+			meanBytes = bytes;
+			meanLatency = elapsed;
+			meanBytesSquare = bytes * bytes;
+			meanBytesLatency = bytes * elapsed;
+		} else {
+			latency = ewma(latency, elapsed);
+			meanBytes = ewma(meanBytes, bytes);
+			meanLatency = ewma(meanLatency, elapsed);
+			meanBytesSquare = ewma(meanBytesSquare, bytes * bytes);
+			meanBytesLatency = ewma(meanBytesLatency, bytes * elapsed);
+		}
+		adjust();
+	}
+
+	private void updateArrivalRate(long now) {
+		if (rateTime < 0) {
+			rateTime = now;
+			rateArrivals = arrivals.sum();
+			return;
+		}
+		long interval = now - rateTime;
+		if (interval < RATE_INTERVAL) {
+			return;
+		}
+		long total = arrivals.sum();
+		double rate = (double) (total - rateArrivals) / interval;
+		arrivalRate = arrivalRate == 0 ? rate : ewma(arrivalRate, rate);
+		rateTime = now;
+		rateArrivals = total;
+	}
+
+	private void adjust() {
+		// 一次共识期间到达的请求组成下一个批次；
+		int target = clamp(Math.ceil(arrivalRate * latency));
+		int limit = maxBatchSize;
+		long wait = Math.min(maxDelayNanos, fillNanos(target));
+
+		if (sloNanos > 0) {
+			double variance = meanBytesSquare - meanBytes * meanBytes;
+			double slope = variance > 0 ? Math.max(0, (meanBytesLatency - meanBytes * meanLatency) / variance) : 0;
+			double intercept = meanLatency - slope * meanBytes;
+			if (slope > 0 && bytesPerRequest > 0) {
+				// 预计满足延迟目标的最大批次；
+				limit = clamp(Math.floor((sloNanos - intercept) / slope / bytesPerRequest));
+				target = Math.min(target, limit);
+			}
+			double predicted = intercept + slope * target * bytesPerRequest;
+			wait = Math.max(0, Math.min(wait, (long) (sloNanos - predicted)));
+		}
+
+		this.targetSize = target;
+		this.batchLimit = limit;
+		this.waitNanos = wait;
+		LOGGER.debug("Adjust batching! --[TargetSize={}][BatchLimit={}][WaitNanos={}][ArrivalRate={}/s][Latency={}ns]",
+				target, limit, wait, (long) getArrivalRate(), (long) latency);
+	}
+
+	/**
+	 * 以当前的到达速率积累指定数量请求的纳秒数；
+	 */
+	private long fillNanos(int requests) {
+		if (requests <= 1 || arrivalRate <= 0) {
+			return 0;
+		}
+		return (long) (requests / arrivalRate);
+	}
+
+	private int clamp(double size) {
+		if (Double.isNaN(size) || size < 1) {
+			return 1;
+		}
+		return size > maxBatchSize ? maxBatchSize : (int) size;
+	}
+
+	private static double ewma(double average, double value) {
+		return average + ALPHA * (value - average);
+	}
+}
@@ -0,0 +1,401 @@
+package bftsmart.tom.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import bftsmart.consensus.Consensus;
+import bftsmart.consensus.messages.ConsensusMessage;
+
+/**
+ * 以共识 id 为下标的环形窗口，保存共识实例与超出上下文的共识消息；
+ * <p>
+ * 共识 id 对窗口容量取模得到槽位，容量为不小于 highMark 的 2 的幂，正常运行时活跃的共识 id 都落在窗口内，查找时既不装箱也不查哈希表；
+ * 槽位被另一个未移除的共识占用时（例如状态传输前收到的远超 highMark 的消息），改存在溢出表中；
+ * <p>
+ * 共识实例的查找不加锁，创建与移除由内部的锁同步；<br>
+ * 超出上下文的消息由调用者加锁访问（{@link ExecutionManager} 的 outOfContextLock），槽位与消息列表随窗口滑动重复使用；
+ */
+public final class ConsensusWindow {
+
+	private static final int MIN_CAPACITY = 64;
+
+	private final int mask;
+
+	private final AtomicReferenceArray<Consensus> consensuses;
+
+	private final Map<Integer, Consensus> overflowConsensuses = new HashMap<>();
+
+	private volatile int overflowConsensusCount;
+
+	private final ReentrantLock consensusesLock = new ReentrantLock();
+
+	/**
+	 * 小于此 id 的共识都已移除；占用槽位的更早的共识（例如 id 为 -1 的共识）已经过期，可以覆盖；
+	 */
+	private int removedBelow = Integer.MIN_VALUE;
+
+	private final Slot[] slots;
+
+	private final Map<Integer, Slot> overflowSlots = new HashMap<>();
+
+	/**
+	 * @param highMark 共识消息领先于最后执行的共识的最大距离；
+	 */
+	public ConsensusWindow(int highMark) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < highMark && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		this.mask = capacity - 1;
+		this.consensuses = new AtomicReferenceArray<>(capacity);
+		this.slots = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new Slot();
+		}
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	private int index(int cid) {
+		return cid & mask;
+	}
+
+	// ----------------------------- 共识实例 -----------------------------
+
+	/**
+	 * 返回指定的共识；不存在时返回 null；
+	 *
+	 * @param cid
+	 * @return
+	 */
+	public Consensus getConsensus(int cid) {
+		Consensus consensus = consensuses.get(index(cid));
+		if (consensus != null && consensus.getId() == cid) {
+			return consensus;
+		}
+		if (overflowConsensusCount == 0) {
+			return null;
+		}
+		consensusesLock.lock();
+		try {
+			return overflowConsensuses.get(cid);
+		} finally {
+			consensusesLock.unlock();
+		}
+	}
+
+	/**
+	 * 返回指定的共识；不存在时以 factory 创建；
+	 *
+	 * @param cid
+	 * @param factory
+	 * @return
+	 */
+	public Consensus getOrCreateConsensus(int cid, IntFunction<Consensus> factory) {
+		Consensus consensus = getConsensus(cid);
+		if (consensus != null) {
+			return consensus;
+		}
+		consensusesLock.lock();
+		try {
+			int i = index(cid);
+			consensus = consensuses.get(i);
+			if (consensus != null && consensus.getId() == cid) {
+				return consensus;
+			}
+			Consensus overflow = overflowConsensuses.get(cid);
+			if (overflow != null) {
+				return overflow;
+			}
+			Consensus created = factory.apply(cid);
+			if (consensus == null || consensus.getId() < removedBelow) {
+				consensuses.set(i, created);
+			} else {
+				overflowConsensuses.put(cid, created);
+				overflowConsensusCount = overflowConsensuses.size();
+			}
+			return created;
+		} finally {
+			consensusesLock.unlock();
+		}
+	}
+
+	/**
+	 * 移除指定的共识；
+	 *
+	 * @param cid
+	 * @return 移除的共识；不存在时返回 null；
+	 */
+	public Consensus removeConsensus(int cid) {
+		consensusesLock.lock();
+		try {
+			int i = index(cid);
+			Consensus consensus = consensuses.get(i);
+			if (consensus != null && consensus.getId() == cid) {
+				consensuses.set(i, null);
+				return consensus;
+			}
+			if (overflowConsensusCount == 0) {
+				return null;
+			}
+			consensus = overflowConsensuses.remove(cid);
+			overflowConsensusCount = overflowConsensuses.size();
+			return consensus;
+		} finally {
+			consensusesLock.unlock();
+		}
+	}
+
+	/**
+	 * 移除 id 在 [fromCid, toCid) 之间的共识；
+	 *
+	 * @param fromCid
+	 * @param toCid
+	 */
+	public void removeConsensuses(int fromCid, int toCid) {
+		if (fromCid >= toCid) {
+			return;
+		}
+		consensusesLock.lock();
+		try {
+			int count = (int) Math.min((long) toCid - fromCid, mask + 1);
+			for (int n = 0, i = index(fromCid); n < count; n++, i = (i + 1) & mask) {
+				Consensus consensus = consensuses.get(i);
+				if (consensus != null && consensus.getId() >= fromCid && consensus.getId() < toCid) {
+					consensuses.set(i, null);
+				}
+			}
+			if (overflowConsensusCount > 0) {
+				overflowConsensuses.keySet().removeIf(cid -> cid >= fromCid && cid < toCid);
+				overflowConsensusCount = overflowConsensuses.size();
+			}
+			removedBelow = Math.max(removedBelow, toCid);
+		} finally {
+			consensusesLock.unlock();
+		}
+	}
+
+	// --------------------------- 超出上下文的消息 ---------------------------
+	// 以下方法由调用者加锁；
+
+	/**
+	 * 保存超出上下文的提议；同一共识只保留最后收到的提议；
+	 *
+	 * @param propose
+	 * @param lastExec 最后执行的共识；槽位中不晚于它的消息已经过期，可以覆盖；
+	 */
+	public void putPropose(ConsensusMessage propose, int lastExec) {
+		slotFor(propose.getNumber(), lastExec).propose = propose;
+	}
+
+	public ConsensusMessage getPropose(int cid) {
+		Slot slot = find(cid);
+		return slot == null ? null : slot.propose;
+	}
+
+	public ConsensusMessage removePropose(int cid) {
+		Slot slot = find(cid);
+		if (slot == null) {
+			return null;
+		}
+		ConsensusMessage propose = slot.propose;
+		slot.propose = null;
+		releaseIfOverflow(slot);
+		return propose;
+	}
+
+	/**
+	 * 保存超出上下文的 WRITE / ACCEPT 消息；
+	 *
+	 * @param msg
+	 * @param lastExec 最后执行的共识；槽位中不晚于它的消息已经过期，可以覆盖；
+	 */
+	public void addMessage(ConsensusMessage msg, int lastExec) {
+		Slot slot = slotFor(msg.getNumber(), lastExec);
+		if (slot.messages == null) {
+			if (slot.spare != null) {
+				slot.messages = slot.spare;
+				slot.spare = null;
+			} else {
+				slot.messages = new ArrayList<>();
+			}
+		}
+		slot.messages.add(msg);
+	}
+
+	/**
+	 * 返回指定共识的超出上下文的 WRITE / ACCEPT 消息，不移除；
+	 *
+	 * @param cid
+	 * @return 没有消息时返回 null；
+	 */
+	public List<ConsensusMessage> getMessages(int cid) {
+		Slot slot = find(cid);
+		return slot == null ? null : slot.messages;
+	}
+
+	/**
+	 * 取出指定共识的超出上下文的 WRITE / ACCEPT 消息；处理完之后以 {@link #recycle(int, List)} 归还列表；
+	 *
+	 * @param cid
+	 * @return 没有消息时返回 null；
+	 */
+	public List<ConsensusMessage> takeMessages(int cid) {
+		Slot slot = find(cid);
+		if (slot == null) {
+			return null;
+		}
+		List<ConsensusMessage> messages = slot.messages;
+		slot.messages = null;
+		releaseIfOverflow(slot);
+		return messages;
+	}
+
+	/**
+	 * 归还 {@link #takeMessages(int)} 取出的列表，供之后的共识重复使用；
+	 *
+	 * @param cid
+	 * @param messages
+	 */
+	public void recycle(int cid, List<ConsensusMessage> messages) {
+		messages.clear();
+		Slot slot = slots[index(cid)];
+		if (slot.spare == null && slot.messages != messages) {
+			slot.spare = messages;
+		}
+	}
+
+	/**
+	 * 移除指定共识的超出上下文的消息；
+	 *
+	 * @param cid
+	 */
+	public void clear(int cid) {
+		Slot slot = find(cid);
+		if (slot != null) {
+			slot.reset(slot.cid);
+			releaseIfOverflow(slot);
+		}
+	}
+
+	/**
+	 * 移除 id 在 [fromCid, toCid] 之间的共识的超出上下文的消息；
+	 *
+	 * @param fromCid
+	 * @param toCid
+	 */
+	public void clear(int fromCid, int toCid) {
+		if (fromCid > toCid) {
+			return;
+		}
+		int count = (int) Math.min((long) toCid - fromCid + 1, mask + 1);
+		for (int n = 0, i = index(fromCid); n < count; n++, i = (i + 1) & mask) {
+			Slot slot = slots[i];
+			if (slot.cid >= fromCid && slot.cid <= toCid) {
+				slot.reset(slot.cid);
+			}
+		}
+		if (!overflowSlots.isEmpty()) {
+			overflowSlots.keySet().removeIf(cid -> cid >= fromCid && cid <= toCid);
+		}
+	}
+
+	/**
+	 * 丢弃满足条件的超出上下文的提议；
+	 *
+	 * @param filter
+	 */
+	public void discardProposes(Predicate<ConsensusMessage> filter) {
+		for (Slot slot : slots) {
+			if (slot.propose != null && filter.test(slot.propose)) {
+				slot.propose = null;
+			}
+		}
+		for (Iterator<Slot> it = overflowSlots.values().iterator(); it.hasNext();) {
+			Slot slot = it.next();
+			if (slot.propose != null && filter.test(slot.propose)) {
+				slot.propose = null;
+				if (slot.isEmpty()) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private Slot find(int cid) {
+		Slot slot = slots[index(cid)];
+		if (slot.cid == cid && !slot.isEmpty()) {
+			return slot;
+		}
+		return overflowSlots.isEmpty() ? null : overflowSlots.get(cid);
+	}
+
+	private Slot slotFor(int cid, int lastExec) {
+		if (!overflowSlots.isEmpty()) {
+			Slot overflow = overflowSlots.get(cid);
+			if (overflow != null) {
+				return overflow;
+			}
+		}
+		Slot slot = slots[index(cid)];
+		if (slot.cid == cid) {
+			return slot;
+		}
+		if (slot.isEmpty() || slot.cid <= lastExec) {
+			slot.reset(cid);
+			return slot;
+		}
+		Slot overflow = new Slot();
+		overflow.cid = cid;
+		overflowSlots.put(cid, overflow);
+		return overflow;
+	}
+
+	private void releaseIfOverflow(Slot slot) {
+		if (slot.isEmpty() && slots[index(slot.cid)] != slot) {
+			overflowSlots.remove(slot.cid);
+		}
+	}
+
+	/**
+	 * 一个共识的超出上下文的消息；
+	 */
+	private static final class Slot {
+
+		private int cid = Integer.MIN_VALUE;
+
+		private ConsensusMessage propose;
+
+		private List<ConsensusMessage> messages;
+
+		/**
+		 * 已处理的消息列表，清空后留给下一个使用此槽位的共识；
+		 */
+		private List<ConsensusMessage> spare;
+
+		private boolean isEmpty() {
+			return propose == null && messages == null;
+		}
+
+		private void reset(int cid) {
+			this.cid = cid;
+			this.propose = null;
+			if (messages != null) {
+				messages.clear();
+				if (spare == null) {
+					spare = messages;
+				}
+				messages = null;
+			}
+		}
+	}
+}
@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -42,7 +43,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * the application
  * 
  */
-public final class DeliveryThread extends Thread {
+public class DeliveryThread extends Thread {
 
 	private boolean doWork = true;
 	private final LinkedBlockingQueue<Decision> decided;
@@ -55,6 +56,21 @@ public final class DeliveryThread extends Thread {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DeliveryThread.class);
 
+	/**
+	 * 最多暂存的等待共识执行的读请求数；超出时丢弃读请求，由客户端超时后改为以有序请求执行；
+	 */
+	private static final int MAX_PENDING_READS = 4096;
+
+	/**
+	 * 最后一个已交付应用执行的共识；
+	 */
+	private int lastDelivered = -1;
+
+	/**
+	 * 等待指定共识执行后才能应答的读请求，按共识 id 排序；由自身的锁保护，{@link #lastDelivered} 也由其保护；
+	 */
+	private final PriorityQueue<PendingRead> pendingReads = new PriorityQueue<>();
+
 	/**
 	 * Creates a new instance of DeliveryThread
 	 * 
@@ -96,6 +112,8 @@ public final class DeliveryThread extends Thread {
 		// 此轮共识是否发生过回滚
 		if (dec.getRollback()) {
 			this.tomLayer.getExecManager().removeSingleConsensus(dec.getConsensusId());
+			// the rolled back consensus id must be proposed again before the pipelined ones
+			tomLayer.pipelineRollback(dec.getConsensusId());
 			tomLayer.setInExec(-1);
 		} else {
 			tomLayer.setLastExec(dec.getConsensusId());
@@ -171,6 +189,7 @@ public final class DeliveryThread extends Thread {
 		// set this decision as the last one from this replica
 		LOGGER.debug("Setting last CID to {}", lastCID);
 		tomLayer.setLastExec(lastCID);
+		setLastDelivered(lastCID);
 
 		// define the last stable consensus... the stable consensus can
 		// be removed from the leaderManager and the executionManager
@@ -263,6 +282,9 @@ public final class DeliveryThread extends Thread {
 					if (requests != null && requests.length > 0) {
 						deliverMessages(consensusIds, regenciesIds, leadersIds, cDecs, requests,
 								asyncResponseLinkedList, lastDecision.getRollback());
+						if (!lastDecision.getRollback()) {
+							setLastDelivered(lastDecision.getConsensusId());
+						}
 
 						// ******* EDUARDO BEGIN ***********//
 						if (controller.hasUpdates()) {
@@ -322,18 +344,77 @@ public final class DeliveryThread extends Thread {
 		return requests;
 	}
 
-	protected void deliverUnordered(TOMMessage request, int regency) {
+	/**
+	 * 交付应用执行只读请求；
+	 *
+	 * @param request      只读请求；
+	 * @param regency      当前执政期；
+	 * @param deliveredCid 执行之前最后一个已交付应用执行的共识，读取的状态不早于此共识，作为应答的水位；
+	 */
+	protected void executeUnordered(TOMMessage request, int regency, int deliveredCid) {
 
 		MessageContext msgCtx = new MessageContext(request.getSender(), request.getViewID(), request.getReqType(),
 				request.getSession(), request.getSequence(), request.getOperationId(), request.getReplyServer(),
-				request.serializedMessageSignature, System.currentTimeMillis(), 0, 0, regency, -1, -1, null, null,
-				false); // Since the request is unordered,
-						// there is no consensus info to pass
+				request.serializedMessageSignature, System.currentTimeMillis(), 0, 0, regency, -1, deliveredCid, null,
+				null, false); // Since the request is unordered, the only consensus
+								// info to pass is the last one delivered before it
 
 		msgCtx.readOnly = true;
 		receiver.receiveReadonlyMessage(request, msgCtx);
 	}
 
+	/**
+	 * 在指定共识交付应用执行之后应答只读请求；指定的共识已经执行时立即应答，否则暂存到该共识执行之后在交付线程上应答；
+	 * <p>
+	 * 超出最后交付的共识 highMark 以上的共识不会很快执行（客户端不可能观察到，或者当前节点远远落后），丢弃读请求，
+	 * 由客户端超时后改为以有序请求执行；
+	 *
+	 * @param request 只读请求；
+	 * @param regency 当前执政期；
+	 * @param readCid 读请求必须观察到的共识 id；
+	 */
+	protected void deliverUnordered(TOMMessage request, int regency, int readCid) {
+		int deliveredCid;
+		synchronized (pendingReads) {
+			deliveredCid = lastDelivered;
+			if (readCid > deliveredCid) {
+				if ((long) readCid - deliveredCid > controller.getStaticConf().getPaxosHighMark()) {
+					LOGGER.warn("Discard the read of client[{}] waiting for consensus[{}], too far beyond the last delivered consensus[{}]!",
+							request.getSender(), readCid, deliveredCid);
+				} else if (pendingReads.size() < MAX_PENDING_READS) {
+					pendingReads.add(new PendingRead(request, regency, readCid));
+				} else {
+					LOGGER.warn("Discard the read of client[{}] waiting for consensus[{}], too many pending reads!",
+							request.getSender(), readCid);
+				}
+				return;
+			}
+		}
+		executeUnordered(request, regency, deliveredCid);
+	}
+
+	/**
+	 * 记录最后一个已交付应用执行的共识，并应答等待该共识的读请求；
+	 *
+	 * @param cid
+	 */
+	public void setLastDelivered(int cid) {
+		List<PendingRead> reads = new ArrayList<>();
+		int deliveredCid;
+		synchronized (pendingReads) {
+			if (cid > lastDelivered) {
+				lastDelivered = cid;
+			}
+			deliveredCid = lastDelivered;
+			while (!pendingReads.isEmpty() && pendingReads.peek().readCid <= deliveredCid) {
+				reads.add(pendingReads.poll());
+			}
+		}
+		for (PendingRead read : reads) {
+			executeUnordered(read.request, read.regency, deliveredCid);
+		}
+	}
+
 	private void deliverMessages(int consId[], int regencies[], int leaders[], CertifiedDecision[] cDecs,
                                  TOMMessage[][] requests, List<byte[]> asyncResponseLinkedList, boolean isRollback) {
 		receiver.receiveMessages(consId, regencies, leaders, cDecs, requests, asyncResponseLinkedList, isRollback);
@@ -366,4 +447,24 @@ public final class DeliveryThread extends Thread {
 		notEmptyQueue.signalAll();
 		decidedLock.unlock();
 	}
+
+	private static class PendingRead implements Comparable<PendingRead> {
+
+		private final TOMMessage request;
+
+		private final int regency;
+
+		private final int readCid;
+
+		private PendingRead(TOMMessage request, int regency, int readCid) {
+			this.request = request;
+			this.regency = regency;
+			this.readCid = readCid;
+		}
+
+		@Override
+		public int compareTo(PendingRead o) {
+			return Integer.compare(readCid, o.readCid);
+		}
+	}
 }
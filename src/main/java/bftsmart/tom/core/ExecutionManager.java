@@ -21,13 +21,18 @@ import bftsmart.consensus.Epoch;
 import bftsmart.consensus.messages.ConsensusMessage;
 import bftsmart.consensus.messages.MessageFactory;
 import bftsmart.consensus.roles.Acceptor;
+import bftsmart.consensus.roles.AsyncPreComputer;
 import bftsmart.consensus.roles.Proposer;
 import bftsmart.reconfiguration.ReplicaTopology;
 import bftsmart.reconfiguration.ServerViewController;
 import bftsmart.tom.server.defaultservices.DefaultRecoverable;
 import org.slf4j.LoggerFactory;
 
-import java.util.*;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.locks.ReentrantLock;
 
 
@@ -47,12 +52,9 @@ public final class ExecutionManager {
     //private int[] acceptors; // Process ID's of all replicas, including this one
     //private int[] otherAcceptors; // Process ID's of all replicas, except this one
     //******* EDUARDO END **************//
-    private Map<Integer, Consensus> consensuses = new TreeMap<Integer, Consensus>(); // Consensuses
-    private ReentrantLock consensusesLock = new ReentrantLock(); //lock for consensuses table
-    // Paxos messages that were out of context (that didn't belong to the consensus that was/is is progress
-    private Map<Integer, List<ConsensusMessage>> outOfContext = new HashMap<Integer, List<ConsensusMessage>>();
-    // Proposes that were out of context (that belonged to future consensuses, and not the one running at the time)
-    private Map<Integer, ConsensusMessage> outOfContextProposes = new HashMap<Integer, ConsensusMessage>();
+    // Consensuses, plus the Paxos messages and proposes that were out of context (that didn't belong to the
+    // consensus that was/is in progress), indexed by consensus id
+    private final ConsensusWindow window;
     private ReentrantLock outOfContextLock = new ReentrantLock(); //lock for out of context
     private boolean stopped = false; // Is the execution manager stopped?
     // When the execution manager is stopped, incoming paxos messages are stored here
@@ -99,6 +101,7 @@ public final class ExecutionManager {
         this.timeoutHighMark = this.topology.getStaticConf().getTimeoutHighMark();
         /******************************************************************/
         //******* EDUARDO END **************//
+        this.window = new ConsensusWindow(Math.max(paxosHighMark, timeoutHighMark));
         
         // Get initial leader
         if (topology.getCurrentViewProcesses().length > 0)
@@ -111,9 +114,34 @@ public final class ExecutionManager {
      * @param leader Current leader
      */
     public void setNewLeader (int leader) {
+            if (this.currentLeader != leader) {
+                discardOutOfContextProposes(leader);
+            }
             this.currentLeader = leader;
     }
 
+    /**
+     * Discards the out of context proposes which were not sent by the specified
+     * leader. A deposed leader might have pipelined proposes for consensus ahead
+     * of the one in execution, and they must not shadow the ones of the new leader.
+     *
+     * @param leader Current leader
+     */
+    private void discardOutOfContextProposes(int leader) {
+        outOfContextLock.lock();
+        try {
+            window.discardProposes(prop -> {
+                if (prop.getSender() != leader) {
+                    LOGGER.debug("(ExecutionManager.discardOutOfContextProposes) discarding {}", prop);
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            outOfContextLock.unlock();
+        }
+    }
+
     /**
      * Get the current leader
      * @return Current leader
@@ -228,7 +256,8 @@ public final class ExecutionManager {
             }
 
             // If rollback occurs, this node no longer processes new messages, wait state transfer
-            boolean rollHappend = tomLayer.execManager.getConsensus(lastConsId).getPrecomputeRolled();
+            Consensus lastConsensus = window.getConsensus(lastConsId);
+            boolean rollHappend = lastConsensus != null && lastConsensus.getPrecomputeRolled();
 
             LOGGER.debug("(ExecutionManager.checkLimits) Received message {}", msg);
             LOGGER.debug("(ExecutionManager.checkLimits) I'm at consensus {} and my last consensus is {}",
@@ -327,7 +356,7 @@ public final class ExecutionManager {
     public boolean receivedOutOfContextPropose(int cid) {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        boolean result = outOfContextProposes.get(cid) != null;
+        boolean result = window.getPropose(cid) != null;
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
 
@@ -342,7 +371,7 @@ public final class ExecutionManager {
     public boolean receivedOutOfContextWriteAndAccept(int cid) {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        boolean result = outOfContext.get(cid) != null;
+        boolean result = window.getMessages(cid) != null;
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
 
@@ -357,15 +386,12 @@ public final class ExecutionManager {
      */
     public void removeSingleConsensus(int id) {
 
-        consensusesLock.lock();
-        consensuses.remove(id);
-        consensusesLock.unlock();
+        window.removeConsensus(id);
 
         outOfContextLock.lock();
 
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        outOfContextProposes.remove(id);
-        outOfContext.remove(id);
+        window.clear(id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
@@ -378,21 +404,15 @@ public final class ExecutionManager {
      * @return The consensus that was removed
      */
     public Consensus removeConsensus(int id) {
-        consensusesLock.lock();
-        /******* BEGIN CONSENSUS CRITICAL SECTION *******/
-        Consensus consensus = consensuses.remove(id);
+        Consensus consensus = window.removeConsensus(id);
 
         // Addition to fix memory leak
-        for (int i = lastRemovedCID; i < id; i++) consensuses.remove(i);
+        window.removeConsensuses(lastRemovedCID, id);
         lastRemovedCID = id;
-        
-        /******* END CONSENSUS CRITICAL SECTION *******/
-        consensusesLock.unlock();
 
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        outOfContextProposes.remove(id);
-        outOfContext.remove(id);
+        window.clear(id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
@@ -405,21 +425,7 @@ public final class ExecutionManager {
 
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
-        Integer[] keys = new Integer[outOfContextProposes.keySet().size()];
-        outOfContextProposes.keySet().toArray(keys);
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i] <= id) {
-                outOfContextProposes.remove(keys[i]);
-            }
-        }
-
-        keys = new Integer[outOfContext.keySet().size()];
-        outOfContext.keySet().toArray(keys);
-        for (int i = 0; i < keys.length; i++) {
-            if (keys[i] <= id) {
-                outOfContext.remove(keys[i]);
-            }
-        }
+        window.clear(Integer.MIN_VALUE, id);
 
         /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         outOfContextLock.unlock();
@@ -433,25 +439,8 @@ public final class ExecutionManager {
      * @return The consensus specified
      */
     public Consensus getConsensus(int cid) {
-        consensusesLock.lock();
-        /******* BEGIN CONSENSUS CRITICAL SECTION *******/
-        
-        Consensus consensus = consensuses.get(cid);
-
-        if (consensus == null) {//there is no consensus created with the given cid
-            //let's create one...
-            Decision dec = new Decision(cid);
-
-            consensus = new Consensus(this, dec);
-
-            //...and add it to the consensuses table
-            consensuses.put(cid, consensus);
-        }
-
-        /******* END CONSENSUS CRITICAL SECTION *******/
-        consensusesLock.unlock();
-
-        return consensus;
+        //if there is no consensus created with the given cid, let's create one
+        return window.getOrCreateConsensus(cid, id -> new Consensus(this, new Decision(id)));
     }
 
     /**
@@ -461,39 +450,40 @@ public final class ExecutionManager {
      * @return void
      */
     public void updateConsensus(int cid) {
-        consensusesLock.lock();
-
-       Consensus consensus =  consensuses.get(cid);
-
-       consensus.setPrecomputeRolled();
-
-       consensuses.remove(cid);
-
-       consensuses.put(cid, consensus);
-
-       consensusesLock.unlock();
+        Consensus consensus = window.getConsensus(cid);
 
+        consensus.setPrecomputeRolled();
     }
 
     public boolean isDecidable(int cid) {
         if (receivedOutOfContextPropose(cid)) {
             Consensus cons = getConsensus(cid);
-            ConsensusMessage prop = outOfContextProposes.get(cons.getId());
-            Epoch epoch = cons.getEpoch(prop.getEpoch(), topology);
-            byte[] propHash = tomLayer.computeHash(prop.getValue());
-            List<ConsensusMessage> msgs = outOfContext.get(cid);
             int countWrites = 0;
             int countAccepts = 0;
-            if (msgs != null) {
-                for (ConsensusMessage msg : msgs) {
-                    // 对于Accept类型的共识消息，需要通过getOrigPropValue取到预计算之前的提议值hash
-                    if (msg.getEpoch() == epoch.getTimestamp() &&
-                            (Arrays.equals(propHash, msg.getValue()) || Arrays.equals(propHash, msg.getOrigPropValue()))) {
-                        
-                        if (msg.getType() == MessageFactory.WRITE) countWrites++;
-                        else if (msg.getType() == MessageFactory.ACCEPT) countAccepts++;
+            outOfContextLock.lock();
+            /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
+            try {
+                ConsensusMessage prop = window.getPropose(cons.getId());
+                if (prop == null) {
+                    return false;
+                }
+                Epoch epoch = cons.getEpoch(prop.getEpoch(), topology);
+                byte[] propHash = tomLayer.computeHash(prop.getValue());
+                List<ConsensusMessage> msgs = window.getMessages(cid);
+                if (msgs != null) {
+                    for (ConsensusMessage msg : msgs) {
+                        // 对于Accept类型的共识消息，需要通过getOrigPropValue取到预计算之前的提议值hash
+                        if (msg.getEpoch() == epoch.getTimestamp() &&
+                                (Arrays.equals(propHash, msg.getValue()) || Arrays.equals(propHash, msg.getOrigPropValue()))) {
+
+                            if (msg.getType() == MessageFactory.WRITE) countWrites++;
+                            else if (msg.getType() == MessageFactory.ACCEPT) countAccepts++;
+                        }
                     }
                 }
+            } finally {
+                /******* END OUTOFCONTEXT CRITICAL SECTION *******/
+                outOfContextLock.unlock();
             }
             if(topology.getStaticConf().isBFT()){
             	return ((countWrites > (2*topology.getCurrentViewF())) &&
@@ -508,7 +498,7 @@ public final class ExecutionManager {
         outOfContextLock.lock();
         /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
         
-        ConsensusMessage prop = outOfContextProposes.remove(consensus.getId());
+        ConsensusMessage prop = window.removePropose(consensus.getId());
         if (prop != null) {
             LOGGER.debug("(ExecutionManager.processOutOfContextPropose) {} Processing out of context propose", consensus.getId());
             acceptor.processMessage(prop);
@@ -533,7 +523,7 @@ public final class ExecutionManager {
 
             LOGGER.info("[ExecutionManager] processOutOfContext start!");
             //then we have to put the pending paxos messages
-            List<ConsensusMessage> messages = outOfContext.remove(consensus.getId());
+            List<ConsensusMessage> messages = window.takeMessages(consensus.getId());
 
             // 处于同一轮共识中的消息，保证write的处理先于accept;
             // order start
@@ -569,6 +559,9 @@ public final class ExecutionManager {
                 }
                 LOGGER.debug("(ExecutionManager.processOutOfContext) cid {} Finished out of context processing", consensus.getId());
             }
+            if (messages != null) {
+                window.recycle(consensus.getId(), messages);
+            }
 
             /******* END OUTOFCONTEXT CRITICAL SECTION *******/
         } catch (Exception e) {
@@ -591,28 +584,10 @@ public final class ExecutionManager {
             /******* BEGIN OUTOFCONTEXT CRITICAL SECTION *******/
             if (m.getType() == MessageFactory.PROPOSE) {
                 LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-                outOfContextProposes.put(m.getNumber(), m);
+                window.putPropose(m, tomLayer.getLastExec());
             } else {
-                List<ConsensusMessage> messages = outOfContext.get(m.getNumber());
-                if (messages == null) {
-                    messages = new LinkedList<ConsensusMessage>();
-                    outOfContext.put(m.getNumber(), messages);
-//                    LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-//                    messages.add(m);
-                }
-//                else {
-//                    for (ConsensusMessage consensusMessage : messages) {
-//                        // 过滤掉无效的消息：write ,accept消息，如果来自同一轮共识，且属于同一个节点来源，只保留时间戳最新的
-//                        if ((m.getSender() == consensusMessage.getSender()) && m.getEpoch() >= consensusMessage.getEpoch()) {
-//                            LOGGER.debug("(ExecutionManager.addOutOfContextMessage) removing {}", m);
-//                            messages.remove(consensusMessage);
-//                            LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-//                            messages.add(m);
-//                        }
-//                    }
-//                }
                 LOGGER.debug("(ExecutionManager.addOutOfContextMessage) adding {}", m);
-                messages.add(m);
+                window.addMessage(m, tomLayer.getLastExec());
             }
 
             /******* END OUTOFCONTEXT CRITICAL SECTION *******/
@@ -628,10 +603,7 @@ public final class ExecutionManager {
         try {
             outOfContextLock.lock();
 
-            for (int cid = fromCid; cid < toCid; cid++) {
-                outOfContext.remove(cid);
-                outOfContextProposes.remove(cid);
-            }
+            window.clear(fromCid, toCid - 1);
         } finally {
             outOfContextLock.unlock();
         }
@@ -642,9 +614,15 @@ public final class ExecutionManager {
         return stoppedMsgs.toString();
     }
 
-    // 避免重复预计算
+    // 避免重复预计算；与异步预计算的完成在同一把共识的锁内执行，进行中的异步预计算被取消，完成时回滚其结果
     public void preComputeRollback(Consensus cons) {
-        if (cons != null && cons.getPrecomputed() && !cons.getPrecomputeCommited()) {
+        if (cons == null) {
+            return;
+        }
+        cons.lock.lock();
+        try {
+            AsyncPreComputer.cancel(cons);
+            if (cons.getPrecomputed() && !cons.getPrecomputeCommited()) {
 
 					DefaultRecoverable defaultRecoverable = getAcceptor().getDefaultExecutor();
 
@@ -656,5 +634,8 @@ public final class ExecutionManager {
                     }
                     cons.setPrecomputed(false);
 				}
+        } finally {
+            cons.lock.unlock();
+        }
     }
 }
@@ -0,0 +1,162 @@
+package bftsmart.tom.core;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bftsmart.clientsmanagement.ClientsManager;
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.server.RequestVerifier;
+import bftsmart.tom.util.SignatureSchemes;
+
+/**
+ * 提议的验证阶段；
+ * <p>
+ * 对提议中的每一个请求校验客户端签名（启用签名时）以及应用层的有效性（
+ * {@link RequestVerifier#isValidRequest(byte[])}）；
+ * <p>
+ * 配置了验证线程时，同一个批次的请求被分片后由工作线程并行验证，全部完成后才返回，之后才会发送 WRITE
+ * 消息；未配置验证线程时在调用者线程上依次验证；
+ *
+ */
+public final class ProposalVerifier {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProposalVerifier.class);
+
+	// 每个工作线程至少验证的请求数，避免小批次的线程切换开销超过验证本身；
+	private static final int MIN_REQUESTS_PER_TASK = 8;
+
+	private final ViewTopology controller;
+
+	private final RequestVerifier verifier;
+
+	private final ClientsManager clientsManager;
+
+	private final int threads;
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param controller     视图控制器；
+	 * @param verifier       应用层的请求验证器；
+	 * @param clientsManager 客户端管理器，用于获取客户端的公钥；
+	 * @param threads        验证线程数；小于等于 0 时在调用者线程上验证；
+	 */
+	public ProposalVerifier(ViewTopology controller, RequestVerifier verifier, ClientsManager clientsManager,
+			int threads) {
+		this.controller = controller;
+		this.verifier = verifier;
+		this.clientsManager = clientsManager;
+		this.threads = threads;
+		if (threads > 0) {
+			this.executor = Executors.newFixedThreadPool(threads, new VerifierThreadFactory());
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * 验证一个批次的全部请求；
+	 *
+	 * @param requests 从提议中反序列化得到的请求；
+	 * @return 全部请求有效时返回 true；
+	 */
+	public boolean verify(TOMMessage[] requests) {
+		int taskCount = executor == null ? 1 : Math.min(threads, requests.length / MIN_REQUESTS_PER_TASK);
+		if (taskCount <= 1) {
+			return verify(requests, 0, requests.length);
+		}
+
+		int chunk = (requests.length + taskCount - 1) / taskCount;
+		List<Future<Boolean>> results = new ArrayList<>(taskCount);
+		// 最后一个分片由调用者线程验证；
+		int from = 0;
+		for (; from + chunk < requests.length; from += chunk) {
+			final int start = from;
+			final int end = from + chunk;
+			results.add(executor.submit(() -> verify(requests, start, end)));
+		}
+		boolean valid = verify(requests, from, requests.length);
+
+		for (Future<Boolean> result : results) {
+			try {
+				valid &= result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException e) {
+				LOGGER.error("Error occurred while verifying proposed requests! --" + e.getMessage(), e.getCause());
+				valid = false;
+			}
+		}
+		return valid;
+	}
+
+	private boolean verify(TOMMessage[] requests, int from, int to) {
+		boolean bft = controller.getStaticConf().isBFT();
+		boolean useSignatures = controller.getStaticConf().isUseSignatures();
+		for (int i = from; i < to; i++) {
+			TOMMessage request = requests[i];
+			// enforce the "external validity" property, i.e, verify if the
+			// requests are valid in accordance to the application semantics
+			// and not an erroneous requests sent by a Byzantine leader.
+			if (bft && !verifier.isValidRequest(request.getContentBuffer())) {
+				LOGGER.warn("Invalid request in proposal! --[Sender={}][Sequence={}]", request.getSender(),
+						request.getSequence());
+				return false;
+			}
+			if (useSignatures && !verifySignature(request)) {
+				LOGGER.warn("Invalid client signature in proposal! --[Sender={}][Sequence={}]", request.getSender(),
+						request.getSequence());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean verifySignature(TOMMessage request) {
+		if (request.serializedMessageSignature == null) {
+			return false;
+		}
+		PublicKey publicKey = clientsManager.getClientData(request.getSender()).getPublicKey();
+		if (publicKey == null) {
+			return false;
+		}
+		try {
+			// 签名算法的引擎是线程本地的，可由多个验证线程并行使用；
+			return SignatureSchemes.forKey(publicKey).verify(publicKey, request.getSerializedBuffer(),
+					request.serializedMessageSignature);
+		} catch (Exception e) {
+			LOGGER.warn("Error occurred while verifying client signature! --" + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class VerifierThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger index = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thrd = new Thread(r, "Proposal-Verifier-" + index.incrementAndGet());
+			thrd.setDaemon(true);
+			return thrd;
+		}
+	}
+}
@@ -159,6 +159,12 @@ public class Synchronizer {
 		if (!tom.isConnectRemotesOK()) {
 			return;
 		}
+		if (isLeasePromised()) {
+			// 对领导者的租约承诺仍然有效，推迟到承诺过期后由请求计时器再次触发；
+			LOGGER.info("I am proc {}, defer the timeout of requests to regency[{}] until the read lease expires!",
+					getCurrentId(), regencyPropose.getRegency().getId());
+			return;
+		}
 		lcManager.setCurrentRequestTimedOut(requestList);
 
 		lcManager.addStop(regencyPropose);
@@ -196,6 +202,16 @@ public class Synchronizer {
 		}
 	}
 
+	/**
+	 * 当前节点对领导者的读租约承诺是否仍然有效；
+	 * <p>
+	 * 承诺有效期间当前节点不发起也不附议领导者变更，保证持有租约的领导者在本地应答的读请求不会错过新执政期的写入；
+	 */
+	private boolean isLeasePromised() {
+		HeartBeatTimer heartBeatTimer = tom.heartBeatTimer;
+		return heartBeatTimer != null && heartBeatTimer.isLeasePromised();
+	}
+
 	public void sendSTOP(LeaderRegencyPropose regencyPropose) {
 		int proposedNewRegency = regencyPropose.getRegency().getId();
 
@@ -1312,6 +1328,12 @@ public class Synchronizer {
 
 		// TODO: 收到 STOP 消息；
 		// this message is for the next leader change?
+		if (isLeasePromised() && msg.getSender() != tom.leader()) {
+			// 对领导者的租约承诺仍然有效，暂不附议；发送者会重发 STOP 消息，承诺过期后再处理；
+			log_debug("process_LC_STOP", "Defer STOP message until the read lease expires!", msg.getType(),
+					msg.getSender());
+			return;
+		}
 		LeaderRegencyPropose regencyPropose = copyPropose(msg);
 		final int proposedRegencyId = regencyPropose.getRegency().getId();
 		if (lcManager.canPropose(proposedRegencyId)) {
@@ -18,8 +18,8 @@ package bftsmart.tom.core;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
 import java.security.SignatureException;
@@ -54,6 +54,8 @@ import bftsmart.tom.server.RequestVerifier;
 import bftsmart.tom.server.defaultservices.DefaultRecoverable;
 import bftsmart.tom.util.BatchBuilder;
 import bftsmart.tom.util.BatchReader;
+import bftsmart.tom.util.SignatureSchemes;
+import bftsmart.tom.util.Tracer;
 
 /**
  * This class implements the state machine replication protocol described in
@@ -103,12 +105,20 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 */
 	private int inExecution = -1;
 	private int lastExecuted = -1;
+	/**
+	 * The id of the last consensus proposed by this replica as leader (or -1 if
+	 * there is no proposal in flight); only used when pipelining is enabled
+	 */
+	private volatile int lastProposed = -1;
+	/**
+	 * The id of a rolled back consensus which must be proposed again before any
+	 * other one (or -1 if there is none); only used when pipelining is enabled
+	 */
+	private volatile int reproposeCid = -1;
 
 	public SHA256Utils md = new SHA256Utils();
 	private Signature engine;
 
-	private ReentrantLock hashLock = new ReentrantLock();
-
 	// the next two are used to generate non-deterministic data in a deterministic
 	// way (by the leader)
 	public BatchBuilder bb = new BatchBuilder(System.nanoTime());
@@ -128,6 +138,12 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 	private RequestVerifier verifier;
 
+	private ProposalVerifier proposalVerifier;
+
+	private final Tracer tracer;
+
+	private final BatchingController batching;
+
 	private Synchronizer syncher;
 
 	private String realName;
@@ -152,6 +168,8 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		this.acceptor = a;
 		this.communication = cs;
 		this.controller = controller;
+		this.tracer = controller.getTracer();
+		this.batching = new BatchingController(controller.getStaticConf(), tracer);
 		this.requestsTimer = new RequestsTimer(this, communication, this.controller); // Create requests timers manager
 																						// (a thread)
 		this.heartBeatTimer = new HeartBeatTimer(this);
@@ -168,13 +186,8 @@ public class TOMLayer extends Thread implements RequestReceiver {
 //            e.printStackTrace(System.out);
 //        }
 
-		try {
-			this.engine = Signature.getInstance("SHA1withRSA");
-		} catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
-
 		this.prk = this.controller.getStaticConf().getRSAPrivateKey();
+		this.engine = SignatureSchemes.forKey(prk).newEngine();
 		this.dt = new DeliveryThread(this, receiver, recoverer, this.controller); // Create delivery thread
 		this.dt.start();
 		this.stateManager = recoverer.getStateManager();
@@ -185,11 +198,19 @@ public class TOMLayer extends Thread implements RequestReceiver {
 			public boolean isValidRequest(byte[] request) {
 				return true; // By default, never validate requests
 			}
+
+			@Override
+			public boolean isValidRequest(ByteBuffer request) {
+				return true;
+			}
 		};
 
 		// I have a verifier, now create clients manager
 		this.clientsManager = new ClientsManager(this.controller, requestsTimer, this.verifier);
 
+		this.proposalVerifier = new ProposalVerifier(this.controller, this.verifier, this.clientsManager,
+				this.controller.getStaticConf().getVerifyThreads());
+
 		this.clientDatasMonitorTimer = new ClientDatasMonitorTimer(this.controller, requestsTimer, clientsManager);
 
 		this.syncher = new Synchronizer(this); // create synchronizer
@@ -210,15 +231,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 * @return Hash for the specified TOM message
 	 */
 	public final byte[] computeHash(byte[] data) {
-		byte[] ret = null;
-		hashLock.lock();
-		try {
-			ret = md.hash(data);
-		} finally {
-			hashLock.unlock();
-		}
-
-		return ret;
+		return md.hash(data);
 	}
 
 	public SignedObject sign(Serializable obj) {
@@ -255,6 +268,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	}
 
 	public void imAmTheLeader() {
+		resetPipeline();
 		leaderLock.lock();
 		iAmLeader.signal();
 		leaderLock.unlock();
@@ -267,6 +281,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 */
 	public void setLastExec(int last) {
 		this.lastExecuted = last;
+		batching.decided(last, System.nanoTime());
 	}
 
 	/**
@@ -293,6 +308,76 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		proposeLock.unlock();
 	}
 
+	/**
+	 * Gets the max number of consensus instances the leader may have in flight
+	 *
+	 * @return pipeline depth, 1 means no pipelining
+	 */
+	public int getPipelineDepth() {
+		int depth = controller.getStaticConf().getPipelineDepth();
+		return depth < 1 ? 1 : depth;
+	}
+
+	/**
+	 * Whether the leader may start new consensus instances before the previous
+	 * ones are decided
+	 *
+	 * @return
+	 */
+	public boolean isPipelined() {
+		return getPipelineDepth() > 1 && controller.getCurrentViewN() > 1;
+	}
+
+	/**
+	 * Forgets the proposals in flight, the next propose will start from the
+	 * consensus following the last executed one
+	 */
+	public void resetPipeline() {
+		proposeLock.lock();
+		this.lastProposed = -1;
+		this.reproposeCid = -1;
+		canPropose.signalAll();
+		proposeLock.unlock();
+	}
+
+	/**
+	 * Notifies the pipeline that the specified consensus was rolled back, so its
+	 * id must be proposed again
+	 *
+	 * @param cid ID of the consensus which was rolled back
+	 */
+	public void pipelineRollback(int cid) {
+		if (!isPipelined()) {
+			return;
+		}
+		proposeLock.lock();
+		if (cid <= lastProposed) {
+			this.reproposeCid = cid;
+		}
+		proposeLock.unlock();
+	}
+
+	/**
+	 * Gets the number of consensus instances proposed by this replica that are
+	 * still not executed
+	 */
+	private int getInFlight() {
+		int last = getLastExec();
+		return lastProposed > last ? lastProposed - last : 0;
+	}
+
+	/**
+	 * Gets the id of the next consensus to be proposed by this replica
+	 */
+	private int nextProposeCid() {
+		int last = getLastExec();
+		if (reproposeCid == last + 1) {
+			return reproposeCid;
+		}
+		// the consensus in execution may have been started by the synchronizer
+		return Math.max(Math.max(last, lastProposed), getInExec()) + 1;
+	}
+
 	/**
 	 * This method blocks until the PaW algorithm is finished
 	 */
@@ -315,6 +400,10 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	/**
 	 * This method is invoked by the communication system to deliver a request. It
 	 * assumes that the communication system delivers the message in FIFO order.
+	 * <p>
+	 * A read-only request carrying a watermark is answered once the consensus of
+	 * the watermark is executed by this replica, so the client reads its own
+	 * writes and never observes an older state than the one it already observed.
 	 *
 	 * @param msg The request being received
 	 */
@@ -326,6 +415,11 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 		// check if this request is valid and add it to the client' pending requests
 		// list
+		if (msg.getReqType() == TOMMessageType.LEASE_READ_REQUEST) {
+			leaseReadReceived(msg);
+			return;
+		}
+
 		boolean readOnly = (msg.getReqType() == TOMMessageType.UNORDERED_REQUEST
 				|| msg.getReqType() == TOMMessageType.UNORDERED_HASHED_REQUEST);
 		if (readOnly) {
@@ -333,7 +427,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 					"I am {}, (TOMLayer.requestReceived) Received read-only TOMMessage from client {} with sequence number {} for session {}",
 					controller.getStaticConf().getProcessId(), msg.getSender(), msg.getSequence(), msg.getSession());
 
-			dt.deliverUnordered(msg, syncher.getLCManager().getLastReg());
+			dt.deliverUnordered(msg, syncher.getLCManager().getLastReg(), msg.getWatermark());
 		} else {
 			if(LOGGER.isDebugEnabled()) {
 				LOGGER.debug(
@@ -341,6 +435,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 						msg.getSender(), msg.getSequence(), msg.getSession());
 			}
 			if (clientsManager.requestReceived(msg, true, communication)) {
+				batching.requestArrived();
 				haveMessages();
 			} else {
 				LOGGER.error("(TOMLayer.requestReceived) the received TOMMessage {}  was discarded.", msg);
@@ -348,6 +443,50 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		}
 	}
 
+	/**
+	 * 处理租约读请求；
+	 * <p>
+	 * 只有领导者执行租约读请求：持有有效的读租约时，在已提议的共识全部执行之后在本地执行并应答，不经共识；
+	 * 否则返回不带内容的应答，客户端收到后改为以有序请求执行；<br>
+	 * 应答的 replyServer 标明节点所认定的领导者：领导者的应答为其自身，其它节点返回不带内容的应答，告知客户端当前的领导者；
+	 * 客户端只采信领导者的应答；
+	 * <p>
+	 * 已提议的共识中可能包含客户端已经得到应答的写请求，因此读请求必须等待它们执行，才能保证线性一致；
+	 *
+	 * @param msg
+	 */
+	private void leaseReadReceived(TOMMessage msg) {
+		if (!isLeader()) {
+			rejectLeaseRead(msg, leader());
+			return;
+		}
+		int regency = syncher.getLCManager().getLastReg();
+		if (heartBeatTimer.hasReadLease()) {
+			int readCid = Math.max(Math.max(getLastExec(), getInExec()), lastProposed);
+			LOGGER.debug("I am {}, (TOMLayer.leaseReadReceived) read of client {} with sequence {} at consensus {}",
+					controller.getStaticConf().getProcessId(), msg.getSender(), msg.getSequence(), readCid);
+			dt.deliverUnordered(msg, regency, readCid);
+		} else {
+			LOGGER.debug("I am {}, (TOMLayer.leaseReadReceived) reject read of client {} without a valid lease",
+					controller.getStaticConf().getProcessId(), msg.getSender());
+			rejectLeaseRead(msg, controller.getStaticConf().getProcessId());
+		}
+	}
+
+	/**
+	 * 拒绝租约读请求，客户端收到后改为以有序请求执行；
+	 *
+	 * @param msg
+	 * @param leader 当前节点所认定的领导者；
+	 */
+	private void rejectLeaseRead(TOMMessage msg, int leader) {
+		TOMMessage reply = new TOMMessage(controller.getStaticConf().getProcessId(), msg.getSession(),
+				msg.getSequence(), msg.getOperationId(), null, null, controller.getCurrentViewId(),
+				TOMMessageType.LEASE_READ_REQUEST);
+		reply.setReplyServer(leader);
+		communication.send(new int[] { msg.getSender() }, reply);
+	}
+
 	private DefaultRecoverable getDefaultExecutor() {
 		return (DefaultRecoverable) getDeliveryThread().getReceiver().getExecutor();
 	}
@@ -376,7 +515,9 @@ public class TOMLayer extends Thread implements RequestReceiver {
 	 */
 	public byte[] createPropose(Decision dec) {
 		// Retrieve a set of pending requests from the clients manager
-		RequestList pendingRequests = clientsManager.getPendingRequests();
+		RequestList pendingRequests = batching.isEnabled()
+				? clientsManager.getPendingRequests(batching.getBatchLimit())
+				: clientsManager.getPendingRequests();
 
 		int numberOfMessages = pendingRequests.size(); // number of messages retrieved
 		int numberOfNonces = this.controller.getStaticConf().getNumberOfNonces(); // ammount of nonces to be generated
@@ -390,7 +531,11 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 		LOGGER.debug("(TOMLayer.run) creating a PROPOSE with {} msgs", numberOfMessages);
 
-		return bb.makeBatch(pendingRequests, numberOfNonces, System.currentTimeMillis(), controller);
+		byte[] batch = bb.makeBatch(pendingRequests, numberOfNonces, System.currentTimeMillis(), controller);
+		if (dec.getConsensusId() > -1) {
+			batching.proposed(dec.getConsensusId(), numberOfMessages, batch.length, System.nanoTime());
+		}
+		return batch;
 	}
 
 	public String getRealName() {
@@ -442,6 +587,10 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 	public void lastCidSetOk() {
 		this.isLastCidSetOk = true;
+		// 应用的状态已经恢复到最后执行的共识；
+		if (dt != null) {
+			dt.setLastDelivered(getLastExec());
+		}
 	}
 
 	public boolean isLeaderConfirmed() {
@@ -508,10 +657,19 @@ public class TOMLayer extends Thread implements RequestReceiver {
 			return;
 		}
 
-		// blocks until the current consensus finishes
+		final boolean pipelined = isPipelined();
+
+		// blocks until the current consensus finishes, or until there is room in the
+		// pipeline for another consensus
 		proposeLock.lock();
 
-		if (getInExec() != -1) { // there is some consensus running
+		if (pipelined) {
+			while (doWork && (getInFlight() >= getPipelineDepth() || isRetrievingState())) {
+				LOGGER.debug("(TOMLayer.run) Waiting for room in pipeline, last proposed {}, last executed {}.",
+						lastProposed, getLastExec());
+				canPropose.awaitUninterruptibly();
+			}
+		} else if (getInExec() != -1) { // there is some consensus running
 			LOGGER.debug("(TOMLayer.run) Waiting for consensus {} termination.", getInExec());
 			canPropose.awaitUninterruptibly();
 		}
@@ -528,6 +686,7 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		if (!clientsManager.havePendingRequests()) {
 			haveMessages.awaitUninterruptibly();
 		}
+		awaitBatch();
 		messagesLock.unlock();
 
 		if (!doWork) {
@@ -537,6 +696,14 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		LOGGER.info("(TOMLayer.run) I am proc {}, I can try to propose.",
 				this.controller.getStaticConf().getProcessId());
 
+		if (pipelined) {
+			if ((execManager.getCurrentLeader() == controller.getCurrentProcessId()) && // I'm the leader
+					(clientsManager.havePendingRequests())) { // there are messages to be ordered
+				proposePipelined();
+			}
+			return;
+		}
+
 		if ((execManager.getCurrentLeader() == controller.getCurrentProcessId()) && // I'm the leader
 				(clientsManager.havePendingRequests()) && // there are messages to be ordered
 				(getInExec() == -1)) { // there is no consensus in execution
@@ -584,6 +751,50 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		}
 	}
 
+	/**
+	 * Proposes a new consensus without waiting for the ones in flight to be
+	 * decided. The acceptors still process the consensus instances one by one, in
+	 * the order of their ids: the proposes ahead of the consensus in execution are
+	 * kept as out of context messages until their turn comes.
+	 */
+	private void proposePipelined() {
+		int execId;
+		proposeLock.lock();
+		try {
+			if (getInFlight() >= getPipelineDepth()) {
+				return;
+			}
+			execId = nextProposeCid();
+			if (execId == reproposeCid) {
+				reproposeCid = -1;
+			}
+			if (execId > lastProposed) {
+				lastProposed = execId;
+			}
+			if (execId == getLastExec() + 1 && getInExec() == -1) {
+				LOGGER.debug("(TOMLayer.setInExec) modifying inExec from {} to {}", this.inExecution, execId);
+				this.inExecution = execId;
+			}
+		} finally {
+			proposeLock.unlock();
+		}
+
+		Decision dec = execManager.getConsensus(execId).getDecision();
+		byte[] value = createPropose(dec);
+
+		LOGGER.debug("Propose pipelined consensus by leader! --[Leader={}][ConsensusId={}][LastExec={}]",
+				controller.getCurrentProcessId(), execId, getLastExec());
+		execManager.getProposer().startConsensus(execId, value);
+
+		if (controller.getStaticConf().getEpochDelay() > 0) {
+			try {
+				sleep(controller.getStaticConf().getEpochDelay());
+			} catch (InterruptedException e) {
+				LOGGER.error("Epoch delay interrupted", e);
+			}
+		}
+	}
+
 	/**
 	 * Called by the current consensus instance, to notify the TOM layer that a
 	 * value was decided
@@ -621,19 +832,17 @@ public class TOMLayer extends Thread implements RequestReceiver {
 			// TODO: verify Timestamps and Nonces
 			requests = batchReader.deserialiseRequests(this.controller);
 
-			// enforce the "external validity" property, i.e, verify if the
-			// requests are valid in accordance to the application semantics
-			// and not an erroneous requests sent by a Byzantine leader.
-			for (TOMMessage r : requests) {
-				if (controller.getStaticConf().isBFT() && !verifier.isValidRequest(r.getContent()))
-					return null;
+			// enforce the "external validity" property and verify the client
+			// signatures, in parallel if verification threads are configured;
+			if (!proposalVerifier.verify(requests)) {
+				return null;
 			}
 
 			if (addToClientManager) {
 				for (int i = 0; i < requests.length; i++) {
 					// notifies the client manager that this request was received and get
 					// the result of its validation
-					if (!clientsManager.requestReceived(requests[i], false)) {
+					if (!clientsManager.requestReceived(requests[i], false, null, true)) {
 						clientsManager.getClientsLock().unlock();
 						LOGGER.error("(TOMLayer.isProposedValueValid) finished, return=false");
 						LOGGER.error("failure in deserialize batch");
@@ -679,6 +888,8 @@ public class TOMLayer extends Thread implements RequestReceiver {
 
 		proposeLock.lock();
 		this.inExecution = -1;
+		this.lastProposed = -1;
+		this.reproposeCid = -1;
 		// ot.addUpdate();
 		canPropose.signalAll();
 		proposeLock.unlock();
@@ -716,12 +927,38 @@ public class TOMLayer extends Thread implements RequestReceiver {
 		return syncher;
 	}
 
+	/**
+	 * 待提议的请求不足 {@link BatchingController} 的目标批次大小时，在其给出的等待时长内等待更多的请求；
+	 * <p>
+	 * 调用者须持有 messagesLock；
+	 */
+	private void awaitBatch() {
+		long remaining = batching.getWaitNanos();
+		while (doWork && remaining > 0 && !batching.isBatchReady()) {
+			try {
+				remaining = haveMessages.awaitNanos(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
 	private void haveMessages() {
 		messagesLock.lock();
 		haveMessages.signal();
 		messagesLock.unlock();
 	}
 
+	/**
+	 * 交付与共识路径的跟踪器；未开启跟踪时返回 {@link Tracer#DISABLED}；
+	 * 
+	 * @return
+	 */
+	public Tracer getTracer() {
+		return tracer;
+	}
+
 	public DeliveryThread getDeliveryThread() {
 		return dt;
 	}
@@ -750,6 +987,10 @@ public class TOMLayer extends Thread implements RequestReceiver {
 			viewSyncTimer.shutdown();
 		}
 
+		if (proposalVerifier != null) {
+			proposalVerifier.shutdown();
+		}
+
 		if (stateManager != null && stateManager instanceof StandardStateManager) {
 			StandardStateManager standardStateManager = (StandardStateManager) stateManager;
 			standardStateManager.shutdown();
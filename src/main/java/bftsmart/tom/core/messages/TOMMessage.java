@@ -26,6 +26,7 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This class represents a total ordered message
@@ -72,6 +73,11 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	public transient byte[] serializedMessageSignature = null;
 	public transient byte[] serializedMessageMAC = null;
 
+	// views of the bytes of this message inside a batch, see wrap(ByteBuffer);
+	// serializedMessage and content are only copied out of them on demand
+	private transient ByteBuffer serializedBuffer = null;
+	private transient ByteBuffer contentBuffer = null;
+
 	//for benchmarking purposes
 	public transient long consensusStartTime = 0; //time the consensus is created
 	public transient long proposeReceivedTime = 0; //time the propose is received
@@ -83,10 +89,19 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 
 	//the reply associated with this message
 	public transient TOMMessage reply = null;
+	//the full reply of a digest-only reply, re-sent when the client falls back to full replies
+	public transient TOMMessage fullReply = null;
 	public transient boolean alreadyProposed = false;
 	
+	// requests: the replica that returns the full reply, the others return digests;
+	// replies: on digest replies, the replica that returns the full reply;
+	// on lease read replies, the leader as seen by the sender
 	private int replyServer = -1;
 
+	// requests: the consensus the replica must have executed before answering a read;
+	// replies: the consensus whose state the reply reflects
+	private int watermark = -1;
+
 	public TOMMessage() {
 	}
 
@@ -174,9 +189,65 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 	 * @return The content of the message
 	 */
 	public byte[] getContent() {
+		if (content == null && contentBuffer != null) {
+			content = copyOf(contentBuffer);
+		}
 		return content;
 	}
 
+	/**
+	 * Retrieves a read-only view of the content of the message, without copying
+	 * it out of the batch it was read from
+	 * @return The content of the message, or null if it has no content
+	 */
+	public ByteBuffer getContentBuffer() {
+		if (contentBuffer != null) {
+			return contentBuffer.duplicate();
+		}
+		return content == null ? null : ByteBuffer.wrap(content).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Retrieves the bytes received from the client, copying them out of the batch
+	 * the message was read from on the first call
+	 * @return The serialized message
+	 */
+	public byte[] getSerializedMessage() {
+		if (serializedMessage == null && serializedBuffer != null) {
+			serializedMessage = copyOf(serializedBuffer);
+		}
+		return serializedMessage;
+	}
+
+	/**
+	 * Retrieves a read-only view of the bytes received from the client, without
+	 * copying them out of the batch the message was read from
+	 * @return The serialized message, or null if it is not available
+	 */
+	public ByteBuffer getSerializedBuffer() {
+		if (serializedBuffer != null) {
+			return serializedBuffer.duplicate();
+		}
+		return serializedMessage == null ? null : ByteBuffer.wrap(serializedMessage).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Retrieves the size of the bytes received from the client
+	 * @return The size of the serialized message, or -1 if it is not available
+	 */
+	public int getSerializedSize() {
+		if (serializedBuffer != null) {
+			return serializedBuffer.remaining();
+		}
+		return serializedMessage == null ? -1 : serializedMessage.length;
+	}
+
+	private static byte[] copyOf(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
 	public byte[] getViewContent() {
 		return viewContent;
 	}
@@ -226,6 +297,7 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 		out.writeInt(operationId);
 		out.writeInt(replyServer);
 		
+		byte[] content = getContent();
 		if (content == null) {
 			out.writeInt(-1);
 		} else {
@@ -238,6 +310,7 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 			out.writeInt(viewContent.length);
 			out.write(viewContent);
 		}
+		out.writeInt(watermark);
 	}
 
 	public void rExternal(DataInput in) throws IOException, ClassNotFoundException {
@@ -260,10 +333,59 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 			viewContent = new byte[toReadView];
 			in.readFully(viewContent);
 		}
+		watermark = in.readInt();
 
 		buildId();
 	}
 
+	/**
+	 * Reads a message from the bytes remaining in the buffer without copying them;
+	 * the header is decoded at once, while the content stays a view of the buffer
+	 * until {@link #getContent()} is called. The buffer must not be modified
+	 * afterwards.
+	 *
+	 * @param serialized the bytes written by {@link #wExternal(DataOutput)}
+	 * @return the message
+	 */
+	public static TOMMessage wrap(ByteBuffer serialized) {
+		ByteBuffer in = serialized.slice().asReadOnlyBuffer();
+		TOMMessage m = new TOMMessage();
+		m.sender = in.getInt();
+		m.viewID = in.getInt();
+		m.type = TOMMessageType.fromInt(in.getInt());
+		m.session = in.getInt();
+		m.sequence = in.getInt();
+		m.operationId = in.getInt();
+		m.replyServer = in.getInt();
+
+		int toRead = in.getInt();
+		if (toRead != -1) {
+			m.contentBuffer = slice(in, toRead);
+		}
+
+		int toReadView = in.getInt();
+		if (toReadView != -1) {
+			m.viewContent = new byte[toReadView];
+			in.get(m.viewContent);
+		}
+		m.watermark = in.getInt();
+
+		in.flip();
+		m.serializedBuffer = in;
+		m.buildId();
+		return m;
+	}
+
+	private static ByteBuffer slice(ByteBuffer in, int length) {
+		if (length < 0 || length > in.remaining()) {
+			throw new IllegalArgumentException("Illegal content length[" + length + "]!");
+		}
+		ByteBuffer view = in.slice();
+		view.limit(length);
+		in.position(in.position() + length);
+		return view;
+	}
+
 	/**
 	 * Used to build an unique id for the message
 	 */
@@ -350,12 +472,44 @@ public class TOMMessage extends SystemMessage implements Externalizable, Compara
 		}
 
 
+	/**
+	 * For a request, the replica that returns the full reply while the others
+	 * return digests; for a reply to an ordered request, a value other than -1
+	 * marks a digest reply; for a reply to a lease read, the leader as seen by
+	 * the sender. -1 means all the replicas return full replies.
+	 *
+	 * @return
+	 */
 	public int getReplyServer() {
 		return replyServer;
 	}
 
+	/**
+	 * Only meaningful for the replies to ordered requests.
+	 *
+	 * @return true if this is a digest-only reply to an ordered request;
+	 */
+	public boolean isDigestReply() {
+		return replyServer >= 0;
+	}
+
 
 	public void setReplyServer(int replyServer) {
 		this.replyServer = replyServer;
 	}
+
+	/**
+	 * The watermark of the message: for a read request, the id of the consensus
+	 * the replica must have executed before answering it; for a reply, the id of
+	 * the consensus whose state the reply reflects. -1 means no watermark.
+	 *
+	 * @return
+	 */
+	public int getWatermark() {
+		return watermark;
+	}
+
+	public void setWatermark(int watermark) {
+		this.watermark = watermark;
+	}
 }
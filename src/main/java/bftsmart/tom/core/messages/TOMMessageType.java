@@ -27,7 +27,8 @@ public enum TOMMessageType {
     RECONFIG, //3
     ASK_STATUS, // 4
     STATUS_REPLY,// 5
-    UNORDERED_HASHED_REQUEST; //6
+    UNORDERED_HASHED_REQUEST, //6
+    LEASE_READ_REQUEST; //7
     
     public int toInt() {
         switch(this) {
@@ -38,6 +39,7 @@ public enum TOMMessageType {
             case ASK_STATUS: return 4;
             case STATUS_REPLY: return 5;
             case UNORDERED_HASHED_REQUEST: return 6;
+            case LEASE_READ_REQUEST: return 7;
             default: return -1;
         }
     }
@@ -51,6 +53,7 @@ public enum TOMMessageType {
             case 4: return ASK_STATUS;
             case 5: return STATUS_REPLY;
             case 6: return UNORDERED_HASHED_REQUEST;
+            case 7: return LEASE_READ_REQUEST;
             default: return RECONFIG;
         }            
     }
@@ -0,0 +1,52 @@
+package bftsmart.tom.leaderchange;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import bftsmart.communication.SystemMessage;
+
+/**
+ * 跟随者对领导者心跳的确认；
+ * <p>
+ * 发送确认即承诺在租约期内不发起也不附议针对该执政期的领导者变更，领导者据此续约读租约；
+ */
+public class HeartBeatAckMessage extends SystemMessage {
+
+    // 确认的心跳所属的执政期
+    private int regency;
+
+    // 确认的心跳的序号
+    private long sequence;
+
+    public HeartBeatAckMessage() {
+    }
+
+    public HeartBeatAckMessage(int sender, int regency, long sequence) {
+        super(sender);
+        this.regency = regency;
+        this.sequence = sequence;
+    }
+
+    public int getRegency() {
+        return regency;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(regency);
+        out.writeLong(sequence);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        regency = in.readInt();
+        sequence = in.readLong();
+    }
+}
@@ -17,6 +17,9 @@ public class HeartBeatMessage extends SystemMessage {
 
     private int lastRegency;
 
+    // 心跳的序号，跟随者以确认消息回应同一序号的心跳
+    private long sequence;
+
     public HeartBeatMessage() {
     }
 
@@ -31,6 +34,11 @@ public class HeartBeatMessage extends SystemMessage {
         this.lastRegency = lastRegency;
     }
 
+    public HeartBeatMessage(int from, int leader, int lastRegency, long sequence) {
+        this(from, leader, lastRegency);
+        this.sequence = sequence;
+    }
+
     public int getLeader() {
         return leader;
     }
@@ -47,12 +55,21 @@ public class HeartBeatMessage extends SystemMessage {
         this.lastRegency = lastRegency;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
     @Override
     public void writeExternal(ObjectOutput out) throws IOException{
         super.writeExternal(out);
 
         out.writeInt(leader);
         out.writeInt(lastRegency);
+        out.writeLong(sequence);
     }
 
     @Override
@@ -61,5 +78,6 @@ public class HeartBeatMessage extends SystemMessage {
 
         leader = in.readInt();
         lastRegency = in.readInt();
+        sequence = in.readLong();
     }
 }
@@ -78,8 +78,15 @@ public class HeartBeatTimer {
 
 	private volatile boolean actived = false;
 
+	/**
+	 * 领导者的读租约；作为领导者时记录心跳的确认，作为跟随者时记录对领导者的承诺；
+	 */
+	private final LeaderLease lease;
+
 	public HeartBeatTimer(TOMLayer tomLayer) {
 		this.tomLayer = tomLayer;
+		this.lease = new LeaderLease(Math.min(tomLayer.controller.getStaticConf().getReadLeaseDuration(),
+				tomLayer.controller.getStaticConf().getHeartBeatTimeout()));
 		this.heartBeatting = new HeartBeating(new LeaderRegency(0, -1),
 				tomLayer.controller.getStaticConf().getProcessId(), System.currentTimeMillis());
 
@@ -147,6 +154,7 @@ public class HeartBeatTimer {
 				int choosenLeader = LeaderRegencyPropose.chooseLeader(currentRegency.getId(), currentView);
 				if (choosenLeader == currentRegency.getLeaderId() && choosenLeader == currentProcessId) {
 					// 发送 STOP 消息，通知其它节点重新选举；
+					lease.revoke();
 					LeaderRegencyPropose propose = LeaderRegencyPropose.chooseFromView(currentRegency.getId() + 1,
 							currentView, currentProcessId);
 					tomLayer.getSynchronizer().sendSTOP(propose);
@@ -208,6 +216,7 @@ public class HeartBeatTimer {
 		if (beatingRegengy.getLeaderId() == tomLayer.leader() && beatingRegengy.getId() == currentRegency) {
 			// 领导者心跳正常；
 			heartBeatting = new HeartBeating(beatingRegengy, heartBeatMessage.getSender(), System.currentTimeMillis());
+			confirmHeartBeat(heartBeatMessage);
 		} else {
 			// 收到的心跳执政期与当前节点所处的执政期不一致：要么执政期Id不相等，要么领导者不相等，要么两者都不等；
 			// 1. 当心跳执政期大于当前节点所处的执政期，则向其它节点查询确认领导者执政期，并尝试同步到多数一致的状态；
@@ -231,6 +240,64 @@ public class HeartBeatTimer {
 		}
 	}
 
+	/**
+	 * 确认领导者的心跳，承诺在租约期内不发起也不附议领导者变更；
+	 * <p>
+	 * 已经处于选举进程中的节点不再作出承诺；
+	 * 
+	 * @param heartBeatMessage
+	 */
+	private void confirmHeartBeat(HeartBeatMessage heartBeatMessage) {
+		LCManager lcManager = tomLayer.getSynchronizer().getLCManager();
+		if (!lease.isEnabled() || lcManager.getNextReg() != lcManager.getLastReg()) {
+			return;
+		}
+		lease.promise(System.nanoTime());
+		HeartBeatAckMessage ack = new HeartBeatAckMessage(getCurrentProcessId(), heartBeatMessage.getLastRegency(),
+				heartBeatMessage.getSequence());
+		tomLayer.getCommunication().send(new int[] { heartBeatMessage.getSender() }, ack);
+	}
+
+	/**
+	 * 领导者收到跟随者对心跳的确认；
+	 * 
+	 * @param ack
+	 */
+	public void receiveHeartBeatAckMessage(HeartBeatAckMessage ack) {
+		if (!tomLayer.isLeader()) {
+			return;
+		}
+		if (lease.ack(ack.getSender(), ack.getRegency(), ack.getSequence(), tomLayer.controller.getQuorum())) {
+			LOGGER.debug("I am proc {}, read lease of regency {} is renewed by the heartbeat {}",
+					getCurrentProcessId(), ack.getRegency(), ack.getSequence());
+		}
+	}
+
+	/**
+	 * 当前节点作为领导者是否持有有效的读租约；
+	 * <p>
+	 * 租约有效期间不可能产生新的执政期，领导者可以不经共识在本地应答读请求；
+	 * 
+	 * @return
+	 */
+	public boolean hasReadLease() {
+		if (!lease.isEnabled() || !tomLayer.isLeader()) {
+			return false;
+		}
+		LCManager lcManager = tomLayer.getSynchronizer().getLCManager();
+		int regency = lcManager.getLastReg();
+		return lcManager.getNextReg() == regency && lease.isValid(regency, System.nanoTime());
+	}
+
+	/**
+	 * 当前节点作为跟随者对领导者的租约承诺是否仍然有效；承诺有效期间不发起也不附议领导者变更；
+	 * 
+	 * @return
+	 */
+	public boolean isLeasePromised() {
+		return lease.isEnabled() && !tomLayer.isLeader() && lease.isPromised(System.nanoTime());
+	}
+
 	/**
 	 * 向其它节点查询确认领导者执政期，并尝试同步到多数一致的状态；
 	 * <p>
@@ -464,8 +531,9 @@ public class HeartBeatTimer {
 				}
 				// 如果是Leader则发送心跳信息给其他节点，当前节点除外
 				int currentRegency = HEART_BEAT_TIMER.tomLayer.getSynchronizer().getLCManager().getLastReg();
+				long sequence = HEART_BEAT_TIMER.lease.beginRound(currentRegency, System.nanoTime());
 				HeartBeatMessage heartBeatMessage = new HeartBeatMessage(currentProcessId, currentProcessId,
-						currentRegency);
+						currentRegency, sequence);
 
 				int[] followers = HEART_BEAT_TIMER.tomLayer.controller.getCurrentViewOtherAcceptors();
 				HEART_BEAT_TIMER.tomLayer.getCommunication().send(followers, heartBeatMessage);
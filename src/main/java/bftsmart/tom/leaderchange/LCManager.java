@@ -15,13 +15,10 @@ limitations under the License.
 */
 package bftsmart.tom.leaderchange;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.security.PublicKey;
 import java.security.SignedObject;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,6 +33,7 @@ import bftsmart.communication.MacKey;
 import bftsmart.consensus.TimestampValuePair;
 import bftsmart.consensus.app.SHA256Utils;
 import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MacVector;
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.TOMLayer;
 import bftsmart.tom.core.messages.TOMMessage;
@@ -1363,24 +1361,13 @@ public class LCManager {
 
 		for (ConsensusMessage consMsg : ConsensusMessages) {
 
-			ConsensusMessage cm = new ConsensusMessage(consMsg.getType(), consMsg.getNumber(), consMsg.getEpoch(),
-					consMsg.getSender(), consMsg.getValue());
-			cm.setOrigPropValue(consMsg.getOrigPropValue());
+			byte[] data = consMsg.getCanonicalBytes();
 
-			ByteArrayOutputStream bOut = new ByteArrayOutputStream(248);
-			try {
-				new ObjectOutputStream(bOut).writeObject(cm);
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
-
-			byte[] data = bOut.toByteArray();
-
-			if (consMsg.getProof() instanceof HashMap) { // Certificate is made of MAC vector
+			if (consMsg.getProof() instanceof MacVector) { // Certificate is made of MAC vector
 
 				LOGGER.debug("(LCManager.hasValidProof) Proof made of MAC vector");
 
-				HashMap<Integer, byte[]> macVector = (HashMap<Integer, byte[]>) consMsg.getProof();
+				MacVector macVector = (MacVector) consMsg.getProof();
 
 				byte[] recvMAC = macVector.get(myId);
 
@@ -0,0 +1,160 @@
+package bftsmart.tom.leaderchange;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 领导者的读租约；
+ * <p>
+ * 领导者的每一轮心跳带有递增的序号，跟随者收到与当前执政期一致的心跳后回应确认，并承诺在租约期内不发起也不附议领导者变更；
+ * 一轮心跳得到法定数量（含领导者自身）的确认后，领导者的租约延续至该轮心跳的发送时刻加上租约时长；<br>
+ * 租约有效期间不可能产生新的执政期，领导者可以不经共识在本地应答读请求；
+ * <p>
+ * 跟随者的承诺从收到心跳的时刻开始计算，总是晚于领导者发送心跳的时刻；领导者另外扣除 {@link #CLOCK_DRIFT_RATE}
+ * 比例的时长，以容忍节点之间时钟频率的偏差；
+ * <p>
+ * 所有时刻都以 {@link System#nanoTime()} 表示，不受系统时间调整的影响；
+ */
+public class LeaderLease {
+
+	/**
+	 * 领导者扣除的时钟频率偏差的比例；
+	 */
+	static final double CLOCK_DRIFT_RATE = 0.1;
+
+	/**
+	 * 保留的未完成确认的心跳轮数；
+	 */
+	private static final int ROUNDS = 4;
+
+	private final long durationNanos;
+
+	private final long leaderDurationNanos;
+
+	private final Round[] rounds = new Round[ROUNDS];
+
+	private long sequence;
+
+	private int leaseRegency = -1;
+
+	private long leaseExpiration;
+
+	private long promiseExpiration;
+
+	private boolean promised;
+
+	/**
+	 * @param durationMillis 租约时长（毫秒）；小于等于 0 表示不启用租约；
+	 */
+	public LeaderLease(long durationMillis) {
+		this.durationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, durationMillis));
+		this.leaderDurationNanos = (long) (durationNanos * (1 - CLOCK_DRIFT_RATE));
+	}
+
+	public boolean isEnabled() {
+		return durationNanos > 0;
+	}
+
+	/**
+	 * 领导者开始新的一轮心跳；
+	 *
+	 * @param regency  心跳所属的执政期；
+	 * @param sentTime 发送心跳的时刻；
+	 * @return 心跳的序号；
+	 */
+	public synchronized long beginRound(int regency, long sentTime) {
+		long seq = ++sequence;
+		rounds[(int) (seq % ROUNDS)] = new Round(seq, regency, sentTime);
+		return seq;
+	}
+
+	/**
+	 * 领导者收到跟随者的确认；
+	 *
+	 * @param sender   跟随者；
+	 * @param regency  确认的心跳的执政期；
+	 * @param sequence 确认的心跳的序号；
+	 * @param quorum   续约需要的确认数，包含领导者自身；
+	 * @return 本次确认是否续约了租约；
+	 */
+	public synchronized boolean ack(int sender, int regency, long sequence, int quorum) {
+		if (!isEnabled()) {
+			return false;
+		}
+		Round round = rounds[(int) (sequence % ROUNDS)];
+		if (round == null || round.sequence != sequence || round.regency != regency) {
+			// 过期的确认；
+			return false;
+		}
+		round.acks.add(sender);
+		if (round.acks.size() + 1 < quorum) {
+			return false;
+		}
+		long expiration = round.sentTime + leaderDurationNanos;
+		if (leaseRegency != regency || expiration - leaseExpiration > 0) {
+			leaseRegency = regency;
+			leaseExpiration = expiration;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 领导者在指定执政期的租约在指定时刻是否有效；
+	 *
+	 * @param regency
+	 * @param now
+	 * @return
+	 */
+	public synchronized boolean isValid(int regency, long now) {
+		return isEnabled() && leaseRegency >= 0 && leaseRegency == regency && now - leaseExpiration < 0;
+	}
+
+	/**
+	 * 放弃租约，例如领导者主动发起领导者变更时；
+	 */
+	public synchronized void revoke() {
+		leaseRegency = -1;
+		for (int i = 0; i < rounds.length; i++) {
+			rounds[i] = null;
+		}
+	}
+
+	/**
+	 * 跟随者确认心跳，承诺在租约期内不发起也不附议领导者变更；
+	 *
+	 * @param receivedTime 收到心跳的时刻；
+	 */
+	public synchronized void promise(long receivedTime) {
+		promiseExpiration = receivedTime + durationNanos;
+		promised = true;
+	}
+
+	/**
+	 * 跟随者的承诺在指定时刻是否仍然有效；
+	 *
+	 * @param now
+	 * @return
+	 */
+	public synchronized boolean isPromised(long now) {
+		return promised && now - promiseExpiration < 0;
+	}
+
+	private static class Round {
+
+		private final long sequence;
+
+		private final int regency;
+
+		private final long sentTime;
+
+		private final Set<Integer> acks = new HashSet<>();
+
+		private Round(long sequence, int regency, long sentTime) {
+			this.sequence = sequence;
+			this.regency = regency;
+			this.sentTime = sentTime;
+		}
+	}
+}
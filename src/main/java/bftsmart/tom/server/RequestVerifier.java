@@ -5,6 +5,8 @@
  */
 package bftsmart.tom.server;
 
+import java.nio.ByteBuffer;
+
 /**
  *
  * Classes that implement this interface are invoked within
@@ -19,5 +21,23 @@ package bftsmart.tom.server;
 public interface RequestVerifier {
     
     public boolean isValidRequest(byte[] request);
-    
+
+    /**
+     * Verifies the content of a request read from a proposal, which is a
+     * read-only view of the batch. By default the content is copied and passed
+     * to {@link #isValidRequest(byte[])}; verifiers that can read the buffer
+     * directly should override this method to avoid the copy.
+     *
+     * @param request the content of the request, or null if it has no content
+     * @return true if the request is valid
+     */
+    public default boolean isValidRequest(ByteBuffer request) {
+        if (request == null) {
+            return isValidRequest((byte[]) null);
+        }
+        byte[] bytes = new byte[request.remaining()];
+        request.duplicate().get(bytes);
+        return isValidRequest(bytes);
+    }
+
 }
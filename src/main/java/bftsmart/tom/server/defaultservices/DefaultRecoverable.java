@@ -33,6 +33,7 @@ import bftsmart.tom.ReplicaConfiguration;
 import bftsmart.tom.ReplicaContext;
 import bftsmart.tom.ReplyContextMessage;
 import bftsmart.tom.server.Recoverable;
+import bftsmart.tom.util.RequestFraming;
 import bftsmart.tom.util.TOMUtil;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,11 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * This class provides a basic state transfer protocol using the interface
  * 'BatchExecutable'.
+ * <p>
+ * 以 {@link #DefaultRecoverable(RequestFraming)} 创建时，每个请求按帧格式拆分为多个应用操作（参考
+ * {@link bftsmart.tom.CoalescingServiceProxy}），应用的 preComputeAppHash、updateAppResponses、appExecuteBatch 和
+ * appExecuteUnordered 接收拆分后的操作，各个操作的结果再以同样的帧格式打包为该请求的应答；<br>
+ * 同一请求中的各个操作共享该请求的 {@link MessageContext}；不符合帧格式的请求作为一个操作原样执行，结果原样作为应答；
  * 
  * @author Joao Sousa
  */
@@ -52,7 +58,6 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	private int checkpointPeriod;
 	private ReentrantLock logLock = new ReentrantLock();
-	private ReentrantLock hashLock = new ReentrantLock();
 	private ReentrantLock stateLock = new ReentrantLock();
 	private ReplicaConfiguration config;
 	private ViewTopology controller;
@@ -60,9 +65,15 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 	private StateLog log;
 	private String realName;
 	private StateManager stateManager;
+	/**
+	 * 合并请求的帧格式；为 null 表示每个请求只包含一个操作；
+	 */
+	private final RequestFraming framing;
+	private static final int UNFRAMED = -1;
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DefaultRecoverable.class);
 
 	public DefaultRecoverable() {
+		this(null);
 
 //        try {
 //            md = MessageDigest.getInstance("MD5"); // TODO: shouldn't it be SHA?
@@ -71,9 +82,26 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 //        }
 	}
 
+	/**
+	 * 执行合并请求；
+	 *
+	 * @param framing 与客户端相同的帧格式；
+	 */
+	protected DefaultRecoverable(RequestFraming framing) {
+		this.framing = framing;
+	}
+
 	@Override
 	public BatchAppResultImpl preComputeHash(int cid, byte[][] commands, long timestamp) {
-		return preComputeAppHash(cid, commands, timestamp);
+		if (framing == null) {
+			return preComputeAppHash(cid, commands, timestamp);
+		}
+		int[] counts = new int[commands.length];
+		BatchAppResultImpl result = preComputeAppHash(cid, unpack(commands, counts), timestamp);
+		if (result != null && result.getAsyncResponses() != null) {
+			result.setAsyncResponses(pack(result.getAsyncResponses(), counts));
+		}
+		return result;
 	}
 
 	@Override
@@ -88,7 +116,110 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	@Override
 	public List<byte[]> updateResponses(List<byte[]> asyncResponseLinkedList, byte[] commonHash, boolean isConsistent) {
-		return updateAppResponses(asyncResponseLinkedList, commonHash, isConsistent);
+		if (framing == null) {
+			return updateAppResponses(asyncResponseLinkedList, commonHash, isConsistent);
+		}
+		// 应答由 preComputeHash 打包，拆分为各个操作的结果交给应用更新后再按原来的分组打包；
+		int[] counts = new int[asyncResponseLinkedList.size()];
+		byte[][] results = unpack(asyncResponseLinkedList.toArray(new byte[asyncResponseLinkedList.size()][]), counts);
+		List<byte[]> responses = updateAppResponses(new ArrayList<>(Arrays.asList(results)), commonHash, isConsistent);
+		return responses == null ? null : pack(responses, counts);
+	}
+
+	/**
+	 * 拆分合并请求，返回所有请求的操作；
+	 * <p>
+	 * 不符合帧格式的请求（例如 RECONFIG 请求的扩展信息，或者未合并的客户端发送的请求）作为一个操作原样交给应用，
+	 * 其结果也原样作为应答；
+	 *
+	 * @param commands 合并请求；
+	 * @param counts   输出每个请求包含的操作数；原样执行的请求为 {@link #UNFRAMED}；
+	 * @return
+	 */
+	private byte[][] unpack(byte[][] commands, int[] counts) {
+		List<byte[]> operations = new ArrayList<>(commands.length);
+		for (int i = 0; i < commands.length; i++) {
+			List<byte[]> ops = unpack(commands[i]);
+			if (ops == null) {
+				counts[i] = UNFRAMED;
+				operations.add(commands[i]);
+			} else {
+				counts[i] = ops.size();
+				operations.addAll(ops);
+			}
+		}
+		return operations.toArray(new byte[operations.size()][]);
+	}
+
+	/**
+	 * 拆分合并请求；不符合帧格式时返回 null；
+	 */
+	private List<byte[]> unpack(byte[] command) {
+		try {
+			return framing.unpack(command);
+		} catch (IllegalArgumentException e) {
+			LOGGER.debug("Execute the unframed request as a single operation! --{}", e.getMessage());
+			return null;
+		}
+	}
+
+	private static int operationCount(int count) {
+		return count == UNFRAMED ? 1 : count;
+	}
+
+	/**
+	 * 按每个请求包含的操作数把各个操作的结果打包为每个请求的应答；
+	 *
+	 * @param results 所有操作的结果；
+	 * @param counts  每个请求包含的操作数；
+	 * @return
+	 */
+	private List<byte[]> pack(List<byte[]> results, int[] counts) {
+		int total = 0;
+		for (int count : counts) {
+			total += operationCount(count);
+		}
+		if (results.size() != total) {
+			throw new IllegalStateException(
+					"The application returns " + results.size() + " results for " + total + " operations!");
+		}
+		List<byte[]> responses = new ArrayList<>(counts.length);
+		int offset = 0;
+		for (int count : counts) {
+			if (count == UNFRAMED) {
+				responses.add(results.get(offset++));
+				continue;
+			}
+			responses.add(framing.pack(results.subList(offset, offset + count)));
+			offset += count;
+		}
+		return responses;
+	}
+
+	/**
+	 * 重放日志中的请求；合并请求拆分后交给 {@link #appExecuteBatch(byte[][], MessageContext[], boolean)}；
+	 *
+	 * @param commands 共识决议的请求；
+	 * @param msgCtxs  请求的上下文；
+	 */
+	public void replayBatch(byte[][] commands, MessageContext[] msgCtxs) {
+		if (framing == null) {
+			appExecuteBatch(commands, msgCtxs, false);
+			return;
+		}
+		int[] counts = new int[commands.length];
+		byte[][] operations = unpack(commands, counts);
+		MessageContext[] opCtxs = null;
+		if (msgCtxs != null) {
+			opCtxs = new MessageContext[operations.length];
+			int offset = 0;
+			for (int i = 0; i < counts.length; i++) {
+				int count = operationCount(counts[i]);
+				Arrays.fill(opCtxs, offset, offset + count, msgCtxs[i]);
+				offset += count;
+			}
+		}
+		appExecuteBatch(operations, opCtxs, false);
 	}
 
 //    @Override
@@ -246,14 +377,7 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 	}
 
 	public final byte[] computeHash(byte[] data) {
-		byte[] ret = null;
-		hashLock.lock();
-		try {
-			ret = md.hash(data);
-		} finally {
-			hashLock.unlock();
-		}
-		return ret;
+		return md.hash(data);
 	}
 
 	private StateLog getLog() {
@@ -393,7 +517,7 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 						LOGGER.info("I am proc {}, will do appExecuteBatch, cid = {}", controller.getStaticConf().getProcessId(), cid);
 
-						appExecuteBatch(cmdInfo.commands, cmdInfo.msgCtx, false);
+						replayBatch(cmdInfo.commands, cmdInfo.msgCtx);
 
 						((StandardStateManager) this.getStateManager()).setLastCID(cid);
 						//更新上次执行的共识ID，同时把正在进行中的共识设置为-1
@@ -601,7 +725,18 @@ public abstract class DefaultRecoverable implements Recoverable, PreComputeBatch
 
 	@Override
 	public byte[] executeUnordered(byte[] command, MessageContext msgCtx) {
-		return appExecuteUnordered(command, msgCtx);
+		if (framing == null) {
+			return appExecuteUnordered(command, msgCtx);
+		}
+		List<byte[]> operations = unpack(command);
+		if (operations == null) {
+			return appExecuteUnordered(command, msgCtx);
+		}
+		List<byte[]> results = new ArrayList<>(operations.size());
+		for (byte[] operation : operations) {
+			results.add(appExecuteUnordered(operation, msgCtx));
+		}
+		return framing.pack(results);
 	}
 
 	@Override
@@ -35,7 +35,7 @@ public class DiskStateLog extends StateLog {
 	private static final int INT_BYTE_SIZE = 4;
 	private static final int EOF = 0;
 
-	private RandomAccessFile log;
+	private WriteAheadLog log;
 	private RandomAccessFile ckp;
 
 	private boolean syncLog;
@@ -81,16 +81,18 @@ public class DiskStateLog extends StateLog {
 	private void createLogFile() {
 		try {
 			logPath = DEFAULT_DIR + logDefaultFile;
-			log = new RandomAccessFile(logPath, (syncLog ? "rwd" : "rw"));
-			// PreAllocation
-			/*
-			 * log.setLength(TEN_MB); log.seek(0);
-			 */
+			log = openLog(logPath);
 		} catch (Exception e) {
 			LOGGER.error("create log file error !", e);
 		}
 	}
 
+	private WriteAheadLog openLog(String path) throws IOException {
+		// with sync_log the append returns once the batch is forced; the flusher of the log forces the batches appended
+		// within the latency bound together, instead of one synchronous write per consensus
+		return WriteAheadLog.open(path, syncLog, controller.getStaticConf().getSyncLogMaxLatency());
+	}
+
 	/**
 	 * Adds a message batch to the log. This batches should be added to the log
 	 * in the same order in which they are delivered to the application. Only
@@ -112,29 +114,10 @@ public class DiskStateLog extends StateLog {
 	}
 
 	private void writeCommandToDisk(CommandsInfo commandsInfo, int consensusId) {
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		try {
-			ObjectOutputStream oos = new ObjectOutputStream(bos);
-			oos.writeObject(commandsInfo);
-			oos.flush();
-
-			byte[] batchBytes = bos.toByteArray();
-
-			ByteBuffer bf = ByteBuffer.allocate(3 * INT_BYTE_SIZE
-					+ batchBytes.length);
-			bf.putInt(batchBytes.length);
-			bf.put(batchBytes);
-			bf.putInt(EOF);
-			bf.putInt(consensusId);
-
-			LOGGER.info("I am proc {}, Write command to disk, cid = {}", id, consensusId);
+			LOGGER.debug("I am proc {}, Write command to disk, cid = {}", id, consensusId);
 
-			// avoid node restart, disk file will be overwrite
-			if (log.length() > 2 * INT_BYTE_SIZE) {
-				log.seek(log.length() - 2 * INT_BYTE_SIZE);// Next write will overwrite
-			}
-			log.write(bf.array());
-													// the EOF mark
+			log.append(consensusId, commandsInfo);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			LOGGER.error("write command to disk error !", e);
@@ -308,12 +291,8 @@ public class DiskStateLog extends StateLog {
 		// save the file pointer to retrieve log information later
 		if((cid % checkpointPeriod) % checkpointPortion == checkpointPortion -1) {
 			int ckpReplicaIndex = (((cid % checkpointPeriod) + 1) / checkpointPortion) -1;
-			try {
-				LOGGER.debug(" --- Replica {} took checkpoint. My current log pointer is {}", ckpReplicaIndex, log.getFilePointer());
-				logPointers.put(ckpReplicaIndex, log.getFilePointer());
-			} catch (IOException e) {
-				LOGGER.error("set last CID error !", e);
-			}
+			LOGGER.debug(" --- Replica {} took checkpoint. My current log pointer is {}", ckpReplicaIndex, log.position());
+			logPointers.put(ckpReplicaIndex, log.position());
 		}
 	}
 
@@ -357,9 +336,11 @@ public class DiskStateLog extends StateLog {
 
 		if(logPath !=null) {
         	try {
-                log = new RandomAccessFile(logPath, (syncLog ? "rwd" : "rw"));
-                log.seek(log.length() - INT_BYTE_SIZE);
-                logLastConsensusId = log.readInt();
+				if (!WriteAheadLog.isWriteAheadLog(logPath)) {
+					migrateLegacyLog();
+				}
+				log = openLog(logPath);
+				logLastConsensusId = log.getLastConsensusId();
 			} catch (Exception e) {
 				LOGGER.error("load durable state error !", e);
 			}
@@ -376,4 +357,32 @@ public class DiskStateLog extends StateLog {
 
 		return logLastConsensusId;
 	}
+
+	/**
+	 * Rewrites a log written in the former format, in which the batches are
+	 * serialized objects followed by the cid of the last one, as a write ahead log.
+	 */
+	private void migrateLegacyLog() throws IOException {
+		FileRecoverer fr = new FileRecoverer(id, DEFAULT_DIR);
+		CommandsInfo[] batches = fr.getLogState(0, logPath);
+		int lastCid = fr.getLogLastConsensusId();
+
+		String tmpPath = logPath + ".tmp";
+		new File(tmpPath).delete();
+		try (WriteAheadLog wal = WriteAheadLog.open(tmpPath, false, 0)) {
+			if (batches != null) {
+				// the batches of the log are the consecutive consensus ended by the last cid
+				for (int i = 0; i < batches.length; i++) {
+					wal.append(lastCid - batches.length + 1 + i, batches[i]);
+				}
+			}
+			// force the whole migrated log once before it replaces the legacy one
+			wal.sync();
+		}
+		File logFile = new File(logPath);
+		if (!logFile.delete() || !new File(tmpPath).renameTo(logFile)) {
+			throw new IOException("Replace legacy log " + logPath + " fail!");
+		}
+		LOGGER.info("Migrated {} batches of legacy log {}, last cid = {}", (batches == null ? 0 : batches.length), logPath, lastCid);
+	}
 }
@@ -57,6 +57,9 @@ public class FileRecoverer {
 		RandomAccessFile log = null;
 
 		LOGGER.info("GETTING LOG FROM {}", logPath);
+		if (WriteAheadLog.isWriteAheadLog(logPath)) {
+			return recoverWriteAheadLog(logPath, 0, 0, index, true);
+		}
 		if ((log = openLogFile(logPath)) != null) {
 
 			CommandsInfo[] logState = recoverLogState(log, index);
@@ -83,6 +86,9 @@ public class FileRecoverer {
 		RandomAccessFile log = null;
 
 		LOGGER.debug("GETTING LOG FROM {}", logPath);
+		if (WriteAheadLog.isWriteAheadLog(logPath)) {
+			return recoverWriteAheadLog(logPath, pointer, startOffset, number, false);
+		}
 		if ((log = openLogFile(logPath)) != null) {
 
 			CommandsInfo[] logState = recoverLogState(log, pointer, startOffset, number);
@@ -289,6 +295,38 @@ public class FileRecoverer {
 		return null;
 	}
 
+	/**
+	 * Reads the batches of a log written by {@link WriteAheadLog}.
+	 * @param pointer the position of the first record to read
+	 * @param startOffset the number of records skipped before collecting the commands
+	 * @param number the number of batches retrieved, 0 to retrieve all of them
+	 * @param updateLastConsensusId whether to record the cid of the last batch when the end of the log is reached
+	 * @return The batches read, or null if the log could not be read
+	 */
+	private CommandsInfo[] recoverWriteAheadLog(String logPath, long pointer, int startOffset, int number,
+			boolean updateLastConsensusId) {
+		ArrayList<CommandsInfo> state = new ArrayList<CommandsInfo>();
+		try (WriteAheadLog.LogReader reader = new WriteAheadLog.LogReader(logPath, pointer)) {
+			int index = 0;
+			while (reader.next()) {
+				if (index++ < startOffset) {
+					continue;
+				}
+				state.add(reader.getCommands());
+				if (state.size() == number) {
+					return state.toArray(new CommandsInfo[state.size()]);
+				}
+			}
+			if (updateLastConsensusId && index > 0) {
+				logLastConsensusId = reader.getConsensusId();
+			}
+			return state.toArray(new CommandsInfo[state.size()]);
+		} catch (Exception e) {
+			LOGGER.error("Recover log state from {} error!", logPath, e);
+			return null;
+		}
+	}
+
 	private CommandsInfo[] recoverLogState(RandomAccessFile log, int endOffset) {
 		try {
 			long logLength = log.length();
@@ -0,0 +1,666 @@
+package bftsmart.tom.server.defaultservices;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.tom.MessageContext;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import org.slf4j.LoggerFactory;
+import utils.io.BytesUtils;
+import utils.serialize.binary.BinarySerializeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 以组提交方式写入共识批次的预写日志；
+ * <p>
+ * 日志文件按段预分配空间并以 0 填充，文件头之后依次是格式为 [长度][CID][CRC32][记录体] 的记录，
+ * 记录体是 {@link CommandsInfo} 的紧凑二进制编码；读取时遇到长度为 0 或校验失败的记录即表示日志结束；
+ * <p>
+ * 同步模式下由独立的刷盘线程执行 {@link FileChannel#force(boolean)}，刷盘期间追加的记录由下一次刷盘提交；
+ * 追加记录的线程等到包含其记录的刷盘完成才返回；<br>
+ * 没有其它线程正在追加记录时立即刷盘，使单个线程顺序追加时不必等待；有其它线程正在追加时最多等待 maxLatency 毫秒，
+ * 使它们的记录合并为一次刷盘；<br>
+ * 非同步模式下追加记录只写入文件通道而不等待刷盘；
+ */
+public class WriteAheadLog implements Closeable {
+
+	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+
+	// "WAL1"
+	static final int MAGIC = 0x57414C31;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 8;
+
+	// length + cid + crc
+	static final int RECORD_HEADER_SIZE = 12;
+
+	static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	// force immediately when this many bytes are waiting, regardless of the latency bound
+	private static final int FLUSH_BYTES = 4 * 1024 * 1024;
+
+	private static final int ZERO_CHUNK_SIZE = 64 * 1024;
+
+	private final String path;
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final boolean sync;
+
+	private final long segmentSize;
+
+	private final long maxLatencyNanos;
+
+	private final RecordBuffer buffer = new RecordBuffer();
+
+	private final CRC32 crc = new CRC32();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition pending = lock.newCondition();
+
+	private final Condition forced = lock.newCondition();
+
+	private final Thread flusher;
+
+	// end of the last appended record
+	private long position;
+
+	// end of the preallocated space
+	private long capacity;
+
+	private long forcedPosition;
+
+	// whether there are records waiting for the next force
+	private boolean pendingGroup;
+
+	// start time of the oldest record waiting for the next force
+	private long pendingSince;
+
+	private boolean forceRequested;
+
+	// number of threads in append whose records are not written yet; the flusher lingers only for them
+	private final AtomicInteger appending = new AtomicInteger();
+
+	private int lastConsensusId = -1;
+
+	private volatile boolean closed;
+
+	private WriteAheadLog(String path, boolean sync, long maxLatencyMillis, long segmentSize) throws IOException {
+		this.path = path;
+		this.sync = sync;
+		this.segmentSize = segmentSize;
+		this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(MAGIC).putInt(VERSION).flip();
+				writeFully(header, 0);
+				position = HEADER_SIZE;
+				capacity = HEADER_SIZE;
+				preallocate(HEADER_SIZE);
+			} else {
+				if (!isWriteAheadLog(channel)) {
+					throw new IOException("File[" + path + "] is not a write ahead log!");
+				}
+				try (LogReader reader = new LogReader(channel, HEADER_SIZE, false)) {
+					while (reader.next()) {
+						lastConsensusId = reader.getConsensusId();
+					}
+					position = reader.position;
+				}
+				capacity = channel.size();
+			}
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		forcedPosition = position;
+
+		if (sync) {
+			flusher = new Thread(this::flushLoop, "Log-Flusher-" + new File(path).getName());
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * 打开或创建指定路径的日志；
+	 *
+	 * @param path             日志文件路径；
+	 * @param sync             是否把追加的记录刷到磁盘；
+	 * @param maxLatencyMillis 同步模式下追加的记录等待刷盘的最大毫秒数；
+	 * @return
+	 * @throws IOException
+	 */
+	public static WriteAheadLog open(String path, boolean sync, long maxLatencyMillis) throws IOException {
+		return open(path, sync, maxLatencyMillis, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public static WriteAheadLog open(String path, boolean sync, long maxLatencyMillis, long segmentSize)
+			throws IOException {
+		if (segmentSize <= RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("Illegal segment size[" + segmentSize + "]!");
+		}
+		return new WriteAheadLog(path, sync, Math.max(0, maxLatencyMillis), segmentSize);
+	}
+
+	/**
+	 * 指定的文件是否是预写日志；不存在或者是旧格式的日志文件时返回 false；
+	 *
+	 * @param path
+	 * @return
+	 */
+	public static boolean isWriteAheadLog(String path) {
+		File logFile = new File(path);
+		if (!logFile.isFile()) {
+			return false;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+			return isWriteAheadLog(raf.getChannel());
+		} catch (IOException e) {
+			LOGGER.error("Read header of log[{}] error!", path, e);
+			return false;
+		}
+	}
+
+	private static boolean isWriteAheadLog(FileChannel channel) throws IOException {
+		if (channel.size() < HEADER_SIZE) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, 0);
+		header.flip();
+		return header.getInt() == MAGIC && header.getInt() == VERSION;
+	}
+
+	/**
+	 * 追加一个共识的批次；同步模式下返回时记录已刷到磁盘，非同步模式下只保证已写入文件通道；
+	 *
+	 * @param consensusId
+	 * @param commands
+	 * @return 追加之后日志的末尾位置；
+	 * @throws IOException
+	 */
+	public long append(int consensusId, CommandsInfo commands) throws IOException {
+		appending.incrementAndGet();
+		boolean writing = true;
+		lock.lock();
+		try {
+			if (closed) {
+				throw new IOException("Log[" + path + "] is closed!");
+			}
+			buffer.reset();
+			DataOutputStream out = buffer.output;
+			out.writeInt(0);
+			out.writeInt(consensusId);
+			out.writeInt(0);
+			writeCommands(out, commands);
+
+			int size = buffer.size();
+			crc.reset();
+			crc.update(buffer.array(), 4, 4);
+			crc.update(buffer.array(), RECORD_HEADER_SIZE, size - RECORD_HEADER_SIZE);
+			buffer.setInt(0, size - RECORD_HEADER_SIZE);
+			buffer.setInt(8, (int) crc.getValue());
+
+			// keep at least one empty record header after the last record as the end mark;
+			if (position + size + RECORD_HEADER_SIZE > capacity) {
+				preallocate(position + size + RECORD_HEADER_SIZE);
+			}
+			writeFully(ByteBuffer.wrap(buffer.array(), 0, size), position);
+			position += size;
+			lastConsensusId = consensusId;
+			long end = position;
+			writing = false;
+			int others = appending.decrementAndGet();
+
+			if (sync) {
+				if (!pendingGroup) {
+					pendingGroup = true;
+					pendingSince = System.nanoTime();
+				}
+				// wake the flusher to force the group once the last concurrent appender has written its record;
+				if (others == 0 || position - forcedPosition >= FLUSH_BYTES) {
+					pending.signal();
+				}
+				awaitForced(end);
+			}
+			return end;
+		} finally {
+			if (writing && appending.decrementAndGet() == 0) {
+				pending.signal();
+			}
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 等待刷盘覆盖到指定位置；调用者须持有 lock；
+	 */
+	private void awaitForced(long target) throws IOException {
+		try {
+			while (forcedPosition < target) {
+				if (closed) {
+					throw new IOException("Log[" + path + "] is closed!");
+				}
+				forced.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the log to be forced!", e);
+		}
+	}
+
+	/**
+	 * 等待已追加的全部记录刷到磁盘；非同步模式下直接刷盘；
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+		if (!sync) {
+			channel.force(false);
+			return;
+		}
+		lock.lock();
+		try {
+			forceRequested = true;
+			pending.signal();
+			awaitForced(position);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 日志末尾的位置，即下一条记录的起始位置；
+	 *
+	 * @return
+	 */
+	public long position() {
+		lock.lock();
+		try {
+			return position;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 已刷到磁盘的日志末尾位置；非同步模式下为打开日志时的末尾位置；
+	 *
+	 * @return
+	 */
+	public long forcedPosition() {
+		lock.lock();
+		try {
+			return forcedPosition;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 最后一条记录的共识 ID；日志为空时返回 -1；
+	 *
+	 * @return
+	 */
+	public int getLastConsensusId() {
+		lock.lock();
+		try {
+			return lastConsensusId;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 刷盘并关闭日志；
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (sync) {
+				sync();
+			}
+		} finally {
+			lock.lock();
+			try {
+				closed = true;
+				pending.signal();
+				forced.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if (flusher != null) {
+				try {
+					flusher.join(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			file.close();
+		}
+	}
+
+	private void flushLoop() {
+		lock.lock();
+		try {
+			while (!closed) {
+				if (!pendingGroup) {
+					pending.await();
+					continue;
+				}
+				// linger for the records of the appenders still writing, but not for the next appends of the
+				// ones waiting for this force;
+				long delay = pendingSince + maxLatencyNanos - System.nanoTime();
+				if (delay > 0 && appending.get() > 0 && !forceRequested && position - forcedPosition < FLUSH_BYTES) {
+					pending.awaitNanos(delay);
+					continue;
+				}
+
+				// records appended while forcing start a new group;
+				long target = position;
+				pendingGroup = false;
+				forceRequested = false;
+				lock.unlock();
+				try {
+					channel.force(false);
+				} catch (IOException e) {
+					LOGGER.error("Force log[{}] error!", path, e);
+				} finally {
+					lock.lock();
+				}
+				forcedPosition = target;
+				forced.signalAll();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 以 0 填充的方式预分配新的段，使刷盘时不必更新文件长度等元数据；
+	 */
+	private void preallocate(long minCapacity) throws IOException {
+		long newCapacity = capacity;
+		while (newCapacity < minCapacity) {
+			newCapacity += segmentSize;
+		}
+		ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK_SIZE);
+		for (long offset = capacity; offset < newCapacity; offset += ZERO_CHUNK_SIZE) {
+			zeros.clear();
+			zeros.limit((int) Math.min(ZERO_CHUNK_SIZE, newCapacity - offset));
+			writeFully(zeros, offset);
+		}
+		if (sync) {
+			channel.force(true);
+		}
+		capacity = newCapacity;
+	}
+
+	private void writeFully(ByteBuffer src, long offset) throws IOException {
+		while (src.hasRemaining()) {
+			offset += channel.write(src, offset);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer dst, long offset) throws IOException {
+		while (dst.hasRemaining()) {
+			int read = channel.read(dst, offset);
+			if (read < 0) {
+				throw new IOException("Unexpected end of log!");
+			}
+			offset += read;
+		}
+	}
+
+	private static void writeCommands(DataOutputStream out, CommandsInfo commands) throws IOException {
+		byte[][] cmds = commands.commands;
+		if (cmds == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(cmds.length);
+			for (byte[] cmd : cmds) {
+				writeBytes(out, cmd);
+			}
+		}
+
+		MessageContext[] msgCtx = commands.msgCtx;
+		if (msgCtx == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(msgCtx.length);
+		for (MessageContext ctx : msgCtx) {
+			out.writeInt(ctx.getSender());
+			out.writeInt(ctx.getViewID());
+			out.writeByte(ctx.getType() == null ? -1 : ctx.getType().toInt());
+			out.writeInt(ctx.getSession());
+			out.writeInt(ctx.getSequence());
+			out.writeInt(ctx.getOperationId());
+			out.writeInt(ctx.getReplyServer());
+			writeBytes(out, ctx.getSignature());
+			out.writeLong(ctx.getTimestamp());
+			out.writeInt(ctx.getNumOfNonces());
+			out.writeLong(ctx.getSeed());
+			out.writeInt(ctx.getRegency());
+			out.writeInt(ctx.getLeader());
+			out.writeInt(ctx.getConsensusId());
+			out.writeBoolean(ctx.isNoOp());
+			writeBytes(out, ctx.getProof() == null ? null : BinarySerializeUtils.serialize(ctx.getProof()));
+			writeBytes(out, ctx.getFirstInBatch() == null ? null : BinarySerializeUtils.serialize(ctx.getFirstInBatch()));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CommandsInfo readCommands(DataInputStream in) throws IOException {
+		CommandsInfo commands = new CommandsInfo();
+		int count = readCount(in);
+		if (count >= 0) {
+			commands.commands = new byte[count][];
+			for (int i = 0; i < count; i++) {
+				commands.commands[i] = readBytes(in);
+			}
+		}
+
+		count = readCount(in);
+		if (count >= 0) {
+			commands.msgCtx = new MessageContext[count];
+			for (int i = 0; i < count; i++) {
+				int sender = in.readInt();
+				int viewID = in.readInt();
+				byte type = in.readByte();
+				int session = in.readInt();
+				int sequence = in.readInt();
+				int operationId = in.readInt();
+				int replyServer = in.readInt();
+				byte[] signature = readBytes(in);
+				long timestamp = in.readLong();
+				int numOfNonces = in.readInt();
+				long seed = in.readLong();
+				int regency = in.readInt();
+				int leader = in.readInt();
+				int consensusId = in.readInt();
+				boolean noOp = in.readBoolean();
+				byte[] proof = readBytes(in);
+				byte[] firstInBatch = readBytes(in);
+				commands.msgCtx[i] = new MessageContext(sender, viewID,
+						type < 0 ? null : TOMMessageType.fromInt(type), session, sequence, operationId, replyServer,
+						signature, timestamp, numOfNonces, seed, regency, leader, consensusId,
+						proof == null ? null : (Set<ConsensusMessage>) BinarySerializeUtils.deserialize(proof),
+						firstInBatch == null ? null : (TOMMessage) BinarySerializeUtils.deserialize(firstInBatch),
+						noOp);
+			}
+		}
+		return commands;
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = readCount(in);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < -1 || count > in.available()) {
+			throw new IOException("Illegal length[" + count + "] of log record!");
+		}
+		return count;
+	}
+
+	/**
+	 * 顺序读取日志中的记录；
+	 */
+	public static class LogReader implements Closeable {
+
+		private final RandomAccessFile file;
+
+		private final FileChannel channel;
+
+		private final boolean decode;
+
+		private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+		private final CRC32 crc = new CRC32();
+
+		private long position;
+
+		private int consensusId;
+
+		private CommandsInfo commands;
+
+		/**
+		 * 从指定位置开始读取日志；位置小于文件头长度时从第一条记录开始读取；
+		 *
+		 * @param path
+		 * @param position
+		 * @throws IOException
+		 */
+		public LogReader(String path, long position) throws IOException {
+			this.file = new RandomAccessFile(path, "r");
+			this.channel = file.getChannel();
+			this.decode = true;
+			this.position = Math.max(position, HEADER_SIZE);
+		}
+
+		private LogReader(FileChannel channel, long position, boolean decode) {
+			this.file = null;
+			this.channel = channel;
+			this.decode = decode;
+			this.position = position;
+		}
+
+		/**
+		 * 读取下一条记录；到达日志末尾或遇到不完整的记录时返回 false；
+		 *
+		 * @return
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException {
+			long size = channel.size();
+			if (position + RECORD_HEADER_SIZE > size) {
+				return false;
+			}
+			header.clear();
+			readFully(channel, header, position);
+			header.flip();
+			int length = header.getInt();
+			int cid = header.getInt();
+			int checksum = header.getInt();
+			if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+				return false;
+			}
+
+			byte[] body = new byte[length];
+			readFully(channel, ByteBuffer.wrap(body), position + RECORD_HEADER_SIZE);
+			crc.reset();
+			crc.update(header.array(), 4, 4);
+			crc.update(body, 0, length);
+			if ((int) crc.getValue() != checksum) {
+				LOGGER.warn("Incomplete record at position[{}] of the log, the records after it are ignored!", position);
+				return false;
+			}
+
+			commands = decode ? readCommands(new DataInputStream(new ByteArrayInputStream(body))) : null;
+			consensusId = cid;
+			position += RECORD_HEADER_SIZE + length;
+			return true;
+		}
+
+		public int getConsensusId() {
+			return consensusId;
+		}
+
+		public CommandsInfo getCommands() {
+			return commands;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (file != null) {
+				file.close();
+			}
+		}
+	}
+
+	private static class RecordBuffer extends ByteArrayOutputStream {
+
+		private final DataOutputStream output = new DataOutputStream(this);
+
+		public RecordBuffer() {
+			super(4096);
+		}
+
+		public byte[] array() {
+			return buf;
+		}
+
+		public void setInt(int position, int value) {
+			BytesUtils.toBytes_BigEndian(value, buf, position);
+		}
+	}
+}
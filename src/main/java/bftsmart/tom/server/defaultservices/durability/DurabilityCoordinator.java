@@ -53,7 +53,6 @@ import java.util.logging.Level;
 public abstract class DurabilityCoordinator implements Recoverable, PreComputeBatchExecutable {
 
 	private ReentrantLock logLock = new ReentrantLock();
-	private ReentrantLock hashLock = new ReentrantLock();
 	private ReentrantLock stateLock = new ReentrantLock();
 
 	private ReplicaConfiguration config;
@@ -302,14 +301,7 @@ public abstract class DurabilityCoordinator implements Recoverable, PreComputeBa
 	}
 
 	private final byte[] computeHash(byte[] data) {
-		byte[] ret = null;
-		hashLock.lock();
-		try {
-			ret = md.hash(data);
-		} finally {
-			hashLock.unlock();
-		}
-		return ret;
+		return md.hash(data);
 	}
 
 	private void saveState(byte[] snapshot, int lastCID) {
@@ -44,7 +44,7 @@ public final class BatchBuilder {
 
         /** build buffer */
 	private byte[] createBatch(long timestamp, int numberOfNonces, long seed, int numberOfMessages, int totalMessagesSize,
-			boolean useSignatures, byte[][] messages, byte[][] signatures, ViewTopology controller) {
+			boolean useSignatures, ByteBuffer[] messages, byte[][] signatures, ViewTopology controller) {
 		int size = 20 + //timestamp 8, nonces 4, nummessages 4
 				(numberOfNonces > 0 ? 8 : 0) + //seed if needed
 				(numberOfMessages*(4+(useSignatures?TOMUtil.getSignatureSize(controller):0)))+ // msglength + signature for each msg
@@ -71,8 +71,8 @@ public final class BatchBuilder {
 		return proposalBuffer.array();
 	}
           
-	private void putMessage(ByteBuffer proposalBuffer, byte[] message, boolean isHash, byte[] signature) {
-		proposalBuffer.putInt(isHash?0:message.length);
+	private void putMessage(ByteBuffer proposalBuffer, ByteBuffer message, boolean isHash, byte[] signature) {
+		proposalBuffer.putInt(isHash?0:message.remaining());
 		proposalBuffer.put(message);
 
 		if(signature != null) {
@@ -85,7 +85,8 @@ public final class BatchBuilder {
 		int numMsgs = msgs.size();
 		int totalMessageSize = 0; //total size of the messages being batched
 
-		byte[][] messages = new byte[numMsgs][]; //bytes of the message (or its hash)
+		// views of the bytes of the messages, requests read from a batch are not copied twice
+		ByteBuffer[] messages = new ByteBuffer[numMsgs]; //bytes of the message (or its hash)
 		byte[][] signatures = new byte[numMsgs][]; //bytes of the message (or its hash)
 
 		// Fill the array of bytes for the messages/signatures being batched
@@ -94,10 +95,10 @@ public final class BatchBuilder {
 		for (TOMMessage msg : msgs) {
 			//TOMMessage msg = msgs.next();
 			LOGGER.debug("(BatchBuilder.makeBatch) adding request from client {} with sequence number {} for session {} to PROPOSE", msg.getSender(), msg.getSequence(), msg.getSession());
-			messages[i] = msg.serializedMessage;
+			messages[i] = msg.getSerializedBuffer();
 			signatures[i] = msg.serializedMessageSignature;
 
-			totalMessageSize += messages[i].length;
+			totalMessageSize += messages[i].remaining();
 			i++;
 		}
 
@@ -111,7 +112,8 @@ public final class BatchBuilder {
 		int numMsgs = msgs.size();
 		int totalMessageSize = 0; //total size of the messages being batched
 
-		byte[][] messages = new byte[numMsgs][]; //bytes of the message (or its hash)
+		// views of the bytes of the messages, requests read from a batch are not copied twice
+		ByteBuffer[] messages = new ByteBuffer[numMsgs]; //bytes of the message (or its hash)
 		byte[][] signatures = new byte[numMsgs][]; //bytes of the message (or its hash)
 
 		// Fill the array of bytes for the messages/signatures being batched
@@ -120,10 +122,10 @@ public final class BatchBuilder {
 		for (TOMMessage msg : msgs) {
 			//TOMMessage msg = msgs.next();
 			//LOGGER.debug("(TOMLayer.run) adding req " + msg + " to PROPOSE");
-			messages[i] = msg.serializedMessage;
+			messages[i] = msg.getSerializedBuffer();
 			signatures[i] = msg.serializedMessageSignature;
 
-			totalMessageSize += messages[i].length;
+			totalMessageSize += messages[i].remaining();
 			i++;
 		}
 
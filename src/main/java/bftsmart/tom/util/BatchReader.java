@@ -18,14 +18,15 @@ package bftsmart.tom.util;
 import bftsmart.reconfiguration.ViewTopology;
 import bftsmart.tom.core.messages.TOMMessage;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.nio.ByteBuffer;
-import java.util.Random;
 
 /**
- * Batch format: N_MESSAGES(int) + N_MESSAGES*[MSGSIZE(int),MSG(byte)] +
- *               TIMESTAMP(long) + N_NONCES(int) + NONCES(byte[])
+ * Batch format: TIMESTAMP(long) + N_NONCES(int) + SEED(long) +
+ *               N_MESSAGES(int) + N_MESSAGES*[MSGSIZE(int),MSG(byte),SIG(byte)]
+ *
+ * The requests are not copied out of the batch: each {@link TOMMessage} is a
+ * view of its slice of the batch (see {@link TOMMessage#wrap(ByteBuffer)}), so
+ * the batch must not be modified after it was read.
  *
  */
 public final class BatchReader {
@@ -48,10 +49,8 @@ public final class BatchReader {
 
         long seed = 0;
 
-        Random rnd = null;
         if(numberOfNonces > 0){
             seed = proposalBuffer.getLong();
-            rnd = new Random(seed);
         }
         else numberOfNonces = 0; // make sure the value is correct
 
@@ -59,31 +58,38 @@ public final class BatchReader {
 
         int numberOfMessages = proposalBuffer.getInt();
 
-        TOMMessage[] requests = new TOMMessage[numberOfMessages];
+        int signatureSize = useSignatures ? TOMUtil.getSignatureSize(controller) : 0;
 
+        // index the offsets of the messages first, so that a malformed batch is
+        // rejected before any request is created
+        int[] offsets = new int[numberOfMessages];
+        int[] sizes = new int[numberOfMessages];
         for (int i = 0; i < numberOfMessages; i++) {
-            //read the message and its signature from the batch
             int messageSize = proposalBuffer.getInt();
+            if (messageSize < 0 || messageSize + signatureSize > proposalBuffer.remaining()) {
+                throw new IllegalArgumentException("Illegal message size[" + messageSize + "] in batch!");
+            }
+            offsets[i] = proposalBuffer.position();
+            sizes[i] = messageSize;
+            proposalBuffer.position(offsets[i] + messageSize + signatureSize);
+        }
 
-            byte[] message = new byte[messageSize];
-            proposalBuffer.get(message);
+        TOMMessage[] requests = new TOMMessage[numberOfMessages];
+
+        for (int i = 0; i < numberOfMessages; i++) {
+            ByteBuffer message = proposalBuffer.duplicate();
+            message.limit(offsets[i] + sizes[i]).position(offsets[i]);
 
             byte[] signature = null;
             if(useSignatures){
-                signature = new byte[TOMUtil.getSignatureSize(controller)];
-                proposalBuffer.get(signature);
-            }
-            //obtain the nonces to be delivered to the application
-            byte[] nonces = new byte[numberOfNonces];
-            if (nonces.length > 0) {
-                rnd.nextBytes(nonces);
+                signature = new byte[signatureSize];
+                ByteBuffer signatureBuffer = proposalBuffer.duplicate();
+                signatureBuffer.position(offsets[i] + sizes[i]);
+                signatureBuffer.get(signature);
             }
             try {
-                DataInputStream ois = new DataInputStream(new ByteArrayInputStream(message));
-                TOMMessage tm = new TOMMessage();
-                tm.rExternal(ois);
+                TOMMessage tm = TOMMessage.wrap(message);
 
-                tm.serializedMessage = message;
                 tm.serializedMessageSignature = signature;
                 tm.numOfNonces = numberOfNonces;
                 tm.seed = seed;
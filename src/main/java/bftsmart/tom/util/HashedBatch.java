@@ -0,0 +1,222 @@
+package bftsmart.tom.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import bftsmart.consensus.app.SHA256Utils;
+import bftsmart.tom.core.messages.TOMMessage;
+
+/**
+ * 只包含请求摘要的批次；
+ * <p>
+ * 批次头与 {@link BatchBuilder} 输出的批次相同，每个请求以长度 0 标记，随后是请求的标识与摘要：<br>
+ * TIMESTAMP(long) + N_NONCES(int) + [SEED(long)] + VIEWID(int) + N_MESSAGES(int) +
+ * N_MESSAGES*[0(int),SENDER(int),SESSION(int),SEQUENCE(int),DIGEST(32 bytes)]
+ * <p>
+ * 摘要覆盖请求的序列化字节与签名；跟随者以请求的原始字节还原出与领导者逐字节相同的完整批次，因此共识的值及其哈希与不提议摘要时相同；
+ */
+public final class HashedBatch {
+
+	/**
+	 * 请求摘要的字节数；
+	 */
+	public static final int DIGEST_SIZE = 32;
+
+	private static final int ENTRY_SIZE = 16 + DIGEST_SIZE;
+
+	private static final ThreadLocal<SHA256Utils.Hasher> HASHERS = ThreadLocal.withInitial(SHA256Utils::newHasher);
+
+	private final byte[] header;
+
+	private final int[] senders;
+
+	private final int[] sessions;
+
+	private final int[] sequences;
+
+	private final byte[][] digests;
+
+	private HashedBatch(byte[] header, int size) {
+		this.header = header;
+		this.senders = new int[size];
+		this.sessions = new int[size];
+		this.sequences = new int[size];
+		this.digests = new byte[size][];
+	}
+
+	/**
+	 * 将完整的批次转换为只包含请求摘要的批次；
+	 *
+	 * @param batch         完整的批次；
+	 * @param signatureSize 每个请求的签名的字节数，不使用签名时为 0；
+	 * @return 只包含请求摘要的批次；批次中没有请求时返回原批次；
+	 */
+	public static byte[] compact(byte[] batch, int signatureSize) {
+		ByteBuffer buffer = ByteBuffer.wrap(batch);
+		int headerSize = headerSize(buffer);
+		int numberOfMessages = buffer.getInt(headerSize - 4);
+		if (numberOfMessages <= 0) {
+			return batch;
+		}
+
+		ByteBuffer compact = ByteBuffer.allocate(headerSize + numberOfMessages * ENTRY_SIZE);
+		compact.put(batch, 0, headerSize);
+		buffer.position(headerSize);
+		for (int i = 0; i < numberOfMessages; i++) {
+			int messageSize = buffer.getInt();
+			ByteBuffer message = buffer.duplicate();
+			message.limit(message.position() + messageSize);
+			byte[] signature = null;
+			if (signatureSize > 0) {
+				signature = new byte[signatureSize];
+				buffer.position(message.limit());
+				buffer.get(signature);
+			} else {
+				buffer.position(message.limit());
+			}
+			TOMMessage request = TOMMessage.wrap(message.duplicate());
+
+			compact.putInt(0);
+			compact.putInt(request.getSender());
+			compact.putInt(request.getSession());
+			compact.putInt(request.getSequence());
+			compact.put(digest(message, signature));
+		}
+		return compact.array();
+	}
+
+	/**
+	 * 指定的值是否只包含请求摘要的批次；
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static boolean isHashed(byte[] value) {
+		if (value == null) {
+			return false;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(value);
+		if (buffer.remaining() < 20) {
+			return false;
+		}
+		int headerSize = headerSize(buffer);
+		if (value.length < headerSize + ENTRY_SIZE) {
+			return false;
+		}
+		return buffer.getInt(headerSize - 4) > 0 && buffer.getInt(headerSize) == 0;
+	}
+
+	/**
+	 * 读取只包含请求摘要的批次；
+	 *
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException 批次的格式不正确；
+	 */
+	public static HashedBatch read(byte[] value) {
+		if (!isHashed(value)) {
+			throw new IllegalArgumentException("The value is not a hashed batch!");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(value);
+		int headerSize = headerSize(buffer);
+		int numberOfMessages = buffer.getInt(headerSize - 4);
+		if (value.length != headerSize + numberOfMessages * ENTRY_SIZE) {
+			throw new IllegalArgumentException("Illegal size[" + value.length + "] of hashed batch!");
+		}
+
+		HashedBatch batch = new HashedBatch(Arrays.copyOf(value, headerSize), numberOfMessages);
+		buffer.position(headerSize);
+		for (int i = 0; i < numberOfMessages; i++) {
+			if (buffer.getInt() != 0) {
+				throw new IllegalArgumentException("Illegal entry[" + i + "] of hashed batch!");
+			}
+			batch.senders[i] = buffer.getInt();
+			batch.sessions[i] = buffer.getInt();
+			batch.sequences[i] = buffer.getInt();
+			batch.digests[i] = new byte[DIGEST_SIZE];
+			buffer.get(batch.digests[i]);
+		}
+		return batch;
+	}
+
+	/**
+	 * 请求的序列化字节与签名的摘要；
+	 *
+	 * @param message   请求的序列化字节；
+	 * @param signature 请求的签名；没有签名时为 null；
+	 * @return
+	 */
+	public static byte[] digest(ByteBuffer message, byte[] signature) {
+		SHA256Utils.Hasher hasher = HASHERS.get();
+		hasher.update(message);
+		if (signature != null) {
+			hasher.update(signature);
+		}
+		return hasher.digest();
+	}
+
+	/**
+	 * 批次头的字节数，包含请求数；
+	 */
+	private static int headerSize(ByteBuffer buffer) {
+		int numberOfNonces = buffer.getInt(8);
+		return 20 + (numberOfNonces > 0 ? 8 : 0);
+	}
+
+	public int size() {
+		return senders.length;
+	}
+
+	public int getSender(int index) {
+		return senders[index];
+	}
+
+	public int getSession(int index) {
+		return sessions[index];
+	}
+
+	public int getSequence(int index) {
+		return sequences[index];
+	}
+
+	/**
+	 * 指定请求的序列化字节与签名是否与批次中的摘要一致；
+	 *
+	 * @param index     请求在批次中的位置；
+	 * @param message   请求的序列化字节；
+	 * @param signature 请求的签名；没有签名时为 null；
+	 * @return
+	 */
+	public boolean matches(int index, ByteBuffer message, byte[] signature) {
+		return message != null && MessageDigest.isEqual(digests[index], digest(message, signature));
+	}
+
+	/**
+	 * 以请求的序列化字节与签名还原完整的批次；
+	 *
+	 * @param messages   各个请求的序列化字节；
+	 * @param signatures 各个请求的签名；不使用签名时为 null；
+	 * @return
+	 */
+	public byte[] rebuild(ByteBuffer[] messages, byte[][] signatures) {
+		int size = header.length;
+		for (int i = 0; i < messages.length; i++) {
+			size += 4 + messages[i].remaining();
+			if (signatures != null && signatures[i] != null) {
+				size += signatures[i].length;
+			}
+		}
+
+		ByteBuffer batch = ByteBuffer.allocate(size);
+		batch.put(header);
+		for (int i = 0; i < messages.length; i++) {
+			batch.putInt(messages[i].remaining());
+			batch.put(messages[i].duplicate());
+			if (signatures != null && signatures[i] != null) {
+				batch.put(signatures[i]);
+			}
+		}
+		return batch.array();
+	}
+}
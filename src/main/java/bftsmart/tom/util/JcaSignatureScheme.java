@@ -0,0 +1,153 @@
+package bftsmart.tom.util;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于 JCA {@link Signature} 的签名算法；
+ * <p>
+ * 每个线程持有一个签名引擎，签名与验证时只需以密钥重新初始化引擎，不必每次创建引擎；
+ */
+public class JcaSignatureScheme implements SignatureScheme {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(JcaSignatureScheme.class);
+
+	private final String name;
+
+	private final String signatureAlgorithm;
+
+	private final String keyAlgorithm;
+
+	private final Provider provider;
+
+	private final int signatureSize;
+
+	private final ThreadLocal<Signature> engines = ThreadLocal.withInitial(this::newEngine);
+
+	/**
+	 * @param name               算法名称；
+	 * @param signatureAlgorithm JCA 签名算法名称；
+	 * @param keyAlgorithm       JCA 密钥算法名称；
+	 * @param provider           提供者；为 null 时使用默认的提供者；
+	 * @param signatureSize      签名的固定字节数；小于等于 0 表示签名长度等于 RSA 密钥的模长；
+	 */
+	public JcaSignatureScheme(String name, String signatureAlgorithm, String keyAlgorithm, Provider provider,
+			int signatureSize) {
+		this.name = name;
+		this.signatureAlgorithm = signatureAlgorithm;
+		this.keyAlgorithm = keyAlgorithm;
+		this.provider = provider;
+		this.signatureSize = signatureSize;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getKeyAlgorithm() {
+		return keyAlgorithm;
+	}
+
+	@Override
+	public int getSignatureSize(Key key) {
+		if (signatureSize > 0) {
+			return signatureSize;
+		}
+		if (key instanceof RSAKey) {
+			return (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+		}
+		throw new IllegalArgumentException("Unsupported key of signature scheme[" + name + "]! --" + key);
+	}
+
+	@Override
+	public byte[] sign(PrivateKey key, byte[] message) {
+		Signature engine = engines.get();
+		try {
+			engine.initSign(key);
+			engine.update(message);
+			return engine.sign();
+		} catch (InvalidKeyException | SignatureException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public boolean verify(PublicKey key, byte[] message, byte[] signature) {
+		Signature engine = engines.get();
+		try {
+			engine.initVerify(key);
+			engine.update(message);
+			return engine.verify(signature);
+		} catch (InvalidKeyException | SignatureException e) {
+			LOGGER.warn("Error occurred while verifying signature! --" + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean verify(PublicKey key, ByteBuffer message, byte[] signature) {
+		Signature engine = engines.get();
+		try {
+			engine.initVerify(key);
+			engine.update(message.duplicate());
+			return engine.verify(signature);
+		} catch (InvalidKeyException | SignatureException e) {
+			LOGGER.warn("Error occurred while verifying signature! --" + e.getMessage(), e);
+			return false;
+		}
+	}
+
+	@Override
+	public Signature newEngine() {
+		try {
+			return provider == null ? Signature.getInstance(signatureAlgorithm)
+					: Signature.getInstance(signatureAlgorithm, provider);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public PublicKey decodePublicKey(byte[] encoded) {
+		try {
+			return keyFactory().generatePublic(new X509EncodedKeySpec(encoded));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public PrivateKey decodePrivateKey(byte[] encoded) {
+		try {
+			return keyFactory().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	private KeyFactory keyFactory() throws NoSuchAlgorithmException {
+		return provider == null ? KeyFactory.getInstance(keyAlgorithm) : KeyFactory.getInstance(keyAlgorithm, provider);
+	}
+
+	@Override
+	public String toString() {
+		return name + "[" + signatureAlgorithm + "]";
+	}
+}
@@ -0,0 +1,78 @@
+package bftsmart.tom.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import utils.io.BytesUtils;
+
+/**
+ * 以长度前缀分隔操作的帧格式；
+ * <p>
+ * 格式为：操作数量（4个字节） + 依次输出每个操作：操作长度（4个字节） + 操作内容；<br>
+ * 操作为 null 时长度输出为 -1，拆分时还原为 null；
+ */
+public final class LengthPrefixedFraming implements RequestFraming {
+
+	public static final LengthPrefixedFraming INSTANCE = new LengthPrefixedFraming();
+
+	private static final int HEADER_SIZE = 4;
+
+	private LengthPrefixedFraming() {
+	}
+
+	@Override
+	public byte[] pack(List<byte[]> operations) {
+		int size = HEADER_SIZE;
+		for (byte[] operation : operations) {
+			size += HEADER_SIZE + (operation == null ? 0 : operation.length);
+		}
+		byte[] bytes = new byte[size];
+		int offset = BytesUtils.toBytes(operations.size(), bytes, 0);
+		for (byte[] operation : operations) {
+			if (operation == null) {
+				offset += BytesUtils.toBytes(-1, bytes, offset);
+				continue;
+			}
+			offset += BytesUtils.toBytes(operation.length, bytes, offset);
+			System.arraycopy(operation, 0, bytes, offset, operation.length);
+			offset += operation.length;
+		}
+		return bytes;
+	}
+
+	@Override
+	public List<byte[]> unpack(byte[] bytes) {
+		if (bytes == null || bytes.length < HEADER_SIZE) {
+			throw new IllegalArgumentException("Too short length of framed operations!");
+		}
+		int count = BytesUtils.toInt(bytes, 0);
+		if (count < 0 || count > (bytes.length - HEADER_SIZE) / HEADER_SIZE) {
+			throw new IllegalArgumentException("Illegal count of framed operations[" + count + "]!");
+		}
+		List<byte[]> operations = new ArrayList<>(count);
+		int offset = HEADER_SIZE;
+		for (int i = 0; i < count; i++) {
+			if (offset + HEADER_SIZE > bytes.length) {
+				throw new IllegalArgumentException("Too short length of framed operations!");
+			}
+			int length = BytesUtils.toInt(bytes, offset);
+			offset += HEADER_SIZE;
+			if (length == -1) {
+				operations.add(null);
+				continue;
+			}
+			if (length < 0 || length > bytes.length - offset) {
+				throw new IllegalArgumentException("Illegal length of framed operation[" + length + "]!");
+			}
+			byte[] operation = new byte[length];
+			System.arraycopy(bytes, offset, operation, 0, length);
+			operations.add(operation);
+			offset += length;
+		}
+		if (offset != bytes.length) {
+			throw new IllegalArgumentException("Unexpected trailing bytes of framed operations!");
+		}
+		return operations;
+	}
+
+}
@@ -0,0 +1,267 @@
+package bftsmart.tom.util;
+
+/**
+ * 基于 GF(2^8) 的系统 Reed-Solomon 编码；
+ * <p>
+ * 数据被切分为 dataShards 个等长的分片，再生成 totalShards - dataShards 个校验分片；任意 dataShards 个分片即可还原数据；<br>
+ * 编码矩阵由范德蒙矩阵变换而来，前 dataShards 行为单位矩阵，因此数据分片就是原数据的片段；
+ * <p>
+ * 实例不可变，可以在多个线程间共享；
+ */
+public final class ReedSolomon {
+
+	/**
+	 * GF(2^8) 的生成多项式 x^8 + x^4 + x^3 + x^2 + 1；
+	 */
+	private static final int GENERATING_POLYNOMIAL = 0x11d;
+
+	private static final int[] LOG = new int[256];
+
+	private static final byte[] EXP = new byte[512];
+
+	/**
+	 * 乘法表，MUL[a][b] = a * b；
+	 */
+	private static final byte[][] MUL = new byte[256][256];
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = (byte) x;
+			LOG[x] = i;
+			x <<= 1;
+			if ((x & 0x100) != 0) {
+				x ^= GENERATING_POLYNOMIAL;
+			}
+		}
+		for (int i = 255; i < EXP.length; i++) {
+			EXP[i] = EXP[i - 255];
+		}
+		for (int a = 1; a < 256; a++) {
+			for (int b = 1; b < 256; b++) {
+				MUL[a][b] = EXP[LOG[a] + LOG[b]];
+			}
+		}
+	}
+
+	private final int dataShards;
+
+	private final int totalShards;
+
+	/**
+	 * 编码矩阵，totalShards 行 dataShards 列；
+	 */
+	private final byte[][] matrix;
+
+	/**
+	 * @param dataShards  数据分片数；
+	 * @param totalShards 分片总数，包含数据分片与校验分片；
+	 */
+	public ReedSolomon(int dataShards, int totalShards) {
+		if (dataShards < 1 || totalShards < dataShards || totalShards > 256) {
+			throw new IllegalArgumentException(
+					"Illegal shards! --[DataShards=" + dataShards + "][TotalShards=" + totalShards + "]");
+		}
+		this.dataShards = dataShards;
+		this.totalShards = totalShards;
+
+		byte[][] vandermonde = new byte[totalShards][dataShards];
+		for (int r = 0; r < totalShards; r++) {
+			for (int c = 0; c < dataShards; c++) {
+				vandermonde[r][c] = power(r, c);
+			}
+		}
+		byte[][] top = new byte[dataShards][];
+		System.arraycopy(vandermonde, 0, top, 0, dataShards);
+		this.matrix = multiply(vandermonde, invert(top));
+	}
+
+	public int getDataShards() {
+		return dataShards;
+	}
+
+	public int getTotalShards() {
+		return totalShards;
+	}
+
+	/**
+	 * 每个分片的字节数；
+	 *
+	 * @param length 数据的字节数；
+	 * @return
+	 */
+	public int getShardSize(int length) {
+		return Math.max(1, (length + dataShards - 1) / dataShards);
+	}
+
+	/**
+	 * 编码数据；
+	 *
+	 * @param data
+	 * @return totalShards 个等长的分片；最后一个数据分片的不足部分以 0 填充；
+	 */
+	public byte[][] encode(byte[] data) {
+		int shardSize = getShardSize(data.length);
+		byte[][] shards = new byte[totalShards][shardSize];
+		for (int i = 0; i < dataShards; i++) {
+			int offset = i * shardSize;
+			if (offset < data.length) {
+				System.arraycopy(data, offset, shards[i], 0, Math.min(shardSize, data.length - offset));
+			}
+		}
+		for (int r = dataShards; r < totalShards; r++) {
+			byte[] parity = shards[r];
+			for (int c = 0; c < dataShards; c++) {
+				multiplyAdd(matrix[r][c], shards[c], parity);
+			}
+		}
+		return shards;
+	}
+
+	/**
+	 * 以任意 dataShards 个分片还原数据；
+	 *
+	 * @param shards totalShards 个分片，缺少的分片为 null；
+	 * @param length 数据的字节数；
+	 * @return
+	 * @throws IllegalArgumentException 分片不足或者分片的长度不一致；
+	 */
+	public byte[] decode(byte[][] shards, int length) {
+		if (shards.length != totalShards) {
+			throw new IllegalArgumentException("Illegal number of shards[" + shards.length + "]!");
+		}
+		int shardSize = getShardSize(length);
+		int[] rows = new int[dataShards];
+		int present = 0;
+		for (int i = 0; i < totalShards && present < dataShards; i++) {
+			if (shards[i] != null) {
+				if (shards[i].length != shardSize) {
+					throw new IllegalArgumentException("Illegal size[" + shards[i].length + "] of shard[" + i + "]!");
+				}
+				rows[present++] = i;
+			}
+		}
+		if (present < dataShards) {
+			throw new IllegalArgumentException("Not enough shards to decode! --[Present=" + present + "][Required="
+					+ dataShards + "]");
+		}
+
+		byte[] data = new byte[length];
+		if (rows[dataShards - 1] == dataShards - 1) {
+			// 数据分片齐全，直接拼接；
+			copyShards(shards, data, shardSize);
+			return data;
+		}
+
+		byte[][] subMatrix = new byte[dataShards][];
+		for (int i = 0; i < dataShards; i++) {
+			subMatrix[i] = matrix[rows[i]];
+		}
+		byte[][] decodeMatrix = invert(subMatrix);
+		byte[][] dataShardsOut = new byte[dataShards][];
+		for (int c = 0; c < dataShards; c++) {
+			if (rows[c] == c) {
+				dataShardsOut[c] = shards[c];
+				continue;
+			}
+			byte[] shard = new byte[shardSize];
+			for (int i = 0; i < dataShards; i++) {
+				multiplyAdd(decodeMatrix[c][i], shards[rows[i]], shard);
+			}
+			dataShardsOut[c] = shard;
+		}
+		copyShards(dataShardsOut, data, shardSize);
+		return data;
+	}
+
+	private void copyShards(byte[][] shards, byte[] data, int shardSize) {
+		for (int i = 0; i < dataShards; i++) {
+			int offset = i * shardSize;
+			if (offset >= data.length) {
+				break;
+			}
+			System.arraycopy(shards[i], 0, data, offset, Math.min(shardSize, data.length - offset));
+		}
+	}
+
+	/**
+	 * output += coefficient * input；
+	 */
+	private static void multiplyAdd(byte coefficient, byte[] input, byte[] output) {
+		if (coefficient == 0) {
+			return;
+		}
+		byte[] table = MUL[coefficient & 0xff];
+		for (int i = 0; i < input.length; i++) {
+			output[i] ^= table[input[i] & 0xff];
+		}
+	}
+
+	private static byte power(int a, int n) {
+		if (n == 0) {
+			return 1;
+		}
+		if (a == 0) {
+			return 0;
+		}
+		return EXP[(LOG[a] * n) % 255];
+	}
+
+	private static byte[][] multiply(byte[][] left, byte[][] right) {
+		int rows = left.length;
+		int columns = right[0].length;
+		byte[][] result = new byte[rows][columns];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				int value = 0;
+				for (int i = 0; i < right.length; i++) {
+					value ^= MUL[left[r][i] & 0xff][right[i][c] & 0xff];
+				}
+				result[r][c] = (byte) value;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 以高斯-约当消元求方阵的逆；
+	 */
+	private static byte[][] invert(byte[][] matrix) {
+		int size = matrix.length;
+		byte[][] work = new byte[size][size * 2];
+		for (int r = 0; r < size; r++) {
+			System.arraycopy(matrix[r], 0, work[r], 0, size);
+			work[r][size + r] = 1;
+		}
+		for (int c = 0; c < size; c++) {
+			int pivot = c;
+			while (pivot < size && work[pivot][c] == 0) {
+				pivot++;
+			}
+			if (pivot == size) {
+				throw new IllegalArgumentException("Singular matrix!");
+			}
+			byte[] swap = work[c];
+			work[c] = work[pivot];
+			work[pivot] = swap;
+
+			byte[] scale = MUL[EXP[255 - LOG[work[c][c] & 0xff]] & 0xff];
+			for (int i = 0; i < size * 2; i++) {
+				work[c][i] = scale[work[c][i] & 0xff];
+			}
+			for (int r = 0; r < size; r++) {
+				if (r != c && work[r][c] != 0) {
+					byte[] factor = MUL[work[r][c] & 0xff];
+					for (int i = 0; i < size * 2; i++) {
+						work[r][i] ^= factor[work[c][i] & 0xff];
+					}
+				}
+			}
+		}
+		byte[][] inverse = new byte[size][size];
+		for (int r = 0; r < size; r++) {
+			System.arraycopy(work[r], size, inverse[r], 0, size);
+		}
+		return inverse;
+	}
+}
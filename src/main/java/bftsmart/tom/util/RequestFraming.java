@@ -0,0 +1,30 @@
+package bftsmart.tom.util;
+
+import java.util.List;
+
+/**
+ * 合并请求的帧格式；
+ * <p>
+ * 客户端把多个应用操作打包为一个请求，节点拆分请求逐个执行后，以同样的格式把各个操作的结果打包为一个应答；
+ * 客户端与节点必须使用相同的帧格式；
+ */
+public interface RequestFraming {
+
+	/**
+	 * 把多个操作（或者操作的结果）打包为一个请求（或者应答）；
+	 *
+	 * @param operations
+	 * @return
+	 */
+	byte[] pack(List<byte[]> operations);
+
+	/**
+	 * 拆分由 {@link #pack(List)} 打包的请求（或者应答）；
+	 *
+	 * @param bytes
+	 * @return
+	 * @throws IllegalArgumentException 格式错误时抛出；
+	 */
+	List<byte[]> unpack(byte[] bytes);
+
+}
@@ -0,0 +1,97 @@
+package bftsmart.tom.util;
+
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * 签名算法；
+ * <p>
+ * 客户端请求、共识证明与视图变更消息的签名都通过签名算法生成与验证；通过 {@link SignatureSchemes#get(String)}
+ * 按配置的名称获取实例，或者通过 {@link SignatureSchemes#forKey(Key)} 按密钥的算法获取实例；
+ * <p>
+ * 实现必须是线程安全的；
+ */
+public interface SignatureScheme {
+
+	/**
+	 * 算法名称，即配置项 system.communication.signatureScheme 的取值；
+	 *
+	 * @return
+	 */
+	String getName();
+
+	/**
+	 * 密钥的算法名称，用于解码密钥以及匹配密钥对应的签名算法；
+	 *
+	 * @return
+	 */
+	String getKeyAlgorithm();
+
+	/**
+	 * 以指定密钥生成的签名的字节数；
+	 * <p>
+	 * 批次中每个请求的签名占用固定长度，因此同一密钥生成的签名必须是定长的；
+	 *
+	 * @param key 公钥或者私钥；
+	 * @return
+	 */
+	int getSignatureSize(Key key);
+
+	/**
+	 * 签名；
+	 *
+	 * @param key     私钥；
+	 * @param message 消息；
+	 * @return 签名；
+	 */
+	byte[] sign(PrivateKey key, byte[] message);
+
+	/**
+	 * 验证签名；
+	 *
+	 * @param key       公钥；
+	 * @param message   消息；
+	 * @param signature 签名；
+	 * @return 签名有效时返回 true；签名格式错误时返回 false；
+	 */
+	boolean verify(PublicKey key, byte[] message, byte[] signature);
+
+	/**
+	 * 验证缓冲区中的消息的签名，不复制消息，也不改变缓冲区的位置；
+	 *
+	 * @param key       公钥；
+	 * @param message   消息；
+	 * @param signature 签名；
+	 * @return 签名有效时返回 true；签名格式错误时返回 false；
+	 */
+	boolean verify(PublicKey key, ByteBuffer message, byte[] signature);
+
+	/**
+	 * 创建一个新的签名引擎，例如用于 {@link java.security.SignedObject}；
+	 * <p>
+	 * 返回的引擎不是线程安全的，由调用者独占使用；
+	 *
+	 * @return
+	 */
+	Signature newEngine();
+
+	/**
+	 * 从 X.509 编码解码公钥；
+	 *
+	 * @param encoded
+	 * @return
+	 */
+	PublicKey decodePublicKey(byte[] encoded);
+
+	/**
+	 * 从 PKCS#8 编码解码私钥；
+	 *
+	 * @param encoded
+	 * @return
+	 */
+	PrivateKey decodePrivateKey(byte[] encoded);
+
+}
@@ -0,0 +1,98 @@
+package bftsmart.tom.util;
+
+import java.security.Key;
+import java.security.Provider;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * 签名算法的注册表；
+ * <p>
+ * 内置以下算法：
+ * <ul>
+ * <li>rsa：SHA1withRSA，签名长度等于密钥的模长；默认算法；</li>
+ * <li>ed25519：Ed25519，签名长度 64 字节；</li>
+ * <li>ecdsa：基于 P-256 曲线的 SHA256withECDSA，签名以定长的 r||s 编码，长度 64 字节；</li>
+ * </ul>
+ * Ed25519 与 ECDSA 由 BouncyCastle 提供，不需要在 JVM 中注册 BouncyCastle 提供者；
+ */
+public final class SignatureSchemes {
+
+	private static final Provider BC = new BouncyCastleProvider();
+
+	public static final SignatureScheme RSA = new JcaSignatureScheme("rsa", "SHA1withRSA", "RSA", null, 0);
+
+	public static final SignatureScheme ED25519 = new JcaSignatureScheme("ed25519", "Ed25519", "Ed25519", BC, 64);
+
+	/**
+	 * 批次中每个签名占用固定长度，因此使用定长的 PLAIN 编码而不是变长的 DER 编码；
+	 */
+	public static final SignatureScheme ECDSA = new JcaSignatureScheme("ecdsa", "SHA256withPLAIN-ECDSA", "EC", BC, 64);
+
+	/**
+	 * 按名称索引的算法；
+	 */
+	private static final Map<String, SignatureScheme> SCHEMES = new ConcurrentHashMap<>();
+
+	/**
+	 * 按密钥算法索引的算法；
+	 */
+	private static final Map<String, SignatureScheme> KEY_ALGORITHMS = new ConcurrentHashMap<>();
+
+	static {
+		register(RSA);
+		register(ED25519);
+		register(ECDSA);
+		// JDK 与 BouncyCastle 对同一种密钥使用的算法名称不同；
+		KEY_ALGORITHMS.put("EDDSA", ED25519);
+		KEY_ALGORITHMS.put("ECDSA", ECDSA);
+	}
+
+	private SignatureSchemes() {
+	}
+
+	/**
+	 * 注册签名算法；同名的算法被替换；
+	 *
+	 * @param scheme
+	 */
+	public static void register(SignatureScheme scheme) {
+		SCHEMES.put(scheme.getName().toLowerCase(), scheme);
+		KEY_ALGORITHMS.put(scheme.getKeyAlgorithm().toUpperCase(), scheme);
+	}
+
+	/**
+	 * 按名称获取签名算法，忽略大小写；
+	 *
+	 * @param name 算法名称；为 null 或空时返回 {@link #RSA}；
+	 * @return
+	 * @throws IllegalArgumentException 算法未注册；
+	 */
+	public static SignatureScheme get(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			return RSA;
+		}
+		SignatureScheme scheme = SCHEMES.get(name.trim().toLowerCase());
+		if (scheme == null) {
+			throw new IllegalArgumentException("Unsupported signature scheme! --" + name);
+		}
+		return scheme;
+	}
+
+	/**
+	 * 按密钥的算法获取签名算法；
+	 *
+	 * @param key 公钥或者私钥；
+	 * @return
+	 * @throws IllegalArgumentException 没有与密钥算法对应的签名算法；
+	 */
+	public static SignatureScheme forKey(Key key) {
+		SignatureScheme scheme = KEY_ALGORITHMS.get(key.getAlgorithm().toUpperCase());
+		if (scheme == null) {
+			throw new IllegalArgumentException("Unsupported key algorithm! --" + key.getAlgorithm());
+		}
+		return scheme;
+	}
+}
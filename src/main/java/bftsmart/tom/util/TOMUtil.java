@@ -19,11 +19,17 @@ import bftsmart.consensus.app.SHA256Utils;
 import bftsmart.reconfiguration.ViewTopology;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.Arrays;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class TOMUtil {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(TOMUtil.class);
+
 	// private static final int BENCHMARK_PERIOD = 10000;
 
 	// some message types
@@ -54,11 +60,8 @@ public class TOMUtil {
 			return signatureSize;
 		}
 
-		byte[] signature = signMessage(controller.getStaticConf().getRSAPrivateKey(), BytesUtils.getBytes("a"));
-
-		if (signature != null) {
-			signatureSize = signature.length;
-		}
+		PrivateKey privateKey = controller.getStaticConf().getRSAPrivateKey();
+		signatureSize = SignatureSchemes.forKey(privateKey).getSignatureSize(privateKey);
 
 		return signatureSize;
 	}
@@ -100,27 +103,19 @@ public class TOMUtil {
 	// ******* EDUARDO END **************//
 
 	/**
-	 * Sign a message.
+	 * Sign a message with the signature scheme matching the algorithm of the key.
 	 *
 	 * @param key     the private key to be used to generate the signature
 	 * @param message the message to be signed
 	 * @return the signature
 	 */
 	public static byte[] signMessage(PrivateKey key, byte[] message) {
-		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-			signatureEngine.initSign(key);
-			signatureEngine.update(message);
-			
-			byte[] result = signatureEngine.sign();
-			return result;
-		} catch (InvalidKeyException | NoSuchAlgorithmException | SignatureException e) {
-			throw new IllegalStateException(e.getMessage(), e);
-		}
+		return SignatureSchemes.forKey(key).sign(key, message);
 	}
 
 	/**
-	 * Verify the signature of a message.
+	 * Verify the signature of a message with the signature scheme matching the
+	 * algorithm of the key.
 	 *
 	 * @param key       the public key to be used to verify the signature
 	 * @param message   the signed message
@@ -128,20 +123,12 @@ public class TOMUtil {
 	 * @return true if the signature is valid, false otherwise
 	 */
 	public static boolean verifySignature(PublicKey key, byte[] message, byte[] signature) {
-
-		boolean result = false;
-
 		try {
-			Signature signatureEngine = Signature.getInstance("SHA1withRSA");
-
-			signatureEngine.initVerify(key);
-
-			result = verifySignature(signatureEngine, message, signature);
-		} catch (Exception e) {
-			e.printStackTrace();
+			return SignatureSchemes.forKey(key).verify(key, message, signature);
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn(e.getMessage(), e);
+			return false;
 		}
-
-		return result;
 	}
 
 	/**
@@ -160,6 +147,22 @@ public class TOMUtil {
 		return initializedSignatureEngine.verify(signature);
 	}
 
+	/**
+	 * Verify the signature of a message held by a buffer, without copying it.
+	 *
+	 * @param initializedSignatureEngine a signature engine already initialized for
+	 *                                   verification
+	 * @param message                    the message; its position is not changed
+	 * @param signature                  the signature to be verified
+	 * @return true if the signature is valid, false otherwise
+	 */
+	public static boolean verifySignature(Signature initializedSignatureEngine, ByteBuffer message, byte[] signature)
+			throws SignatureException {
+
+		initializedSignatureEngine.update(message.duplicate());
+		return initializedSignatureEngine.verify(signature);
+	}
+
 	public static String byteArrayToString(byte[] b) {
 		String s = "";
 		for (int i = 0; i < b.length; i++) {
@@ -0,0 +1,275 @@
+package bftsmart.tom.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 交付与共识路径的跟踪统计；
+ * <p>
+ * 跟踪结果记录在计数器与直方图中，而不是输出日志；计数器记录每个事件，耗时等直方图只记录按
+ * {@link #sample()} 抽样的事件；
+ * <p>
+ * 关闭时使用 {@link #DISABLED}，{@link #sample()} 总是返回 false，计数器与直方图不做任何记录；
+ * 调用者应在获取时间戳之前先调用 {@link #sample()}，使关闭时不产生额外的开销；
+ * <p>
+ * 以 {@link #create(int, boolean)} 要求记录时，即使关闭抽样，计数器与直方图也照常记录，只有 {@link #sample()} 总是返回 false；
+ */
+public final class Tracer {
+
+	/**
+	 * 关闭状态的跟踪器；
+	 */
+	public static final Tracer DISABLED = new Tracer(0, false);
+
+	private static final Counter DISABLED_COUNTER = new Counter(false);
+
+	private static final Histogram DISABLED_HISTOGRAM = new Histogram(false);
+
+	private final boolean enabled;
+
+	private final boolean sampling;
+
+	private final int sampleRate;
+
+	private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+	private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private Tracer(int sampleRate, boolean enabled) {
+		this.enabled = enabled;
+		this.sampling = sampleRate > 0;
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * 创建跟踪器；
+	 *
+	 * @param sampleRate 抽样率，每 sampleRate 个事件抽样 1 个；小于等于 0 表示关闭跟踪；
+	 * @return
+	 */
+	public static Tracer create(int sampleRate) {
+		return create(sampleRate, false);
+	}
+
+	/**
+	 * 创建跟踪器；
+	 *
+	 * @param sampleRate 抽样率，每 sampleRate 个事件抽样 1 个；小于等于 0 表示关闭抽样；
+	 * @param record     关闭抽样时是否仍然记录计数器与直方图；
+	 * @return
+	 */
+	public static Tracer create(int sampleRate, boolean record) {
+		return sampleRate > 0 || record ? new Tracer(sampleRate, true) : DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * 是否抽样记录耗时；
+	 *
+	 * @return
+	 */
+	public boolean isSampling() {
+		return sampling;
+	}
+
+	/**
+	 * 当前事件是否被抽样；关闭抽样时总是返回 false；
+	 *
+	 * @return
+	 */
+	public boolean sample() {
+		return sampling && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+	}
+
+	/**
+	 * 返回指定名称的计数器；调用者应在初始化时获取并持有计数器，而不是每次记录时查找；
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Counter counter(String name) {
+		if (!enabled) {
+			return DISABLED_COUNTER;
+		}
+		return counters.computeIfAbsent(name, k -> new Counter(true));
+	}
+
+	/**
+	 * 返回指定名称的直方图；调用者应在初始化时获取并持有直方图，而不是每次记录时查找；
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Histogram histogram(String name) {
+		if (!enabled) {
+			return DISABLED_HISTOGRAM;
+		}
+		return histograms.computeIfAbsent(name, k -> new Histogram(true));
+	}
+
+	/**
+	 * 返回各计数器的当前值，按名称排序；
+	 *
+	 * @return
+	 */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		return values;
+	}
+
+	/**
+	 * 返回各直方图，按名称排序；
+	 *
+	 * @return
+	 */
+	public Map<String, Histogram> getHistograms() {
+		return new TreeMap<>(histograms);
+	}
+
+	@Override
+	public String toString() {
+		if (!enabled) {
+			return "Tracer[disabled]";
+		}
+		StringBuilder report = new StringBuilder("Tracer[sampleRate=").append(sampling ? sampleRate : 0).append(']');
+		for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+			report.append("\n  ").append(entry.getKey()).append(" = ").append(entry.getValue());
+		}
+		for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+			report.append("\n  ").append(entry.getKey()).append(" : ").append(entry.getValue());
+		}
+		return report.toString();
+	}
+
+	/**
+	 * 计数器；
+	 */
+	public static final class Counter {
+
+		private final boolean enabled;
+
+		private final LongAdder value = new LongAdder();
+
+		private Counter(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void increment() {
+			if (enabled) {
+				value.increment();
+			}
+		}
+
+		public void add(long delta) {
+			if (enabled) {
+				value.add(delta);
+			}
+		}
+
+		public long get() {
+			return value.sum();
+		}
+	}
+
+	/**
+	 * 记录非负数值分布的直方图；
+	 * <p>
+	 * 按 2 的幂划分桶，第 i 个桶记录 [2^(i-1), 2^i) 范围内的值，因此百分位数是所在桶的上界，误差不超过 2 倍；
+	 */
+	public static final class Histogram {
+
+		private static final int BUCKETS = 64;
+
+		private final boolean enabled;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder sum = new LongAdder();
+
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private Histogram(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public void record(long value) {
+			if (!enabled) {
+				return;
+			}
+			if (value < 0) {
+				value = 0;
+			}
+			buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		/**
+		 * 记录从指定的 {@link System#nanoTime()} 到现在的纳秒数；
+		 *
+		 * @param startNanos
+		 */
+		public void recordSince(long startNanos) {
+			record(System.nanoTime() - startNanos);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double) sum.sum() / n;
+		}
+
+		/**
+		 * 返回指定百分位数的近似值；
+		 *
+		 * @param percentile 0 到 100 之间的百分位；
+		 * @return
+		 */
+		public long getPercentile(double percentile) {
+			long n = count.sum();
+			if (n == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(n * Math.min(Math.max(percentile, 0), 100) / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min((1L << i) - 1, getMax());
+				}
+			}
+			return getMax();
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + getPercentile(50) + ", p99="
+					+ getPercentile(99) + ", max=" + getMax();
+		}
+	}
+}
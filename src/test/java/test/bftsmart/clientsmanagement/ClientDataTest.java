@@ -0,0 +1,58 @@
+package test.bftsmart.clientsmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bftsmart.clientsmanagement.ClientData;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class ClientDataTest {
+
+	@Test
+	public void testRemoveRequestsOrderedByAnotherLeader() {
+		ClientData clientData = new ClientData(1, null);
+		TOMMessage req0 = createRequest(0);
+		TOMMessage req1 = createRequest(1);
+		TOMMessage req2 = createRequest(2);
+		clientData.addPendingRequest(req0);
+		clientData.addPendingRequest(req1);
+		clientData.addPendingRequest(req2);
+
+		// the ordered requests are decoded from the proposal, not the pending instances;
+		assertTrue(clientData.removeOrderedRequest(createRequest(1)));
+		assertEquals(2, clientData.countProposableRequests());
+		assertTrue(clientData.removeOrderedRequest(createRequest(0)));
+		assertEquals(1, clientData.countProposableRequests());
+
+		assertSame(req2, clientData.pollProposableRequest());
+		assertNull(clientData.pollProposableRequest());
+		assertEquals(1, clientData.getPendingRequests().size());
+	}
+
+	@Test
+	public void testRemoveProposedRequest() {
+		ClientData clientData = new ClientData(1, null);
+		TOMMessage req0 = createRequest(0);
+		TOMMessage req1 = createRequest(1);
+		clientData.addPendingRequest(req0);
+		clientData.addPendingRequest(req1);
+
+		TOMMessage proposed = clientData.pollProposableRequest();
+		assertSame(req0, proposed);
+		proposed.alreadyProposed = true;
+
+		assertTrue(clientData.removeRequest(createRequest(0)));
+		assertEquals(1, clientData.getPendingRequests().size());
+		assertSame(req1, clientData.peekProposableRequest());
+	}
+
+	private static TOMMessage createRequest(int sequence) {
+		return new TOMMessage(1, 0, sequence, sequence, new byte[] { (byte) sequence }, null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+	}
+}
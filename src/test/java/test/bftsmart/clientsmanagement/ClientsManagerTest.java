@@ -0,0 +1,118 @@
+package test.bftsmart.clientsmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import bftsmart.clientsmanagement.ClientsManager;
+import bftsmart.clientsmanagement.RequestList;
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class ClientsManagerTest {
+
+	@Test
+	public void testRoundRobinBatch() {
+		ClientsManager clientsManager = createClientsManager(4);
+
+		// client 1 has 3 pending requests, client 2 has 1, client 3 has 2;
+		for (int seq = 0; seq < 3; seq++) {
+			assertTrue(clientsManager.requestReceived(createRequest(1, seq), true));
+		}
+		assertTrue(clientsManager.requestReceived(createRequest(2, 0), true));
+		for (int seq = 0; seq < 2; seq++) {
+			assertTrue(clientsManager.requestReceived(createRequest(3, seq), true));
+		}
+		assertTrue(clientsManager.havePendingRequests());
+
+		RequestList batch = clientsManager.getPendingRequests();
+		assertEquals(4, batch.size());
+		assertRequest(1, 0, batch.get(0));
+		assertRequest(2, 0, batch.get(1));
+		assertRequest(3, 0, batch.get(2));
+		assertRequest(1, 1, batch.get(3));
+
+		batch = clientsManager.getPendingRequests();
+		assertEquals(2, batch.size());
+		assertRequest(3, 1, batch.get(0));
+		assertRequest(1, 2, batch.get(1));
+
+		assertFalse(clientsManager.havePendingRequests());
+		assertEquals(0, clientsManager.getPendingRequests().size());
+	}
+
+	@Test
+	public void testOrderedRequestsAreNotProposed() {
+		ClientsManager clientsManager = createClientsManager(10);
+
+		TOMMessage req0 = createRequest(1, 0);
+		TOMMessage req1 = createRequest(1, 1);
+		assertTrue(clientsManager.requestReceived(req0, true));
+		assertTrue(clientsManager.requestReceived(req1, true));
+
+		// the requests were ordered by another leader;
+		clientsManager.requestsOrdered(new TOMMessage[] { req0, req1 });
+
+		assertFalse(clientsManager.havePendingRequests());
+		assertEquals(0, clientsManager.getPendingRequests().size());
+
+		TOMMessage req2 = createRequest(1, 2);
+		assertTrue(clientsManager.requestReceived(req2, true));
+		assertTrue(clientsManager.havePendingRequests());
+		RequestList batch = clientsManager.getPendingRequests();
+		assertEquals(1, batch.size());
+		assertRequest(1, 2, batch.getFirst());
+	}
+
+	@Test
+	public void testFullReplyOfDigestReplyIsResent() {
+		ClientsManager clientsManager = createClientsManager(10);
+		ServerCommunicationSystem cs = Mockito.mock(ServerCommunicationSystem.class);
+
+		TOMMessage request = createRequest(1, 0);
+		request.setReplyServer(2);
+		assertTrue(clientsManager.requestReceived(request, true, cs));
+		clientsManager.requestsOrdered(new TOMMessage[] { request });
+
+		// this replica is not the reply server, its reply is a digest of the full reply;
+		TOMMessage fullReply = new TOMMessage(0, 0, 0, 0, new byte[] { 1, 2, 3 }, null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+		request.reply = new TOMMessage(0, 0, 0, 0, new byte[32], null, 0, TOMMessageType.ORDERED_REQUEST);
+		request.reply.fullReply = fullReply;
+
+		// the client falls back to full replies and resends the request without a reply server;
+		TOMMessage retransmission = createRequest(1, 0);
+		assertTrue(clientsManager.requestReceived(retransmission, true, cs));
+		verify(cs).send(new int[] { 1 }, fullReply);
+		assertFalse(clientsManager.havePendingRequests());
+	}
+
+	private static void assertRequest(int sender, int sequence, TOMMessage request) {
+		assertEquals(sender, request.getSender());
+		assertEquals(sequence, request.getSequence());
+	}
+
+	private static TOMMessage createRequest(int sender, int sequence) {
+		return new TOMMessage(sender, 0, sequence, sequence, new byte[] { (byte) sequence }, null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+	}
+
+	private static ClientsManager createClientsManager(int maxBatchSize) {
+		ReplicaConfiguration conf = Mockito.mock(ReplicaConfiguration.class);
+		when(conf.getMaxBatchSize()).thenReturn(maxBatchSize);
+		when(conf.isBFT()).thenReturn(true);
+
+		ViewTopology topology = Mockito.mock(ViewTopology.class);
+		when(topology.getStaticConf()).thenReturn(conf);
+
+		return new ClientsManager(topology, null, request -> true);
+	}
+}
@@ -2,24 +2,35 @@ package test.bftsmart.communication;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.junit.Test;
 
 import bftsmart.communication.DHPubKeyCertificate;
+import bftsmart.communication.EncodedMessage;
 import bftsmart.communication.IllegalMessageException;
 import bftsmart.communication.MacKey;
 import bftsmart.communication.MacKeyGenerator;
 import bftsmart.communication.MessageAuthenticationException;
+import bftsmart.communication.SystemMessage;
 import bftsmart.communication.SystemMessageCodec;
 import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MacVector;
 import bftsmart.consensus.messages.MessageFactory;
 import bftsmart.reconfiguration.util.HostsConfig;
 import bftsmart.reconfiguration.util.TOMConfiguration;
 import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.leaderchange.HeartBeatMessage;
+import utils.io.BytesUtils;
 import utils.security.RandomUtils;
+import utils.serialize.binary.BinarySerializeUtils;
 
 public class SystemMessageCodecTest {
 
@@ -64,6 +75,141 @@ public class SystemMessageCodecTest {
 		assertMessageEquals(message1, decodedMessageOfNode0);
 	}
 	
+	@Test
+	public void testEncodeFrame() throws MessageAuthenticationException, IllegalMessageException {
+		final int[] viewProcessIds = { 0, 1, 2, 3 };
+		ReplicaConfiguration conf0 = generateConfig(0, viewProcessIds);
+		MacKeyGenerator macKeyGen0 = new MacKeyGenerator(conf0.getRSAPublicKey(0), conf0.getRSAPrivateKey(),
+				conf0.getDHG(), conf0.getDHP());
+		ReplicaConfiguration conf1 = generateConfig(1, viewProcessIds);
+		MacKeyGenerator macKeyGen1 = new MacKeyGenerator(conf0.getRSAPublicKey(0), conf1.getRSAPrivateKey(),
+				conf1.getDHG(), conf1.getDHP());
+
+		SystemMessageCodec messageCodec0 = new SystemMessageCodec(true,
+				macKeyGen0.exchange(macKeyGen1.getDHPubKeyCertificate()));
+		SystemMessageCodec messageCodec1 = new SystemMessageCodec(true,
+				macKeyGen1.exchange(macKeyGen0.getDHPubKeyCertificate()));
+
+		List<SystemMessage> messages = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			messages.add(new MessageFactory(0).createWrite(i, 0, RandomUtils.generateRandomBytes(32)));
+		}
+
+		byte[] frameBytes = messageCodec0.encode(messages);
+		List<SystemMessage> decodedMessages = messageCodec1.decodeAll(frameBytes);
+		assertEquals(messages.size(), decodedMessages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			assertTrue(decodedMessages.get(i).authenticated);
+			assertMessageEquals((ConsensusMessage) messages.get(i), (ConsensusMessage) decodedMessages.get(i));
+		}
+
+		// 单个消息也可以通过 decodeAll 解码；
+		List<SystemMessage> singleMessage = messageCodec1.decodeAll(messageCodec0.encode(messages.get(0)));
+		assertEquals(1, singleMessage.size());
+		assertMessageEquals((ConsensusMessage) messages.get(0), (ConsensusMessage) singleMessage.get(0));
+
+		// 篡改帧中的任一消息都导致整帧认证失败；
+		frameBytes[frameBytes.length / 2] ^= 0x01;
+		try {
+			messageCodec1.decodeAll(frameBytes);
+			fail("The tampered frame must not be authenticated!");
+		} catch (MessageAuthenticationException e) {
+		}
+	}
+
+	@Test
+	public void testEncodeShared() throws MessageAuthenticationException, IllegalMessageException {
+		final int[] viewProcessIds = { 0, 1, 2, 3 };
+		ReplicaConfiguration conf0 = generateConfig(0, viewProcessIds);
+		MacKeyGenerator macKeyGen0 = new MacKeyGenerator(conf0.getRSAPublicKey(0), conf0.getRSAPrivateKey(),
+				conf0.getDHG(), conf0.getDHP());
+		ReplicaConfiguration conf1 = generateConfig(1, viewProcessIds);
+		MacKeyGenerator macKeyGen1 = new MacKeyGenerator(conf0.getRSAPublicKey(0), conf1.getRSAPrivateKey(),
+				conf1.getDHG(), conf1.getDHP());
+
+		SystemMessageCodec messageCodec0 = new SystemMessageCodec(true,
+				macKeyGen0.exchange(macKeyGen1.getDHPubKeyCertificate()));
+		SystemMessageCodec messageCodec1 = new SystemMessageCodec(true,
+				macKeyGen1.exchange(macKeyGen0.getDHPubKeyCertificate()));
+
+		ConsensusMessage message = createTestMessage(0);
+		EncodedMessage encoded = SystemMessageCodec.encodeBody(message);
+		assertSame(message, encoded.getMessage());
+
+		// 预先编码的消息与直接编码的输出相同；
+		byte[] encodedBytes = messageCodec0.encode(encoded);
+		assertArrayEquals(messageCodec0.encode(message), encodedBytes);
+		assertMessageEquals(message, (ConsensusMessage) messageCodec1.decode(encodedBytes));
+
+		// 长度头 + 共享的消息内容 + MAC 部分，与完整的编码输出相同；
+		byte[] body = encoded.getBody();
+		byte[] trailer = messageCodec0.encodeMac(encoded);
+		byte[] joinedBytes = new byte[4 + body.length + trailer.length];
+		BytesUtils.toBytes(body.length, joinedBytes, 0);
+		System.arraycopy(body, 0, joinedBytes, 4, body.length);
+		System.arraycopy(trailer, 0, joinedBytes, 4 + body.length, trailer.length);
+		assertArrayEquals(encodedBytes, joinedBytes);
+
+		// 帧中可以混合预先编码的消息与未预先编码的消息；
+		List<SystemMessage> messages = new ArrayList<>();
+		List<EncodedMessage> encodedMessages = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			ConsensusMessage write = new MessageFactory(0).createWrite(i, 0, RandomUtils.generateRandomBytes(32));
+			messages.add(write);
+			encodedMessages.add(i % 2 == 0 ? SystemMessageCodec.encodeBody(write) : null);
+		}
+		byte[] frameBytes = messageCodec0.encode(messages, encodedMessages);
+		assertArrayEquals(messageCodec0.encode(messages), frameBytes);
+		List<SystemMessage> decodedMessages = messageCodec1.decodeAll(frameBytes);
+		assertEquals(messages.size(), decodedMessages.size());
+		for (int i = 0; i < messages.size(); i++) {
+			assertMessageEquals((ConsensusMessage) messages.get(i), (ConsensusMessage) decodedMessages.get(i));
+		}
+
+		// 不使用 MAC 时，MAC 部分只有长度头；
+		assertArrayEquals(new byte[1], new SystemMessageCodec().encodeMac(encoded));
+	}
+
+	@Test
+	public void testBinaryFormat() throws MessageAuthenticationException, IllegalMessageException {
+		SystemMessageCodec messageCodec = new SystemMessageCodec();
+
+		// 带 MAC 向量证明的 ACCEPT 消息；
+		ConsensusMessage accept = new MessageFactory(2).createAccept(5, 1, RandomUtils.generateRandomBytes(32));
+		MacVector macVector = new MacVector(new int[] { 0, 1 },
+				new byte[][] { RandomUtils.generateRandomBytes(32), RandomUtils.generateRandomBytes(32) });
+		accept.setProof(macVector);
+
+		byte[] encodedBytes = messageCodec.encode(accept);
+		ConsensusMessage decodedAccept = (ConsensusMessage) messageCodec.decode(encodedBytes);
+		assertMessageEquals(accept, decodedAccept);
+		assertEquals(accept.getType(), decodedAccept.getType());
+		MacVector decodedMacVector = (MacVector) decodedAccept.getProof();
+		assertEquals(2, decodedMacVector.size());
+		assertArrayEquals(macVector.get(0), decodedMacVector.get(0));
+		assertArrayEquals(macVector.get(1), decodedMacVector.get(1));
+		// MAC 向量不经过 Java 序列化：只比消息本身多出数量与每项的 id、长度；
+		ConsensusMessage acceptWithoutProof = new MessageFactory(2).createAccept(5, 1, accept.getValue());
+		assertEquals(messageCodec.encode(acceptWithoutProof).length + 4 + 2 * (8 + 32), encodedBytes.length);
+
+		// 二进制格式比 Java 序列化紧凑；
+		ConsensusMessage propose = createTestMessage(0);
+		byte[] serializedBytes = BinarySerializeUtils.serialize(propose);
+		assertTrue(messageCodec.encode(propose).length < serializedBytes.length);
+
+		HeartBeatMessage heartBeat = new HeartBeatMessage(1, 0, 3);
+		HeartBeatMessage decodedHeartBeat = (HeartBeatMessage) messageCodec.decode(messageCodec.encode(heartBeat));
+		assertEquals(1, decodedHeartBeat.getSender());
+		assertEquals(0, decodedHeartBeat.getLeader());
+		assertEquals(3, decodedHeartBeat.getLastRegency());
+
+		// 兼容 Java 序列化格式的消息；
+		byte[] legacyBytes = new byte[4 + serializedBytes.length + 1];
+		BytesUtils.toBytes_BigEndian(serializedBytes.length, legacyBytes, 0);
+		System.arraycopy(serializedBytes, 0, legacyBytes, 4, serializedBytes.length);
+		assertMessageEquals(propose, (ConsensusMessage) messageCodec.decode(legacyBytes));
+	}
+
 	private void assertMessageEquals(ConsensusMessage expecedMessage, ConsensusMessage actualMessage) {
 		assertEquals(expecedMessage.getNumber(), actualMessage.getNumber());
 		assertEquals(expecedMessage.getEpoch(), actualMessage.getEpoch());
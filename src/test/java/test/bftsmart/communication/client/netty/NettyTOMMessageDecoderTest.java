@@ -0,0 +1,164 @@
+package test.bftsmart.communication.client.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import bftsmart.communication.client.netty.ClientSessionKeyService;
+import bftsmart.communication.client.netty.NettyClientServerSession;
+import bftsmart.communication.client.netty.NettyTOMMessageDecoder;
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import utils.io.BytesUtils;
+
+public class NettyTOMMessageDecoderTest {
+
+	private static final String HMAC = "HmacSHA256";
+
+	private static final int REPLICA_ID = 0;
+
+	private static final int CLIENT_ID = 1001;
+
+	private ClientSessionKeyService keyService;
+
+	private Map<Integer, NettyClientServerSession> sessionTable;
+
+	private EmbeddedChannel channel;
+
+	private Mac clientMac;
+
+	@Before
+	public void setUp() throws Exception {
+		ReplicaConfiguration conf = Mockito.mock(ReplicaConfiguration.class);
+		when(conf.getProcessId()).thenReturn(REPLICA_ID);
+		when(conf.getHmacAlgorithm()).thenReturn(HMAC);
+		ViewTopology controller = Mockito.mock(ViewTopology.class);
+		when(controller.getStaticConf()).thenReturn(conf);
+
+		keyService = new ClientSessionKeyService(REPLICA_ID, HMAC, 1);
+		sessionTable = new ConcurrentHashMap<>();
+		clientMac = Mac.getInstance(HMAC);
+		clientMac.init(clientKey(CLIENT_ID));
+
+		NettyTOMMessageDecoder decoder = new NettyTOMMessageDecoder(false, sessionTable, clientMac.getMacLength(),
+				controller, new ReentrantReadWriteLock(), 0, true, keyService);
+		channel = new EmbeddedChannel(decoder);
+	}
+
+	@After
+	public void tearDown() {
+		channel.finishAndReleaseAll();
+		keyService.shutdown();
+	}
+
+	/**
+	 * 第一个消息触发的会话创建不在 IO 线程上执行，期间到达的消息按顺序暂存，会话创建后依次传递；
+	 */
+	@Test
+	public void testSessionCreatedOffEventLoop() throws Exception {
+		ByteBuf frames = Unpooled.buffer();
+		frames.writeBytes(frame(request(0), false));
+		frames.writeBytes(frame(request(1), false));
+		// 只有一部分到达的帧；
+		byte[] third = frame(request(2), false);
+		frames.writeBytes(third, 0, 10);
+		channel.writeInbound(frames);
+
+		TOMMessage first = awaitInbound();
+		assertRequest(0, first);
+		assertRequest(1, channel.readInbound());
+		assertNotNull(sessionTable.get(CLIENT_ID));
+		assertSame(channel, sessionTable.get(CLIENT_ID).getChannel());
+
+		// 会话已存在，同步解码；
+		channel.writeInbound(Unpooled.wrappedBuffer(third, 10, third.length - 10));
+		assertRequest(2, channel.readInbound());
+
+		// MAC 错误的消息被丢弃；
+		channel.writeInbound(Unpooled.wrappedBuffer(frame(request(3), true)));
+		channel.writeInbound(Unpooled.wrappedBuffer(frame(request(4), false)));
+		assertRequest(4, channel.readInbound());
+		assertNull(channel.readInbound());
+	}
+
+	@Test
+	public void testKeysAreCached() throws Exception {
+		SecretKey key = keyService.getKey(CLIENT_ID).get(5, TimeUnit.SECONDS);
+		assertSame(key, keyService.getKey(CLIENT_ID).get());
+		assertArrayEquals(clientKey(CLIENT_ID).getEncoded(), key.getEncoded());
+	}
+
+	private TOMMessage awaitInbound() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		TOMMessage message;
+		while ((message = channel.readInbound()) == null && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			channel.runPendingTasks();
+		}
+		assertNotNull(message);
+		return message;
+	}
+
+	private static void assertRequest(int sequence, TOMMessage message) {
+		assertNotNull(message);
+		assertEquals(CLIENT_ID, message.getSender());
+		assertEquals(sequence, message.getSequence());
+		assertEquals(TOMMessageType.ORDERED_REQUEST, message.getReqType());
+		assertArrayEquals(BytesUtils.toBytes("request-" + sequence), message.getContent());
+		assertArrayEquals(message.serializedMessage, message.getSerializedMessage());
+	}
+
+	private static TOMMessage request(int sequence) {
+		return new TOMMessage(CLIENT_ID, 0, sequence, sequence, BytesUtils.toBytes("request-" + sequence), null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+	}
+
+	private byte[] frame(TOMMessage request, boolean corruptMac) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		request.wExternal(new DataOutputStream(out));
+		byte[] data = out.toByteArray();
+		byte[] mac = clientMac.doFinal(data);
+		if (corruptMac) {
+			mac[0] ^= 1;
+		}
+
+		ByteBuf frame = Unpooled.buffer();
+		frame.writeInt(1 + data.length + mac.length);
+		frame.writeByte(0);
+		frame.writeBytes(data);
+		frame.writeBytes(mac);
+		byte[] bytes = new byte[frame.readableBytes()];
+		frame.readBytes(bytes);
+		return bytes;
+	}
+
+	private static SecretKey clientKey(int clientId) throws Exception {
+		SecretKeyFactory fac = SecretKeyFactory.getInstance("PBEWithMD5AndDES");
+		return fac.generateSecret(new PBEKeySpec((clientId + ":" + REPLICA_ID).toCharArray()));
+	}
+}
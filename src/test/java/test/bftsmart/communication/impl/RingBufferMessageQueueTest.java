@@ -0,0 +1,128 @@
+package test.bftsmart.communication.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.communication.MessageQueue;
+import bftsmart.communication.MessageQueue.SystemMessageType;
+import bftsmart.communication.SystemMessage;
+import bftsmart.communication.impl.MessageQueueFactory;
+import bftsmart.communication.impl.RingBufferMessageQueue;
+import bftsmart.communication.impl.RingBufferMessageQueue.WaitStrategy;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.leaderchange.HeartBeatMessage;
+import bftsmart.tom.util.Tracer;
+
+public class RingBufferMessageQueueTest {
+
+	@Test
+	public void testBoundedRing() throws InterruptedException {
+		RingBufferMessageQueue queue = new RingBufferMessageQueue(3, WaitStrategy.PARK, Tracer.create(1));
+		assertEquals(4, queue.getCapacity(SystemMessageType.HEART));
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(SystemMessageType.HEART, new HeartBeatMessage(i, 0, 0)));
+		}
+		assertFalse(queue.offer(SystemMessageType.HEART, new HeartBeatMessage(4, 0, 0)));
+		assertEquals(1, queue.getRejectedCount(SystemMessageType.HEART));
+		assertEquals(4, queue.size(SystemMessageType.HEART));
+		assertEquals(4, queue.getMaxOccupancy(SystemMessageType.HEART));
+		// the queues of different types are independent;
+		assertEquals(0, queue.size(SystemMessageType.CONSENSUS));
+		assertNull(queue.poll(SystemMessageType.CONSENSUS, 10, TimeUnit.MILLISECONDS));
+
+		assertEquals(0, queue.take(SystemMessageType.HEART).getSender());
+		List<SystemMessage> messages = new ArrayList<>();
+		assertEquals(2, queue.drainTo(SystemMessageType.HEART, messages, 2));
+		assertEquals(1, messages.get(0).getSender());
+		assertEquals(2, messages.get(1).getSender());
+		assertEquals(3, queue.poll(SystemMessageType.HEART, 0, TimeUnit.MILLISECONDS).getSender());
+		assertEquals(0, queue.size(SystemMessageType.HEART));
+		assertEquals(4, queue.getConsumedCount(SystemMessageType.HEART));
+		assertEquals(4, queue.getTracer().histogram("queue.heart.latency").getCount());
+
+		// the slots are reused after wrapping around;
+		for (int i = 0; i < 10; i++) {
+			HeartBeatMessage message = new HeartBeatMessage(i, 0, 0);
+			queue.put(SystemMessageType.HEART, message);
+			assertSame(message, queue.poll(SystemMessageType.HEART, 0, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testMultipleProducers() throws InterruptedException {
+		for (WaitStrategy strategy : WaitStrategy.values()) {
+			RingBufferMessageQueue queue = new RingBufferMessageQueue(64, strategy);
+			int producers = 4;
+			// the spinning consumer competes with the producers for the processors;
+			int count = strategy == WaitStrategy.SPIN ? 1000 : 20000;
+			CountDownLatch start = new CountDownLatch(1);
+			for (int p = 0; p < producers; p++) {
+				int sender = p;
+				Thread producer = new Thread(() -> {
+					try {
+						start.await();
+						for (int i = 0; i < count; i++) {
+							queue.put(SystemMessageType.CONSENSUS, new HeartBeatMessage(sender, i, 0));
+						}
+					} catch (InterruptedException e) {
+					}
+				});
+				producer.setDaemon(true);
+				producer.start();
+			}
+			start.countDown();
+
+			// the messages of each producer are received in order;
+			int[] next = new int[producers];
+			for (int i = 0; i < producers * count; i++) {
+				HeartBeatMessage message = (HeartBeatMessage) queue.poll(SystemMessageType.CONSENSUS, 10,
+						TimeUnit.SECONDS);
+				assertEquals(next[message.getSender()]++, message.getLeader());
+			}
+			assertNull(queue.poll(SystemMessageType.CONSENSUS, 1, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	@Test
+	public void testFactory() {
+		MessageQueue queue = MessageQueueFactory.newMessageQueue(MessageQueue.QueueDirection.IN, 100, "ring", "yield",
+				Tracer.DISABLED);
+		assertTrue(queue instanceof RingBufferMessageQueue);
+		assertEquals(WaitStrategy.YIELD, ((RingBufferMessageQueue) queue).getWaitStrategy());
+		assertFalse(MessageQueueFactory.newMessageQueue(MessageQueue.QueueDirection.IN, 100, null, null,
+				Tracer.DISABLED) instanceof RingBufferMessageQueue);
+		assertEquals(WaitStrategy.PARK, WaitStrategy.parse("unknown"));
+
+		// the queue records into the tracer of the replica;
+		ReplicaConfiguration conf = mock(ReplicaConfiguration.class);
+		when(conf.getInQueueSize()).thenReturn(100);
+		when(conf.getInQueueType()).thenReturn("ring");
+		Tracer tracer = Tracer.create(1);
+		queue = MessageQueueFactory.newMessageQueue(MessageQueue.QueueDirection.IN, conf, tracer);
+		assertSame(tracer, ((RingBufferMessageQueue) queue).getTracer());
+	}
+
+	@Test
+	public void testControlRingsAreCapped() {
+		RingBufferMessageQueue queue = new RingBufferMessageQueue(500000, WaitStrategy.PARK);
+		assertEquals(1 << 19, queue.getCapacity(SystemMessageType.CONSENSUS));
+		assertEquals(RingBufferMessageQueue.CONTROL_CAPACITY, queue.getCapacity(SystemMessageType.HEART));
+		assertEquals(RingBufferMessageQueue.CONTROL_CAPACITY, queue.getCapacity(SystemMessageType.LC));
+
+		queue = new RingBufferMessageQueue(16, WaitStrategy.PARK);
+		assertEquals(16, queue.getCapacity(SystemMessageType.HEART));
+	}
+}
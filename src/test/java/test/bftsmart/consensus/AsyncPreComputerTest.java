@@ -0,0 +1,145 @@
+package test.bftsmart.consensus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bftsmart.consensus.Consensus;
+import bftsmart.consensus.Decision;
+import bftsmart.consensus.Epoch;
+import bftsmart.consensus.app.BatchAppResult;
+import bftsmart.consensus.app.BatchAppResultImpl;
+import bftsmart.consensus.app.PreComputeBatchExecutable;
+import bftsmart.consensus.roles.AsyncPreComputer;
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+
+public class AsyncPreComputerTest {
+
+	/**
+	 * 保存提交的任务，由测试逐个执行；
+	 */
+	private final List<Runnable> tasks = new ArrayList<>();
+
+	private final Executor blockingExecutor = tasks::add;
+
+	private final List<String> completions = new ArrayList<>();
+
+	private ViewTopology topology;
+
+	private PreComputeBatchExecutable executable;
+
+	private Consensus consensus;
+
+	@Before
+	public void setUp() {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		topology = mock(ViewTopology.class);
+		when(topology.getStaticConf()).thenReturn(config);
+		when(topology.getCurrentViewN()).thenReturn(4);
+
+		executable = mock(PreComputeBatchExecutable.class, CALLS_REAL_METHODS);
+		doReturn(new BatchAppResultImpl(null, null, "batch", null)).when(executable).preComputeHash(anyInt(),
+				any(), anyLong());
+
+		consensus = new Consensus(null, new Decision(1));
+	}
+
+	@Test
+	public void testRejectedSubmitResetsPreComputing() {
+		Epoch epoch = consensus.getEpoch(0, topology);
+		AsyncPreComputer preComputer = new AsyncPreComputer(r -> {
+			throw new RejectedExecutionException("shutdown");
+		});
+
+		assertFalse(preComputer.submit(epoch, executable, 1, new byte[0][], callback("first")));
+		assertFalse(epoch.preComputing);
+		assertTrue(completions.isEmpty());
+	}
+
+	@Test
+	public void testCompletion() {
+		Epoch epoch = consensus.getEpoch(0, topology);
+		AsyncPreComputer preComputer = new AsyncPreComputer(blockingExecutor);
+
+		assertTrue(preComputer.submit(epoch, executable, 1, new byte[0][], callback("first")));
+		assertTrue(epoch.preComputing);
+		runTasks();
+		assertFalse(epoch.preComputing);
+		assertEquals("[first:preComputed]", completions.toString());
+	}
+
+	@Test
+	public void testCancelledPreComputeIsRolledBack() {
+		Epoch epoch = consensus.getEpoch(0, topology);
+		AsyncPreComputer preComputer = new AsyncPreComputer(blockingExecutor);
+
+		preComputer.submit(epoch, executable, 1, new byte[0][], callback("first"));
+		consensus.lock.lock();
+		try {
+			AsyncPreComputer.cancel(consensus);
+		} finally {
+			consensus.lock.unlock();
+		}
+		assertFalse(epoch.preComputing);
+
+		// 回滚之后重新发起的预计算不受之前的预计算完成的影响；
+		preComputer.submit(epoch, executable, 1, new byte[0][], callback("second"));
+		runTasks();
+		assertFalse(epoch.preComputing);
+		assertEquals("[first:rollback, second:preComputed]", completions.toString());
+	}
+
+	@Test
+	public void testPreComputeOfOldEpochIsRolledBack() {
+		Epoch epoch = consensus.getEpoch(0, topology);
+		AsyncPreComputer preComputer = new AsyncPreComputer(blockingExecutor);
+
+		preComputer.submit(epoch, executable, 1, new byte[0][], callback("first"));
+		// 领导者变更后进入新的时间戳；
+		consensus.getEpoch(1, topology);
+		consensus.incEts();
+		runTasks();
+		assertEquals("[first:rollback]", completions.toString());
+	}
+
+	private void runTasks() {
+		List<Runnable> running = new ArrayList<>(tasks);
+		tasks.clear();
+		for (Runnable task : running) {
+			task.run();
+		}
+	}
+
+	private AsyncPreComputer.Callback callback(String name) {
+		return new AsyncPreComputer.Callback() {
+
+			@Override
+			public void preComputed(BatchAppResult result) {
+				assertTrue(consensus.lock.isHeldByCurrentThread());
+				completions.add(name + ":preComputed");
+			}
+
+			@Override
+			public void rollback(BatchAppResult result) {
+				assertTrue(consensus.lock.isHeldByCurrentThread());
+				completions.add(name + ":rollback");
+			}
+		};
+	}
+}
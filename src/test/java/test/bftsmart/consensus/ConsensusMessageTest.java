@@ -0,0 +1,68 @@
+package test.bftsmart.consensus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MacVector;
+import bftsmart.consensus.messages.MessageFactory;
+import utils.serialize.binary.BinarySerializeUtils;
+
+public class ConsensusMessageTest {
+
+	@Test
+	public void testCanonicalBytes() {
+		byte[] value = { 1, 2, 3 };
+		byte[] origPropValue = { 4, 5 };
+		ConsensusMessage accept = new ConsensusMessage(MessageFactory.ACCEPT, 7, 1, 2, value);
+		accept.setOrigPropValue(origPropValue);
+
+		ByteBuffer expected = ByteBuffer.allocate(24 + value.length + origPropValue.length);
+		expected.putInt(MessageFactory.ACCEPT).putInt(7).putInt(1).putInt(2);
+		expected.putInt(value.length).put(value);
+		expected.putInt(origPropValue.length).put(origPropValue);
+		byte[] canonicalBytes = accept.getCanonicalBytes();
+		assertArrayEquals(expected.array(), canonicalBytes);
+		assertSame(canonicalBytes, accept.getCanonicalBytes());
+
+		// 证明不在编码范围内，接收方还原的消息得到相同的编码；
+		accept.setProof(new MacVector(new int[] { 0 }, new byte[][] { { 9 } }));
+		ConsensusMessage received = BinarySerializeUtils.deserialize(BinarySerializeUtils.serialize(accept));
+		assertArrayEquals(canonicalBytes, received.getCanonicalBytes());
+
+		// 修改原提议的哈希后重新编码；
+		accept.setOrigPropValue(null);
+		byte[] withoutOrig = accept.getCanonicalBytes();
+		assertEquals(24 + value.length, withoutOrig.length);
+		assertFalse(Arrays.equals(canonicalBytes, withoutOrig));
+	}
+
+	@Test
+	public void testProofSerialization() {
+		ConsensusMessage accept = new ConsensusMessage(MessageFactory.ACCEPT, 7, 1, 2, new byte[] { 1 });
+		ConsensusMessage received = BinarySerializeUtils.deserialize(BinarySerializeUtils.serialize(accept));
+		assertNull(received.getProof());
+
+		byte[] signature = { 1, 2, 3, 4 };
+		accept.setProof(signature);
+		received = BinarySerializeUtils.deserialize(BinarySerializeUtils.serialize(accept));
+		assertArrayEquals(signature, (byte[]) received.getProof());
+
+		accept.setProof(new MacVector(new int[] { 0, 3 }, new byte[][] { { 1, 1 }, { 3, 3, 3 } }));
+		received = BinarySerializeUtils.deserialize(BinarySerializeUtils.serialize(accept));
+		MacVector macVector = (MacVector) received.getProof();
+		assertEquals(2, macVector.size());
+		assertEquals(3, macVector.getId(1));
+		assertArrayEquals(new byte[] { 1, 1 }, macVector.get(0));
+		assertArrayEquals(new byte[] { 3, 3, 3 }, macVector.get(3));
+		assertNull(macVector.get(1));
+	}
+}
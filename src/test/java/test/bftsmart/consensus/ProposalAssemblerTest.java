@@ -0,0 +1,191 @@
+package test.bftsmart.consensus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.communication.SystemMessage;
+import bftsmart.consensus.app.SHA256Utils;
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.ProposalChunkMessage;
+import bftsmart.consensus.roles.ProposalAssembler;
+import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.tom.core.ExecutionManager;
+import bftsmart.tom.core.TOMLayer;
+import bftsmart.tom.util.ReedSolomon;
+
+public class ProposalAssemblerTest {
+
+	private static final SHA256Utils HASHER = new SHA256Utils();
+
+	// n = 4, f = 1，领导者 0 把提议编码为 3 个分片发给跟随者，任意 n-2f = 2 个分片可以还原提议；
+	private static final int LEADER = 0;
+
+	private static final int DATA_SHARDS = 2;
+
+	private static final int TOTAL_SHARDS = 3;
+
+	private final List<ConsensusMessage> delivered = new ArrayList<>();
+
+	private ServerCommunicationSystem communication;
+
+	private TOMLayer tomLayer;
+
+	private ExecutionManager execManager;
+
+	private ProposalAssembler assembler;
+
+	@Before
+	public void setUp() {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		when(config.getProcessId()).thenReturn(1);
+		when(config.getPaxosHighMark()).thenReturn(100);
+		ReplicaTopology topology = mock(ReplicaTopology.class);
+		when(topology.getStaticConf()).thenReturn(config);
+		when(topology.getCurrentViewOtherAcceptors()).thenReturn(new int[] { 0, 2, 3 });
+		when(topology.getCurrentViewProcesses()).thenReturn(new int[] { 0, 1, 2, 3 });
+
+		communication = mock(ServerCommunicationSystem.class);
+		execManager = new ExecutionManager(topology, null, null, 1);
+		execManager.setNewLeader(LEADER);
+		tomLayer = mock(TOMLayer.class);
+		tomLayer.execManager = execManager;
+		when(tomLayer.getLastExec()).thenReturn(0);
+
+		assembler = new ProposalAssembler(communication, topology, tomLayer, delivered::add);
+	}
+
+	@Test
+	public void testRelayBeforeLeaderChunk() {
+		byte[] value = value(1);
+		Encoded encoded = new Encoded(value);
+
+		// 转发分片先于领导者的分片到达，暂存至领导者的分片到达后再校验；
+		assembler.chunkReceived(encoded.relay(2, 5, 1));
+		assertTrue(delivered.isEmpty());
+
+		assembler.chunkReceived(encoded.fromLeader(5, 0));
+		assertEquals(1, delivered.size());
+		assertEquals(5, delivered.get(0).getNumber());
+		assertEquals(LEADER, delivered.get(0).getSender());
+		assertArrayEquals(value, delivered.get(0).getValue());
+		verify(communication).send(any(int[].class), any(SystemMessage.class));
+
+		// 还原之后收到的分片不再处理；
+		assembler.chunkReceived(encoded.relay(3, 5, 2));
+		assertEquals(1, delivered.size());
+	}
+
+	@Test
+	public void testChunkNotMatchingItsHash() {
+		Encoded encoded = new Encoded(value(2));
+
+		assembler.chunkReceived(encoded.fromLeader(5, 0));
+		ProposalChunkMessage forged = encoded.relay(2, 5, 1);
+		forged.getChunk()[0] ^= 1;
+		assembler.chunkReceived(forged);
+		assertTrue(delivered.isEmpty());
+
+		assembler.chunkReceived(encoded.relay(3, 5, 2));
+		assertEquals(1, delivered.size());
+		assertArrayEquals(encoded.value, delivered.get(0).getValue());
+	}
+
+	@Test
+	public void testLeaderChunkNotMatchingItsHashIsNotRelayed() {
+		Encoded encoded = new Encoded(value(3));
+
+		ProposalChunkMessage forged = encoded.fromLeader(5, 0);
+		forged.getChunk()[0] ^= 1;
+		assembler.chunkReceived(forged);
+		verify(communication, never()).send(any(int[].class), any(SystemMessage.class));
+	}
+
+	/**
+	 * 任一节点转发大量超出执行窗口或者领导者尚未发出的分片，都不会阻止之后的提议的还原；
+	 */
+	@Test
+	public void testRelayFloodDoesNotBlockProposes() {
+		Encoded flood = new Encoded(value(4));
+		for (int i = 0; i < 1000; i++) {
+			assembler.chunkReceived(flood.relay(3, Integer.MAX_VALUE - i, 1));
+			assembler.chunkReceived(flood.relay(3, 1 + i % 99, 1));
+		}
+
+		for (int cid = 1; cid <= 3; cid++) {
+			Encoded encoded = new Encoded(value(10 + cid));
+			assembler.chunkReceived(encoded.fromLeader(cid, 0));
+			assembler.chunkReceived(encoded.relay(2, cid, 2));
+			assertEquals(cid, delivered.size());
+			assertArrayEquals(encoded.value, delivered.get(cid - 1).getValue());
+		}
+
+		// 原领导者尚未还原的提议在领导者变更后被丢弃，不占用还原的数量；
+		Encoded stale = new Encoded(value(20));
+		for (int cid = 10; cid < 90; cid++) {
+			assembler.chunkReceived(stale.fromLeader(cid, 0));
+		}
+		execManager.setNewLeader(2);
+		Encoded encoded = new Encoded(value(21));
+		assembler.chunkReceived(encoded.fromProposer(2, 95, 0));
+		assembler.chunkReceived(encoded.relay(3, 95, 2));
+		assertEquals(4, delivered.size());
+		assertArrayEquals(encoded.value, delivered.get(3).getValue());
+	}
+
+	private static byte[] value(int seed) {
+		byte[] value = new byte[1000 + seed];
+		for (int i = 0; i < value.length; i++) {
+			value[i] = (byte) (i * seed);
+		}
+		return value;
+	}
+
+	private static class Encoded {
+
+		private final byte[] value;
+
+		private final byte[][] chunks;
+
+		private final byte[][] chunkHashes;
+
+		private final byte[] valueHash;
+
+		Encoded(byte[] value) {
+			this.value = value;
+			this.chunks = new ReedSolomon(DATA_SHARDS, TOTAL_SHARDS).encode(value);
+			this.chunkHashes = new byte[chunks.length][];
+			for (int i = 0; i < chunks.length; i++) {
+				chunkHashes[i] = HASHER.hash(chunks[i]);
+			}
+			this.valueHash = HASHER.hash(value);
+		}
+
+		ProposalChunkMessage fromLeader(int cid, int index) {
+			return fromProposer(LEADER, cid, index);
+		}
+
+		ProposalChunkMessage fromProposer(int proposer, int cid, int index) {
+			return new ProposalChunkMessage(proposer, cid, 0, proposer, index, DATA_SHARDS, value.length,
+					chunks[index].clone(), valueHash, chunkHashes);
+		}
+
+		ProposalChunkMessage relay(int sender, int cid, int index) {
+			return new ProposalChunkMessage(sender, cid, 0, LEADER, index, DATA_SHARDS, value.length,
+					chunks[index].clone(), null, null);
+		}
+	}
+}
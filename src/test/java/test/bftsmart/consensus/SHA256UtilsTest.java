@@ -0,0 +1,74 @@
+package test.bftsmart.consensus;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.junit.Test;
+
+import bftsmart.consensus.app.SHA256Utils;
+
+public class SHA256UtilsTest {
+
+	@Test
+	public void testStreamingHash() {
+		byte[] data = new byte[10000];
+		new Random(1).nextBytes(data);
+
+		SHA256Utils md = new SHA256Utils();
+		byte[] expected = digest(data);
+
+		assertArrayEquals(expected, md.hash(data));
+		assertArrayEquals(expected, md.hash(ByteBuffer.wrap(data)));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		assertArrayEquals(expected, md.hash(direct));
+
+		SHA256Utils.Hasher hasher = SHA256Utils.newHasher();
+		hasher.update(data, 0, 100).update(ByteBuffer.wrap(data, 100, 5000)).update(data, 5100, data.length - 5100);
+		assertArrayEquals(expected, hasher.digest());
+
+		// the hasher is reset after digest;
+		assertArrayEquals(expected, hasher.update(data).digest());
+	}
+
+	@Test
+	public void testConcurrentHash() throws Exception {
+		SHA256Utils md = new SHA256Utils();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] results = new Future<?>[8];
+			for (int i = 0; i < results.length; i++) {
+				final int seed = i;
+				results[i] = executor.submit(() -> {
+					Random rnd = new Random(seed);
+					for (int j = 0; j < 200; j++) {
+						byte[] data = new byte[rnd.nextInt(2000) + 1];
+						rnd.nextBytes(data);
+						assertArrayEquals(digest(data), md.hash(data));
+					}
+				});
+			}
+			for (Future<?> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static byte[] digest(byte[] data) {
+		SHA256Digest digest = new SHA256Digest();
+		digest.update(data, 0, data.length);
+		byte[] result = new byte[digest.getDigestSize()];
+		digest.doFinal(result, 0);
+		return result;
+	}
+}
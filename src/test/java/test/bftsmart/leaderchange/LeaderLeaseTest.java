@@ -0,0 +1,77 @@
+package test.bftsmart.leaderchange;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.tom.leaderchange.LeaderLease;
+
+public class LeaderLeaseTest {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testLeaseRenewedByQuorum() {
+		LeaderLease lease = new LeaderLease(1000);
+		long sentTime = 10_000 * MILLIS;
+		long seq = lease.beginRound(3, sentTime);
+
+		// 4 个节点的法定数量为 3，包含领导者自身；
+		assertFalse(lease.ack(1, 3, seq, 3));
+		assertFalse(lease.isValid(3, sentTime + MILLIS));
+		// 重复的确认不计数；
+		assertFalse(lease.ack(1, 3, seq, 3));
+		assertFalse(lease.isValid(3, sentTime + MILLIS));
+
+		assertTrue(lease.ack(2, 3, seq, 3));
+		assertTrue(lease.isValid(3, sentTime + MILLIS));
+		assertFalse(lease.isValid(4, sentTime + MILLIS));
+
+		// 领导者扣除时钟偏差，租约早于跟随者的承诺过期；
+		assertTrue(lease.isValid(3, sentTime + 800 * MILLIS));
+		assertFalse(lease.isValid(3, sentTime + 900 * MILLIS));
+
+		// 后一轮心跳续约；
+		long seq2 = lease.beginRound(3, sentTime + 500 * MILLIS);
+		lease.ack(1, 3, seq2, 3);
+		lease.ack(2, 3, seq2, 3);
+		assertTrue(lease.isValid(3, sentTime + 1000 * MILLIS));
+
+		lease.revoke();
+		assertFalse(lease.isValid(3, sentTime + 600 * MILLIS));
+	}
+
+	@Test
+	public void testStaleAcks() {
+		LeaderLease lease = new LeaderLease(1000);
+		long seq = lease.beginRound(3, 0);
+		// 执政期不一致的确认；
+		assertFalse(lease.ack(1, 2, seq, 2));
+		// 未发送的心跳的确认；
+		assertFalse(lease.ack(1, 3, seq + 1, 2));
+		// 被后续轮次覆盖的心跳的确认；
+		for (int i = 0; i < 4; i++) {
+			lease.beginRound(3, 0);
+		}
+		assertFalse(lease.ack(1, 3, seq, 2));
+		assertFalse(lease.isValid(3, MILLIS));
+	}
+
+	@Test
+	public void testPromise() {
+		LeaderLease lease = new LeaderLease(1000);
+		assertFalse(lease.isPromised(0));
+		lease.promise(100 * MILLIS);
+		assertTrue(lease.isPromised(1099 * MILLIS));
+		assertFalse(lease.isPromised(1100 * MILLIS));
+
+		LeaderLease disabled = new LeaderLease(0);
+		assertFalse(disabled.isEnabled());
+		long seq = disabled.beginRound(0, 0);
+		assertFalse(disabled.ack(1, 0, seq, 1));
+		assertFalse(disabled.isValid(0, 0));
+	}
+}
@@ -0,0 +1,305 @@
+package test.bftsmart.tom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.communication.MessageHandler;
+import bftsmart.communication.ServerCommunicationSystem;
+import bftsmart.communication.SystemMessage;
+import bftsmart.communication.client.ClientCommunicationServerSide;
+import bftsmart.consensus.app.BatchAppResultImpl;
+import bftsmart.reconfiguration.util.HostsConfig;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.statemanagement.SMMessage;
+import bftsmart.statemanagement.strategy.StandardSMMessage;
+import bftsmart.tom.CoalescingServiceProxy;
+import bftsmart.tom.MessageContext;
+import bftsmart.tom.ServiceReplica;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.leaderchange.CertifiedDecision;
+import bftsmart.tom.server.Replier;
+import bftsmart.tom.server.defaultservices.DefaultRecoverable;
+import bftsmart.tom.util.LengthPrefixedFraming;
+import bftsmart.tom.util.TOMUtil;
+import utils.io.FileUtils;
+
+public class CoalescingServiceProxyTest {
+
+	@Test
+	public void testFraming() {
+		List<byte[]> operations = Arrays.asList(new byte[] { 1, 2, 3 }, new byte[0], null, new byte[] { 4 });
+		byte[] bytes = LengthPrefixedFraming.INSTANCE.pack(operations);
+		assertEquals(4 + 4 * 4 + 4, bytes.length);
+
+		List<byte[]> unpacked = LengthPrefixedFraming.INSTANCE.unpack(bytes);
+		assertEquals(operations.size(), unpacked.size());
+		assertArrayEquals(operations.get(0), unpacked.get(0));
+		assertArrayEquals(operations.get(1), unpacked.get(1));
+		assertNull(unpacked.get(2));
+		assertArrayEquals(operations.get(3), unpacked.get(3));
+
+		try {
+			LengthPrefixedFraming.INSTANCE.unpack(Arrays.copyOf(bytes, bytes.length - 1));
+			fail("The truncated frame must be rejected!");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		List<Integer> requestSizes = new ArrayList<>();
+		IncrementRecoverable executable = new IncrementRecoverable();
+		try (CoalescingServiceProxy proxy = new CoalescingServiceProxy(request -> {
+			synchronized (requestSizes) {
+				requestSizes.add(LengthPrefixedFraming.INSTANCE.unpack(request).size());
+			}
+			return CompletableFuture.completedFuture(executable.executeUnordered(request, null));
+		}, LengthPrefixedFraming.INSTANCE, 4, 1024, TimeUnit.SECONDS.toMicros(10))) {
+
+			// the batch is sent as soon as it reaches the max operations;
+			List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(proxy.invokeOrdered(new byte[] { (byte) i }));
+			}
+			for (int i = 0; i < 8; i++) {
+				assertArrayEquals(new byte[] { (byte) (i + 1) }, futures.get(i).get(1, TimeUnit.SECONDS));
+			}
+			assertEquals(Arrays.asList(4, 4), requestSizes);
+
+			// the remaining operations are sent on closing;
+			futures.clear();
+			futures.add(proxy.invokeOrdered(new byte[] { 9 }));
+			assertFalse(futures.get(0).isDone());
+		}
+		assertEquals(Arrays.asList(4, 4, 1), requestSizes);
+	}
+
+	@Test
+	public void testFlushAfterDelay() throws Exception {
+		IncrementRecoverable executable = new IncrementRecoverable();
+		try (CoalescingServiceProxy proxy = new CoalescingServiceProxy(
+				request -> CompletableFuture.completedFuture(executable.executeUnordered(request, null)),
+				LengthPrefixedFraming.INSTANCE, 100, 1024, 1000)) {
+			CompletableFuture<byte[]> first = proxy.invokeOrdered(new byte[] { 1 });
+			CompletableFuture<byte[]> second = proxy.invokeOrdered(new byte[] { 2 });
+			assertArrayEquals(new byte[] { 2 }, first.get(5, TimeUnit.SECONDS));
+			assertArrayEquals(new byte[] { 3 }, second.get(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		try (CoalescingServiceProxy proxy = new CoalescingServiceProxy(
+				request -> CompletableFuture.completedFuture(LengthPrefixedFraming.INSTANCE.pack(new ArrayList<>())),
+				LengthPrefixedFraming.INSTANCE, 2, 1024, 0)) {
+			try {
+				proxy.invokeOrdered(new byte[] { 1 }).get(1, TimeUnit.SECONDS);
+				fail("The operation without result must fail!");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+	}
+
+	@Test
+	public void testNullOperation() throws Exception {
+		IncrementRecoverable executable = new IncrementRecoverable();
+		try (CoalescingServiceProxy proxy = new CoalescingServiceProxy(
+				request -> CompletableFuture.completedFuture(executable.executeUnordered(request, null)),
+				LengthPrefixedFraming.INSTANCE, 2, 1024, 0)) {
+			assertNull(proxy.invokeOrdered(null).get(1, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * 合并请求经过节点的预计算、批次执行和应答的完整路径；
+	 */
+	@Test
+	public void testReplicaExecutesCoalescedRequests() throws Exception {
+		Properties systemConfig = FileUtils.readProperties(new FileInputStream("config/system_4.config"));
+		systemConfig.setProperty("system.totalordermulticast.log_to_disk", "false");
+		HostsConfig hostsConfig = new HostsConfig("config/hosts.config");
+		TOMConfiguration config = new TOMConfiguration(0, systemConfig, hostsConfig);
+		NodeNetwork[] addresses = new NodeNetwork[4];
+		for (int i = 0; i < addresses.length; i++) {
+			addresses[i] = new NodeNetwork(hostsConfig.getHost(i), hostsConfig.getPort(i), -1, false, false);
+		}
+		View view = new View(0, new int[] { 0, 1, 2, 3 }, 1, addresses);
+
+		ServerCommunicationSystem cs = mock(ServerCommunicationSystem.class);
+		when(cs.getClientCommunication()).thenReturn(mock(ClientCommunicationServerSide.class));
+		IncrementRecoverable app = new IncrementRecoverable();
+		List<TOMMessage> sent = Collections.synchronizedList(new ArrayList<>());
+		doAnswer(invocation -> {
+			SystemMessage message = invocation.getArgument(1);
+			if (message instanceof TOMMessage) {
+				sent.add((TOMMessage) message);
+			} else if (message instanceof SMMessage && ((SMMessage) message).getType() == TOMUtil.SM_ASK_INITIAL) {
+				// 其它节点同样没有执行过共识，启动时的状态同步随即完成；
+				for (int id = 1; id < 4; id++) {
+					app.getStateManager().currentConsensusIdReceived(
+							new StandardSMMessage(id, -1, TOMUtil.SM_REPLY_INITIAL, 0, null, view, 0, 0));
+				}
+			}
+			return null;
+		}).when(cs).send(any(int[].class), any(SystemMessage.class));
+
+		ServiceReplica replica = new ServiceReplica(new MessageHandler(), cs, config, app, app, -1, view,
+				"coalescing-test");
+		try {
+			List<TOMMessage> replied = Collections.synchronizedList(new ArrayList<>());
+			Replier replier = mock(Replier.class);
+			doAnswer(invocation -> {
+				replied.add(invocation.getArgument(0, TOMMessage.class));
+				return null;
+			}).when(replier).manageReply(any(TOMMessage.class), any(MessageContext.class));
+			replica.setReplyController(replier);
+
+			// 一个合并请求和一个未合并的请求；
+			byte[] coalesced = LengthPrefixedFraming.INSTANCE
+					.pack(Arrays.asList(new byte[] { 1 }, null, new byte[] { 3 }));
+			byte[] single = new byte[] { 7 };
+			TOMMessage[] requests = new TOMMessage[] {
+					new TOMMessage(1001, 0, 0, 0, coalesced, null, 0, TOMMessageType.ORDERED_REQUEST),
+					new TOMMessage(1002, 0, 0, 0, single, null, 0, TOMMessageType.ORDERED_REQUEST) };
+
+			BatchAppResultImpl result = app.preComputeHash(0, new byte[][] { coalesced, single },
+					System.currentTimeMillis());
+			assertEquals(Arrays.asList(1, null, 3, 7), app.operations);
+			List<byte[]> responses = app.updateResponses(result.getAsyncResponses(), null, true);
+
+			replica.receiveMessages(new int[] { 0 }, new int[] { 0 }, new int[] { 0 },
+					new CertifiedDecision[] { new CertifiedDecision(0, 0, null, null) }, new TOMMessage[][] { requests },
+					responses, false);
+
+			assertEquals(2, replied.size());
+			List<byte[]> results = LengthPrefixedFraming.INSTANCE.unpack(replied.get(0).reply.getContent());
+			assertEquals(3, results.size());
+			assertArrayEquals(new byte[] { 2 }, results.get(0));
+			assertNull(results.get(1));
+			assertArrayEquals(new byte[] { 4 }, results.get(2));
+			assertArrayEquals(new byte[] { 8 }, replied.get(1).reply.getContent());
+
+			// 无序请求同样拆分执行；
+			TOMMessage read = new TOMMessage(1001, 0, 1, 1,
+					LengthPrefixedFraming.INSTANCE.pack(Arrays.asList(new byte[] { 5 }, new byte[] { 6 })), null, 0,
+					TOMMessageType.UNORDERED_REQUEST);
+			replica.receiveReadonlyMessage(read, new MessageContext(1001, 0, TOMMessageType.UNORDERED_REQUEST, 0, 1,
+					1, -1, null, 0, 0, 0, 0, 0, 0, null, read, false));
+			assertEquals(1, sent.size());
+			results = LengthPrefixedFraming.INSTANCE.unpack(sent.get(0).getContent());
+			assertEquals(2, results.size());
+			assertArrayEquals(new byte[] { 6 }, results.get(0));
+			assertArrayEquals(new byte[] { 7 }, results.get(1));
+
+			// 重放日志中的合并请求；
+			app.operations.clear();
+			app.replayBatch(new byte[][] { coalesced, single }, null);
+			assertEquals(Arrays.asList(1, null, 3, 7), app.operations);
+		} finally {
+			replica.kill();
+		}
+	}
+
+	/**
+	 * 对每个操作加 1 的应用；
+	 */
+	private static class IncrementRecoverable extends DefaultRecoverable {
+
+		private final List<Integer> operations = new ArrayList<>();
+
+		IncrementRecoverable() {
+			super(LengthPrefixedFraming.INSTANCE);
+		}
+
+		private byte[] increment(byte[] operation) {
+			return operation == null ? null : new byte[] { (byte) (operation[0] + 1) };
+		}
+
+		@Override
+		public BatchAppResultImpl preComputeAppHash(int cid, byte[][] commands, long timestamp) {
+			List<byte[]> responses = new ArrayList<>(commands.length);
+			for (byte[] command : commands) {
+				operations.add(command == null ? null : (int) command[0]);
+				responses.add(increment(command));
+			}
+			return BatchAppResultImpl.createSuccess(responses, new byte[32], "batch-" + cid, new byte[32]);
+		}
+
+		@Override
+		public List<byte[]> updateAppResponses(List<byte[]> asyncResponseLinkedList, byte[] commonHash,
+				boolean isConsistent) {
+			return asyncResponseLinkedList;
+		}
+
+		@Override
+		public byte[][] appExecuteBatch(byte[][] commands, MessageContext[] msgCtxs, boolean fromConsensus) {
+			byte[][] replies = new byte[commands.length][];
+			for (int i = 0; i < commands.length; i++) {
+				operations.add(commands[i] == null ? null : (int) commands[i][0]);
+				replies[i] = increment(commands[i]);
+			}
+			return replies;
+		}
+
+		@Override
+		public byte[] appExecuteUnordered(byte[] command, MessageContext msgCtx) {
+			return increment(command);
+		}
+
+		@Override
+		public void preComputeAppCommit(int cid, String batchId) {
+		}
+
+		@Override
+		public void preComputeAppRollback(int cid, String batchId) {
+		}
+
+		@Override
+		public void installSnapshot(byte[] state) {
+		}
+
+		@Override
+		public byte[] getBlockHashByCid(int cid) {
+			return new byte[32];
+		}
+
+		@Override
+		public int getCommandsNumByCid(int cid) {
+			return 0;
+		}
+
+		@Override
+		public byte[][] getCommandsByCid(int cid, int currCidCommandsNum) {
+			return new byte[0][];
+		}
+
+		@Override
+		public long getTimestampByCid(int cid) {
+			return 0;
+		}
+	}
+}
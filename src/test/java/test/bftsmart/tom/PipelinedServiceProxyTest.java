@@ -0,0 +1,156 @@
+package test.bftsmart.tom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.reconfiguration.views.ViewStorage;
+import bftsmart.tom.PipelinedServiceProxy;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.util.TOMUtil;
+
+public class PipelinedServiceProxyTest {
+
+	private static final int[] PROCESSES = { 0, 1, 2, 3 };
+
+	private final BlockingQueue<TOMMessage> sent = new LinkedBlockingQueue<>();
+
+	private PipelinedServiceProxy proxy;
+
+	@After
+	public void close() {
+		if (proxy != null) {
+			proxy.close();
+		}
+	}
+
+	@Test
+	public void testWindowBackPressure() throws Exception {
+		proxy = newProxy(2);
+
+		CompletableFuture<byte[]> first = proxy.invokeOrdered(new byte[] { 1 });
+		CompletableFuture<byte[]> second = proxy.invokeOrdered(new byte[] { 2 });
+		assertEquals(2, proxy.getPendingCount());
+		TOMMessage firstRequest = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(sent.poll(5, TimeUnit.SECONDS));
+
+		// 窗口已满，第三个请求等待窗口；
+		CompletableFuture<CompletableFuture<byte[]>> third = CompletableFuture
+				.supplyAsync(() -> proxy.invokeOrdered(new byte[] { 3 }));
+		assertNull(sent.poll(200, TimeUnit.MILLISECONDS));
+		assertFalse(third.isDone());
+
+		replyFromQuorum(firstRequest, new byte[] { 11 }, 0);
+		assertArrayEquals(new byte[] { 11 }, first.get(5, TimeUnit.SECONDS));
+		TOMMessage thirdRequest = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(thirdRequest);
+		assertArrayEquals(new byte[] { 3 }, thirdRequest.getContent());
+		assertNotNull(third.get(5, TimeUnit.SECONDS));
+		assertFalse(second.isDone());
+		assertEquals(2, proxy.getPendingCount());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		proxy = newProxy(2);
+		proxy.setInvokeTimeout(1);
+
+		CompletableFuture<byte[]> future = proxy.invokeOrdered(new byte[] { 1 });
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The request must time out!");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(0, proxy.getPendingCount());
+
+		// 超时之后到达的应答被忽略；
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		replyFromQuorum(request, new byte[] { 11 }, 0);
+		assertEquals(0, proxy.getPendingCount());
+	}
+
+	/**
+	 * 节点因视图过时没有执行请求时，更新视图后重新发送；窗口已满且有调用者在等待窗口时也不阻塞；
+	 */
+	@Test
+	public void testResendOnViewChange() throws Exception {
+		proxy = newProxy(1);
+
+		CompletableFuture<byte[]> future = proxy.invokeUnordered(new byte[] { 1 });
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		CompletableFuture<CompletableFuture<byte[]>> waiting = CompletableFuture
+				.supplyAsync(() -> proxy.invokeUnordered(new byte[] { 2 }));
+		assertNull(sent.poll(200, TimeUnit.MILLISECONDS));
+
+		View newView = new View(1, PROCESSES, 1, addresses());
+		replyFromQuorum(request, TOMUtil.getBytes(newView), newView.getId());
+
+		TOMMessage resent = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(resent);
+		assertArrayEquals(new byte[] { 1 }, resent.getContent());
+		assertEquals(1, resent.getViewID());
+		assertFalse(future.isDone());
+		assertFalse(waiting.isDone());
+
+		replyFromQuorum(resent, new byte[] { 11 }, 1);
+		assertArrayEquals(new byte[] { 11 }, future.get(5, TimeUnit.SECONDS));
+		assertNotNull(waiting.get(5, TimeUnit.SECONDS));
+	}
+
+	private void replyFromQuorum(TOMMessage request, byte[] content, int viewId) {
+		// n = 4, f = 1，应答法定数量为 2；
+		for (int i = 0; i < 2; i++) {
+			proxy.replyReceived(new TOMMessage(PROCESSES[i], request.getSession(), request.getSequence(),
+					request.getOperationId(), content, null, viewId, request.getReqType()));
+		}
+	}
+
+	private PipelinedServiceProxy newProxy(int windowSize) {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		when(config.isBFT()).thenReturn(true);
+		when(config.getProcessId()).thenReturn(1001);
+		ViewStorage viewStorage = mock(ViewStorage.class);
+		when(viewStorage.readView()).thenReturn(new View(0, PROCESSES, 1, addresses()));
+
+		CommunicationSystemClientSide cs = mock(CommunicationSystemClientSide.class);
+		doAnswer(invocationOnMock -> {
+			sent.add((TOMMessage) invocationOnMock.getArguments()[2]);
+			return null;
+		}).when(cs).send(anyBoolean(), any(int[].class), any(TOMMessage.class));
+
+		return new PipelinedServiceProxy(new ClientViewController(config, viewStorage), cs, windowSize, null, null);
+	}
+
+	private static NodeNetwork[] addresses() {
+		NodeNetwork[] addresses = new NodeNetwork[PROCESSES.length];
+		for (int i = 0; i < addresses.length; i++) {
+			addresses[i] = new NodeNetwork("127.0.0.1", 11000 + i * 10, -1, false, false);
+		}
+		return addresses;
+	}
+}
@@ -0,0 +1,243 @@
+package test.bftsmart.tom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.communication.client.CommunicationSystemClientSide;
+import bftsmart.reconfiguration.ClientViewController;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.reconfiguration.views.NodeNetwork;
+import bftsmart.reconfiguration.views.View;
+import bftsmart.reconfiguration.views.ViewStorage;
+import bftsmart.tom.ServiceProxy;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.util.TOMUtil;
+
+public class ServiceProxyRepliesTest {
+
+	private static final int[] PROCESSES = { 0, 1, 2, 3 };
+
+	private final BlockingQueue<TOMMessage> sent = new LinkedBlockingQueue<>();
+
+	private final BlockingQueue<int[]> targets = new LinkedBlockingQueue<>();
+
+	/**
+	 * 摘要应答超时后改为比对完整应答；执行较晚的节点之后发来的摘要应答彼此一致，但不能作为结果返回；
+	 */
+	@Test
+	public void testLateDigestRepliesAfterFallback() throws Exception {
+		ServiceProxy proxy = newProxy(true);
+		proxy.setInvokeUnorderedHashedTimeout(0);
+		proxy.setInvokeTimeout(10);
+
+		byte[] result = { 1, 2, 3 };
+		CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> proxy.invokeOrderedHashed(new byte[] { 9 }));
+
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(request);
+		int replyServer = request.getReplyServer();
+		// 以不指定应答节点的方式重发同一请求；
+		TOMMessage resent = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(resent);
+		assertEquals(request.getSequence(), resent.getSequence());
+		assertEquals(-1, resent.getReplyServer());
+
+		for (int id : PROCESSES) {
+			if (id != replyServer) {
+				proxy.replyReceived(digestReply(id, request, result));
+			}
+		}
+		for (int id : PROCESSES) {
+			if (id != replyServer) {
+				proxy.replyReceived(reply(id, request, result));
+				break;
+			}
+		}
+		proxy.replyReceived(reply(replyServer, request, result));
+
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 租约读只采信领导者的应答；已知领导者之后请求只发送给领导者；
+	 */
+	@Test
+	public void testLeaseReadAcceptsOnlyTheLeader() throws Exception {
+		ServiceProxy proxy = newProxy(false);
+		byte[] result = { 1, 2, 3 };
+
+		CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> proxy.invokeLeaseRead(new byte[] { 9 }));
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		assertEquals(TOMMessageType.LEASE_READ_REQUEST, request.getReqType());
+		assertEquals(PROCESSES.length, targets.poll().length);
+
+		// 非领导者的应答不被采信，不论是否带有内容；
+		proxy.replyReceived(leaseReadReply(2, request, new byte[] { 7 }, 0));
+		proxy.replyReceived(leaseReadReply(1, request, null, 0));
+		assertFalse(future.isDone());
+		proxy.replyReceived(leaseReadReply(0, request, result, 0));
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+
+		future = CompletableFuture.supplyAsync(() -> proxy.invokeLeaseRead(new byte[] { 9 }));
+		request = sent.poll(5, TimeUnit.SECONDS);
+		assertArrayEquals(new int[] { 0 }, targets.poll());
+		proxy.replyReceived(leaseReadReply(1, request, new byte[] { 7 }, 1));
+		assertFalse(future.isDone());
+		proxy.replyReceived(leaseReadReply(0, request, result, 0));
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testLeaseReadIsOrderedInBFT() throws Exception {
+		ServiceProxy proxy = newProxy(true);
+
+		CompletableFuture.supplyAsync(() -> proxy.invokeLeaseRead(new byte[] { 9 }));
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		assertEquals(TOMMessageType.ORDERED_REQUEST, request.getReqType());
+		for (int id : PROCESSES) {
+			proxy.replyReceived(reply(id, request, new byte[] { 1 }));
+		}
+	}
+
+	/**
+	 * 水位读只采信所选节点的应答，并以应答的水位更新客户端的水位；
+	 */
+	@Test
+	public void testWatermarkReadAcceptsOnlyTheSelectedReplica() throws Exception {
+		ServiceProxy proxy = newProxy(false);
+		byte[] result = { 1, 2, 3 };
+
+		CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> proxy.invokeWatermarkRead(new byte[] { 9 }));
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		int[] selected = targets.poll();
+		assertEquals(1, selected.length);
+
+		TOMMessage other = reply((selected[0] + 1) % PROCESSES.length, request, new byte[] { 7 });
+		other.setWatermark(100);
+		proxy.replyReceived(other);
+		assertFalse(future.isDone());
+
+		TOMMessage reply = reply(selected[0], request, result);
+		reply.setWatermark(10);
+		proxy.replyReceived(reply);
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+		assertEquals(10, proxy.getWatermark());
+	}
+
+	/**
+	 * 拜占庭容错模式下水位读发送到全部节点，需要 f+1 个一致的应答；得不到一致的应答时改为以有序请求执行；
+	 */
+	@Test
+	public void testWatermarkReadRequiresMatchingRepliesInBFT() throws Exception {
+		ServiceProxy proxy = newProxy(true);
+		byte[] result = { 1, 2, 3 };
+
+		CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> proxy.invokeWatermarkRead(new byte[] { 9 }));
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		assertEquals(TOMMessageType.UNORDERED_REQUEST, request.getReqType());
+		assertEquals(PROCESSES.length, targets.poll().length);
+
+		proxy.replyReceived(reply(0, request, result));
+		assertFalse(future.isDone());
+		proxy.replyReceived(reply(1, request, result));
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+
+		future = CompletableFuture.supplyAsync(() -> proxy.invokeWatermarkRead(new byte[] { 9 }));
+		request = sent.poll(5, TimeUnit.SECONDS);
+		for (int id : PROCESSES) {
+			proxy.replyReceived(reply(id, request, new byte[] { (byte) id }));
+		}
+		TOMMessage ordered = sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull(ordered);
+		assertEquals(TOMMessageType.ORDERED_REQUEST, ordered.getReqType());
+		proxy.replyReceived(reply(0, ordered, result));
+		proxy.replyReceived(reply(1, ordered, result));
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * 拜占庭容错模式下只采信 f+1 个一致的应答担保的水位，单个节点不能抬高客户端的水位；
+	 */
+	@Test
+	public void testWatermarkIsVouchedByMatchingReplies() throws Exception {
+		ServiceProxy proxy = newProxy(true);
+		byte[] result = { 1, 2, 3 };
+
+		CompletableFuture<byte[]> future = CompletableFuture.supplyAsync(() -> proxy.invokeOrdered(new byte[] { 9 }));
+		TOMMessage request = sent.poll(5, TimeUnit.SECONDS);
+		TOMMessage inflated = reply(0, request, result);
+		inflated.setWatermark(Integer.MAX_VALUE - 1);
+		proxy.replyReceived(inflated);
+		TOMMessage correct = reply(1, request, result);
+		correct.setWatermark(10);
+		proxy.replyReceived(correct);
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+		assertEquals(10, proxy.getWatermark());
+
+		// 摘要应答同样只采信 f+1 个一致的应答担保的水位；
+		future = CompletableFuture.supplyAsync(() -> proxy.invokeOrderedHashed(new byte[] { 9 }));
+		request = sent.poll(5, TimeUnit.SECONDS);
+		int replyServer = request.getReplyServer();
+		TOMMessage full = reply(replyServer, request, result);
+		full.setWatermark(Integer.MAX_VALUE - 1);
+		proxy.replyReceived(full);
+		TOMMessage digest = digestReply((replyServer + 1) % PROCESSES.length, request, result);
+		digest.setWatermark(20);
+		proxy.replyReceived(digest);
+		assertArrayEquals(result, future.get(5, TimeUnit.SECONDS));
+		assertEquals(20, proxy.getWatermark());
+	}
+
+	private ServiceProxy newProxy(boolean bft) {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		when(config.isBFT()).thenReturn(bft);
+		when(config.getProcessId()).thenReturn(1001);
+		NodeNetwork[] addresses = new NodeNetwork[PROCESSES.length];
+		for (int i = 0; i < addresses.length; i++) {
+			addresses[i] = new NodeNetwork("127.0.0.1", 11000 + i * 10, -1, false, false);
+		}
+		ViewStorage viewStorage = mock(ViewStorage.class);
+		when(viewStorage.readView()).thenReturn(new View(0, PROCESSES, 1, addresses));
+
+		CommunicationSystemClientSide cs = mock(CommunicationSystemClientSide.class);
+		doAnswer(invocationOnMock -> {
+			targets.add((int[]) invocationOnMock.getArguments()[1]);
+			sent.add((TOMMessage) invocationOnMock.getArguments()[2]);
+			return null;
+		}).when(cs).send(anyBoolean(), any(int[].class), any(TOMMessage.class));
+
+		return new ServiceProxy(new ClientViewController(config, viewStorage), cs, null, null);
+	}
+
+	private static TOMMessage reply(int sender, TOMMessage request, byte[] content) {
+		return new TOMMessage(sender, request.getSession(), request.getSequence(), request.getOperationId(), content,
+				null, 0, request.getReqType());
+	}
+
+	private static TOMMessage leaseReadReply(int sender, TOMMessage request, byte[] content, int leader) {
+		TOMMessage reply = reply(sender, request, content);
+		reply.setReplyServer(leader);
+		return reply;
+	}
+
+	private static TOMMessage digestReply(int sender, TOMMessage request, byte[] content) throws Exception {
+		TOMMessage reply = reply(sender, request, TOMUtil.computeHash(content));
+		reply.setReplyServer(request.getReplyServer());
+		return reply;
+	}
+}
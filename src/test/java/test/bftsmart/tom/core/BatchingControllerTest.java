@@ -0,0 +1,104 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bftsmart.tom.core.BatchingController;
+import bftsmart.tom.util.Tracer;
+
+public class BatchingControllerTest {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testDisabled() {
+		BatchingController controller = new BatchingController(false, 100, 5, 0, Tracer.DISABLED);
+		controller.requestArrived();
+		controller.proposed(1, 1, 100, 0);
+		controller.decided(1, 10 * MS);
+
+		assertEquals(100, controller.getBatchLimit());
+		assertEquals(0, controller.getWaitNanos());
+		assertTrue(controller.isBatchReady());
+	}
+
+	@Test
+	public void testLightLoadProposesImmediately() {
+		BatchingController controller = new BatchingController(true, 100, 5, 0, Tracer.DISABLED);
+		controller.decided(0, 0);
+
+		// 每 100 毫秒一个请求，共识耗时 1 毫秒；
+		long now = 0;
+		for (int cid = 1; cid <= 5; cid++) {
+			now += 100 * MS;
+			controller.requestArrived();
+			controller.proposed(cid, 1, 100, now);
+			controller.decided(cid, now + MS);
+		}
+
+		assertEquals(1, controller.getTargetSize());
+		assertEquals(0, controller.getWaitNanos());
+		controller.requestArrived();
+		assertTrue(controller.isBatchReady());
+	}
+
+	@Test
+	public void testHeavyLoadWaitsForTargetSize() {
+		Tracer tracer = Tracer.create(1);
+		BatchingController controller = new BatchingController(true, 100, 5, 0, tracer);
+		controller.decided(0, 0);
+
+		// 10 毫秒内到达 500 个请求，共识耗时 10 毫秒，一次共识期间到达 500 个请求，超出最大批次；
+		arrive(controller, 500);
+		controller.proposed(1, 10, 1000, 0);
+		controller.decided(1, 10 * MS);
+
+		assertEquals(100, controller.getTargetSize());
+		assertEquals(100, controller.getBatchLimit());
+		// 以每毫秒 50 个请求的速率积累 100 个请求需要 2 毫秒；
+		assertEquals(2 * MS, controller.getWaitNanos());
+		assertFalse(controller.isBatchReady());
+		arrive(controller, 100);
+		assertTrue(controller.isBatchReady());
+
+		// 批次已满时有积压，不再等待；
+		controller.proposed(2, 100, 10000, 10 * MS);
+		assertEquals(0, controller.getWaitNanos());
+		assertTrue(controller.isBatchReady());
+
+		assertEquals(2, tracer.getCounters().get("batching.proposes").longValue());
+		assertEquals(1, tracer.getCounters().get("batching.full_batches").longValue());
+		assertEquals(100, tracer.getHistograms().get("batching.batch_size").getMax());
+	}
+
+	@Test
+	public void testLatencySloLimitsBatchSize() {
+		BatchingController controller = new BatchingController(true, 100, 5, 21, Tracer.DISABLED);
+		controller.decided(0, 0);
+
+		// 每个请求 100 字节，共识耗时为每字节 5 微秒：1000 字节 5 毫秒，3000 字节 15 毫秒；
+		arrive(controller, 10000);
+		controller.proposed(1, 10, 1000, 0);
+		controller.decided(1, 5 * MS);
+		arrive(controller, 30000);
+		controller.proposed(2, 30, 3000, 5 * MS);
+		controller.decided(2, 20 * MS);
+
+		// 满足 21 毫秒延迟目标的最大批次为 21 毫秒 / 5 微秒 / 100 字节 = 42；
+		assertEquals(42, controller.getBatchLimit());
+		assertEquals(42, controller.getTargetSize());
+		// 目标批次预计耗时 21 毫秒，已没有等待的余量；
+		assertTrue(controller.getWaitNanos() < MS);
+	}
+
+	private static void arrive(BatchingController controller, int count) {
+		for (int i = 0; i < count; i++) {
+			controller.requestArrived();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.consensus.Consensus;
+import bftsmart.consensus.Decision;
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.tom.core.ConsensusWindow;
+
+public class ConsensusWindowTest {
+
+	@Test
+	public void testConsensusesSlideWithTheWindow() {
+		ConsensusWindow window = new ConsensusWindow(100);
+		assertEquals(128, window.getCapacity());
+
+		Consensus first = window.getOrCreateConsensus(5, ConsensusWindowTest::newConsensus);
+		assertSame(first, window.getOrCreateConsensus(5, ConsensusWindowTest::newConsensus));
+		assertSame(first, window.getConsensus(5));
+		assertNull(window.getConsensus(5 + 128));
+
+		// 与未移除的共识落在同一槽位时存入溢出表；
+		Consensus collided = window.getOrCreateConsensus(5 + 128, ConsensusWindowTest::newConsensus);
+		assertNotSame(first, collided);
+		assertSame(first, window.getConsensus(5));
+		assertSame(collided, window.getConsensus(5 + 128));
+
+		assertSame(first, window.removeConsensus(5));
+		assertNull(window.getConsensus(5));
+		assertSame(collided, window.getConsensus(5 + 128));
+
+		window.removeConsensuses(0, 200);
+		assertNull(window.getConsensus(5 + 128));
+
+		// 已移除区间之前的共识占用的槽位可以覆盖；
+		window.getOrCreateConsensus(-1, ConsensusWindowTest::newConsensus);
+		Consensus later = window.getOrCreateConsensus(255, ConsensusWindowTest::newConsensus);
+		assertSame(later, window.getConsensus(255));
+		assertNull(window.getConsensus(-1));
+	}
+
+	@Test
+	public void testOutOfContextMessages() {
+		ConsensusWindow window = new ConsensusWindow(100);
+
+		ConsensusMessage propose = message(MessageFactory.PROPOSE, 10, 1);
+		window.putPropose(propose, 0);
+		window.addMessage(message(MessageFactory.WRITE, 10, 1), 0);
+		window.addMessage(message(MessageFactory.ACCEPT, 10, 2), 0);
+		// 与共识 10 落在同一槽位且未过期，存入溢出表；
+		window.addMessage(message(MessageFactory.WRITE, 10 + 128, 3), 0);
+
+		assertSame(propose, window.getPropose(10));
+		assertEquals(2, window.getMessages(10).size());
+		assertEquals(1, window.getMessages(10 + 128).size());
+		assertNull(window.getPropose(10 + 128));
+
+		assertSame(propose, window.removePropose(10));
+		assertNull(window.getPropose(10));
+		List<ConsensusMessage> messages = window.takeMessages(10);
+		assertEquals(2, messages.size());
+		assertNull(window.getMessages(10));
+		window.recycle(10, messages);
+		assertEquals(0, messages.size());
+
+		// 过期的消息被新的共识覆盖；
+		window.addMessage(message(MessageFactory.WRITE, 11, 1), 0);
+		window.addMessage(message(MessageFactory.WRITE, 11 + 128, 1), 20);
+		assertNull(window.getMessages(11));
+		assertEquals(1, window.getMessages(11 + 128).size());
+
+		window.putPropose(message(MessageFactory.PROPOSE, 12, 1), 0);
+		window.putPropose(message(MessageFactory.PROPOSE, 13, 2), 0);
+		window.discardProposes(prop -> prop.getSender() != 2);
+		assertNull(window.getPropose(12));
+		assertEquals(2, window.getPropose(13).getSender());
+
+		window.clear(Integer.MIN_VALUE, 200);
+		assertNull(window.getPropose(13));
+		assertNull(window.getMessages(10 + 128));
+		assertNull(window.getMessages(11 + 128));
+	}
+
+	private static Consensus newConsensus(int cid) {
+		return new Consensus(null, new Decision(cid));
+	}
+
+	private static ConsensusMessage message(int type, int cid, int sender) {
+		return new ConsensusMessage(type, cid, 0, sender, new byte[0]);
+	}
+}
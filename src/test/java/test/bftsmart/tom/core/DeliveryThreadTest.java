@@ -0,0 +1,84 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bftsmart.reconfiguration.ServerViewController;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.tom.core.DeliveryThread;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+
+public class DeliveryThreadTest {
+
+	/**
+	 * 带水位的读请求暂存到水位对应的共识交付之后执行，应答的水位为执行之前最后交付的共识；超出 highMark 的水位被拒绝；
+	 */
+	@Test
+	public void testPendingReadsAreReleasedInOrder() {
+		RecordingDeliveryThread dt = new RecordingDeliveryThread(10);
+		dt.setLastDelivered(5);
+
+		dt.read(1, 3);
+		assertEquals(1, dt.executed.size());
+		assertEquals("1@5", dt.executed.get(0));
+
+		dt.read(2, 8);
+		dt.read(3, 7);
+		dt.read(4, 16);
+		assertEquals(1, dt.executed.size());
+
+		dt.setLastDelivered(7);
+		assertEquals(2, dt.executed.size());
+		assertEquals("3@7", dt.executed.get(1));
+
+		// 交付的共识不会回退；
+		dt.setLastDelivered(6);
+		dt.setLastDelivered(9);
+		assertEquals(3, dt.executed.size());
+		assertEquals("2@9", dt.executed.get(2));
+
+		// 水位 16 超出了交付共识 5 的 highMark，已被拒绝，不会在之后执行；
+		dt.setLastDelivered(20);
+		assertEquals(3, dt.executed.size());
+
+		dt.read(5, 25);
+		dt.setLastDelivered(25);
+		assertEquals(4, dt.executed.size());
+		assertEquals("5@25", dt.executed.get(3));
+	}
+
+	private static class RecordingDeliveryThread extends DeliveryThread {
+
+		private final List<String> executed = new ArrayList<>();
+
+		RecordingDeliveryThread(int highMark) {
+			super(null, null, null, controller(highMark));
+		}
+
+		private static ServerViewController controller(int highMark) {
+			TOMConfiguration config = mock(TOMConfiguration.class);
+			when(config.getPaxosHighMark()).thenReturn(highMark);
+			ServerViewController controller = mock(ServerViewController.class);
+			when(controller.getStaticConf()).thenReturn(config);
+			return controller;
+		}
+
+		void read(int sequence, int readCid) {
+			TOMMessage request = new TOMMessage(1001, 0, sequence, 0, new byte[0], null, 0,
+					TOMMessageType.UNORDERED_REQUEST);
+			deliverUnordered(request, 0, readCid);
+		}
+
+		@Override
+		protected void executeUnordered(TOMMessage request, int regency, int deliveredCid) {
+			executed.add(request.getSequence() + "@" + deliveredCid);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import bftsmart.consensus.messages.ConsensusMessage;
+import bftsmart.consensus.messages.MessageFactory;
+import bftsmart.reconfiguration.ReplicaTopology;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.tom.core.ExecutionManager;
+import bftsmart.tom.core.TOMLayer;
+
+public class ExecutionManagerTest {
+
+	/**
+	 * 领导者变更后丢弃原领导者以流水线方式提前发送的提议，保留新领导者的提议；
+	 */
+	@Test
+	public void testNewLeaderDiscardsPipelinedProposesOfOldLeader() {
+		ExecutionManager execManager = createExecutionManager();
+
+		execManager.addOutOfContextMessage(propose(2, 0));
+		execManager.addOutOfContextMessage(propose(3, 0));
+		execManager.addOutOfContextMessage(propose(4, 1));
+
+		// 领导者未变更时不丢弃；
+		execManager.setNewLeader(0);
+		assertTrue(execManager.receivedOutOfContextPropose(2));
+		assertTrue(execManager.receivedOutOfContextPropose(3));
+
+		execManager.setNewLeader(1);
+		assertEquals(1, execManager.getCurrentLeader());
+		assertFalse(execManager.receivedOutOfContextPropose(2));
+		assertFalse(execManager.receivedOutOfContextPropose(3));
+		assertTrue(execManager.receivedOutOfContextPropose(4));
+	}
+
+	private static ConsensusMessage propose(int cid, int sender) {
+		return new ConsensusMessage(MessageFactory.PROPOSE, cid, 0, sender, new byte[] { (byte) cid });
+	}
+
+	private static ExecutionManager createExecutionManager() {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		when(config.getPaxosHighMark()).thenReturn(10);
+		when(config.getTimeoutHighMark()).thenReturn(10);
+		ReplicaTopology topology = mock(ReplicaTopology.class);
+		when(topology.getStaticConf()).thenReturn(config);
+		when(topology.getCurrentViewProcesses()).thenReturn(new int[] { 0, 1, 2, 3 });
+
+		ExecutionManager execManager = new ExecutionManager(topology, null, null, 0);
+		TOMLayer tomLayer = mock(TOMLayer.class);
+		when(tomLayer.getLastExec()).thenReturn(0);
+		execManager.setTOMLayer(tomLayer);
+		return execManager;
+	}
+}
@@ -0,0 +1,110 @@
+package test.bftsmart.tom.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import bftsmart.clientsmanagement.ClientData;
+import bftsmart.clientsmanagement.ClientsManager;
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.tom.core.ProposalVerifier;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.server.RequestVerifier;
+import bftsmart.tom.util.TOMUtil;
+
+public class ProposalVerifierTest {
+
+	private static final int REQUESTS = 64;
+
+	/**
+	 * 多个验证线程并行验证批次的各个分片，任一分片中的无效请求都使整个提议无效；
+	 */
+	@Test
+	public void testParallelVerification() {
+		Set<String> verifyThreads = ConcurrentHashMap.newKeySet();
+		RequestVerifier verifier = new RequestVerifier() {
+			@Override
+			public boolean isValidRequest(byte[] request) {
+				throw new IllegalStateException("The content must be verified on the batch view!");
+			}
+
+			@Override
+			public boolean isValidRequest(ByteBuffer request) {
+				verifyThreads.add(Thread.currentThread().getName());
+				return request.get(request.position()) >= 0;
+			}
+		};
+		ProposalVerifier proposalVerifier = new ProposalVerifier(createTopology(false), verifier, null, 4);
+		try {
+			TOMMessage[] requests = createRequests();
+			assertTrue(proposalVerifier.verify(requests));
+			assertTrue(verifyThreads.size() > 1);
+
+			// 无效的请求位于工作线程验证的分片中；
+			requests[1] = createRequest(1, (byte) -1);
+			assertFalse(proposalVerifier.verify(requests));
+		} finally {
+			proposalVerifier.shutdown();
+		}
+	}
+
+	/**
+	 * 从批次中读出的请求按客户端的公钥校验签名；
+	 */
+	@Test
+	public void testClientSignatures() throws Exception {
+		KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+		ClientsManager clientsManager = mock(ClientsManager.class);
+		when(clientsManager.getClientData(anyInt()))
+				.thenAnswer(invocation -> new ClientData(invocation.getArgument(0), keyPair.getPublic()));
+		ProposalVerifier proposalVerifier = new ProposalVerifier(createTopology(true), request -> true,
+				clientsManager, 0);
+
+		TOMMessage[] requests = createRequests();
+		for (TOMMessage request : requests) {
+			request.serializedMessage = new byte[] { (byte) request.getSequence() };
+			request.serializedMessageSignature = TOMUtil.signMessage(keyPair.getPrivate(), request.serializedMessage);
+		}
+		assertTrue(proposalVerifier.verify(requests));
+
+		requests[REQUESTS - 1].serializedMessageSignature = requests[0].serializedMessageSignature;
+		assertFalse(proposalVerifier.verify(requests));
+
+		requests[REQUESTS - 1].serializedMessageSignature = null;
+		assertFalse(proposalVerifier.verify(requests));
+	}
+
+	private static TOMMessage[] createRequests() {
+		TOMMessage[] requests = new TOMMessage[REQUESTS];
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = createRequest(i, (byte) i);
+		}
+		return requests;
+	}
+
+	private static TOMMessage createRequest(int sequence, byte content) {
+		return new TOMMessage(1001, 0, sequence, sequence, new byte[] { content }, null, 0,
+				TOMMessageType.ORDERED_REQUEST);
+	}
+
+	private static ViewTopology createTopology(boolean useSignatures) {
+		TOMConfiguration config = mock(TOMConfiguration.class);
+		when(config.isBFT()).thenReturn(true);
+		when(config.isUseSignatures()).thenReturn(useSignatures);
+		ViewTopology topology = mock(ViewTopology.class);
+		when(topology.getStaticConf()).thenReturn(config);
+		return topology;
+	}
+}
@@ -0,0 +1,178 @@
+package test.bftsmart.tom.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bftsmart.tom.MessageContext;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.server.defaultservices.CommandsInfo;
+import bftsmart.tom.server.defaultservices.FileRecoverer;
+import bftsmart.tom.server.defaultservices.WriteAheadLog;
+
+public class WriteAheadLogTest {
+
+	private File logFile;
+
+	@Before
+	public void setUp() throws IOException {
+		logFile = File.createTempFile("wal-test", ".log");
+		logFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		logFile.delete();
+	}
+
+	@Test
+	public void testAppendAndRecover() throws IOException {
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), true, 5, 1024)) {
+			assertEquals(-1, log.getLastConsensusId());
+			for (int cid = 10; cid < 30; cid++) {
+				log.append(cid, newBatch(cid));
+			}
+			log.sync();
+			assertEquals(29, log.getLastConsensusId());
+		}
+		assertTrue(WriteAheadLog.isWriteAheadLog(logFile.getPath()));
+		// the space after the records is preallocated in segments;
+		assertTrue(logFile.length() % 1024 == 8);
+
+		FileRecoverer recoverer = new FileRecoverer(0, logFile.getParent());
+		CommandsInfo[] batches = recoverer.getLogState(0, logFile.getPath());
+		assertEquals(20, batches.length);
+		assertEquals(29, recoverer.getLogLastConsensusId());
+		for (int i = 0; i < batches.length; i++) {
+			assertBatch(10 + i, batches[i]);
+		}
+		assertEquals(5, recoverer.getLogState(5, logFile.getPath()).length);
+
+		// appending after reopening continues at the end of the recovered records;
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), false, 0, 1024)) {
+			assertEquals(29, log.getLastConsensusId());
+			long pointer = log.position();
+			log.append(30, newBatch(30));
+
+			CommandsInfo[] tail = new FileRecoverer(0, logFile.getParent()).getLogState(pointer, 0, 1, logFile.getPath());
+			assertEquals(1, tail.length);
+			assertBatch(30, tail[0]);
+		}
+	}
+
+	@Test
+	public void testSyncAppendReturnsOnceForced() throws Exception {
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), true, 50, 1024)) {
+			long position = log.append(1, newBatch(1));
+			assertTrue(log.forcedPosition() >= position);
+
+			// concurrent appenders share the forces, and each returns once its record is forced;
+			Thread[] appenders = new Thread[4];
+			long[] positions = new long[appenders.length];
+			long[] forced = new long[appenders.length];
+			Exception[] errors = new Exception[appenders.length];
+			for (int i = 0; i < appenders.length; i++) {
+				final int index = i;
+				appenders[i] = new Thread(() -> {
+					try {
+						positions[index] = log.append(10 + index, newBatch(10 + index));
+						forced[index] = log.forcedPosition();
+					} catch (Exception e) {
+						errors[index] = e;
+					}
+				});
+				appenders[i].start();
+			}
+			for (int i = 0; i < appenders.length; i++) {
+				appenders[i].join();
+				assertNull(errors[i]);
+				assertTrue(forced[i] >= positions[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testSequentialAppendsDoNotWaitForLatency() throws Exception {
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), true, 2000, 1024)) {
+			long start = System.nanoTime();
+			for (int cid = 0; cid < 10; cid++) {
+				long position = log.append(cid, newBatch(cid));
+				assertTrue(log.forcedPosition() >= position);
+			}
+			// no other appender is waiting, so each record is forced at once instead of after the latency;
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+		}
+	}
+
+	@Test
+	public void testTornRecordIsIgnored() throws IOException {
+		long tornPosition;
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), false, 0)) {
+			log.append(1, newBatch(1));
+			tornPosition = log.position();
+			log.append(2, newBatch(2));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			raf.seek(tornPosition + 20);
+			raf.write(new byte[8]);
+		}
+
+		try (WriteAheadLog log = WriteAheadLog.open(logFile.getPath(), false, 0)) {
+			assertEquals(1, log.getLastConsensusId());
+			assertEquals(tornPosition, log.position());
+		}
+		CommandsInfo[] batches = new FileRecoverer(0, logFile.getParent()).getLogState(0, logFile.getPath());
+		assertEquals(1, batches.length);
+		assertBatch(1, batches[0]);
+	}
+
+	@Test
+	public void testLegacyLogIsNotWriteAheadLog() throws IOException {
+		assertFalse(WriteAheadLog.isWriteAheadLog(logFile.getPath()));
+		try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			raf.writeInt(0);
+			raf.writeInt(7);
+		}
+		assertFalse(WriteAheadLog.isWriteAheadLog(logFile.getPath()));
+	}
+
+	private static CommandsInfo newBatch(int cid) {
+		byte[][] commands = new byte[3][];
+		MessageContext[] msgCtx = new MessageContext[commands.length];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = new byte[cid + i];
+			for (int j = 0; j < commands[i].length; j++) {
+				commands[i][j] = (byte) (cid * j);
+			}
+			msgCtx[i] = new MessageContext(1000 + i, 2, TOMMessageType.ORDERED_REQUEST, 0, i, i, -1,
+					i == 0 ? null : new byte[] { (byte) i }, 100L + cid, 0, cid, 1, 0, cid, null, null, false);
+		}
+		return new CommandsInfo(commands, msgCtx);
+	}
+
+	private static void assertBatch(int cid, CommandsInfo batch) {
+		CommandsInfo expected = newBatch(cid);
+		assertEquals(expected, batch);
+		for (int i = 0; i < expected.commands.length; i++) {
+			assertArrayEquals(expected.commands[i], batch.commands[i]);
+			MessageContext ctx = batch.msgCtx[i];
+			assertEquals(1000 + i, ctx.getSender());
+			assertEquals(TOMMessageType.ORDERED_REQUEST, ctx.getType());
+			assertEquals(100L + cid, ctx.getTimestamp());
+			assertEquals(cid, ctx.getConsensusId());
+			assertArrayEquals(expected.msgCtx[i].getSignature(), ctx.getSignature());
+			assertNull(ctx.getProof());
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.util.BatchBuilder;
+import bftsmart.tom.util.BatchReader;
+
+public class BatchReaderTest {
+
+	@Test
+	public void testLazyRequestsRoundTrip() {
+		ViewTopology controller = Mockito.mock(ViewTopology.class);
+		ReplicaConfiguration conf = Mockito.mock(ReplicaConfiguration.class);
+		when(controller.getStaticConf()).thenReturn(conf);
+		when(controller.getCurrentViewId()).thenReturn(3);
+
+		List<TOMMessage> requests = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			byte[] content = new byte[10 + i];
+			for (int j = 0; j < content.length; j++) {
+				content[j] = (byte) (i + j);
+			}
+			TOMMessage request = new TOMMessage(1000 + i, 0, i, i, content, null, 3, TOMMessageType.ORDERED_REQUEST);
+			request.setWatermark(i - 1);
+			request.serializedMessage = TOMMessage.messageToBytes(request);
+			requests.add(request);
+		}
+
+		byte[] batch = new BatchBuilder(7).makeBatch(requests, 0, 100L, controller);
+		TOMMessage[] decoded = new BatchReader(batch, false).deserialiseRequests(controller);
+
+		assertEquals(requests.size(), decoded.length);
+		for (int i = 0; i < decoded.length; i++) {
+			TOMMessage expected = requests.get(i);
+			TOMMessage actual = decoded[i];
+			assertEquals(expected, actual);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getReqType(), actual.getReqType());
+			assertEquals(expected.getWatermark(), actual.getWatermark());
+			assertEquals(expected.getWatermark(),
+					TOMMessage.bytesToMessage(expected.serializedMessage).getWatermark());
+			assertEquals(100L, actual.timestamp);
+			assertEquals(3, actual.getLeaderViewId());
+
+			ByteBuffer contentView = actual.getContentBuffer();
+			assertEquals(expected.getContent().length, contentView.remaining());
+			assertEquals(expected.getSerializedMessage().length, actual.getSerializedSize());
+
+			assertArrayEquals(expected.getContent(), actual.getContent());
+			assertArrayEquals(expected.serializedMessage, actual.getSerializedMessage());
+		}
+
+		// re-batching the lazy requests must produce the same batch;
+		List<TOMMessage> reproposed = new ArrayList<>();
+		for (TOMMessage request : new BatchReader(batch, false).deserialiseRequests(controller)) {
+			reproposed.add(request);
+		}
+		assertArrayEquals(batch, new BatchBuilder(7).makeBatch(reproposed, 0, 100L, controller));
+	}
+}
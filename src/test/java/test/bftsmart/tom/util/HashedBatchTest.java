@@ -0,0 +1,83 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import bftsmart.reconfiguration.ViewTopology;
+import bftsmart.tom.ReplicaConfiguration;
+import bftsmart.tom.core.messages.TOMMessage;
+import bftsmart.tom.core.messages.TOMMessageType;
+import bftsmart.tom.util.BatchBuilder;
+import bftsmart.tom.util.HashedBatch;
+
+public class HashedBatchTest {
+
+	@Test
+	public void testResolveHashedBatch() {
+		ViewTopology controller = Mockito.mock(ViewTopology.class);
+		ReplicaConfiguration conf = Mockito.mock(ReplicaConfiguration.class);
+		when(controller.getStaticConf()).thenReturn(conf);
+		when(controller.getCurrentViewId()).thenReturn(2);
+
+		List<TOMMessage> requests = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			byte[] content = new byte[100 + i];
+			for (int j = 0; j < content.length; j++) {
+				content[j] = (byte) (i * j);
+			}
+			TOMMessage request = new TOMMessage(1000 + i, 5, 10 + i, i, content, null, 2,
+					TOMMessageType.ORDERED_REQUEST);
+			request.serializedMessage = TOMMessage.messageToBytes(request);
+			requests.add(request);
+		}
+
+		byte[] batch = new BatchBuilder(7).makeBatch(requests, 3, 100L, controller);
+		assertFalse(HashedBatch.isHashed(batch));
+
+		byte[] hashed = HashedBatch.compact(batch, 0);
+		assertTrue(HashedBatch.isHashed(hashed));
+		assertTrue(hashed.length < batch.length);
+
+		HashedBatch hashedBatch = HashedBatch.read(hashed);
+		assertEquals(requests.size(), hashedBatch.size());
+		ByteBuffer[] messages = new ByteBuffer[requests.size()];
+		for (int i = 0; i < requests.size(); i++) {
+			TOMMessage request = requests.get(i);
+			assertEquals(request.getSender(), hashedBatch.getSender(i));
+			assertEquals(request.getSession(), hashedBatch.getSession(i));
+			assertEquals(request.getSequence(), hashedBatch.getSequence(i));
+			assertTrue(hashedBatch.matches(i, request.getSerializedBuffer(), null));
+			assertFalse(hashedBatch.matches((i + 1) % requests.size(), request.getSerializedBuffer(), null));
+			messages[i] = request.getSerializedBuffer();
+		}
+
+		// 还原的批次与领导者的批次逐字节相同；
+		assertArrayEquals(batch, hashedBatch.rebuild(messages, null));
+
+		// 篡改的请求与摘要不一致；
+		byte[] tampered = requests.get(0).serializedMessage.clone();
+		tampered[tampered.length - 1] ^= 1;
+		assertFalse(hashedBatch.matches(0, ByteBuffer.wrap(tampered), null));
+	}
+
+	@Test
+	public void testEmptyBatchIsNotHashed() {
+		ViewTopology controller = Mockito.mock(ViewTopology.class);
+		ReplicaConfiguration conf = Mockito.mock(ReplicaConfiguration.class);
+		when(controller.getStaticConf()).thenReturn(conf);
+
+		byte[] batch = new BatchBuilder(7).makeBatch(new ArrayList<>(), 0, 100L, controller);
+		assertArrayEquals(batch, HashedBatch.compact(batch, 0));
+		assertFalse(HashedBatch.isHashed(batch));
+	}
+}
@@ -0,0 +1,60 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import bftsmart.tom.util.ReedSolomon;
+
+public class ReedSolomonTest {
+
+	@Test
+	public void testDecodeFromAnyDataShards() {
+		Random random = new Random(11);
+		// n = 3f + 1 个节点，领导者之外的 n - 1 个跟随者各持一个分片，任意 n - 2f 个分片还原提议；
+		for (int f = 1; f <= 3; f++) {
+			int n = 3 * f + 1;
+			ReedSolomon codec = new ReedSolomon(n - 2 * f, n - 1);
+			for (int length : new int[] { 0, 1, 97, 4096 }) {
+				byte[] data = new byte[length];
+				random.nextBytes(data);
+				byte[][] shards = codec.encode(data);
+				assertEquals(n - 1, shards.length);
+
+				// 数据分片就是原数据的片段；
+				int shardSize = codec.getShardSize(length);
+				for (int i = 0; i < length; i++) {
+					assertEquals(data[i], shards[i / shardSize][i % shardSize]);
+				}
+
+				// 随机丢弃 f 个分片，再以剩下的前 n - 2f 个分片还原；
+				for (int round = 0; round < 10; round++) {
+					byte[][] received = shards.clone();
+					for (int i = 0; i < f; i++) {
+						received[random.nextInt(received.length)] = null;
+					}
+					assertArrayEquals(data, codec.decode(received, length));
+				}
+
+				// 只有校验分片与部分数据分片；
+				byte[][] received = new byte[shards.length][];
+				for (int i = shards.length - 1, present = 0; present < codec.getDataShards(); i--, present++) {
+					received[i] = shards[i];
+				}
+				assertArrayEquals(data, codec.decode(received, length));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotEnoughShards() {
+		ReedSolomon codec = new ReedSolomon(2, 3);
+		byte[][] shards = codec.encode(new byte[10]);
+		shards[0] = null;
+		shards[2] = null;
+		codec.decode(shards, 10);
+	}
+}
@@ -0,0 +1,92 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import bftsmart.reconfiguration.util.DefaultSignatureKeyLoader;
+import bftsmart.reconfiguration.util.HostsConfig;
+import bftsmart.reconfiguration.util.TOMConfiguration;
+import bftsmart.tom.util.SignatureScheme;
+import bftsmart.tom.util.SignatureSchemes;
+import bftsmart.tom.util.TOMUtil;
+import utils.io.BytesUtils;
+
+public class SignatureSchemeTest {
+
+	private static final byte[] MESSAGE = BytesUtils.toBytes("signed message of the test");
+
+	@Test
+	public void testSchemes() throws Exception {
+		assertSame(SignatureSchemes.RSA, SignatureSchemes.get(null));
+		assertSame(SignatureSchemes.RSA, SignatureSchemes.get("RSA"));
+		assertSame(SignatureSchemes.ED25519, SignatureSchemes.get("ed25519"));
+		assertSame(SignatureSchemes.ECDSA, SignatureSchemes.get(" ecdsa "));
+
+		verifyScheme(SignatureSchemes.ED25519, 64);
+		verifyScheme(SignatureSchemes.ECDSA, 64);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownScheme() {
+		SignatureSchemes.get("dsa");
+	}
+
+	@Test
+	public void testConfiguredScheme() {
+		Properties properties = new Properties();
+		properties.setProperty("system.communication.signatureScheme", "ed25519");
+		TOMConfiguration conf = new TOMConfiguration(0, properties, new HostsConfig());
+
+		assertEquals("ed25519", conf.getSignatureScheme());
+		assertSame(SignatureSchemes.ED25519, SignatureSchemes.forKey(conf.getRSAPrivateKey()));
+		assertSame(SignatureSchemes.ED25519, SignatureSchemes.forKey(conf.getRSAPublicKey(1)));
+
+		byte[] signature = TOMUtil.signMessage(conf.getRSAPrivateKey(), MESSAGE);
+		assertEquals(64, signature.length);
+		assertTrue(TOMUtil.verifySignature(conf.getRSAPublicKey(1), MESSAGE, signature));
+
+		conf = new TOMConfiguration(0, new Properties(), new HostsConfig());
+		assertEquals("rsa", conf.getSignatureScheme());
+		assertSame(SignatureSchemes.RSA, SignatureSchemes.forKey(conf.getRSAPrivateKey()));
+		signature = TOMUtil.signMessage(conf.getRSAPrivateKey(), MESSAGE);
+		assertEquals(SignatureSchemes.RSA.getSignatureSize(conf.getRSAPrivateKey()), signature.length);
+		assertTrue(TOMUtil.verifySignature(conf.getRSAPublicKey(1), MESSAGE, signature));
+	}
+
+	private void verifyScheme(SignatureScheme scheme, int signatureSize) throws Exception {
+		DefaultSignatureKeyLoader keyLoader = new DefaultSignatureKeyLoader(scheme);
+		PrivateKey privateKey = keyLoader.loadPrivateKey(0);
+		PublicKey publicKey = keyLoader.loadPublicKey(0);
+		assertSame(scheme, SignatureSchemes.forKey(privateKey));
+		assertSame(scheme, SignatureSchemes.forKey(publicKey));
+		assertEquals(signatureSize, scheme.getSignatureSize(publicKey));
+
+		// 每个签名都是定长的；
+		for (int i = 0; i < 10; i++) {
+			byte[] signature = scheme.sign(privateKey, MESSAGE);
+			assertEquals(signatureSize, signature.length);
+			assertTrue(scheme.verify(publicKey, MESSAGE, signature));
+		}
+
+		byte[] signature = scheme.sign(privateKey, MESSAGE);
+		ByteBuffer buffer = ByteBuffer.allocate(MESSAGE.length + 4);
+		buffer.putInt(0).put(MESSAGE).flip();
+		buffer.position(4);
+		assertTrue(scheme.verify(publicKey, buffer, signature));
+		assertEquals(4, buffer.position());
+
+		byte[] tampered = MESSAGE.clone();
+		tampered[0] ^= 1;
+		assertFalse(scheme.verify(publicKey, tampered, signature));
+		assertFalse(scheme.verify(publicKey, MESSAGE, new byte[signatureSize]));
+	}
+}
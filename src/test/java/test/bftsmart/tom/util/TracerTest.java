@@ -0,0 +1,86 @@
+package test.bftsmart.tom.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bftsmart.tom.util.Tracer;
+
+public class TracerTest {
+
+	@Test
+	public void testDisabled() {
+		Tracer tracer = Tracer.create(0);
+		assertSame(Tracer.DISABLED, tracer);
+		assertFalse(tracer.isEnabled());
+		for (int i = 0; i < 100; i++) {
+			assertFalse(tracer.sample());
+		}
+
+		Tracer.Counter counter = tracer.counter("requests");
+		counter.add(10);
+		Tracer.Histogram histogram = tracer.histogram("latency");
+		histogram.record(100);
+		assertEquals(0, counter.get());
+		assertEquals(0, histogram.getCount());
+		assertTrue(tracer.getCounters().isEmpty());
+		assertTrue(tracer.getHistograms().isEmpty());
+	}
+
+	@Test
+	public void testRecordWithoutSampling() {
+		Tracer tracer = Tracer.create(0, true);
+		assertTrue(tracer.isEnabled());
+		assertFalse(tracer.isSampling());
+		for (int i = 0; i < 100; i++) {
+			assertFalse(tracer.sample());
+		}
+
+		tracer.counter("batching.proposes").increment();
+		tracer.histogram("batching.batch_size").record(8);
+		assertEquals(Long.valueOf(1), tracer.getCounters().get("batching.proposes"));
+		assertEquals(1, tracer.getHistograms().get("batching.batch_size").getCount());
+
+		assertSame(Tracer.DISABLED, Tracer.create(0, false));
+	}
+
+	@Test
+	public void testCountersAndHistograms() {
+		Tracer tracer = Tracer.create(1);
+		assertTrue(tracer.sample());
+
+		Tracer.Counter counter = tracer.counter("requests");
+		assertSame(counter, tracer.counter("requests"));
+		counter.increment();
+		counter.add(4);
+		assertEquals(Long.valueOf(5), tracer.getCounters().get("requests"));
+
+		Tracer.Histogram histogram = tracer.histogram("latency");
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(0);
+		assertEquals(101, histogram.getCount());
+		assertEquals(100, histogram.getMax());
+		assertEquals(5050 / 101.0, histogram.getMean(), 0.0001);
+		// 50 is in the bucket [32, 64) and 99 in the bucket [64, 128) capped by the max;
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(0, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void testSampling() {
+		Tracer tracer = Tracer.create(10);
+		int sampled = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (tracer.sample()) {
+				sampled++;
+			}
+		}
+		assertTrue("sampled " + sampled, sampled > 9000 && sampled < 11000);
+	}
+}